@@ -51,9 +51,15 @@ parser.add_option("-I", "--immutable-border",
 parser.add_option("-G", "--immutable-border-group",
                   action="store_true", dest="immutable_border_group",
                   help="Tag border group edges as immutable")
+parser.add_option("-B", "--compact-background",
+                  action="store_true", dest="compactBackground",
+                  help="decimate the input mesh in place and store background in arrays")
 parser.add_option("--record", metavar="PREFIX",
                   action="store", type="string", dest="recordFile",
                   help="record mesh operations in a Python file to replay this scenario")
+parser.add_option("--heap-arity", metavar="NUMBER",
+                  action="store", type="int", dest="heapArity",
+                  help="sort edges with an indexed d-ary heap of this arity instead of a binary tree")
                   
 (options, args) = parser.parse_args(args=sys.argv[1:])
 
@@ -71,6 +77,8 @@ xmlDir = args[0]
 outDir = args[1]
 
 opts = HashMap()
+if options.heapArity:
+	opts.put("heapArity", str(options.heapArity))
 if options.tolerance:
 	opts.put("size", str(options.tolerance))
 elif options.targetTriangles:
@@ -92,7 +100,10 @@ if options.recordFile:
 MeshReader.readObject3D(mesh, xmlDir)
 assert mesh.isValid()
 
-liaison = MeshLiaison.create(mesh, mtb)
+if options.compactBackground:
+	liaison = MeshLiaison.createCompact(mesh)
+else:
+	liaison = MeshLiaison.create(mesh, mtb)
 if options.recordFile:
 	liaison.getMesh().getTrace().setDisabled(False)
 	liaison.getMesh().getTrace().setLogFile(options.recordFile)
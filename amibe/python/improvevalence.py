@@ -29,6 +29,9 @@ parser.add_option("-c", "--coplanarity", metavar="FLOAT", default=0.95,
                   action="store", type="float", dest="coplanarity",
 		  help="minimum dot product of face normals when building feature edges (default 0.95)")
 
+parser.add_option("--heap-arity", metavar="NUMBER",
+                  action="store", type="int", dest="heapArity",
+                  help="sort vertices with an indexed d-ary heap of this arity instead of a binary tree")
 (options, args) = parser.parse_args(args=sys.argv[1:])
 
 if len(args) != 2:
@@ -50,6 +53,8 @@ if options.preserveGroups:
 	liaison.getMesh().buildGroupBoundaries()
 
 opts = HashMap()
+if options.heapArity:
+	opts.put("heapArity", str(options.heapArity))
 if options.coplanarity:
 	opts.put("coplanarity", str(options.coplanarity))
 opts.put("checkNormals", str("false"))
@@ -26,6 +26,9 @@ parser.add_option("-r", "--rho", metavar="FLOAT", default=100.0,
                   action="store", type="float", dest="rho",
                   help="max tolerated anisotropy")
 
+parser.add_option("--heap-arity", metavar="NUMBER",
+                  action="store", type="int", dest="heapArity",
+                  help="sort edges with an indexed d-ary heap of this arity instead of a binary tree")
 (options, args) = parser.parse_args(args=sys.argv[1:])
 
 if len(args) != 2:
@@ -44,6 +47,8 @@ liaison = MeshLiaison.create(mesh, mtb)
 
 ## Process algo
 opts = HashMap()
+if options.heapArity:
+	opts.put("heapArity", str(options.heapArity))
 opts.put("rho", str(options.rho))
 
 algo = RemoveDegeneratedTriangles(liaison, opts)
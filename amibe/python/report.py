@@ -120,6 +120,35 @@ if options.verboseMesh:
 	if nrNMVertices > 0:
 		print("Number of non-manifold vertices: "+str(nrNMVertices))
 
+if None == options.outBasename:
+	# Values are not needed, statistics are computed in parallel
+	# with O(bins) memory
+	evaluator = QualityEvaluator(qprocFactory)
+	evaluator.setTarget(options.scaleFactor)
+	if bounds:
+		evaluator.setBounds(bounds)
+	if options.detailed:
+		if qproc.getType() != QualityProcedure.FACE:
+			print("The --detailed option cannot be combined with -c NodeConnectivity")
+			sys.exit(1)
+		byGroup = evaluator.computeByGroup(mesh)
+		groups = sorted(byGroup.keys())
+		stats = [byGroup.get(g) for g in groups if g + 1 - options.ifacemin >= 0]
+		ids = [g + 1 - options.ifacemin for g in groups if g + 1 - options.ifacemin >= 0]
+	else:
+		stats = [evaluator.compute(mesh)]
+		ids = [0]
+	for i in xrange(len(stats)):
+		if options.detailed:
+			print("Face "+str(ids[i]+1))
+		if options.histogram:
+			if not bounds:
+				stats[i].split(10)
+			stats[i].printLayers()
+		else:
+			stats[i].printStatistics()
+	sys.exit(0)
+
 nrFaces = 1
 if options.detailed:
 	groups = TIntHashSet(mesh.getTriangles().size())
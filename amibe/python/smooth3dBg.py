@@ -51,6 +51,12 @@ parser.add_option("-t", "--tolerance", metavar="FLOAT", default=2.0,
 parser.add_option("-I", "--immutable-border",
                   action="store_true", dest="immutable_border",
                   help="Tag free edges as immutable")
+parser.add_option("-W", "--warm-start",
+                  action="store_true", dest="warmStart",
+                  help="project vertices by walking from their previous background triangle")
+parser.add_option("-B", "--compact-background",
+                  action="store_true", dest="compactBackground",
+                  help="smooth the input mesh in place and store background in arrays, this option cannot be combined with -W")
 parser.add_option("--record", metavar="PREFIX",
                   action="store", type="string", dest="recordFile",
                   help="record mesh operations in a Python file to replay this scenario")
@@ -84,7 +90,12 @@ mesh = Mesh(mtb)
 if options.recordFile:
 	mesh.getTrace().setDisabled(True)
 MeshReader.readObject3D(mesh, xmlDir)
-liaison = MeshLiaison.create(mesh, mtb)
+if options.compactBackground:
+	liaison = MeshLiaison.createCompact(mesh)
+else:
+	liaison = MeshLiaison.create(mesh, mtb)
+	if options.warmStart:
+		liaison.setWarmStart(True)
 if options.recordFile:
 	liaison.getMesh().getTrace().setDisabled(False)
 	liaison.getMesh().getTrace().setLogFile(options.recordFile)
@@ -116,6 +127,8 @@ else:
 	sm = SmoothNodes3DBg(liaison, opts)
 sm.setProgressBarStatus(10000)
 sm.compute()
+if options.warmStart and not options.compactBackground:
+	liaison.logStatistics()
 if options.recordFile:
 	liaison.getMesh().getTrace().finish()
 
@@ -31,6 +31,9 @@ parser.add_option("-n", "--maxtriangles", metavar="NUMBER",
                   action="store", type="int", dest="maxtriangles",
                   help="stop splitting when mesh contains NUMBER triangles")
 
+parser.add_option("--heap-arity", metavar="NUMBER",
+                  action="store", type="int", dest="heapArity",
+                  help="sort edges with an indexed d-ary heap of this arity instead of a binary tree")
 (options, args) = parser.parse_args(args=sys.argv[1:])
 
 if len(args) != 2:
@@ -48,6 +51,8 @@ if options.coplanarity:
 	liaison.getMesh().buildRidges(options.coplanarity)
 
 opts = HashMap()
+if options.heapArity:
+	opts.put("heapArity", str(options.heapArity))
 if options.size:
 	opts.put("size", str(options.size))
 if options.coplanarity:
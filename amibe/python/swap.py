@@ -34,6 +34,9 @@ parser.add_option("-I", "--immutable-border",
 parser.add_option("-i", "--no-expect-insert",
                   action="store_true", dest="no_expect_insert",
                   help="Relax swapping conditions when no further point insertion are expected")
+parser.add_option("--heap-arity", metavar="NUMBER",
+                  action="store", type="int", dest="heapArity",
+                  help="sort edges with an indexed d-ary heap of this arity instead of a binary tree")
 (options, args) = parser.parse_args(args=sys.argv[1:])
 
 if len(args) != 2:
@@ -54,6 +57,8 @@ if options.preserveGroups:
 	liaison.getMesh().buildGroupBoundaries()
 
 opts = HashMap()
+if options.heapArity:
+	opts.put("heapArity", str(options.heapArity))
 opts.put("coplanarity", str(options.coplanarity))
 if options.min_quality_factor:
     opts.put("minQualityFactor", str(options.min_quality_factor))
@@ -0,0 +1,80 @@
+# jCAE
+from org.jcae.mesh.xmldata import MeshCache
+
+# Java
+from java.lang import System
+
+# Python
+import sys, os, traceback
+
+"""
+Long-lived amibe process: run scripts of this directory on request,
+so that JVM and Jython startup are paid only once, and the last written
+mesh is kept in memory for the next request (see MeshCache).
+
+Requests are read from standard input, one per line, with tab separated
+fields: working directory (may be empty), script path and its arguments.
+The working directory is only used by Python code; Java code resolves
+relative paths against the directory of the worker, so scripts should be
+given absolute paths.  Once a script is done, the line
+	@@amibe-worker-done@@ <exit code>
+is written on standard output, and the line
+	@@amibe-worker-done@@
+is written on standard error, so that output of a request cannot be
+mixed up with output of the next one.  Worker exits at end of input.
+"""
+
+cmd=("worker", "", "Run commands read from standard input")
+DONE_MARKER = "@@amibe-worker-done@@"
+scriptDir = os.path.dirname(os.path.abspath(sys.argv[0]))
+initialDir = os.getcwd()
+
+def isScriptModule(module):
+	# Scripts imported by other scripts (for instance by submesh) must be
+	# run again by next request
+	f = getattr(module, "__file__", None)
+	return f is not None and os.path.dirname(os.path.abspath(f)) == scriptDir
+
+def runScript(directory, argv):
+	sys.argv = argv
+	rc = 0
+	try:
+		try:
+			os.chdir(directory or initialDir)
+			execfile(argv[0], {"__name__": "__main__", "__file__": argv[0]})
+		except SystemExit, e:
+			if e.code is None:
+				rc = 0
+			elif isinstance(e.code, int):
+				rc = e.code
+			else:
+				print >>sys.stderr, e.code
+				rc = 1
+		except:
+			traceback.print_exc()
+			rc = 1
+	finally:
+		for name, module in sys.modules.items():
+			if module is not None and isScriptModule(module):
+				del sys.modules[name]
+	return rc
+
+if __name__ == "__main__":
+	MeshCache.setEnabled(True)
+	while True:
+		line = sys.stdin.readline()
+		if not line:
+			break
+		line = line.rstrip("\r\n")
+		if not line:
+			continue
+		fields = line.split("\t")
+		rc = runScript(fields[0], fields[1:])
+		sys.stdout.flush()
+		System.out.flush()
+		sys.stderr.flush()
+		System.err.flush()
+		print >>sys.stderr, DONE_MARKER
+		sys.stderr.flush()
+		print DONE_MARKER, rc
+		sys.stdout.flush()
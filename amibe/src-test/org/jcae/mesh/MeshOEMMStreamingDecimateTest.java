@@ -0,0 +1,95 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.oemm.MeshReader;
+import org.jcae.mesh.oemm.OEMM;
+import org.jcae.mesh.oemm.Storage;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class MeshOEMMStreamingDecimateTest
+{
+	private final List<String> dirs = new ArrayList<String>();
+
+	@After public void deleteOEMM()
+	{
+		for (String dir : dirs)
+			SphereBuilder.deleteOEMM(dir);
+		dirs.clear();
+	}
+
+	private static int countTriangles(Mesh mesh)
+	{
+		int ret = 0;
+		for (Triangle t: mesh.getTriangles())
+		{
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				ret++;
+		}
+		return ret;
+	}
+
+	private int decimateSphere(String heapBudget)
+	{
+		// 5120 triangles dispatched into leaves of at most 500 triangles
+		String dir = SphereBuilder.createSphereOEMM(4, 500);
+		dirs.add(dir);
+		OEMM oemm = Storage.readOEMMStructure(dir);
+		assertTrue(oemm.getNumberOfLeaves() > 8);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("scale", "4");
+		if (heapBudget != null)
+			options.put("heapbudget", heapBudget);
+		new MeshOEMMStreamingDecimate(oemm, options).compute();
+
+		oemm = Storage.readOEMMStructure(dir);
+		Mesh mesh = new MeshReader(oemm).buildWholeMesh();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		int nrTriangles = countTriangles(mesh);
+		assertTrue("Too many triangles: "+nrTriangles, nrTriangles < 5120);
+		return nrTriangles;
+	}
+
+	@Test public void testSphere()
+	{
+		int nrTriangles = decimateSphere(null);
+		// Leaf boundaries are decimated too
+		assertTrue("Too many triangles: "+nrTriangles, nrTriangles < 5120 / 3);
+		assertTrue("Too few triangles: "+nrTriangles, nrTriangles > 5120 / 5);
+	}
+
+	@Test public void testSphereWithoutNeighbours()
+	{
+		// Leaves are processed alone, vertices on leaf boundaries
+		// are locked
+		int nrTriangles = decimateSphere("0");
+		assertTrue("Too few triangles: "+nrTriangles, nrTriangles > decimateSphere(null));
+	}
+}
@@ -32,6 +32,9 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.oemm.RawStorage;
 
 import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import org.w3c.dom.Document;
@@ -458,6 +461,69 @@ public class MesherTest
 		runSingleTestTimer("shell_hole", 30L);
 	}
 
+	private static byte [] readFile(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			byte [] content = new byte[(int) raf.length()];
+			raf.readFully(content);
+			return content;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static void assertSameFiles(File expected, File actual) throws IOException
+	{
+		if (expected.isDirectory())
+		{
+			assertTrue("Not a directory: "+actual, actual.isDirectory());
+			String [] names = expected.list();
+			Arrays.sort(names);
+			String [] actualNames = actual.list();
+			Arrays.sort(actualNames);
+			assertArrayEquals("Files differ in "+actual, names, actualNames);
+			for (String name : names)
+				assertSameFiles(new File(expected, name), new File(actual, name));
+		}
+		else
+		{
+			assertArrayEquals("File differs: "+actual, readFile(expected), readFile(actual));
+		}
+	}
+
+	// Faces are meshed concurrently, output must be the same as when
+	// they are processed sequentially
+	@Test public void cylinder_threads() throws IOException
+	{
+		System.setProperty("org.jcae.mesh.Mesher.threads", "1");
+		String serialDir = runSingleTest("cylinder", 0.05, 36000, 20.0);
+		stopLogger();
+		System.setProperty("org.jcae.mesh.Mesher.threads", "4");
+		String parallelDir;
+		try
+		{
+			parallelDir = runSingleTest("cylinder", 0.05, 36000, 20.0);
+			stopLogger();
+		}
+		finally
+		{
+			System.setProperty("org.jcae.mesh.Mesher.threads", "1");
+		}
+		File [] faces = new File(serialDir).listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith("jcae2d.");
+			}
+		});
+		assertTrue(faces.length > 1);
+		for (File f : faces)
+			assertSameFiles(f, new File(parallelDir, f.getName()));
+	}
+
 	@Test public void oemm()
 	{
 		String geoFile = getGeometryFile("15_cylinder_head");
@@ -0,0 +1,148 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.util.Iterator;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.util.DaryHeap;
+import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.SortedQueue;
+import org.junit.Test;
+
+public class DaryHeapTest
+{
+	private static void checkSameOrder(SortedQueue<Integer> expected, SortedQueue<Integer> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		Iterator<? extends SortedQueue.Entry<Integer>> it1 = expected.iterator();
+		Iterator<? extends SortedQueue.Entry<Integer>> it2 = actual.iterator();
+		while (it1.hasNext())
+		{
+			assertTrue(it2.hasNext());
+			SortedQueue.Entry<Integer> e1 = it1.next();
+			SortedQueue.Entry<Integer> e2 = it2.next();
+			assertEquals(e1.getData(), e2.getData());
+			assertEquals(e1.getValue(), e2.getValue(), 0.0);
+		}
+		assertFalse(it2.hasNext());
+	}
+
+	private static void compareWithTree(int arity)
+	{
+		SortedQueue<Integer> tree = new PAVLSortedTree<Integer>();
+		DaryHeap<Integer> heap = new DaryHeap<Integer>(arity, 1);
+		Random r = new Random(arity);
+		Integer [] objects = new Integer[500];
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = Integer.valueOf(i);
+		for (int step = 0; step < 20000; step++)
+		{
+			Integer o = objects[r.nextInt(objects.length)];
+			// Few distinct values to check that duplicates are sorted
+			// in the same order
+			double value = r.nextInt(50);
+			int action = r.nextInt(3);
+			if (action == 0 && !tree.contains(o))
+			{
+				tree.insert(o, value);
+				heap.insert(o, value);
+			}
+			else if (action == 1)
+				assertEquals(tree.update(o, value), heap.update(o, value));
+			else
+				assertEquals(tree.remove(o), heap.remove(o));
+			assertEquals(tree.contains(o), heap.contains(o));
+			if (step % 1000 == 0)
+				checkSameOrder(tree, heap);
+		}
+		checkSameOrder(tree, heap);
+		// Remove objects in increasing order
+		while (!heap.isEmpty())
+		{
+			Integer first = heap.first();
+			assertEquals(tree.iterator().next().getData(), first);
+			assertEquals(tree.iterator().next().getValue(), heap.firstValue(), 0.0);
+			assertTrue(heap.remove(first));
+			assertTrue(tree.remove(first));
+		}
+		assertTrue(tree.isEmpty());
+	}
+
+	@Test public void binary()
+	{
+		compareWithTree(2);
+	}
+
+	@Test public void quaternary()
+	{
+		compareWithTree(4);
+	}
+
+	@Test public void octonary()
+	{
+		compareWithTree(8);
+	}
+
+	@Test public void clear()
+	{
+		DaryHeap<Integer> heap = new DaryHeap<Integer>();
+		for (int i = 0; i < 100; i++)
+			heap.insert(Integer.valueOf(i), 100 - i);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(Integer.valueOf(3)));
+		assertFalse(heap.iterator().hasNext());
+		heap.insert(Integer.valueOf(3), 1.0);
+		assertEquals(Integer.valueOf(3), heap.first());
+	}
+
+	@Test public void indexable()
+	{
+		Vertex [] vertices = new Vertex[100];
+		DaryHeap<Vertex> heap = new DaryHeap<Vertex>(4, 1);
+		for (int i = 0; i < vertices.length; i++)
+		{
+			vertices[i] = new Vertex(null, i, 0, 0);
+			heap.insert(vertices[i], (i * 37) % 101);
+		}
+		for (int i = 0; i < vertices.length; i += 2)
+			assertTrue(heap.remove(vertices[i]));
+		for (int i = 0; i < vertices.length; i++)
+			assertEquals(i % 2 == 1, heap.contains(vertices[i]));
+		// Identifiers given by another heap must be ignored
+		DaryHeap<Vertex> other = new DaryHeap<Vertex>(2, 1);
+		for (int i = 1; i < vertices.length; i += 2)
+			assertFalse(other.contains(vertices[i]));
+		for (int i = 0; i < vertices.length; i += 2)
+			other.insert(vertices[i], i);
+		assertFalse(heap.contains(vertices[0]));
+		double last = -1.0;
+		while (!heap.isEmpty())
+		{
+			assertTrue(heap.firstValue() >= last);
+			last = heap.firstValue();
+			assertTrue(heap.remove(heap.first()));
+		}
+		assertEquals(vertices[0], other.first());
+		assertEquals(vertices.length / 2, other.size());
+	}
+}
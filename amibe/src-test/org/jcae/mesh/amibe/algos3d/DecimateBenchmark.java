@@ -0,0 +1,95 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+
+/**
+ * Compares edge queues of {@link QEMDecimateHalfEdge}: the default
+ * binary tree and d-ary heaps.  This is not a JUnit test, run it with
+ * <pre>
+ * java -Xmx5g -cp ... org.jcae.mesh.amibe.algos3d.DecimateBenchmark [level [arity...]]
+ * </pre>
+ * A sphere is built by subdividing an icosahedron <code>level</code> times
+ * (level 9 gives 5M triangles, this is the default value), and is
+ * decimated down to 10% of its triangles.  Arity 0 means binary tree,
+ * default arities are 0, 2, 4 and 8.  Computation time, number of
+ * contracted edges per second and garbage collector activity are printed.
+ */
+public class DecimateBenchmark
+{
+	private static long [] gcStatistics()
+	{
+		long [] ret = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			ret[0] += Math.max(0L, gc.getCollectionCount());
+			ret[1] += Math.max(0L, gc.getCollectionTime());
+		}
+		return ret;
+	}
+
+	private static void run(int level, int arity)
+	{
+		// Vertices are stored into a set, removing them from a list would
+		// cost more than edge queues at this scale
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeSet();
+		Mesh mesh = SphereBuilder.createShuffledSphereMesh(level, mtb);
+		int nrTriangles = AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", Integer.toString(nrTriangles / 10));
+		QEMDecimateHalfEdge algo = new QEMDecimateHalfEdge(mesh, options);
+		algo.setHeapArity(arity);
+		algo.setProgressBarStatus(Integer.MAX_VALUE);
+		System.gc();
+		long [] gcBefore = gcStatistics();
+		long start = System.nanoTime();
+		algo.compute();
+		long end = System.nanoTime();
+		long [] gcAfter = gcStatistics();
+		double seconds = (end - start) / 1.e9;
+		System.out.printf("  %-12s %9d -> %8d triangles %8.2f s %10.0f edges/s   GC: %5d collections %8d ms%n",
+			arity == 0 ? "PAVL tree" : arity+"-ary heap",
+			nrTriangles, AbstractAlgoHalfEdge.countInnerTriangles(mesh), seconds,
+			algo.processed / seconds, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+	}
+
+	public static void main(String[] args)
+	{
+		int level = 9;
+		int [] arities = new int[] { 0, 2, 4, 8 };
+		if (args.length > 0)
+			level = Integer.parseInt(args[0]);
+		if (args.length > 1)
+		{
+			arities = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				arities[i - 1] = Integer.parseInt(args[i]);
+		}
+		for (int arity : arities)
+			run(level, arity);
+	}
+}
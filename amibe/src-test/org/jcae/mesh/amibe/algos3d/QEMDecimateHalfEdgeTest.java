@@ -26,6 +26,7 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -435,5 +436,98 @@ public class QEMDecimateHalfEdgeTest
 		assertTrue("Mesh is not valid", mesh.isValid());
 	}
 
+	// Maximal distance between vertices and unit sphere
+	private static double sphereError(Mesh m)
+	{
+		double ret = 0.0;
+		for (Triangle t : m.getTriangles())
+		{
+			if (!t.isWritable())
+				continue;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex n = t.getV(i);
+				double r = Math.sqrt(n.getX() * n.getX() + n.getY() * n.getY() + n.getZ() * n.getZ());
+				ret = Math.max(ret, Math.abs(r - 1.0));
+			}
+		}
+		return ret;
+	}
+
+	private static Mesh decimateSphere(String key, String value, boolean concurrentCosts)
+	{
+		Mesh m = SphereBuilder.createShuffledSphereMesh(5);
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put(key, value);
+		options.put("concurrentCosts", Boolean.toString(concurrentCosts));
+		new QEMDecimateHalfEdge(m, options).compute();
+		assertTrue("Mesh is not valid", m.isValid());
+		assertTrue("Mesh contains inverted triangles", m.checkNoInvertedTriangles());
+		return m;
+	}
+
+	// Check that triangles are the same and are stored in the same order
+	private static void assertSameMesh(Mesh expected, Mesh actual)
+	{
+		assertEquals(expected.getTriangles().size(), actual.getTriangles().size());
+		Iterator<Triangle> it = actual.getTriangles().iterator();
+		for (Triangle t1 : expected.getTriangles())
+		{
+			Triangle t2 = it.next();
+			assertEquals(t1.getGroupId(), t2.getGroupId());
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex v1 = t1.getV(i);
+				Vertex v2 = t2.getV(i);
+				assertEquals(v1 == expected.outerVertex, v2 == actual.outerVertex);
+				assertEquals(v1.getX(), v2.getX(), 0.0);
+				assertEquals(v1.getY(), v2.getY(), 0.0);
+				assertEquals(v1.getZ(), v2.getZ(), 0.0);
+			}
+		}
+	}
+
+	@Test public void testSphereConcurrentCostsSize()
+	{
+		Mesh serial = decimateSphere("size", "0.01", false);
+		Mesh concurrent = decimateSphere("size", "0.01", true);
+		int nrSerial = AbstractAlgoHalfEdge.countInnerTriangles(serial);
+		int nrConcurrent = AbstractAlgoHalfEdge.countInnerTriangles(concurrent);
+		// Edges are not processed in the same order, but results must be close
+		assertEquals(nrSerial, nrConcurrent, 0.02 * nrSerial);
+		assertTrue("Error: "+sphereError(concurrent)+" > "+sphereError(serial),
+			sphereError(concurrent) <= 1.1 * sphereError(serial));
+	}
 
+	@Test public void testSphereConcurrentCostsMaxTriangles()
+	{
+		Mesh serial = decimateSphere("maxtriangles", "2000", false);
+		Mesh concurrent = decimateSphere("maxtriangles", "2000", true);
+		assertEquals(2000, AbstractAlgoHalfEdge.countInnerTriangles(serial));
+		assertEquals(2000, AbstractAlgoHalfEdge.countInnerTriangles(concurrent));
+		assertTrue("Error: "+sphereError(concurrent)+" > "+sphereError(serial),
+			sphereError(concurrent) <= 1.1 * sphereError(serial));
+	}
+
+	@Test public void testSphereConcurrentCostsReproducible()
+	{
+		Mesh first = decimateSphere("maxtriangles", "2000", true);
+		Mesh second = decimateSphere("maxtriangles", "2000", true);
+		assertSameMesh(first, second);
+		first = decimateSphere("size", "0.01", true);
+		second = decimateSphere("size", "0.01", true);
+		assertSameMesh(first, second);
+	}
+
+	@Test public void testSphereHeapArity()
+	{
+		Mesh expected = decimateSphere("maxtriangles", "2000", false);
+		Mesh actual = SphereBuilder.createShuffledSphereMesh(5);
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", "2000");
+		options.put("heapArity", "4");
+		new QEMDecimateHalfEdge(actual, options).compute();
+		// Heap sorts edges with equal costs like the default tree
+		assertSameMesh(expected, actual);
+	}
 }
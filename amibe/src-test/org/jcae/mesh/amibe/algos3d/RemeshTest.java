@@ -29,6 +29,7 @@ import org.jcae.mesh.xmldata.MeshReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.logging.Level;
@@ -169,7 +170,7 @@ public class RemeshTest
 		assertTrue("Mesh is not valid", newMesh.isValid());
 	}
 
-	@Test public void testTorus()
+	private Mesh remeshTorus(boolean concurrentCandidates)
 	{
 		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
 		mtb.addNodeList();
@@ -185,11 +186,49 @@ public class RemeshTest
 		final Map<String, String> options = new HashMap<String, String>();
 		options.put("size", "0.05");
 		options.put("coplanarity", "0.9");
+		options.put("concurrentCandidates", Boolean.toString(concurrentCandidates));
 		Mesh newMesh = new Remesh(MeshLiaison.create(bgMesh, mtb), options).compute().getOutputMesh();
 // try { org.jcae.mesh.xmldata.MeshWriter.writeObject3D(newMesh, "XXX", null); } catch (IOException ex) { ex.printStackTrace(); throw new RuntimeException(ex); }
 
 		assertTrue("Mesh is not valid", newMesh.isValid());
 		assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
+		return newMesh;
+	}
+
+	@Test public void testTorus()
+	{
+		remeshTorus(false);
+	}
+
+	@Test public void testTorusConcurrentCandidates()
+	{
+		Mesh serial = remeshTorus(false);
+		Mesh concurrent = remeshTorus(true);
+		// Candidates are inserted in the same order, so meshes must be
+		// identical
+		assertEquals(serial.getNodes().size(), concurrent.getNodes().size());
+		Map<Vertex, Integer> serialIndex = new HashMap<Vertex, Integer>();
+		Map<Vertex, Integer> concurrentIndex = new HashMap<Vertex, Integer>();
+		Iterator<Vertex> itv = concurrent.getNodes().iterator();
+		for (Vertex v1 : serial.getNodes())
+		{
+			Vertex v2 = itv.next();
+			assertEquals(v1.getX(), v2.getX(), 0.0);
+			assertEquals(v1.getY(), v2.getY(), 0.0);
+			assertEquals(v1.getZ(), v2.getZ(), 0.0);
+			serialIndex.put(v1, serialIndex.size());
+			concurrentIndex.put(v2, concurrentIndex.size());
+		}
+		serialIndex.put(serial.outerVertex, -1);
+		concurrentIndex.put(concurrent.outerVertex, -1);
+		assertEquals(serial.getTriangles().size(), concurrent.getTriangles().size());
+		Iterator<Triangle> itt = concurrent.getTriangles().iterator();
+		for (Triangle t1 : serial.getTriangles())
+		{
+			Triangle t2 = itt.next();
+			for (int i = 0; i < 3; i++)
+				assertEquals(serialIndex.get(t1.getV(i)), concurrentIndex.get(t2.getV(i)));
+		}
 	}
 
 }
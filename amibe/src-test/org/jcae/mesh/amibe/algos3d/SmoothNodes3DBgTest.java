@@ -23,7 +23,10 @@ package org.jcae.mesh.amibe.algos3d;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.projection.KdTreeLiaison;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
+import org.jcae.mesh.amibe.projection.TriangleKdTree;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.amibe.validation.MinAngleFace;
 import org.jcae.mesh.amibe.validation.QualityFloat;
@@ -33,6 +36,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -246,6 +250,45 @@ public class SmoothNodes3DBgTest
 	}
 
 	@Test public void testTorus()
+	{
+		smoothTorus(false);
+	}
+
+	@Test public void testTorusParallel()
+	{
+		smoothTorus(true);
+	}
+
+	@Test public void testTorusWarmStart()
+	{
+		smoothTorus(false);
+		KdTreeLiaison liaison = new KdTreeLiaison(mesh, mesh.getBuilder());
+		liaison.setWarmStart(true);
+		Mesh smoothedMesh = smoothTorus(liaison, false);
+		assertTrue("Hit rate: "+liaison.getHitRate(), liaison.getHitRate() > 0.9);
+		// Walks may find another local minimum than the kd-tree, but
+		// vertices must be on the background mesh
+		TriangleKdTree kdTree = new TriangleKdTree(mesh);
+		Location projection = new Location();
+		for (Vertex v : smoothedMesh.getNodes())
+		{
+			assertNotNull(kdTree.getClosestTriangle(v, projection, -1));
+			assertTrue("Vertex not projected: "+v, v.sqrDistance3D(projection) < 1.e-20);
+		}
+	}
+
+	@Test public void testTorusCompactBackground()
+	{
+		Mesh expected = smoothTorus(false);
+		// mesh is smoothed in place, projections are the same
+		Mesh smoothedMesh = smoothTorus(MeshLiaison.createCompact(mesh), false);
+		assertSame(mesh, smoothedMesh);
+		Iterator<Vertex> it = expected.getNodes().iterator();
+		for (Vertex v : smoothedMesh.getNodes())
+			assertTrue("Vertex differs: "+v, v.sqrDistance3D(it.next()) < 1.e-20);
+	}
+
+	private Mesh smoothTorus(boolean parallel)
 	{
 		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
 		mtb.addNodeList();
@@ -258,13 +301,19 @@ public class SmoothNodes3DBgTest
 		}
 		assertTrue("Mesh is not valid", mesh.isValid());
 		SmoothNodes3DTest.shuffleTorus(mesh, 0.3, 1.0);
+		return smoothTorus(MeshLiaison.create(mesh, mtb), parallel);
+	}
 
+	private Mesh smoothTorus(MeshLiaison liaison, boolean parallel)
+	{
 		final Map<String, String> options = new HashMap<String, String>();
 		options.put("iterations", "50");
 		options.put("check", "false");
 		options.put("refresh", "true");
 		options.put("relaxation", "0.9");
-		Mesh smoothedMesh = new SmoothNodes3DBg(MeshLiaison.create(mesh, mtb), options).compute().getOutputMesh();
+		if (parallel)
+			options.put("parallel", "true");
+		Mesh smoothedMesh = new SmoothNodes3DBg(liaison, options).compute().getOutputMesh();
 		assertTrue("Mesh is not valid", smoothedMesh.isValid());
 		MinAngleFace qproc = new MinAngleFace();
 		QualityFloat data = new QualityFloat(1000);
@@ -275,6 +324,7 @@ public class SmoothNodes3DBgTest
 		data.finish();
 		double qmin = data.getValueByPercent(0.0);
 		assertTrue("Min. angle too small: "+(qmin*60.0), qmin > 0.25);
+		return smoothedMesh;
 	}
 
 }
@@ -163,6 +163,16 @@ public class SmoothNodes3DTest
 	}
  
 	@Test public void testTorus()
+	{
+		smoothTorus(false);
+	}
+
+	@Test public void testTorusParallel()
+	{
+		smoothTorus(true);
+	}
+
+	private void smoothTorus(boolean parallel)
 	{
 		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
 		mtb.addNodeList();
@@ -181,6 +191,8 @@ public class SmoothNodes3DTest
 		options.put("check", "false");
 		options.put("refresh", "true");
 		options.put("relaxation", "0.9");
+		if (parallel)
+			options.put("parallel", "true");
 		new SmoothNodes3D(mesh, options).compute();
 		assertTrue("Mesh is not valid", mesh.isValid());
 		MinAngleFace qproc = new MinAngleFace();
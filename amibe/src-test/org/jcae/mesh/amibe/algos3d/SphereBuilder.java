@@ -19,6 +19,7 @@
 
 package org.jcae.mesh.amibe.algos3d;
 
+import gnu.trove.set.hash.TIntHashSet;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -26,7 +27,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,6 +35,7 @@ import org.jcae.mesh.MeshOEMMIndex;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.oemm.MeshReader;
 import org.jcae.mesh.oemm.OEMM;
 import org.jcae.mesh.oemm.Storage;
@@ -94,7 +96,7 @@ public class SphereBuilder
 		 4,  8, 10,
 		 4, 10,  2
 	};
-	private final Set<UnindexedTriangle> triangles = new HashSet<UnindexedTriangle>();
+	private final Set<UnindexedTriangle> triangles = new LinkedHashSet<UnindexedTriangle>();
 
 	@Ignore("Inner class")
 	private static class UnindexedTriangle
@@ -179,7 +181,13 @@ public class SphereBuilder
 		return true;
 	}
 	
-	private static Mesh createSphereMesh(int level)
+	/**
+	 * Write an OEMM of a sphere into a temporary directory.
+	 * @param level  number of refinements of the icosahedron
+	 * @param maxTriangles  maximal number of triangles by octant
+	 * @return OEMM directory
+	 */
+	public static String createSphereOEMM(int level, int maxTriangles)
 	{
 		SphereBuilder sphere = new SphereBuilder();
 		// Create icosahedron
@@ -208,20 +216,65 @@ public class SphereBuilder
 		mainArgs[0] = tmpdir;
 		mainArgs[1] = tmpdir;
 		mainArgs[2] = "4";
-		mainArgs[3] = "50000";
+		mainArgs[3] = Integer.toString(maxTriangles);
 		MeshOEMMIndex.main(mainArgs);
+		return tmpdir;
+	}
+
+	/**
+	 * Removes a directory created by {@link #createSphereOEMM}.
+	 *
+	 * @param dir  directory to remove, may be <code>null</code>
+	 */
+	public static void deleteOEMM(String dir)
+	{
+		if (dir != null)
+			deleteRecursively(new File(dir));
+	}
+
+	private static void deleteRecursively(File file)
+	{
+		File [] children = file.listFiles();
+		if (children != null)
+		{
+			for (File f : children)
+				deleteRecursively(f);
+		}
+		file.delete();
+	}
+
+	private static Mesh createSphereMesh(int level, MeshTraitsBuilder mtb)
+	{
 		// Read oemm into a Mesh
-		OEMM oemm = Storage.readOEMMStructure(mainArgs[1]);
-		MeshReader mr = new MeshReader(oemm);
-		Mesh toReturn = mr.buildWholeMesh();
-		// Clean up
-		return toReturn;
+		String dir = createSphereOEMM(level, 50000);
+		try
+		{
+			OEMM oemm = Storage.readOEMMStructure(dir);
+			MeshReader mr = new MeshReader(oemm);
+			if (mtb == null)
+				return mr.buildWholeMesh();
+			TIntHashSet leaves = new TIntHashSet(oemm.getNumberOfLeaves());
+			for (OEMM.Node current: oemm.leaves)
+				leaves.add(current.leafIndex);
+			return mr.buildMesh(mtb, leaves);
+		}
+		finally
+		{
+			// Clean up
+			deleteOEMM(dir);
+		}
 	}
 	
 	// Move vertices
 	public static Mesh createShuffledSphereMesh(int level)
 	{
-		Mesh mesh = createSphereMesh(level);
+		return createShuffledSphereMesh(level, null);
+	}
+
+	// Same as above, mesh is built with this MeshTraitsBuilder instance
+	public static Mesh createShuffledSphereMesh(int level, MeshTraitsBuilder mtb)
+	{
+		Mesh mesh = createSphereMesh(level, mtb);
 		for (Vertex v : mesh.getNodes())
 		{
 			if (v.getRef() > 0)
@@ -0,0 +1,101 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2014, by Airbus Group SAS
+ */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.HashFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TriMultPolyTest
+{
+	/**
+	 * Check vertex links when a removed triangle without border edge at a
+	 * vertex is its link.  The TriMultPoly executable is not run, the
+	 * hole is triangulated as a fan.
+	 */
+	@Test public void relink() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		final Vertex c = mesh.createVertex(0, 0, 0);
+		Vertex[] a = new Vertex[6];
+		for(int i = 0; i < a.length; i++)
+		{
+			double angle = i * Math.PI / 3.0;
+			a[i] = mesh.createVertex(Math.cos(angle), Math.sin(angle), 0);
+		}
+		Triangle[] fan = new Triangle[a.length];
+		for(int i = 0; i < a.length; i++)
+		{
+			fan[i] = mesh.createTriangle(c, a[i], a[(i + 1) % a.length]);
+			mesh.add(fan[i]);
+		}
+		mesh.buildAdjacency();
+		Set<Triangle> hole = HashFactory.createSet();
+		for(int i = 0; i < 3; i++)
+			hole.add(fan[i]);
+		// Both border edges at c belong to other triangles
+		c.setLink(fan[1]);
+		List<AbstractHalfEdge> border = new ArrayList<AbstractHalfEdge>();
+		for(Triangle t: hole)
+		{
+			AbstractHalfEdge e = t.getAbstractHalfEdge();
+			for(int i = 0; i < 3; i++)
+			{
+				if(!hole.contains(e.sym().getTri()))
+					border.add(e);
+				e = e.next();
+			}
+		}
+		TriMultPoly triMultPoly = new TriMultPoly(null)
+		{
+			@Override
+			protected void triangulate(Mesh m, Collection<List<Vertex>> polylines)
+			{
+				List<Vertex> polyline = polylines.iterator().next();
+				int n = polyline.size();
+				int k = polyline.indexOf(c);
+				for(int i = 1; i < n - 1; i++)
+					addTriangle(m, k, (k + i) % n, (k + i + 1) % n);
+			}
+		};
+		triMultPoly.triangulate(mesh, border, new ArrayList<List<Vertex>>());
+		assertEquals(3, triMultPoly.getNewTriangles().size());
+		for(Triangle t: hole)
+			mesh.remove(t);
+		for(Triangle t: triMultPoly.getNewTriangles())
+			mesh.add(t);
+		assertTrue(mesh.isValid());
+		assertTrue(triMultPoly.getNewTriangles().contains(c.getLink()));
+		Collection<Triangle> triangles = mesh.getTriangles();
+		for(Vertex v: a)
+			assertTrue(v.toString(), triangles.contains(v.getLink()));
+	}
+}
@@ -0,0 +1,101 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
+
+/**
+ * Compares both {@link Mesh#buildAdjacency} algorithms on large
+ * structured meshes.  This is not a JUnit test, run it with
+ * <pre>
+ * java -Xmx8g -cp ... org.jcae.mesh.amibe.ds.BuildAdjacencyBenchmark [nrTriangles...]
+ * </pre>
+ * Default sizes are 1M and 10M triangles, the latter requires a large heap.
+ */
+public class BuildAdjacencyBenchmark
+{
+	private static Mesh createMesh(int m, int n, boolean legacy)
+	{
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		mtb.addNodeList();
+		mtb.add(ttb);
+		Mesh mesh = new Mesh(mtb);
+		mesh.setLegacyAdjacency(legacy);
+		mesh.ensureCapacity(2*(m-1)*(n-1));
+		Vertex [] v = new Vertex[m*n];
+		for (int j = 0; j < n; j++)
+			for (int i = 0; i < m; i++)
+			{
+				v[m*j+i] = mesh.createVertex(i, j, 0.0);
+				mesh.add(v[m*j+i]);
+			}
+		for (int j = 0; j < n-1; j++)
+		{
+			for (int i = 0; i < m-1; i++)
+			{
+				mesh.add(mesh.createTriangle(v[m*j+i], v[m*j+i+1], v[m*(j+1)+i]));
+				mesh.add(mesh.createTriangle(v[m*j+i+1], v[m*(j+1)+i+1], v[m*(j+1)+i]));
+			}
+		}
+		return mesh;
+	}
+
+	private static void run(int nrTriangles, boolean legacy)
+	{
+		int m = (int) Math.sqrt(0.5 * nrTriangles) + 1;
+		int n = nrTriangles / (2 * (m - 1)) + 1;
+		Mesh mesh = createMesh(m, n, legacy);
+		System.gc();
+		Runtime rt = Runtime.getRuntime();
+		long memBefore = rt.totalMemory() - rt.freeMemory();
+		long start = System.nanoTime();
+		mesh.buildAdjacency();
+		long end = System.nanoTime();
+		long memAfter = rt.totalMemory() - rt.freeMemory();
+		System.out.println((legacy ? "legacy " : "arrays ")+
+			2*(m-1)*(n-1)+" triangles: "+(end - start) / 1000000L+" ms, heap delta "+
+			(memAfter - memBefore) / (1024L * 1024L)+" MB");
+	}
+
+	public static void main(String[] args)
+	{
+		int [] sizes;
+		if (args.length == 0)
+			sizes = new int[] { 1000000, 10000000 };
+		else
+		{
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		// Warm up
+		run(100000, true);
+		run(100000, false);
+		for (int s : sizes)
+		{
+			run(s, true);
+			run(s, false);
+		}
+	}
+}
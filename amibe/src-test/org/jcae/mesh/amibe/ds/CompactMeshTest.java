@@ -0,0 +1,109 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import org.jcae.mesh.amibe.validation.DihedralAngle;
+import org.jcae.mesh.amibe.validation.MinAngleFace;
+import org.jcae.mesh.amibe.validation.QualityProcedure;
+import org.jcae.mesh.xmldata.MeshReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompactMeshTest
+{
+	private static final String TORUS = "test"+File.separator+"input"+File.separator+"torus1426";
+
+	@Test public void adjacency()
+	{
+		/*   v3        v2
+		 *   +---------+
+		 *   | \    T1 |\
+		 *   |   \     | \ T2 (v1, v4, v2), T3 (v2, v1, v5)
+		 *   | T0  \   |  + v4
+		 *   +---------+
+		 *   v0        v1
+		 */
+		double [] coords = new double[] {
+			0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0,  2, 0.5, 0,  1, 0.5, 1 };
+		int [] trias = new int[] { 0, 1, 3,  1, 2, 3,  1, 4, 2,  2, 1, 5 };
+		CompactMesh mesh = new CompactMesh(coords, trias, new int[4], null);
+		mesh.buildAdjacency();
+		CompactHalfEdge ot = mesh.getHalfEdge(0);
+		// Edge (v1, v3) is shared by T0 and T1
+		ot.bind(0, 0);
+		assertEquals(1, ot.origin());
+		assertEquals(3, ot.destination());
+		assertTrue(ot.hasSymmetricEdge());
+		ot.sym();
+		assertEquals(1, ot.getTri());
+		assertEquals(3, ot.origin());
+		assertEquals(1, ot.destination());
+		assertEquals(2, ot.apex());
+		// Edge (v1, v2) is shared by T1, T2 and T3
+		ot.next();
+		assertEquals(1, ot.origin());
+		assertEquals(2, ot.destination());
+		assertTrue(ot.isNonManifold());
+		// Edge (v0, v1) is a boundary edge
+		ot.bind(0, 2);
+		assertTrue(ot.isBoundary());
+	}
+
+	@Test public void torus() throws IOException
+	{
+		Mesh mesh = new Mesh();
+		MeshReader.readObject3D(mesh, TORUS);
+		CompactMesh compact = MeshReader.readCompactMesh(TORUS, true);
+		ArrayList<Triangle> triangles = new ArrayList<Triangle>();
+		for (Triangle t: mesh.getTriangles())
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				triangles.add(t);
+		assertEquals(triangles.size(), compact.getNumberOfTriangles());
+
+		CompactHalfEdge ot = new CompactHalfEdge(compact);
+		CompactHalfEdge sym = new CompactHalfEdge(compact);
+		for (int t = 0; t < compact.getNumberOfTriangles(); t++)
+		{
+			ot.bind(t, 0);
+			for (int i = 0; i < 3; i++)
+			{
+				ot.next();
+				assertTrue("Torus must not have boundary edges", ot.hasSymmetricEdge());
+				ot.sym(sym);
+				assertEquals(ot.origin(), sym.destination());
+				assertEquals(ot.destination(), sym.origin());
+				sym.sym();
+				assertEquals(ot.getIndex(), sym.getIndex());
+			}
+		}
+
+		QualityProcedure [] procs = new QualityProcedure[] {
+			new MinAngleFace(), new DihedralAngle() };
+		for (QualityProcedure qproc: procs)
+		{
+			for (int t = 0; t < triangles.size(); t++)
+				assertEquals(qproc.quality(triangles.get(t)), qproc.quality(compact, t), 0.0f);
+		}
+	}
+}
@@ -21,6 +21,10 @@ package org.jcae.mesh.amibe.ds;
 
 import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -133,4 +137,62 @@ public class MeshTest
 		assertTrue("Wrong return value of scratchVirtualBoundaries (2 was expected): "+nr, 2 == nr);
 	}
 	
+	private Mesh createShellWithFin(boolean legacy)
+	{
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		mtb.add(ttb);
+		mesh = new Mesh(mtb);
+		mesh.setLegacyAdjacency(legacy);
+		createMxNShell(4, 4);
+		// Add two fins on edge (v[5], v[6]) to create a non-manifold edge
+		Vertex top1 = mesh.createVertex(1.5, 1.0, 1.0);
+		Vertex top2 = mesh.createVertex(1.5, 1.0, -1.0);
+		mesh.add(mesh.createTriangle(v[5], v[6], top1));
+		mesh.add(mesh.createTriangle(v[6], v[5], top2));
+		// And a triangle with inverted orientation
+		Vertex far = mesh.createVertex(1.5, -1.0, 0.0);
+		mesh.add(mesh.createTriangle(v[1], v[2], far));
+		return mesh;
+	}
+
+	private static List<String> adjacencySignature(Mesh m)
+	{
+		Map<Triangle, Integer> index = new IdentityHashMap<Triangle, Integer>();
+		for (Triangle t : m.getTriangles())
+			index.put(t, index.size());
+		List<String> ret = new ArrayList<String>();
+		for (Triangle t : m.getTriangles())
+		{
+			AbstractHalfEdge ot = t.getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				AbstractHalfEdge sym = ot.sym();
+				if (sym == null)
+				{
+					ret.add(index.get(t)+":"+ot.getLocalNumber()+" -> null");
+					continue;
+				}
+				ret.add(index.get(t)+":"+ot.getLocalNumber()+":"+ot.hasAttributes(AbstractHalfEdge.BOUNDARY)+ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD)+
+					" -> "+index.get(sym.getTri())+":"+sym.getLocalNumber());
+			}
+		}
+		return ret;
+	}
+
+	@Test public void adjacencyBuilder()
+	{
+		Mesh legacy = createShellWithFin(true);
+		legacy.buildAdjacency();
+		assertTrue(legacy.isValid());
+		Mesh fast = createShellWithFin(false);
+		fast.buildAdjacency();
+		assertTrue(fast.isValid());
+		assertEquals(legacy.getTriangles().size(), fast.getTriangles().size());
+		assertEquals(adjacencySignature(legacy), adjacencySignature(fast));
+	}
+
 }
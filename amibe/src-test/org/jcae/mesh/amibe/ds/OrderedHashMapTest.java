@@ -0,0 +1,178 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.jcae.mesh.amibe.util.OrderedHashMap;
+import org.jcae.mesh.amibe.util.OrderedHashSet;
+import org.junit.Test;
+
+public class OrderedHashMapTest
+{
+	private static <E> List<E> toList(Iterable<E> it)
+	{
+		List<E> ret = new ArrayList<E>();
+		for (E e : it)
+			ret.add(e);
+		return ret;
+	}
+
+	private static void checkSame(Map<Integer, Integer> expected, OrderedHashMap<Integer, Integer> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		assertEquals(toList(expected.keySet()), toList(actual.keySet()));
+		assertEquals(toList(expected.values()), toList(actual.values()));
+		assertEquals(toList(expected.entrySet()), toList(actual.entrySet()));
+		assertEquals(expected, actual);
+	}
+
+	@Test public void randomOperations()
+	{
+		Random rand = new Random(1);
+		Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+		OrderedHashMap<Integer, Integer> actual = new OrderedHashMap<Integer, Integer>();
+		for (int i = 0; i < 100000; i++)
+		{
+			// Large values are not cached by Integer.valueOf
+			Integer key = Integer.valueOf(1000 + rand.nextInt(2000));
+			switch (rand.nextInt(4))
+			{
+			case 0:
+			case 1:
+				assertEquals(expected.put(key, i), actual.put(key, i));
+				break;
+			case 2:
+				assertEquals(expected.remove(key), actual.remove(key));
+				break;
+			default:
+				assertEquals(expected.get(key), actual.get(key));
+				assertEquals(expected.containsKey(key), actual.containsKey(key));
+			}
+			if (i % 10000 == 0)
+				checkSame(expected, actual);
+		}
+		checkSame(expected, actual);
+	}
+
+	@Test public void iteratorRemove()
+	{
+		Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+		OrderedHashMap<Integer, Integer> actual = new OrderedHashMap<Integer, Integer>();
+		for (int i = 0; i < 1000; i++)
+		{
+			expected.put(i, -i);
+			actual.put(i, -i);
+		}
+		expected.put(null, 1);
+		actual.put(null, 1);
+		for (Iterator<Integer> it = actual.keySet().iterator(); it.hasNext(); )
+		{
+			Integer k = it.next();
+			if (k != null && k % 3 == 0)
+				it.remove();
+		}
+		for (Iterator<Integer> it = expected.keySet().iterator(); it.hasNext(); )
+		{
+			Integer k = it.next();
+			if (k != null && k % 3 == 0)
+				it.remove();
+		}
+		checkSame(expected, actual);
+		for (Map.Entry<Integer, Integer> e : actual.entrySet())
+			e.setValue(2 * e.getValue());
+		for (Map.Entry<Integer, Integer> e : expected.entrySet())
+			e.setValue(2 * e.getValue());
+		checkSame(expected, actual);
+		actual.clear();
+		assertTrue(actual.isEmpty());
+		assertFalse(actual.keySet().iterator().hasNext());
+	}
+
+	@Test public void putDuringIteration()
+	{
+		Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>();
+		OrderedHashMap<Integer, Integer> actual = new OrderedHashMap<Integer, Integer>();
+		// Arrays are full, and contain a removed entry
+		for (int i = 0; i < 8; i++)
+		{
+			expected.put(i, i);
+			actual.put(i, i);
+		}
+		expected.remove(0);
+		actual.remove(0);
+		List<Integer> visited = new ArrayList<Integer>();
+		for (Map.Entry<Integer, Integer> e : actual.entrySet())
+		{
+			visited.add(e.getKey());
+			// Replacing a value is not a structural modification
+			actual.put(e.getKey(), 100);
+			assertEquals(Integer.valueOf(100), e.getValue());
+			expected.put(e.getKey(), 100);
+		}
+		assertEquals(toList(expected.keySet()), visited);
+		checkSame(expected, actual);
+	}
+
+	@Test public void entryAfterCompaction()
+	{
+		OrderedHashMap<Integer, Integer> map = new OrderedHashMap<Integer, Integer>();
+		for (int i = 0; i < 8; i++)
+			map.put(i, i);
+		map.remove(0);
+		Map.Entry<Integer, Integer> e = map.entrySet().iterator().next();
+		// Arrays are compacted, entry 1 is moved
+		map.put(8, 8);
+		assertEquals(Integer.valueOf(1), e.getKey());
+		assertEquals(Integer.valueOf(1), e.setValue(10));
+		assertEquals(Integer.valueOf(10), map.get(1));
+	}
+
+	@Test public void setAsQueue()
+	{
+		OrderedHashSet<Object> set = new OrderedHashSet<Object>();
+		LinkedHashSet<Object> expected = new LinkedHashSet<Object>();
+		Object[] objects = new Object[10000];
+		for (int i = 0; i < objects.length; i++)
+			objects[i] = new Object();
+		for (int i = 0; i < objects.length; i++)
+		{
+			assertTrue(set.add(objects[i]));
+			assertFalse(set.add(objects[i]));
+			expected.add(objects[i]);
+			if (i % 3 == 2)
+			{
+				Object first = set.iterator().next();
+				assertSame(expected.iterator().next(), first);
+				assertTrue(set.remove(first));
+				expected.remove(first);
+			}
+		}
+		assertEquals(toList(expected), toList(set));
+		for (Object o : objects)
+			assertEquals(expected.contains(o), set.contains(o));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DistanceMetricTest
+{
+	private static final int NR_SOURCES = 2000;
+	private static final int NR_QUERIES = 5000;
+
+	private static void addSources(AbstractDistanceMetric metric, Random r)
+	{
+		for (int i = 0; i < NR_SOURCES; i++)
+		{
+			double x = 100.0 * r.nextDouble();
+			double y = 100.0 * r.nextDouble();
+			double z = 100.0 * r.nextDouble();
+			double size0 = 0.1 + r.nextDouble();
+			double d0 = r.nextDouble();
+			double d1 = d0 + 5.0 * r.nextDouble();
+			int type = r.nextInt(10);
+			if (type == 0)
+			{
+				// Few infinite lines, which cannot be bounded
+				boolean closed0 = r.nextBoolean();
+				addLine(metric, x, y, z, closed0, x + r.nextDouble(), y + 1.0, z,
+					false, size0, d0, d1);
+			}
+			else if (type < 4)
+				addLine(metric, x, y, z, true, x + 5.0 * r.nextDouble(),
+					y + 5.0 * r.nextDouble(), z - 5.0 * r.nextDouble(), true,
+					size0, d0, d1);
+			else if (metric instanceof SingularMetric)
+				((SingularMetric) metric).addPoint(x, y, z, size0, d0, d1, 0.5 + r.nextDouble());
+			else
+				((DistanceMetric) metric).addPoint(x, y, z, size0, d0, d1);
+		}
+	}
+
+	private static void addLine(AbstractDistanceMetric metric,
+		double x0, double y0, double z0, boolean closed0,
+		double x1, double y1, double z1, boolean closed1,
+		double size0, double d0, double d1)
+	{
+		if (metric instanceof SingularMetric)
+			((SingularMetric) metric).addLine(x0, y0, z0, closed0, x1, y1, z1, closed1, size0, d0, d1, 1.0);
+		else
+			((DistanceMetric) metric).addLine(x0, y0, z0, closed0, x1, y1, z1, closed1, size0, d0, d1);
+	}
+
+	private static void compare(AbstractDistanceMetric linear, AbstractDistanceMetric indexed)
+	{
+		linear.setSourceTreeThreshold(Integer.MAX_VALUE);
+		indexed.setSourceTreeThreshold(1);
+		Random r = new Random(1234L);
+		for (int i = 0; i < NR_QUERIES; i++)
+		{
+			double x = -10.0 + 120.0 * r.nextDouble();
+			double y = -10.0 + 120.0 * r.nextDouble();
+			double z = -10.0 + 120.0 * r.nextDouble();
+			assertEquals(linear.getTargetSizeAnalytic(x, y, z, 0),
+				indexed.getTargetSizeAnalytic(x, y, z, 0), 0.0);
+			assertEquals(linear.getTargetSizeNumeric(x, y, z, 0),
+				indexed.getTargetSizeNumeric(x, y, z, 0), 0.0);
+		}
+	}
+
+	private static void compare(AbstractDistanceMetric linear, AbstractDistanceMetric indexed, long seed)
+	{
+		addSources(linear, new Random(seed));
+		addSources(indexed, new Random(seed));
+		linear.rho = indexed.rho = 1.5;
+		compare(linear, indexed);
+	}
+
+	@Test public void distanceMetric()
+	{
+		compare(new DistanceMetric(3.0), new DistanceMetric(3.0), 1L);
+	}
+
+	@Test public void singularMetric()
+	{
+		compare(new SingularMetric(3.0), new SingularMetric(3.0), 2L);
+	}
+
+	@Test public void fineSizeInf()
+	{
+		// Sources may be coarser than sizeInf
+		compare(new DistanceMetric(0.5), new DistanceMetric(0.5), 3L);
+	}
+
+	@Test public void addSourceAfterQuery()
+	{
+		DistanceMetric linear = new DistanceMetric(3.0);
+		DistanceMetric indexed = new DistanceMetric(3.0);
+		compare(linear, indexed, 4L);
+		linear.addPoint(50.0, 50.0, 50.0, 0.01, 10.0, 50.0);
+		indexed.addPoint(50.0, 50.0, 50.0, 0.01, 10.0, 50.0);
+		compare(linear, indexed);
+	}
+}
@@ -0,0 +1,192 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class KdTreeTest
+{
+	private static final int NR_POINTS = 5000;
+	private final Metric metric = new EuclidianMetric3D();
+	private final List<Location> points = new ArrayList<Location>(NR_POINTS);
+	private KdTree<Location> kdTree;
+
+	@Before public void createTree()
+	{
+		Random r = new Random(123L);
+		kdTree = new KdTree<Location>(new double[] {-1.0, -1.0, -1.0, 1.0, 1.0, 1.0});
+		for (int i = 0; i < NR_POINTS; i++)
+		{
+			// Clustered points make kd-tree deeper
+			double scale = (i % 3 == 0) ? 0.01 : 1.0;
+			Location p = new Location(scale * (2.0 * r.nextDouble() - 1.0),
+				scale * (2.0 * r.nextDouble() - 1.0), scale * (2.0 * r.nextDouble() - 1.0));
+			points.add(p);
+			kdTree.add(p);
+		}
+	}
+
+	// Square distances of the k nearest points, computed by brute force
+	private double[] bruteForce(Location uv, int k, double maxDistance2)
+	{
+		double[] d = new double[points.size()];
+		int n = 0;
+		for (Location p : points)
+		{
+			double d2 = metric.distance2(uv, p);
+			if (d2 <= maxDistance2)
+				d[n++] = d2;
+		}
+		Arrays.sort(d, 0, n);
+		return Arrays.copyOf(d, Math.min(k, n));
+	}
+
+	private void check(Location uv, int k, double maxDistance2, KdTree<Location>.Query query)
+	{
+		double[] expected = bruteForce(uv, k, maxDistance2);
+		int n = kdTree.getNearestVertices(metric, uv, k, maxDistance2, query);
+		assertEquals(expected.length, n);
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(expected[i], query.getDistance2(i), 0.0);
+			assertEquals(expected[i], metric.distance2(uv, query.get(i)), 0.0);
+		}
+	}
+
+	@Test public void nearestVertices()
+	{
+		Random r = new Random(456L);
+		KdTree<Location>.Query query = kdTree.new Query();
+		for (int i = 0; i < 500; i++)
+		{
+			Location uv = new Location(2.2 * r.nextDouble() - 1.1,
+				2.2 * r.nextDouble() - 1.1, 2.2 * r.nextDouble() - 1.1);
+			check(uv, 1 + r.nextInt(20), Double.MAX_VALUE, query);
+		}
+		// Query on a stored point
+		check(points.get(3), 5, Double.MAX_VALUE, query);
+		assertSame(points.get(3), query.get(0));
+	}
+
+	@Test public void nearestVerticesWithinDistance()
+	{
+		Random r = new Random(789L);
+		KdTree<Location>.Query query = kdTree.new Query();
+		for (int i = 0; i < 500; i++)
+		{
+			Location uv = new Location(2.0 * r.nextDouble() - 1.0,
+				2.0 * r.nextDouble() - 1.0, 2.0 * r.nextDouble() - 1.0);
+			check(uv, 1 + r.nextInt(50), 0.05 * r.nextDouble(), query);
+		}
+	}
+
+	@Test public void verticesInRadius()
+	{
+		Random r = new Random(1011L);
+		KdTree<Location>.Query query = kdTree.new Query();
+		final List<Location> found = new ArrayList<Location>();
+		KdTree.VertexProcedure<Location> proc = new KdTree.VertexProcedure<Location>() {
+			public boolean action(Location vertex, double distance2)
+			{
+				found.add(vertex);
+				return true;
+			}
+		};
+		for (int i = 0; i < 500; i++)
+		{
+			Location uv = new Location(2.0 * r.nextDouble() - 1.0,
+				2.0 * r.nextDouble() - 1.0, 2.0 * r.nextDouble() - 1.0);
+			double radius = 0.3 * r.nextDouble();
+			found.clear();
+			assertTrue(kdTree.getVerticesInRadius(metric, uv, radius, query, proc));
+			int expected = 0;
+			for (Location p : points)
+				if (metric.distance2(uv, p) <= radius * radius)
+					expected++;
+			assertEquals(expected, found.size());
+			for (Location p : found)
+				assertTrue(metric.distance2(uv, p) <= radius * radius);
+		}
+		// Abort search after the first vertex
+		found.clear();
+		assertFalse(kdTree.getVerticesInRadius(metric, points.get(0), 2.0, query,
+			new KdTree.VertexProcedure<Location>() {
+				public boolean action(Location vertex, double distance2)
+				{
+					found.add(vertex);
+					return false;
+				}
+			}));
+		assertEquals(1, found.size());
+	}
+
+	private static void assertSameTree(KdTree<Location> expected, KdTree<Location> actual, int n)
+	{
+		assertEquals(expected.nCells, actual.nCells);
+		assertEquals(expected.getMaxLevel(), actual.getMaxLevel());
+		// Same vertices in the same cells
+		assertEquals(new ArrayList<Location>(expected.getAllVertices(n)),
+			new ArrayList<Location>(actual.getAllVertices(n)));
+	}
+
+	@Test public void bulkLoad()
+	{
+		KdTree<Location> bulk = new KdTree<Location>(
+			new double[] {-1.0, -1.0, -1.0, 1.0, 1.0, 1.0}, points);
+		assertSameTree(kdTree, bulk, NR_POINTS);
+	}
+
+	@Test public void parallelBulkLoad()
+	{
+		Random r = new Random(321L);
+		int n = 200000;
+		List<Location> many = new ArrayList<Location>(n);
+		double[] bbox = new double[] {0.0, 0.0, 0.0, 1.0, 1.0, 1.0};
+		KdTree<Location> incremental = new KdTree<Location>(bbox);
+		for (int i = 0; i < n; i++)
+		{
+			Location p = new Location(r.nextDouble(), r.nextDouble(), r.nextDouble());
+			many.add(p);
+			incremental.add(p);
+		}
+		assertSameTree(incremental, new KdTree<Location>(bbox, many), n);
+	}
+
+	@Test public void nearestVertex()
+	{
+		Random r = new Random(42L);
+		for (int i = 0; i < 100; i++)
+		{
+			Location uv = new Location(2.0 * r.nextDouble() - 1.0,
+				2.0 * r.nextDouble() - 1.0, 2.0 * r.nextDouble() - 1.0);
+			List<Location> ret = kdTree.getNearestVertices(metric, uv, 1);
+			assertEquals(1, ret.size());
+			assertEquals(metric.distance2(uv, kdTree.getNearestVertex(metric, uv)),
+				metric.distance2(uv, ret.get(0)), 0.0);
+		}
+		assertEquals(NR_POINTS, kdTree.getNearestVertices(metric, points.get(0), 2 * NR_POINTS).size());
+	}
+}
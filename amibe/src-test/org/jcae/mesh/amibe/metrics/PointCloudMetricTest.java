@@ -0,0 +1,129 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.mesh.amibe.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import org.jcae.mesh.amibe.metrics.PointCloudMetric.Interpolation;
+import org.junit.BeforeClass;
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PointCloudMetricTest
+{
+	private static final int N = 11;
+	private static File file;
+
+	// Regular grid on [0,1]^3, value is 1 + x
+	@BeforeClass public static void writeCloud() throws IOException
+	{
+		file = File.createTempFile("pointcloud", ".bin");
+		ByteBuffer bb = ByteBuffer.allocate(N * N * N * 4 * 8);
+		bb.order(ByteOrder.nativeOrder());
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				for (int k = 0; k < N; k++)
+				{
+					double x = i / (N - 1.0);
+					bb.putDouble(x);
+					bb.putDouble(j / (N - 1.0));
+					bb.putDouble(k / (N - 1.0));
+					bb.putDouble(1.0 + x);
+				}
+		bb.rewind();
+		FileChannel fc = new FileOutputStream(file).getChannel();
+		fc.write(bb);
+		fc.close();
+	}
+
+	@AfterClass public static void deleteCloud()
+	{
+		file.delete();
+	}
+
+	private static PointCloudMetric create(Interpolation mode, int k) throws IOException
+	{
+		PointCloudMetric m = new PointCloudMetric();
+		m.readPointsFromFile(file.getPath());
+		m.setInterpolation(mode, k);
+		return m;
+	}
+
+	@Test public void nearest() throws IOException
+	{
+		PointCloudMetric m = create(Interpolation.NEAREST, 1);
+		assertEquals(1.3, m.getTargetSize(0.31, 0.52, 0.5, 0), 1.e-12);
+		assertEquals(1.4, m.getTargetSize(0.36, 0.52, 0.5, 0), 1.e-12);
+		// Cached value
+		assertEquals(1.4, m.getTargetSize(0.36, 0.52, 0.5, 0), 1.e-12);
+	}
+
+	@Test public void idw() throws IOException
+	{
+		PointCloudMetric m = create(Interpolation.IDW, 8);
+		// Exact on points
+		assertEquals(1.5, m.getTargetSize(0.5, 0.5, 0.5, 0), 1.e-12);
+		// Symmetric with respect to the 8 nearest points
+		assertEquals(1.55, m.getTargetSize(0.55, 0.55, 0.55, 0), 1.e-12);
+		// Values vary between points
+		double last = 0;
+		for (int i = 1; i < 10; i++)
+		{
+			double v = m.getTargetSize(0.3 + 0.01 * i, 0.52, 0.47, 0);
+			assertTrue(v != last);
+			assertTrue(v > 1.2 && v < 1.5);
+			last = v;
+		}
+	}
+
+	@Test public void rbf() throws IOException
+	{
+		PointCloudMetric m = create(Interpolation.RBF, 8);
+		m.setSupportRadius(0.15);
+		assertEquals(1.5, m.getTargetSize(0.5, 0.5, 0.5, 0), 1.e-12);
+		assertEquals(1.55, m.getTargetSize(0.55, 0.55, 0.55, 0), 1.e-12);
+		// Outside the point cloud, no point within support radius
+		assertEquals(2.0, m.getTargetSize(2.0, 0.5, 0.5, 0), 1.e-12);
+	}
+
+	@Test public void rbfDefaultRadius() throws IOException
+	{
+		PointCloudMetric m = create(Interpolation.RBF, 8);
+		assertEquals(1.5, m.getTargetSize(0.5, 0.5, 0.5, 0), 1.e-12);
+		assertEquals(1.55, m.getTargetSize(0.55, 0.55, 0.55, 0), 1.e-12);
+		// Support radius depends on point spacing, nearest points have
+		// larger weights and values vary between points
+		double last = 0;
+		for (int i = 1; i < 10; i++)
+		{
+			double v = m.getTargetSize(0.3 + 0.01 * i, 0.52, 0.47, 0);
+			assertTrue(v != last);
+			assertTrue(v > 1.2 && v < 1.5);
+			last = v;
+		}
+		// Outside the point cloud, nearest points are all on the x=1 face
+		assertEquals(2.0, m.getTargetSize(2.0, 0.5, 0.5, 0), 1.e-12);
+	}
+}
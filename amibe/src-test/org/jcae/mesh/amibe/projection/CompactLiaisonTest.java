@@ -0,0 +1,256 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jcae.mesh.amibe.algos3d.RemeshSkeleton;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.CompactMesh;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.xmldata.MeshReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompactLiaisonTest
+{
+	private static final String TORUS = "test"+File.separator+"input"+File.separator+"torus1426";
+
+	// Square distance to the nearest triangle of a group, computed by brute force
+	private static double bruteForce(List<Triangle> triangles, Location p, int group)
+	{
+		MeshLiaison.TriangleDistance td = new MeshLiaison.TriangleDistance();
+		int[] index = new int[2];
+		double ret = Double.POSITIVE_INFINITY;
+		for (Triangle t : triangles)
+			if (group < 0 || t.getGroupId() == group)
+				ret = Math.min(ret, td.compute(p, t, index));
+		return ret;
+	}
+
+	@Test public void projection()
+	{
+		Mesh mesh = SphereBuilder.createShuffledSphereMesh(4);
+		// One group by octant
+		List<Triangle> triangles = new ArrayList<Triangle>();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			double x = t.getV0().getX() + t.getV1().getX() + t.getV2().getX();
+			double y = t.getV0().getY() + t.getV1().getY() + t.getV2().getY();
+			double z = t.getV0().getZ() + t.getV1().getZ() + t.getV2().getZ();
+			t.setGroupId((x > 0 ? 1 : 0) + (y > 0 ? 2 : 0) + (z > 0 ? 4 : 0));
+			triangles.add(t);
+		}
+		MeshLiaison liaison = MeshLiaison.createCompact(mesh);
+		assertSame(mesh, liaison.getMesh());
+		assertTrue(liaison.canMoveConcurrently());
+		Vertex v = mesh.createVertex(0, 0, 0);
+		Location target = new Location();
+		Random r = new Random(12L);
+		for (int i = 0; i < 200; i++)
+		{
+			target.moveTo(2.4 * r.nextDouble() - 1.2, 2.4 * r.nextDouble() - 1.2,
+				2.4 * r.nextDouble() - 1.2);
+			for (int g = -1; g <= 8; g++)
+			{
+				double expected = bruteForce(triangles, target, g);
+				boolean found = liaison.move(v, target, g, false);
+				assertEquals(g < 8, found);
+				if (found)
+					assertEquals(expected, target.sqrDistance3D(v), 1.e-12);
+			}
+		}
+	}
+
+	@Test public void compactBackground() throws IOException
+	{
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeList();
+		Mesh background = new Mesh(mtb);
+		MeshReader.readObject3D(background, TORUS);
+		Mesh current = new Mesh(mtb);
+		MeshReader.readObject3D(current, TORUS);
+		CompactMesh compact = MeshReader.readCompactMesh(TORUS, false);
+		MeshLiaison expected = MeshLiaison.create(background, mtb);
+		MeshLiaison actual = MeshLiaison.create(compact, current);
+		Vertex ve = expected.getMesh().createVertex(0, 0, 0);
+		Vertex va = current.createVertex(0, 0, 0);
+		Location target = new Location();
+		Random r = new Random(34L);
+		for (Vertex n : current.getNodes())
+		{
+			target.moveTo(n.getX() + 0.1 * r.nextGaussian(),
+				n.getY() + 0.1 * r.nextGaussian(), n.getZ() + 0.1 * r.nextGaussian());
+			assertTrue(expected.move(ve, target, false));
+			assertTrue(actual.move(va, target, false));
+			assertEquals(target.sqrDistance3D(ve), target.sqrDistance3D(va), 1.e-12);
+		}
+	}
+
+	@Test public void skeleton()
+	{
+		// Square made of two triangles, all its sides are boundary edges
+		Mesh mesh = new Mesh();
+		Vertex v0 = mesh.createVertex(0, 0, 0);
+		Vertex v1 = mesh.createVertex(1, 0, 0);
+		Vertex v2 = mesh.createVertex(1, 1, 0);
+		Vertex v3 = mesh.createVertex(0, 1, 0);
+		mesh.add(mesh.createTriangle(v0, v1, v2));
+		mesh.add(mesh.createTriangle(v0, v2, v3));
+		mesh.buildAdjacency();
+		MeshLiaison expected = MeshLiaison.create(mesh);
+		expected.buildSkeleton();
+		MeshLiaison actual = MeshLiaison.createCompact(mesh);
+		actual.buildSkeleton();
+		Vertex v = mesh.createVertex(0, 0, 0);
+		for (int i = 0; i <= 10; i++)
+		{
+			for (int j = 0; j <= 10; j++)
+			{
+				v.moveTo(0.1 * i, 0.1 * j, 0.0);
+				assertEquals(expected.isNearSkeleton(v, -1, 0.01),
+					actual.isNearSkeleton(v, -1, 0.01));
+			}
+		}
+		v.moveTo(0.5, 0.5, 0.0);
+		assertFalse(actual.isNearSkeleton(v, -1, 0.01));
+		v.moveTo(0.5, 0.05, 0.0);
+		assertTrue(actual.isNearSkeleton(v, -1, 0.01));
+	}
+
+	// One group by octant
+	private static Mesh createOctantSphere(int level)
+	{
+		Mesh mesh = SphereBuilder.createShuffledSphereMesh(level);
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			double x = t.getV0().getX() + t.getV1().getX() + t.getV2().getX();
+			double y = t.getV0().getY() + t.getV1().getY() + t.getV2().getY();
+			double z = t.getV0().getZ() + t.getV1().getZ() + t.getV2().getZ();
+			t.setGroupId((x > 0 ? 1 : 0) + (y > 0 ? 2 : 0) + (z > 0 ? 4 : 0));
+		}
+		return mesh;
+	}
+
+	@Test public void featureEdges()
+	{
+		Mesh mesh = createOctantSphere(3);
+		// Background copied before ridges are built
+		CompactMesh compact = ((CompactLiaison) MeshLiaison.createCompact(mesh)).getBackgroundMesh();
+		assertTrue(mesh.buildRidges(0.99) > 0);
+		assertTrue(compact.buildRidges(0.99) > 0);
+		mesh.buildGroupBoundaries();
+		MeshLiaison expected = MeshLiaison.create(mesh);
+		expected.buildSkeleton();
+		MeshLiaison fromMesh = MeshLiaison.createCompact(mesh);
+		fromMesh.buildSkeleton();
+		MeshLiaison fromCompact = MeshLiaison.create(compact, mesh);
+		fromCompact.buildSkeleton();
+		Vertex v = mesh.createVertex(0, 0, 0);
+		Random r = new Random(56L);
+		int near = 0;
+		for (int i = 0; i < 500; i++)
+		{
+			v.moveTo(2.0 * r.nextDouble() - 1.0, 2.0 * r.nextDouble() - 1.0,
+				2.0 * r.nextDouble() - 1.0);
+			double norm = Math.sqrt(v.sqrDistance3D(new Location()));
+			v.moveTo(v.getX() / norm, v.getY() / norm, v.getZ() / norm);
+			for (int g = -1; g < 8; g++)
+			{
+				boolean b = expected.isNearSkeleton(v, g, 0.001);
+				assertEquals(b, fromMesh.isNearSkeleton(v, g, 0.001));
+				assertEquals(b, fromCompact.isNearSkeleton(v, g, 0.001));
+				if (b)
+					near++;
+			}
+		}
+		assertTrue(near > 0);
+	}
+
+	@Test public void moveToClosestEdge()
+	{
+		Mesh mesh = createOctantSphere(3);
+		MeshLiaison expected = MeshLiaison.create(mesh);
+		MeshLiaison actual = MeshLiaison.createCompact(mesh);
+		assertTrue(actual.canMoveToClosestEdge());
+		Vertex ve = mesh.createVertex(0, 0, 0);
+		Vertex va = mesh.createVertex(0, 0, 0);
+		Random r = new Random(78L);
+		int [][] queries = new int[][] { {}, {0, 1}, {3, 1}, {4, 6}, {7, 5} };
+		for (int i = 0; i < 100; i++)
+		{
+			double x = 2.0 * r.nextDouble() - 1.0;
+			double y = 2.0 * r.nextDouble() - 1.0;
+			double z = 2.0 * r.nextDouble() - 1.0;
+			for (int [] groups : queries)
+			{
+				ve.moveTo(x, y, z);
+				va.moveTo(x, y, z);
+				assertTrue(expected.moveToClosestEdge(ve, groups));
+				assertTrue(actual.moveToClosestEdge(va, groups));
+				assertEquals(0.0, ve.sqrDistance3D(va), 1.e-20);
+			}
+		}
+	}
+
+	@Test public void moveToBoundaryEdge()
+	{
+		// Square made of two triangles of different groups
+		Mesh mesh = new Mesh();
+		Vertex v0 = mesh.createVertex(0, 0, 0);
+		Vertex v1 = mesh.createVertex(1, 0, 0);
+		Vertex v2 = mesh.createVertex(1, 1, 0);
+		Vertex v3 = mesh.createVertex(0, 1, 0);
+		Triangle t1 = mesh.createTriangle(v0, v1, v2);
+		t1.setGroupId(1);
+		mesh.add(t1);
+		Triangle t2 = mesh.createTriangle(v0, v2, v3);
+		t2.setGroupId(2);
+		mesh.add(t2);
+		mesh.buildAdjacency();
+		MeshLiaison liaison = MeshLiaison.createCompact(mesh);
+		Vertex v = mesh.createVertex(0.4, 0.5, 0.0);
+		// Boundary edges of group 2
+		assertTrue(liaison.moveToClosestEdge(v, 2));
+		assertEquals(0.0, v.sqrDistance3D(new Location(0.0, 0.5, 0.0)), 1.e-20);
+		// Diagonal
+		v.moveTo(0.4, 0.5, 0.0);
+		assertTrue(liaison.moveToClosestEdge(v, 2, 1));
+		assertEquals(0.0, v.sqrDistance3D(new Location(0.45, 0.45, 0.0)), 1.e-20);
+		// No non-manifold edge
+		assertFalse(liaison.moveToClosestEdge(v, 2, 1, 3));
+		assertEquals(0.0, v.sqrDistance3D(new Location(0.45, 0.45, 0.0)), 1.e-20);
+		// Accepted by RemeshSkeleton
+		new RemeshSkeleton(liaison, 0.0, 0.1, 1.0);
+	}
+}
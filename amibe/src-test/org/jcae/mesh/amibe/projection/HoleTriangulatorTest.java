@@ -0,0 +1,210 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2014, by Airbus Group SAS
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.HashFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HoleTriangulatorTest
+{
+	private final double[] normal = new double[3];
+	private final double[] work1 = new double[3];
+	private final double[] work2 = new double[3];
+
+	private double normal(Triangle t)
+	{
+		return Matrix3D.computeNormal3D(t.getV0(), t.getV1(), t.getV2(),
+			work1, work2, normal);
+	}
+
+	/** Remove triangles and fill the hole with a HoleTriangulator */
+	private static Collection<Triangle> fill(Mesh mesh, Set<Triangle> hole,
+		Collection<List<Vertex>> vertices)
+	{
+		List<AbstractHalfEdge> border = new ArrayList<AbstractHalfEdge>();
+		for(Triangle t: hole)
+		{
+			AbstractHalfEdge e = t.getAbstractHalfEdge();
+			for(int i = 0; i < 3; i++)
+			{
+				if(!hole.contains(e.sym().getTri()))
+					border.add(e);
+				e = e.next();
+			}
+		}
+		HoleTriangulator triangulator = new HoleTriangulator();
+		triangulator.triangulate(mesh, border, vertices);
+		for(Triangle t: hole)
+			mesh.remove(t);
+		for(Triangle t: triangulator.getNewTriangles())
+			mesh.add(t);
+		return triangulator.getNewTriangles();
+	}
+
+	@Test public void sphere()
+	{
+		Mesh mesh = SphereBuilder.createShuffledSphereMesh(3);
+		Triangle start = null;
+		for(Triangle t: mesh.getTriangles())
+		{
+			if(!t.hasAttributes(AbstractHalfEdge.OUTER))
+			{
+				start = t;
+				break;
+			}
+		}
+		// Remove the 2-ring of a vertex
+		Set<Triangle> hole = HashFactory.createSet();
+		Iterator<Triangle> it = start.getV0().getNeighbourIteratorTriangle();
+		while(it.hasNext())
+			hole.add(it.next());
+		for(Triangle t: new ArrayList<Triangle>(hole))
+		{
+			for(int i = 0; i < 3; i++)
+			{
+				it = t.getV(i).getNeighbourIteratorTriangle();
+				while(it.hasNext())
+					hole.add(it.next());
+			}
+		}
+		Collection<Triangle> created = fill(mesh, hole,
+			Collections.<List<Vertex>>emptyList());
+		assertTrue(mesh.isValid());
+		for(Triangle t: created)
+		{
+			assertTrue(normal(t) > 0);
+			// Sphere is centered on origin, normals point outwards
+			assertTrue(Matrix3D.prodSca(normal, t.getV0()) > 0);
+		}
+	}
+
+	// Plane grid with m x n cells
+	private static Triangle[][] createGrid(Mesh mesh, int m, int n)
+	{
+		Vertex[] v = new Vertex[(m + 1) * (n + 1)];
+		for(int j = 0; j <= n; j++)
+			for(int i = 0; i <= m; i++)
+				v[(m + 1) * j + i] = mesh.createVertex(i, j, 0.0);
+		Triangle[][] cells = new Triangle[m * n][];
+		for(int j = 0; j < n; j++)
+		{
+			for(int i = 0; i < m; i++)
+			{
+				Vertex v0 = v[(m + 1) * j + i];
+				Vertex v1 = v[(m + 1) * j + i + 1];
+				Vertex v2 = v[(m + 1) * (j + 1) + i + 1];
+				Vertex v3 = v[(m + 1) * (j + 1) + i];
+				Triangle t1 = mesh.createTriangle(v0, v1, v2);
+				Triangle t2 = mesh.createTriangle(v0, v2, v3);
+				mesh.add(t1);
+				mesh.add(t2);
+				cells[m * j + i] = new Triangle[]{t1, t2};
+			}
+		}
+		mesh.buildAdjacency();
+		return cells;
+	}
+
+	private double checkPlanar(Collection<Triangle> triangles)
+	{
+		double area = 0;
+		for(Triangle t: triangles)
+		{
+			if(t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			area += normal(t);
+			assertEquals(1.0, normal[2], 1e-12);
+		}
+		return area;
+	}
+
+	@Test public void annulus()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		Triangle[][] cells = createGrid(mesh, 5, 5);
+		// Remove cells around the central one, so that the border has 2 loops
+		Set<Triangle> hole = HashFactory.createSet();
+		for(int j = 1; j <= 3; j++)
+			for(int i = 1; i <= 3; i++)
+				if(i != 2 || j != 2)
+					Collections.addAll(hole, cells[5 * j + i]);
+		Collection<Triangle> created = fill(mesh, hole,
+			Collections.<List<Vertex>>emptyList());
+		assertEquals(16, created.size());
+		assertTrue(mesh.isValid());
+		assertEquals(8.0, checkPlanar(created), 1e-12);
+		assertEquals(25.0, checkPlanar(mesh.getTriangles()), 1e-12);
+	}
+
+	@Test public void segment()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		Triangle[][] cells = createGrid(mesh, 1, 1);
+		Vertex v1 = mesh.createVertex(0.2, 0.5, 0.0);
+		Vertex v2 = mesh.createVertex(0.8, 0.5, 0.0);
+		Set<Triangle> hole = HashFactory.createSet();
+		Collections.addAll(hole, cells[0]);
+		Collection<Triangle> created = fill(mesh, hole,
+			Collections.singleton(Arrays.asList(v1, v2)));
+		assertEquals(6, created.size());
+		assertTrue(mesh.isValid());
+		assertEquals(1.0, checkPlanar(created), 1e-12);
+		// v1 v2 is an edge of the new triangulation
+		int n = 0;
+		for(Triangle t: created)
+			for(int i = 0; i < 3; i++)
+				if(t.getV(i) == v1 && t.getV((i + 1) % 3) == v2 ||
+					t.getV(i) == v2 && t.getV((i + 1) % 3) == v1)
+					n++;
+		assertEquals(2, n);
+	}
+
+	@Test public void edgeProjector()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		createGrid(mesh, 3, 3);
+		Vertex v1 = mesh.createVertex(0.5, 1.2, 0.0);
+		Vertex v2 = mesh.createVertex(2.3, 1.7, 0.0);
+		EdgeProjectorNG projector = new EdgeProjectorNG(mesh,
+			new TriangleKdTree(mesh), 0.1);
+		AbstractHalfEdge e = projector.project(v1, v2, -1);
+		assertNotNull(e);
+		assertSame(v1, e.origin());
+		assertSame(v2, e.destination());
+		assertTrue(mesh.isValid());
+		assertEquals(9.0, checkPlanar(mesh.getTriangles()), 1e-12);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.EuclidianMetric3D;
+import org.jcae.mesh.amibe.metrics.KdTree;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Metric;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+
+/**
+ * Compares incremental and bulk construction of {@link TriangleKdTree} and
+ * {@link KdTree}, and query time on the resulting trees.  This is not a
+ * JUnit test, run it with
+ * <pre>
+ * java -Xmx12g -cp ... org.jcae.mesh.amibe.projection.TriangleKdTreeBenchmark [nrTriangles...]
+ * </pre>
+ * Default sizes are 1M and 10M triangles.  Each measure is repeated after
+ * warm-up iterations and the mean time is printed.
+ */
+public class TriangleKdTreeBenchmark
+{
+	private static final int WARMUP = 1;
+	private static final int ITERATIONS = 3;
+	private static final int NR_QUERIES = 200000;
+
+	private final Mesh mesh;
+	private final List<Triangle> triangles;
+	private final List<Vertex> vertices;
+	private final double[] bbox;
+	private final Location[] queries = new Location[NR_QUERIES];
+
+	// Wavy m x n grid
+	private TriangleKdTreeBenchmark(int nrTriangles)
+	{
+		int m = (int) Math.sqrt(0.5 * nrTriangles) + 1;
+		int n = nrTriangles / (2 * (m - 1)) + 1;
+		mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		vertices = new ArrayList<Vertex>(m * n);
+		triangles = new ArrayList<Triangle>(2 * (m - 1) * (n - 1));
+		for (int j = 0; j < n; j++)
+			for (int i = 0; i < m; i++)
+				vertices.add(mesh.createVertex(i, j, Math.sin(0.1 * i) * Math.cos(0.1 * j)));
+		for (int j = 0; j < n - 1; j++)
+			for (int i = 0; i < m - 1; i++)
+			{
+				Vertex v0 = vertices.get(m * j + i);
+				Vertex v1 = vertices.get(m * j + i + 1);
+				Vertex v2 = vertices.get(m * (j + 1) + i);
+				Vertex v3 = vertices.get(m * (j + 1) + i + 1);
+				triangles.add(mesh.createTriangle(v0, v1, v2));
+				triangles.add(mesh.createTriangle(v1, v3, v2));
+			}
+		bbox = new double[] {-1.0, -1.0, -2.0, m, n, 2.0};
+		Random r = new Random(0L);
+		for (int i = 0; i < NR_QUERIES; i++)
+			queries[i] = new Location((m - 1) * r.nextDouble(), (n - 1) * r.nextDouble(),
+				2.0 * r.nextDouble() - 1.0);
+	}
+
+	private interface Measure<T>
+	{
+		T run();
+	}
+
+	private static <T> T measure(String name, Measure<T> m)
+	{
+		T ret = null;
+		for (int i = 0; i < WARMUP; i++)
+			ret = m.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			ret = m.run();
+		long end = System.nanoTime();
+		System.out.printf("  %-40s %10.1f ms%n", name, (end - start) / 1.e6 / ITERATIONS);
+		return ret;
+	}
+
+	private void run()
+	{
+		System.out.println(triangles.size()+" triangles, "+vertices.size()+" vertices");
+		final TriangleKdTree incremental = measure("TriangleKdTree incremental build", new Measure<TriangleKdTree>() {
+			public TriangleKdTree run() { return new TriangleKdTree(triangles, false); }
+		});
+		final TriangleKdTree bulk = measure("TriangleKdTree bulk build", new Measure<TriangleKdTree>() {
+			public TriangleKdTree run() { return new TriangleKdTree(triangles, true); }
+		});
+		measure("TriangleKdTree incremental query", new Measure<Triangle>() {
+			public Triangle run() { return query(incremental); }
+		});
+		measure("TriangleKdTree bulk query", new Measure<Triangle>() {
+			public Triangle run() { return query(bulk); }
+		});
+		final KdTree<Vertex> kdIncremental = measure("KdTree incremental build", new Measure<KdTree<Vertex>>() {
+			public KdTree<Vertex> run()
+			{
+				KdTree<Vertex> ret = new KdTree<Vertex>(bbox);
+				for (Vertex v : vertices)
+					ret.add(v);
+				return ret;
+			}
+		});
+		measure("KdTree bulk build", new Measure<KdTree<Vertex>>() {
+			public KdTree<Vertex> run() { return new KdTree<Vertex>(bbox, vertices); }
+		});
+		measure("KdTree query", new Measure<Integer>() {
+			public Integer run()
+			{
+				Metric metric = new EuclidianMetric3D();
+				KdTree<Vertex>.Query q = kdIncremental.new Query();
+				int ret = 0;
+				for (Location p : queries)
+					ret += kdIncremental.getNearestVertices(metric, p, 1, Double.MAX_VALUE, q);
+				return ret;
+			}
+		});
+	}
+
+	private Triangle query(TriangleKdTree kdTree)
+	{
+		Location projection = new Location();
+		Triangle ret = null;
+		for (Location p : queries)
+			ret = kdTree.getClosestTriangle(p, projection, -1);
+		return ret;
+	}
+
+	public static void main(String[] args)
+	{
+		int [] sizes;
+		if (args.length == 0)
+			sizes = new int[] { 1000000, 10000000 };
+		else
+		{
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		for (int s : sizes)
+			new TriangleKdTreeBenchmark(s).run();
+	}
+}
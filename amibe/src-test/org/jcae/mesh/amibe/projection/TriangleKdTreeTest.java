@@ -0,0 +1,270 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TriangleKdTreeTest
+{
+	private static Mesh mesh;
+	private static int nrTriangles;
+
+	@BeforeClass public static void createMesh()
+	{
+		mesh = SphereBuilder.createShuffledSphereMesh(4);
+		for (Triangle t : mesh.getTriangles())
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				nrTriangles++;
+	}
+
+	// Square distance to the nearest triangle, computed by brute force
+	private static double bruteForce(MeshLiaison.TriangleDistance td, Location p)
+	{
+		int[] index = new int[2];
+		double ret = Double.POSITIVE_INFINITY;
+		for (Triangle t : mesh.getTriangles())
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				ret = Math.min(ret, td.compute(p, t, index));
+		return ret;
+	}
+
+	private static void checkClosestTriangle(TriangleKdTree kdTree)
+	{
+		assertEquals(nrTriangles, kdTree.getTriangles().size());
+		kdTree.checkContainsAllTriangles(mesh);
+		MeshLiaison.TriangleDistance td = new MeshLiaison.TriangleDistance();
+		int[] index = new int[2];
+		Location projection = new Location();
+		Random r = new Random(12L);
+		for (int i = 0; i < 200; i++)
+		{
+			double scale = 0.8 + 0.4 * r.nextDouble();
+			Location p = new Location(scale * (2.0 * r.nextDouble() - 1.0),
+				scale * (2.0 * r.nextDouble() - 1.0), scale * (2.0 * r.nextDouble() - 1.0));
+			Triangle t = kdTree.getClosestTriangle(p, projection, -1);
+			assertNotNull(t);
+			assertEquals(bruteForce(td, p), td.compute(p, t, index), 1.e-12);
+		}
+	}
+
+	@Test public void bulkLoad()
+	{
+		checkClosestTriangle(new TriangleKdTree(mesh.getTriangles(), true));
+	}
+
+	@Test public void incremental()
+	{
+		checkClosestTriangle(new TriangleKdTree(mesh.getTriangles(), false));
+	}
+
+	@Test public void removeAfterBulkLoad()
+	{
+		TriangleKdTree kdTree = new TriangleKdTree(mesh.getTriangles(), true);
+		for (Triangle t : mesh.getTriangles())
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				assertTrue(kdTree.remove(t));
+		assertTrue(kdTree.getTriangles().isEmpty());
+	}
+
+	private static double[] randomPoints(int nbPoints)
+	{
+		double[] xyz = new double[3 * nbPoints];
+		Random r = new Random(34L);
+		for (int i = 0; i < xyz.length; i++)
+			xyz[i] = 2.4 * r.nextDouble() - 1.2;
+		return xyz;
+	}
+
+	@Test public void projectAll()
+	{
+		TriangleKdTree kdTree = new TriangleKdTree(mesh.getTriangles(), true);
+		double[] xyz = randomPoints(10000);
+		TriangleKdTree.Projections result = kdTree.projectAll(xyz, -1);
+		Location p = new Location();
+		Location projection = new Location();
+		for (int i = 0; i < xyz.length / 3; i++)
+		{
+			p.moveTo(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+			Triangle t = kdTree.getClosestTriangle(p, projection, -1);
+			assertSame(t, result.triangles[i]);
+			assertEquals(projection.getX(), result.xyz[3*i], 0.0);
+			assertEquals(projection.getY(), result.xyz[3*i+1], 0.0);
+			assertEquals(projection.getZ(), result.xyz[3*i+2], 0.0);
+		}
+		// In place projection
+		kdTree.projectAll(xyz, -1, null, xyz);
+		assertArrayEquals(result.xyz, xyz, 0.0);
+	}
+
+	@Test public void concurrentQueries() throws InterruptedException
+	{
+		final TriangleKdTree kdTree = new TriangleKdTree(mesh.getTriangles(), true);
+		final double[] xyz = randomPoints(2000);
+		final Triangle[] expected = new Triangle[xyz.length / 3];
+		Location p = new Location();
+		for (int i = 0; i < expected.length; i++)
+		{
+			p.moveTo(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+			expected[i] = kdTree.getClosestTriangle(p, null, -1);
+		}
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int k = 0; k < threads.length; k++)
+		{
+			final boolean ownQuery = (k % 2) == 0;
+			threads[k] = new Thread() {
+				@Override public void run()
+				{
+					TriangleKdTree.Query q = kdTree.new Query();
+					Location loc = new Location();
+					for (int i = 0; i < expected.length; i++)
+					{
+						loc.moveTo(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+						Triangle t = ownQuery ? q.getClosestTriangle(loc, null, -1) :
+							kdTree.getClosestTriangle(loc, null, -1);
+						if (t != expected[i])
+							errors.incrementAndGet();
+					}
+				}
+			};
+			threads[k].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals(0, errors.get());
+	}
+
+	private static boolean intersect(Triangle t, double[] aabb)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			double min = Math.min(t.getV0().get(i), Math.min(t.getV1().get(i), t.getV2().get(i)));
+			double max = Math.max(t.getV0().get(i), Math.max(t.getV1().get(i), t.getV2().get(i)));
+			if (max < aabb[i] || min > aabb[i + 3])
+				return false;
+		}
+		return true;
+	}
+
+	// Group restricted queries of a partitioned tree are exact, while a
+	// plain tree may miss the closest triangle of a group
+	private static void checkGroups(TriangleKdTree expected, TriangleKdTree actual,
+		int nbGroups)
+	{
+		MeshLiaison.TriangleDistance td = new MeshLiaison.TriangleDistance();
+		int[] index = new int[2];
+		double[] xyz = randomPoints(200);
+		Location p = new Location();
+		Set<Triangle> all = actual.getTriangles();
+		Set<Triangle> e = new HashSet<Triangle>();
+		Set<Triangle> a = new HashSet<Triangle>();
+		for (int i = 0; i < xyz.length / 3; i++)
+		{
+			p.moveTo(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+			for (int g = 0; g <= nbGroups; g++)
+			{
+				double best = Double.POSITIVE_INFINITY;
+				for (Triangle t : all)
+					if (t.getGroupId() == g)
+						best = Math.min(best, td.compute(p, t, index));
+				Triangle ta = actual.getClosestTriangle(p, null, g);
+				if (best == Double.POSITIVE_INFINITY)
+					assertNull(ta);
+				else
+				{
+					assertEquals(g, ta.getGroupId());
+					assertEquals(best, td.compute(p, ta, index), 1.e-12);
+				}
+				double[] aabb = { p.getX() - 0.2, p.getY() - 0.2, p.getZ() - 0.2,
+					p.getX() + 0.2, p.getY() + 0.2, p.getZ() + 0.2 };
+				// Results depend on the tree layout, but both must contain
+				// all triangles of this group near the box
+				e.clear();
+				a.clear();
+				expected.getNearTriangles(aabb, e, g);
+				actual.getNearTriangles(aabb, a, g);
+				for (Triangle t : a)
+					assertEquals(g, t.getGroupId());
+				for (Triangle t : e)
+					if (intersect(t, aabb))
+						assertTrue(a.contains(t));
+				for (Triangle t : a)
+					if (intersect(t, aabb))
+						assertTrue(e.contains(t));
+				e.clear();
+				a.clear();
+				expected.getNearTriangles(aabb, e, g, true);
+				actual.getNearTriangles(aabb, a, g, true);
+				assertEquals(e, a);
+			}
+		}
+	}
+
+	@Test public void partitionByGroups()
+	{
+		Mesh m = SphereBuilder.createShuffledSphereMesh(4);
+		// One group by octant
+		List<Triangle> triangles = new ArrayList<Triangle>();
+		for (Triangle t : m.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			double x = t.getV0().getX() + t.getV1().getX() + t.getV2().getX();
+			double y = t.getV0().getY() + t.getV1().getY() + t.getV2().getY();
+			double z = t.getV0().getZ() + t.getV1().getZ() + t.getV2().getZ();
+			t.setGroupId((x > 0 ? 1 : 0) + (y > 0 ? 2 : 0) + (z > 0 ? 4 : 0));
+			triangles.add(t);
+		}
+		TriangleKdTree expected = new TriangleKdTree(m);
+		TriangleKdTree actual = new TriangleKdTree(m, true);
+		assertFalse(expected.isPartitionedByGroups());
+		assertTrue(actual.isPartitionedByGroups());
+		assertEquals(expected.getTriangles(), actual.getTriangles());
+		checkGroups(expected, actual, 8);
+
+		// Subtrees are updated when the tree is modified
+		for (int i = 0; i < triangles.size(); i += 3)
+		{
+			assertTrue(expected.remove(triangles.get(i)));
+			assertTrue(actual.remove(triangles.get(i)));
+		}
+		checkGroups(expected, actual, 8);
+		for (int i = 0; i < triangles.size(); i += 6)
+		{
+			expected.addTriangle(triangles.get(i));
+			actual.addTriangle(triangles.get(i));
+		}
+		checkGroups(expected, actual, 8);
+	}
+}
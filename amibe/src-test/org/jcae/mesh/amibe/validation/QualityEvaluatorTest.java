@@ -0,0 +1,197 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.Arrays;
+import java.util.Random;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.CompactMesh;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class QualityEvaluatorTest
+{
+	private static final String MIN_ANGLE = "org.jcae.mesh.amibe.validation.MinAngleFace";
+	private static final float [] BOUNDS = { 0.6f, 0.7f, 0.8f, 0.9f, 0.95f, 1.0f };
+	private static Mesh mesh;
+
+	@BeforeClass public static void createMesh()
+	{
+		// 5 levels give more triangles than a single chunk
+		mesh = SphereBuilder.createShuffledSphereMesh(5);
+		int i = 0;
+		for (Triangle t : mesh.getTriangles())
+			t.setGroupId(i++ % 3);
+	}
+
+	private static QualityFloat serial(int group)
+	{
+		QualityFloat data = new QualityFloat();
+		data.setQualityProcedure(new MinAngleFace());
+		data.setTarget((float) Math.PI / 3.0f);
+		for (Triangle t : mesh.getTriangles())
+			if (t.isWritable() && (group < 0 || t.getGroupId() == group))
+				data.compute(t);
+		data.finish();
+		return data;
+	}
+
+	private static float [] sortedValues(int group)
+	{
+		float scale = 1.0f / ((float) Math.PI / 3.0f);
+		MinAngleFace qproc = new MinAngleFace();
+		TFloatArrayList values = new TFloatArrayList();
+		for (Triangle t : mesh.getTriangles())
+			if (t.isWritable() && (group < 0 || t.getGroupId() == group))
+				values.add(qproc.quality(t) * scale);
+		float [] ret = values.toArray();
+		Arrays.sort(ret);
+		return ret;
+	}
+
+	private static void compare(int group, QualityStatistics stats)
+	{
+		QualityFloat expected = serial(group);
+		assertEquals(expected.size(), stats.size());
+		assertEquals(expected.getValueByPercent(0.0), stats.getMinValue(), 0.0f);
+		assertEquals(expected.getValueByPercent(1.0), stats.getMaxValue(), 0.0f);
+		assertEquals(expected.getMeanValue(), stats.getMeanValue(), 1.e-5f);
+		assertEquals(expected.getStandardDeviation(), stats.getStandardDeviation(), 1.e-5f);
+		// QualityFloat.getValueByPercent is approximate, compare with
+		// exact quantiles
+		float [] sorted = sortedValues(group);
+		for (int i = 1; i < 10; i++)
+		{
+			double p = 0.1 * i;
+			float v = sorted[(int) (p * sorted.length)];
+			assertEquals(v, stats.getValueByPercent(p),
+				QualityStatistics.DEFAULT_RELATIVE_ACCURACY * v + 1.e-6f);
+		}
+	}
+
+	@Test public void statistics()
+	{
+		QualityEvaluator eval = new QualityEvaluator(new QualityProcedureFactory(MIN_ANGLE));
+		eval.setTarget((float) Math.PI / 3.0f);
+		eval.setBounds(BOUNDS);
+		QualityStatistics stats = eval.compute(mesh);
+		compare(-1, stats);
+		// QualityFloat does not give access to its histogram, recompute it
+		// as in QualityFloat.split(float...)
+		long [] counts = new long[BOUNDS.length + 1];
+		float scale = 1.0f / ((float) Math.PI / 3.0f);
+		MinAngleFace qproc = new MinAngleFace();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (!t.isWritable())
+				continue;
+			float val = qproc.quality(t) * scale;
+			int cell = 0;
+			for (; cell < BOUNDS.length; cell++)
+				if (val < BOUNDS[cell])
+					break;
+			counts[cell]++;
+		}
+		assertArrayEquals(counts, stats.getCounts());
+	}
+
+	@Test public void byGroup()
+	{
+		QualityEvaluator eval = new QualityEvaluator(new QualityProcedureFactory(MIN_ANGLE));
+		eval.setTarget((float) Math.PI / 3.0f);
+		TIntObjectHashMap<QualityStatistics> stats = eval.computeByGroup(mesh);
+		assertEquals(3, stats.size());
+		for (int g = 0; g < 3; g++)
+			compare(g, stats.get(g));
+	}
+
+	@Test public void merge()
+	{
+		Random r = new Random(7L);
+		QualityStatistics all = new QualityStatistics();
+		all.setBounds(-1.0f, 1.0f, 8);
+		QualityStatistics left = new QualityStatistics(all);
+		QualityStatistics right = new QualityStatistics(all);
+		for (int i = 0; i < 10000; i++)
+		{
+			float v = (float) (2.0 * r.nextDouble() - 1.0);
+			all.add(v, i);
+			if (i % 2 == 0)
+				left.add(v, i);
+			else
+				right.add(v, i);
+		}
+		left.merge(right);
+		assertEquals(all.size(), left.size());
+		assertEquals(all.getMinValue(), left.getMinValue(), 0.0f);
+		assertEquals(all.getMaxValue(), left.getMaxValue(), 0.0f);
+		assertEquals(all.getMeanValue(), left.getMeanValue(), 1.e-6f);
+		assertEquals(all.getStandardDeviation(), left.getStandardDeviation(), 1.e-6f);
+		assertArrayEquals(all.getCounts(), left.getCounts());
+		for (double p = 0.05; p < 1.0; p += 0.05)
+			assertEquals(all.getValueByPercent(p), left.getValueByPercent(p), 0.0f);
+	}
+
+	@Test public void split()
+	{
+		QualityStatistics stats = new QualityStatistics();
+		for (int i = 0; i < 1000; i++)
+			stats.add(i + 1.0f);
+		stats.split(10);
+		long [] counts = stats.getCounts();
+		long total = 0L;
+		for (long c : counts)
+			total += c;
+		assertEquals(1000L, total);
+		for (int i = 1; i <= 10; i++)
+			assertEquals(100.0, counts[i], 2.0);
+		// 500 values are lower than 501
+		assertEquals(501.0f, stats.getValueByPercent(0.5), 1.0f);
+	}
+
+	@Test public void defaultCompactQuality()
+	{
+		double [] coords = new double[] {
+			0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0,  0.5, 0.5, 1 };
+		int [] trias = new int[] { 0, 1, 3,  1, 2, 3,  1, 2, 4 };
+		CompactMesh compact = new CompactMesh(coords, trias, new int[] { 0, 1, 2 }, null);
+		final Area area = new Area();
+		// Only quality(Object) is overridden
+		QualityProcedure qproc = new QualityProcedure() {
+			@Override
+			protected void setValidationFeatures()
+			{
+			}
+
+			@Override
+			public float quality(Object o)
+			{
+				return ((Triangle) o).getGroupId() + area.quality(o);
+			}
+		};
+		for (int t = 0; t < compact.getNumberOfTriangles(); t++)
+			assertEquals(area.quality(compact, t) + t, qproc.quality(compact, t), 1.e-6f);
+	}
+}
@@ -0,0 +1,113 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.Mesh;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class StructureIndexTest
+{
+	private String dir;
+
+	@After public void deleteOEMM()
+	{
+		SphereBuilder.deleteOEMM(dir);
+	}
+
+	private static void assertSameLeaves(OEMM expected, OEMM actual)
+	{
+		assertEquals(expected.getNumberOfLeaves(), actual.getNumberOfLeaves());
+		assertEquals(expected.leaves.length, actual.leaves.length);
+		assertTrue(Arrays.equals(expected.x0, actual.x0));
+		for (int i = 0; i < expected.leaves.length; i++)
+		{
+			OEMM.Node n1 = expected.leaves[i];
+			OEMM.Node n2 = actual.leaves[i];
+			assertEquals(n1.toString(), n2.toString());
+			assertSame(n2, actual.search(new int[] { n2.i0, n2.j0, n2.k0 }));
+		}
+	}
+
+	private static void assertSameLeaves(OEMM expected, StructureIndex index)
+	{
+		assertEquals(expected.leaves.length, index.getNumberOfLeaves());
+		assertTrue(Arrays.equals(expected.x0, index.getX0()));
+		for (int i = 0; i < expected.leaves.length; i++)
+		{
+			OEMM.Node n = expected.leaves[i];
+			assertEquals(n.i0, index.getI0(i));
+			assertEquals(n.j0, index.getJ0(i));
+			assertEquals(n.k0, index.getK0(i));
+			assertEquals(n.size, index.getSize(i));
+			assertEquals(n.tn, index.getNumberOfTriangles(i));
+			assertEquals(n.vn, index.getNumberOfVertices(i));
+			assertEquals(n.minIndex, index.getMinIndex(i));
+			assertEquals(n.maxIndex, index.getMaxIndex(i));
+			assertEquals(n.leafIndex, index.getLeafIndex(i));
+			assertTrue(Arrays.equals(n.adjLeaves.toArray(), index.getAdjacentLeaves(i)));
+			assertEquals(n.file, index.getFile(i));
+		}
+	}
+
+	private static void writeLegacyStructure(OEMM oemm) throws IOException
+	{
+		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(oemm.getFileName())));
+		oos.writeObject(oemm);
+		oos.writeObject(Integer.valueOf(oemm.leaves.length));
+		for (OEMM.Node node : oemm.leaves)
+			oos.writeObject(node);
+		oos.close();
+	}
+
+	@Test public void testSphere() throws IOException
+	{
+		dir = SphereBuilder.createSphereOEMM(3, 100);
+		assertTrue(StructureIndex.isStructureIndex(new File(new OEMM(dir).getFileName())));
+		OEMM oemm = Storage.readOEMMStructure(dir);
+		assertTrue(oemm.getNumberOfLeaves() > 8);
+		assertSameLeaves(oemm, StructureIndex.open(dir));
+		Mesh mesh = new MeshReader(oemm).buildWholeMesh();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		assertEquals(1280, mesh.getTriangles().size());
+	}
+
+	@Test public void testLegacyStructure() throws IOException
+	{
+		dir = SphereBuilder.createSphereOEMM(3, 100);
+		OEMM oemm = Storage.readOEMMStructure(dir);
+		writeLegacyStructure(oemm);
+		File file = new File(oemm.getFileName());
+		assertFalse(StructureIndex.isStructureIndex(file));
+		OEMM legacy = Storage.readOEMMStructure(dir);
+		assertSameLeaves(oemm, legacy);
+		// Legacy structure is converted when stored
+		Storage.storeOEMMStructure(legacy);
+		assertTrue(StructureIndex.isStructureIndex(file));
+		assertSameLeaves(oemm, Storage.readOEMMStructure(dir));
+	}
+}
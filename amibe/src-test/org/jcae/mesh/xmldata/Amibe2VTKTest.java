@@ -0,0 +1,167 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class Amibe2VTKTest
+{
+	private static final String TORUS = "test"+File.separator+"input"+File.separator+"torus1426";
+	private static final String APPENDED = "<AppendedData encoding=\"raw\"> _";
+	private static final Pattern OFFSET = Pattern.compile("offset=\"\\s*(\\d+)\"");
+
+	private static byte[] write(Amibe2VTK a2v) throws Exception
+	{
+		File f = File.createTempFile("amibe2vtk", ".vtp");
+		try
+		{
+			a2v.write(f.getPath());
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			byte[] content = new byte[(int) raf.length()];
+			raf.readFully(content);
+			raf.close();
+			return content;
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	private static String header(byte[] content) throws Exception
+	{
+		String s = new String(content, "ISO-8859-1");
+		return s.substring(0, s.indexOf(APPENDED) + APPENDED.length());
+	}
+
+	/** Return appended arrays of a raw file */
+	private static List<byte[]> readRaw(byte[] content) throws Exception
+	{
+		String header = header(content);
+		List<byte[]> arrays = new ArrayList<byte[]>();
+		Matcher m = OFFSET.matcher(header);
+		while (m.find())
+		{
+			ByteBuffer bb = ByteBuffer.wrap(content);
+			bb.position(header.length() + Integer.parseInt(m.group(1)));
+			byte[] array = new byte[bb.getInt()];
+			bb.get(array);
+			arrays.add(array);
+		}
+		return arrays;
+	}
+
+	/** Return uncompressed appended arrays of a compressed file */
+	private static List<byte[]> readCompressed(byte[] content, int blockSize)
+		throws Exception
+	{
+		String header = header(content);
+		assertTrue(header.contains("compressor=\"vtkZLibDataCompressor\""));
+		List<byte[]> arrays = new ArrayList<byte[]>();
+		Matcher m = OFFSET.matcher(header);
+		while (m.find())
+		{
+			ByteBuffer bb = ByteBuffer.wrap(content);
+			bb.position(header.length() + Integer.parseInt(m.group(1)));
+			int nbBlocks = bb.getInt();
+			assertEquals(blockSize, bb.getInt());
+			int lastBlockSize = bb.getInt();
+			int[] sizes = new int[nbBlocks];
+			for (int i = 0; i < nbBlocks; i++)
+				sizes[i] = bb.getInt();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] block = new byte[blockSize];
+			for (int i = 0; i < nbBlocks; i++)
+			{
+				Inflater inflater = new Inflater();
+				inflater.setInput(content, bb.position(), sizes[i]);
+				int n = inflater.inflate(block);
+				assertTrue(inflater.finished());
+				inflater.end();
+				if (i < nbBlocks - 1 || lastBlockSize == 0)
+					assertEquals(blockSize, n);
+				else
+					assertEquals(lastBlockSize, n);
+				out.write(block, 0, n);
+				bb.position(bb.position() + sizes[i]);
+			}
+			arrays.add(out.toByteArray());
+		}
+		return arrays;
+	}
+
+	private static void check(boolean dummyData, int blockSize) throws Exception
+	{
+		Amibe2VTK raw = new Amibe2VTK(TORUS);
+		raw.setDummyData(dummyData);
+		byte[] expected = write(raw);
+		Amibe2VTK compressed = new Amibe2VTK(TORUS);
+		compressed.setDummyData(dummyData);
+		compressed.setCompressed(true);
+		compressed.setBlockSize(blockSize);
+		compressed.setNumberOfThreads(3);
+		byte[] actual = write(compressed);
+		assertTrue(actual.length < expected.length);
+		assertEquals(header(expected).replaceAll("offset=\"\\s*\\d+\"", ""),
+			header(actual).replaceAll("offset=\"\\s*\\d+\"", "")
+				.replace(" compressor=\"vtkZLibDataCompressor\"", ""));
+		List<byte[]> expectedArrays = readRaw(expected);
+		List<byte[]> actualArrays = readCompressed(actual, blockSize);
+		assertEquals(dummyData ? 9 : 6, expectedArrays.size());
+		assertEquals(expectedArrays.size(), actualArrays.size());
+		for (int i = 0; i < expectedArrays.size(); i++)
+			assertArrayEquals("Array "+i, expectedArrays.get(i), actualArrays.get(i));
+		String end = new String(actual, "ISO-8859-1");
+		assertTrue(end.endsWith("</AppendedData></VTKFile>\n"));
+	}
+
+	@Test public void compressed() throws Exception
+	{
+		check(false, 1 << 20);
+	}
+
+	@Test public void compressedBlocks() throws Exception
+	{
+		// Blocks do not contain whole triangles nor whole nodes
+		check(true, 1000);
+	}
+
+	@Test public void compressedStream() throws Exception
+	{
+		Amibe2VTK a2v = new Amibe2VTK(TORUS);
+		a2v.setCompressed(true);
+		a2v.setBlockSize(1000);
+		byte[] expected = write(a2v);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		a2v.write(out);
+		assertArrayEquals(expected, out.toByteArray());
+	}
+}
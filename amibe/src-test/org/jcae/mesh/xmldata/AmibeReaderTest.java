@@ -0,0 +1,128 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AmibeReaderTest
+{
+	private static final String TORUS = "test"+File.separator+"input"+File.separator+"torus1426";
+	private static AmibeReader.SubMesh subMesh;
+
+	@BeforeClass public static void readTorus() throws Exception
+	{
+		subMesh = new AmibeReader.Dim3(TORUS).getSubmeshes().get(0);
+	}
+
+	private static double[] readNodes() throws IOException
+	{
+		DoubleFileReader dfr = subMesh.getNodes();
+		double[] ret = new double[3 * subMesh.getNumberOfNodes()];
+		assertEquals(ret.length, dfr.get(ret));
+		dfr.close();
+		return ret;
+	}
+
+	private static int[] readTriangles() throws IOException
+	{
+		IntFileReader ifr = subMesh.getTriangles();
+		int[] ret = new int[3 * subMesh.getNumberOfTrias()];
+		assertEquals(ret.length, ifr.get(ret));
+		ifr.close();
+		return ret;
+	}
+
+	@Test public void mapNodes() throws IOException
+	{
+		double[] expected = readNodes();
+		DoubleBuffer[] nodes = subMesh.mapNodes();
+		assertEquals(1, nodes.length);
+		assertTrue(nodes[0].isReadOnly());
+		double[] actual = new double[nodes[0].remaining()];
+		nodes[0].get(actual);
+		assertArrayEquals(expected, actual, 0.0);
+	}
+
+	@Test public void mapTriangles() throws IOException
+	{
+		int[] expected = readTriangles();
+		IntBuffer[] triangles = subMesh.mapTriangles();
+		assertEquals(1, triangles.length);
+		int[] actual = new int[triangles[0].remaining()];
+		triangles[0].get(actual);
+		assertArrayEquals(expected, actual);
+
+		IntBuffer[] groups = subMesh.mapGroups();
+		for (AmibeReader.Group g : subMesh.getGroups())
+		{
+			int[] ids = g.readTria3Ids();
+			for (int i = 0; i < ids.length; i++)
+				assertEquals(ids[i], groups[0].get((int) g.getTriasOffset() + i));
+		}
+	}
+
+	@Test public void chunks() throws IOException
+	{
+		double[] expected = readNodes();
+		File f = new File(new File(TORUS, "jcae3d.files"), "nodes3d.bin");
+		int nrNodes = subMesh.getNumberOfNodes();
+		// Skip first 10 nodes, chunks contain 100 nodes and some spare bytes
+		ByteBuffer[] bb = AmibeReader.map(f, 10L, nrNodes - 10, 24, 24 * 100 + 7);
+		assertEquals((nrNodes - 10 + 99) / 100, bb.length);
+		int k = 30;
+		for (int i = 0; i < bb.length; i++)
+		{
+			DoubleBuffer db = bb[i].asDoubleBuffer();
+			if (i < bb.length - 1)
+				assertEquals(300, db.capacity());
+			while (db.hasRemaining())
+				assertEquals(expected[k++], db.get(), 0.0);
+		}
+		assertEquals(expected.length, k);
+	}
+
+	@Test public void absoluteBulkGet() throws IOException
+	{
+		int[] expected = readTriangles();
+		PrimitiveFileReaderFactory[] factories = new PrimitiveFileReaderFactory[] {
+			new PrimitiveFileReaderFactory("directBuffer"),
+			new PrimitiveFileReaderFactory("mmap") };
+		File f = new File(new File(TORUS, "jcae3d.files"), "triangles3d.bin");
+		for (PrimitiveFileReaderFactory pfrf : factories)
+		{
+			IntFileReader ifr = pfrf.getIntReader(f);
+			int[] actual = new int[5];
+			assertEquals(5, ifr.get(123, actual, 0, 5));
+			for (int i = 0; i < 5; i++)
+				assertEquals(expected[123 + i], actual[i]);
+			assertEquals(5, ifr.get(7, actual, 0, 5));
+			for (int i = 0; i < 5; i++)
+				assertEquals(expected[7 + i], actual[i]);
+			ifr.close();
+		}
+	}
+}
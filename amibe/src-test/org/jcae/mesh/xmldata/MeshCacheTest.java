@@ -0,0 +1,208 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MeshCacheTest
+{
+	private static final String TORUS = "test"+File.separator+"input"+File.separator+"torus1426";
+	private File dir;
+
+	@Before public void createDirectory() throws IOException
+	{
+		dir = File.createTempFile("meshcache", ".dir");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	private static final long MAX_SIZE = MeshCache.getMaxSize();
+
+	@After public void deleteDirectory()
+	{
+		MeshCache.setEnabled(false);
+		MeshCache.setMaxSize(MAX_SIZE);
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		File [] children = f.listFiles();
+		if (children != null)
+		{
+			for (File c : children)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private static Mesh read(String xmlDir) throws IOException
+	{
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeList();
+		Mesh mesh = new Mesh(mtb);
+		MeshReader.readObject3D(mesh, xmlDir);
+		return mesh;
+	}
+
+	/** Torus with 1D references, beams and node groups */
+	private static Mesh createMesh() throws IOException
+	{
+		Mesh mesh = read(TORUS);
+		mesh.setPersistentReferences(true);
+		List<Vertex> nodes = new ArrayList<Vertex>(mesh.getNodes());
+		for (int i = 0; i < 10; i++)
+			nodes.get(3 * i).setRef(i + 1);
+		mesh.addBeam(nodes.get(0), nodes.get(3), 1);
+		mesh.addBeam(nodes.get(3), nodes.get(6), 2);
+		mesh.setVertexGroup(nodes.get(1), "nodes");
+		mesh.setVertexGroup(nodes.get(2), "nodes");
+		return mesh;
+	}
+
+	private static void assertSameVertex(Vertex expected, Vertex actual)
+	{
+		assertEquals(expected.getX(), actual.getX(), 0.0);
+		assertEquals(expected.getY(), actual.getY(), 0.0);
+		assertEquals(expected.getZ(), actual.getZ(), 0.0);
+		assertEquals(expected.getRef(), actual.getRef());
+	}
+
+	private static void assertSameVertices(Collection<Vertex> expected, Collection<Vertex> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		Iterator<Vertex> it = actual.iterator();
+		for (Vertex v : expected)
+			assertSameVertex(v, it.next());
+	}
+
+	private static void assertSameMesh(Mesh expected, Mesh actual)
+	{
+		assertEquals(expected.hasPersistentReferences(), actual.hasPersistentReferences());
+		assertSameVertices(expected.getNodes(), actual.getNodes());
+		assertEquals(expected.getTriangles().size(), actual.getTriangles().size());
+		Iterator<Triangle> it = actual.getTriangles().iterator();
+		for (Triangle t1 : expected.getTriangles())
+		{
+			Triangle t2 = it.next();
+			assertEquals(t1.getGroupId(), t2.getGroupId());
+			for (int i = 0; i < 3; i++)
+			{
+				if (t1.getV(i) == expected.outerVertex)
+					assertSame(actual.outerVertex, t2.getV(i));
+				else
+					assertSameVertex(t1.getV(i), t2.getV(i));
+			}
+		}
+		assertEquals(expected.getNumberOfGroups(), actual.getNumberOfGroups());
+		for (int i = 1; i <= expected.getNumberOfGroups(); i++)
+			assertEquals(expected.getGroupName(i), actual.getGroupName(i));
+		assertSameVertices(expected.getBeams(), actual.getBeams());
+		for (int i = 0; i < expected.getBeams().size() / 2; i++)
+			assertEquals(expected.getBeamGroup(i), actual.getBeamGroup(i));
+		assertEquals(expected.getVertexGroup().keySet(), actual.getVertexGroup().keySet());
+		for (Map.Entry<String, Collection<Vertex>> e : expected.getVertexGroup().entrySet())
+			assertSameVertices(e.getValue(), actual.getVertexGroup().get(e.getKey()));
+	}
+
+	@Test public void sameMesh() throws IOException
+	{
+		MeshCache.setEnabled(true);
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertNotNull(MeshCache.get(dir.getPath()));
+		Mesh cached = read(dir.getPath());
+		MeshCache.clear();
+		Mesh disk = read(dir.getPath());
+		assertSameMesh(disk, cached);
+		assertTrue(cached.isValid());
+	}
+
+	@Test public void modifiedFiles() throws IOException
+	{
+		MeshCache.setEnabled(true);
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertNotNull(MeshCache.get(dir.getPath()));
+		File nodes = new File(new File(dir, JCAEXMLData.xml3dFilename+".files"), "nodes3d.bin");
+		assertTrue(nodes.setLastModified(nodes.lastModified() - 10000L));
+		assertNull(MeshCache.get(dir.getPath()));
+		// Writers release cached mesh of their directory
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertNotNull(MeshCache.get(dir.getPath()));
+		new AmibeWriter.Dim3(dir.getPath()).finish();
+		assertNull(MeshCache.get(dir.getPath()));
+	}
+
+	@Test public void disabled() throws IOException
+	{
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		MeshCache.setEnabled(true);
+		assertNull(MeshCache.get(dir.getPath()));
+	}
+
+	@Test public void generation() throws IOException
+	{
+		MeshCache.setEnabled(true);
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertNotNull(MeshCache.get(dir.getPath()));
+		// Another process deletes the generation when it writes into this
+		// directory, modification times may not have changed
+		File generation = new File(new File(dir, JCAEXMLData.xml3dFilename+".files"), "generation");
+		File nodes = new File(new File(dir, JCAEXMLData.xml3dFilename+".files"), "nodes3d.bin");
+		long lastModified = nodes.lastModified();
+		assertTrue(generation.delete());
+		assertEquals(lastModified, nodes.lastModified());
+		assertNull(MeshCache.get(dir.getPath()));
+		// Plain writers do not write any generation
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertTrue(generation.exists());
+		MeshCache.setEnabled(false);
+		MeshWriter.writeObject3D(createMesh(), dir.getPath(), null);
+		assertFalse(generation.exists());
+	}
+
+	@Test public void maxSize() throws IOException
+	{
+		MeshCache.setEnabled(true);
+		Mesh mesh = createMesh();
+		MeshCache.setMaxSize(24L * mesh.getNodes().size());
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+		assertNull(MeshCache.get(dir.getPath()));
+		// Mesh is still written
+		assertEquals(mesh.getTriangles().size(), read(dir.getPath()).getTriangles().size());
+		MeshCache.setMaxSize(MAX_SIZE);
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+		assertNotNull(MeshCache.get(dir.getPath()));
+	}
+}
@@ -0,0 +1,222 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UNV2AmibeTest
+{
+	private static File unv;
+	private final List<File> dirs = new ArrayList<File>();
+
+	@BeforeClass public static void writeUNV() throws IOException
+	{
+		unv = File.createTempFile("unv2amibe", ".unv");
+		unv.deleteOnExit();
+		PrintWriter pw = new PrintWriter(new FileWriter(unv));
+		pw.println("    -1");
+		pw.println("   151");
+		pw.println("header");
+		pw.println("    -1");
+		pw.println("    -1");
+		pw.println("   164");
+		pw.println("         1  mm (milli newton)            2");
+		pw.println("  1.00000000000000000D+03  1.00000000000000000D+00  1.00000000000000000D+00");
+		pw.println("  2.73149999999999977D+02");
+		pw.println("    -1");
+		pw.println("    -1");
+		pw.println("  2411");
+		String[] coords = {
+			"   0.0000000000000000D+00   0.0000000000000000D+00   0.0000000000000000D+00",
+			"   1.0000000000000000D+03   0.0000000000000000D+00  -2.5000000000000000E+01",
+			"   1.2345678901234567D+02   1.0000000000000000D+03   0.0000000000000000D+00",
+			"   1.0000000000000000D+03   1.0000000000000000D+03   1.0000000000000000D-03",
+			"   5.0000000000000000D+02   5.0000000000000000D+02   0.0000000000000000D+00",
+			"  -7.1234567890123456D+02   2.5000000000000000D+02   3.3333333333333333D+02" };
+		for (int i = 0; i < coords.length; i++)
+		{
+			pw.println("         "+(i+1)+"         1         1        11");
+			pw.println(coords[i]);
+		}
+		pw.println("    -1");
+		pw.println("    -1");
+		pw.println("  2412");
+		// triangle
+		pw.println("         1        91         1         1         7         3");
+		pw.println("         1         2         3");
+		// beam
+		pw.println("         2        21         1         1         7         2");
+		pw.println("         0         1         1");
+		pw.println("         2         4");
+		// parabolic triangle
+		pw.println("         3        92         1         1         7         6");
+		pw.println("         2         5         4         6         3         5");
+		// tetrahedron, ignored
+		pw.println("         4       111         1         1         7         4");
+		pw.println("         1         2         3         6");
+		// triangle
+		pw.println("         5        41         1         1         7         3");
+		pw.println("         3         4         6");
+		pw.println("    -1");
+		pw.println("    -1");
+		pw.println("  2467");
+		pw.println("         1         0         0         0         0         0         0         3");
+		pw.println("elements");
+		pw.println("         8         1         0         0         8         2         0         0");
+		pw.println("         8         4         0         0");
+		pw.println("         2         0         0         0         0         0         0         2");
+		pw.println("nodes");
+		pw.println("         7         5         0         0         7         6         0         0");
+		pw.println("         3         0         0         0         0         0         0         0");
+		pw.println("empty");
+		pw.println("    -1");
+		pw.close();
+	}
+
+	@After public void deleteDirectories()
+	{
+		for (File dir : dirs)
+			delete(dir);
+		dirs.clear();
+	}
+
+	private static void delete(File f)
+	{
+		File [] children = f.listFiles();
+		if (children != null)
+		{
+			for (File c : children)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private AmibeReader.SubMesh importMesh(boolean mapped) throws Exception
+	{
+		return importMesh(new UNV2Amibe(), mapped);
+	}
+
+	private AmibeReader.SubMesh importMesh(UNV2Amibe u, boolean mapped) throws Exception
+	{
+		File dir = File.createTempFile("unv2amibe", ".dir");
+		dir.delete();
+		dirs.add(dir);
+		if (mapped)
+			u.importMesh(unv, dir.getPath());
+		else
+		{
+			BufferedReader br = new BufferedReader(new FileReader(unv));
+			u.importMesh(br, dir.getPath());
+			br.close();
+		}
+		return new AmibeReader.Dim3(dir.getPath()).getSubmeshes().get(0);
+	}
+
+	private static double[] readNodes(AmibeReader.SubMesh sm) throws IOException
+	{
+		DoubleFileReader dfr = sm.getNodes();
+		double[] ret = new double[3 * sm.getNumberOfNodes()];
+		assertEquals(ret.length, dfr.get(ret));
+		dfr.close();
+		return ret;
+	}
+
+	private static int[] readTriangles(AmibeReader.SubMesh sm) throws IOException
+	{
+		IntFileReader ifr = sm.getTriangles();
+		int[] ret = new int[3 * sm.getNumberOfTrias()];
+		assertEquals(ret.length, ifr.get(ret));
+		ifr.close();
+		return ret;
+	}
+
+	private static void assertSameMesh(AmibeReader.SubMesh expected, AmibeReader.SubMesh actual)
+		throws IOException
+	{
+		assertArrayEquals(readNodes(expected), readNodes(actual), 0.0);
+		assertArrayEquals(readTriangles(expected), readTriangles(actual));
+		assertEquals(expected.getNumberOfBeams(), actual.getNumberOfBeams());
+		List<AmibeReader.Group> eg = expected.getGroups();
+		List<AmibeReader.Group> ag = actual.getGroups();
+		assertEquals(eg.size(), ag.size());
+		for (int i = 0; i < eg.size(); i++)
+		{
+			assertEquals(eg.get(i).getName(), ag.get(i).getName());
+			assertArrayEquals(eg.get(i).readTria3Ids(), ag.get(i).readTria3Ids());
+			assertArrayEquals(eg.get(i).readBeamsIds(), ag.get(i).readBeamsIds());
+			assertArrayEquals(eg.get(i).readNodesIds(), ag.get(i).readNodesIds());
+		}
+	}
+
+	@Test public void compareWithReader() throws Exception
+	{
+		assertSameMesh(importMesh(false), importMesh(true));
+	}
+
+	/**
+	 * Parse with chunks much smaller than a dataset.  With 1 byte chunks,
+	 * each line starts a new chunk, so that some chunks of the 2411
+	 * dataset begin with a coordinate line instead of a label line.
+	 * Other sizes put chunk boundaries in the middle of lines.
+	 */
+	@Test public void smallChunks() throws Exception
+	{
+		AmibeReader.SubMesh expected = importMesh(false);
+		long [] sizes = { 1L, 2L, 3L, 7L, 20L, 64L, 100L, 251L };
+		for (long bytes : sizes)
+		{
+			for (int elements = 1; elements <= 6; elements++)
+			{
+				UNV2Amibe u = new UNV2Amibe();
+				u.setChunkSizes(bytes, elements);
+				assertSameMesh(expected, importMesh(u, true));
+			}
+		}
+	}
+
+	@Test public void mappedImport() throws Exception
+	{
+		AmibeReader.SubMesh sm = importMesh(true);
+		double[] nodes = readNodes(sm);
+		assertEquals(18, nodes.length);
+		// Coordinates are converted from millimeters
+		assertEquals(123.45678901234567 / 1000.0, nodes[6], 0.0);
+		assertEquals(-0.025, nodes[5], 0.0);
+		assertEquals(1e-3 / 1000.0, nodes[11], 0.0);
+		assertEquals(-712.34567890123456 / 1000.0, nodes[15], 0.0);
+		assertArrayEquals(new int[]{ 0, 1, 2, 1, 3, 2, 2, 3, 5 }, readTriangles(sm));
+		assertEquals(1, sm.getNumberOfBeams());
+		AmibeReader.Group elements = sm.getGroup("elements");
+		assertArrayEquals(new int[]{ 0, 2 }, elements.readTria3Ids());
+		assertArrayEquals(new int[]{ 0 }, elements.readBeamsIds());
+		assertArrayEquals(new int[]{ 4, 5 }, sm.getGroup("nodes").readNodesIds());
+	}
+}
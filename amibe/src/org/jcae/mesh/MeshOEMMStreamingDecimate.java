@@ -0,0 +1,216 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh;
+
+import org.jcae.mesh.oemm.FakeNonReadVertex;
+import org.jcae.mesh.oemm.OEMM;
+import org.jcae.mesh.oemm.Storage;
+import org.jcae.mesh.oemm.MeshReader;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Out-of-core decimation of an OEMM.  Unlike {@link MeshOEMMDecimate}, which
+ * decimates octree nodes independently, leaves are swept one after the
+ * other and each leaf is loaded together with its adjacent leaves, so that
+ * triangles on both sides of leaf boundaries can be contracted.
+ *
+ * <p>
+ * When processing a leaf, only its own vertices can be moved or removed;
+ * vertices of adjacent leaves are locked, and vertices connected to leaves
+ * which are not loaded are not writable.  Modified leaves are then written
+ * back with {@link Storage#saveNodes}.  Each leaf is thus decimated once, and
+ * only a leaf and its neighbours are in memory at any time.  Adjacent leaves
+ * are dropped from the working set, largest first, when the estimated
+ * memory needed to decimate them exceeds the heap budget.
+ * </p>
+ */
+public class MeshOEMMStreamingDecimate
+{
+	private static final Logger LOGGER=Logger.getLogger(MeshOEMMStreamingDecimate.class.getName());
+	/**
+	 * Rough estimate of the memory needed to decimate a triangle: mesh
+	 * entities, edge queue and quadrics.
+	 */
+	private static final long BYTES_PER_TRIANGLE = 600L;
+	private final OEMM oemm;
+	private final MeshReader reader;
+	private final MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+	private final Map<String, String> decimateOptions = new HashMap<String, String>();
+	private double scale = 0.0;
+	private long heapBudget = Runtime.getRuntime().maxMemory() / 2;
+	private final TIntHashSet leaves = new TIntHashSet();
+
+	/**
+	 * Creates a <code>MeshOEMMStreamingDecimate</code> instance.
+	 *
+	 * @param oemm  OEMM to decimate, it is modified on disk
+	 * @param options  map containing key-value pairs to modify algorithm
+	 *        behaviour.  Valid keys are <code>scale</code> (ratio between
+	 *        initial and final number of triangles of each leaf) and
+	 *        <code>heapbudget</code> (memory budget in megabytes, default
+	 *        is half of maximal heap size).  Other options are passed to
+	 *        {@link QEMDecimateHalfEdge}.
+	 */
+	public MeshOEMMStreamingDecimate(OEMM oemm, Map<String, String> options)
+	{
+		this.oemm = oemm;
+		reader = new MeshReader(oemm);
+		// Coordinates of vertices found in unloaded leaves are needed
+		// to compute geometry of boundary triangles
+		reader.setLoadNonReadableTriangles(true);
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		mtb.add(ttb);
+		mtb.addTriangleList();
+		mtb.addNodeList();
+		for (final Map.Entry<String, String> opt: options.entrySet())
+		{
+			final String key = opt.getKey();
+			final String val = opt.getValue();
+			if (key.equals("scale"))
+				scale = Double.parseDouble(val);
+			else if (key.equals("heapbudget"))
+				heapBudget = Long.parseLong(val) << 20;
+			else if (key.equals("maxtriangles"))
+				throw new IllegalArgumentException("Option maxtriangles is computed for each leaf, use scale instead");
+			else
+				decimateOptions.put(key, val);
+		}
+		if (scale > 0.0 && scale < 1.0)
+			throw new IllegalArgumentException("Scale must be greater than 1: "+scale);
+	}
+
+	/**
+	 * Decimates all leaves.
+	 */
+	public void compute()
+	{
+		// Leaves may be created by Storage.saveNodes when vertices are
+		// moved outside of existing leaves, they do not need to be
+		// processed.
+		int nrLeaves = oemm.leaves.length;
+		for (int i = 0; i < nrLeaves; i++)
+		{
+			OEMM.Node current = oemm.leaves[i];
+			if (current.tn == 0)
+				continue;
+			selectLeaves(current);
+			process(current);
+		}
+	}
+
+	/**
+	 * Puts current leaf and as many adjacent leaves as allowed by heap
+	 * budget into the working set.
+	 */
+	private void selectLeaves(OEMM.Node current)
+	{
+		leaves.clear();
+		leaves.add(current.leafIndex);
+		long needed = BYTES_PER_TRIANGLE * current.tn;
+		if (needed > heapBudget)
+			LOGGER.warning("Leaf "+current.leafIndex+" does not fit into heap budget, it is processed without its neighbours");
+		// Add smallest leaves first
+		TIntArrayList adj = new TIntArrayList(current.adjLeaves.size());
+		for (int k = 0, n = current.adjLeaves.size(); k < n; k++)
+		{
+			int idx = current.adjLeaves.get(k);
+			adj.add(idx);
+			for (int j = adj.size() - 1; j > 0 && oemm.leaves[adj.get(j - 1)].tn > oemm.leaves[idx].tn; j--)
+			{
+				adj.set(j, adj.get(j - 1));
+				adj.set(j - 1, idx);
+			}
+		}
+		for (int k = 0, n = adj.size(); k < n; k++)
+		{
+			int idx = adj.get(k);
+			needed += BYTES_PER_TRIANGLE * oemm.leaves[idx].tn;
+			if (needed > heapBudget)
+			{
+				LOGGER.fine("Heap budget reached, "+(n - k)+" adjacent leaves are not loaded");
+				break;
+			}
+			leaves.add(idx);
+		}
+	}
+
+	private void process(OEMM.Node current)
+	{
+		Mesh amesh = reader.buildMesh(mtb, leaves);
+		// Lock vertices which do not belong to current leaf.  Vertices
+		// are numbered by MeshReader from their leaf minIndex.
+		int minLabel = current.minIndex;
+		int maxLabel = current.minIndex + current.vn;
+		Collection<Vertex> fakeVertices = new ArrayList<Vertex>();
+		for (Vertex v: amesh.getNodes())
+		{
+			if (v instanceof FakeNonReadVertex)
+				fakeVertices.add(v);
+			if (v.getLabel() < minLabel || v.getLabel() >= maxLabel)
+				v.setMutable(false);
+		}
+		Map<String, String> options = new HashMap<String, String>(decimateOptions);
+		if (scale > 0.0)
+		{
+			int nrT = AbstractAlgoHalfEdge.countInnerTriangles(amesh);
+			int removed = (int) (current.tn * (1.0 - 1.0 / scale));
+			options.put("maxtriangles", Integer.toString(Math.max(1, nrT - removed)));
+		}
+		if (LOGGER.isLoggable(Level.INFO))
+			LOGGER.info("Decimate leaf "+current.leafIndex+" with "+(leaves.size() - 1)+" adjacent leaves");
+		new QEMDecimateHalfEdge(amesh, options).compute();
+		// Vertices of unloaded leaves must not be stored
+		amesh.getNodes().removeAll(fakeVertices);
+		Storage.saveNodes(oemm, amesh, leaves);
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: MeshOEMMStreamingDecimate oemm scaleTriangles [heap budget in MB]");
+			System.exit(0);
+		}
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("scale", args[1]);
+		if (args.length >= 3)
+			options.put("heapbudget", args[2]);
+		LOGGER.info("Read OEMM structure");
+		OEMM oemm = Storage.readOEMMStructure(args[0]);
+		new MeshOEMMStreamingDecimate(oemm, options).compute();
+	}
+}
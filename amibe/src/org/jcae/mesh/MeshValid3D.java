@@ -21,8 +21,7 @@
 
 package org.jcae.mesh;
 
-import org.jcae.mesh.amibe.ds.Triangle;
-import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshExporter;
 import org.jcae.mesh.amibe.validation.*;
@@ -39,10 +38,10 @@ public class MeshValid3D
 	private static void check(String brepfilename, String xmlDir, float discr, float defl)
 	{
 		logger.info("Reading 3D mesh");
-		Mesh mesh3D = new Mesh();
+		CompactMesh mesh3D;
 		try
 		{
-			MeshReader.readObject3D(mesh3D, xmlDir);
+			mesh3D = MeshReader.readCompactMesh(xmlDir, false);
 		}
 		catch (IOException ex)
 		{
@@ -53,8 +52,8 @@ public class MeshValid3D
 		MinAngleFace qproc = new MinAngleFace();
 		QualityFloat data = new QualityFloat(1000);
 		data.setQualityProcedure(qproc);
-		for (Triangle f: mesh3D.getTriangles())
-			data.compute(f);
+		for (int i = 0, n = mesh3D.getNumberOfTriangles(); i < n; i++)
+			data.compute(mesh3D, i);
 		data.finish();
 		data.setTarget((float) Math.PI/3.0f);
 		//data.setTarget((float) discr);
@@ -28,9 +28,16 @@ import java.io.PrintStream;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.text.SimpleDateFormat;
 
 import org.jcae.mesh.amibe.patch.InitialTriangulationException;
@@ -97,6 +104,7 @@ public class Mesher
 	private int minFace=0;
 	private int maxFace=0;
 	private int numFace=0;
+	private int nrThreads=1;
 		
 	/**
 	 * Read system properties which affect the meshing behavior.
@@ -215,6 +223,16 @@ public class Mesher
 			System.setProperty("org.jcae.mesh.Mesher.quadrangles", quadranglesProp);
 		}
 		quadrangles=quadranglesProp.equals("true");
+
+		String threadsProp = System.getProperty("org.jcae.mesh.Mesher.threads");
+		if (threadsProp == null)
+		{
+			threadsProp = "1";
+			System.setProperty("org.jcae.mesh.Mesher.threads", threadsProp);
+		}
+		nrThreads=Integer.parseInt(threadsProp);
+		if (nrThreads <= 0)
+			nrThreads = Runtime.getRuntime().availableProcessors();
 	}
 	
 	/**
@@ -303,6 +321,90 @@ public class Mesher
 		return toReturn;
 	}
 	
+	/**
+	 * Compute 2D meshes concurrently.  Faces are independent once the
+	 * 1D mesh has been computed, and each of them is written into its
+	 * own file, so output is the same as when faces are processed
+	 * sequentially.  CAD calls are made from several threads, the CAD
+	 * implementation must support this; with OpenCASCADE, the
+	 * MMGT_REENTRANT environment variable must be set to 1.
+	 * <p>
+	 * Each task creates its own {@link MeshTraitsBuilder} and
+	 * {@link MeshParameters}.  The 1D mesh is shared: it is only read, by
+	 * {@link MMesh1D#boundaryNodes}, which looks up node lists in maps
+	 * filled before and calls getters of {@link org.jcae.mesh.amibe.ds.MNode1D}.
+	 * No 1D node or edge is created while meshing faces, so static
+	 * counters of these classes are not modified either.  The 1D mesh is
+	 * built before tasks are submitted, which makes it visible to pool
+	 * threads.
+	 * </p>
+	 * <p>
+	 * Faces which cannot be triangulated are handled by
+	 * {@link #mesh2D} as in sequential mode.  Any other exception cancels
+	 * remaining faces and is thrown again, like in sequential mode.
+	 * </p>
+	 * @param faceIds ids of the faces to be meshed
+	 * @param faces topological faces, in the same order as <code>faceIds</code>
+	 * @param nrFaces total number of faces, for logging purpose
+	 * @param mesh1D the boundary mesh used to create 2D meshes
+	 * @param options2d options used to build mesh parameters of each face
+	 * @param brepFile basename of the BRep file
+	 * @return the list of face ids which could not be meshed, sorted in
+	 *         the same order as <code>faceIds</code>
+	 */
+	final TIntArrayList mesh2DParallel(TIntArrayList faceIds, List<CADFace> faces,
+		final int nrFaces, final MMesh1D mesh1D, final HashMap<String, String> options2d,
+		final String brepFile)
+	{
+		logger.info("Meshing "+faces.size()+" faces with "+nrThreads+" threads");
+		ExecutorService pool = Executors.newFixedThreadPool(nrThreads);
+		ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>(faces.size());
+		TIntArrayList badGroups = new TIntArrayList();
+		try
+		{
+			for (int i = 0; i < faces.size(); i++)
+			{
+				final int iFace = faceIds.get(i);
+				final CADFace face = faces.get(i);
+				results.add(pool.submit(new Callable<Boolean>()
+				{
+					public Boolean call()
+					{
+						logger.info("Meshing face " + iFace+"/"+nrFaces);
+						MeshParameters mp = new MeshParameters(options2d);
+						return mesh2D(iFace, face, mesh1D, mp, brepFile,
+							MeshTraitsBuilder.getDefault2D());
+					}
+				}));
+			}
+			pool.shutdown();
+			for (int i = 0; i < results.size(); i++)
+			{
+				if (!results.get(i).get())
+					badGroups.add(faceIds.get(i));
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		return badGroups;
+	}
+
 	/**
 	 * Export the created mesh to various format
 	 */
@@ -426,6 +528,8 @@ public class Mesher
 				seen.add(expF.current());
 			nrFaces = seen.size();			
 			seen.clear();
+			TIntArrayList faceIds = new TIntArrayList();
+			List<CADFace> faces = new ArrayList<CADFace>();
 			for (expF.init(shape, CADShapeEnum.FACE); expF.more(); expF.next())
 			{
 				CADFace face = (CADFace) expF.current();
@@ -440,11 +544,20 @@ public class Mesher
 				if (seen.contains(face))
 					continue;
 				seen.add(face);
+				if (nrThreads > 1)
+				{
+					faceIds.add(iFace);
+					faces.add(face);
+					continue;
+				}
 				logger.info("Meshing face " + iFace+"/"+nrFaces);
 				MeshParameters mp = new MeshParameters(options2d);
 				if(!mesh2D(iFace, face, mesh1D, mp, brepFile, mtb))
 					badGroups.add(iFace);
 			}
+			if (nrThreads > 1)
+				badGroups.addAll(mesh2DParallel(faceIds, faces, nrFaces,
+					mesh1D, options2d, brepFile));
 		}
 
 		if (processMesh3d) {
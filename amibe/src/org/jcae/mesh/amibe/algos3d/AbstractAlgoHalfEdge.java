@@ -28,9 +28,12 @@ import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
-import org.jcae.mesh.amibe.util.QSortedTree;
+import org.jcae.mesh.amibe.util.DaryHeap;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.SortedQueue;
 import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 import java.io.ObjectOutputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
@@ -38,9 +41,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.util.HashFactory;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
 
 public abstract class AbstractAlgoHalfEdge
 {
@@ -57,9 +65,28 @@ public abstract class AbstractAlgoHalfEdge
 	private boolean noSwapAfterProcessing = false;
 	double minCos = 0.95;
 	boolean moreTriangles = false;
-	private QSortedTree<HalfEdge> tree = new PAVLSortedTree<HalfEdge>();
+	private SortedQueue<HalfEdge> tree = new PAVLSortedTree<HalfEdge>();
 	
 	private final Collection<HalfEdge> notProcessedObjects = HashFactory.createSet();
+	// Maximal number of edges which are collapsed in a batch
+	private static final int MAX_BATCH_SIZE = 4096;
+	// Number of edge costs computed by a single task
+	private static final int COST_CHUNK_SIZE = 1024;
+	// In concurrent cost mode, edges are processed by batches of
+	// independent edges
+	private boolean concurrentCosts = false;
+	// Edges whose cost has to be computed at the end of current batch, in
+	// the order they have been modified.  Removed edges are not removed
+	// from this list, only from deferredActions.
+	private final List<HalfEdge> deferredEdges = new ArrayList<HalfEdge>();
+	// How deferred edges are put into the tree (one of UPDATE_COST,
+	// ADD_TO_TREE).  This map is null when edges are processed one by one.
+	private TObjectIntHashMap<HalfEdge> deferredActions;
+	private static final int NO_ACTION = -1;
+	private static final int UPDATE_COST = 0;
+	private static final int ADD_TO_TREE = 1;
+	// Vertices of the one-rings of an edge, used by lockOneRings()
+	private final List<Vertex> ring = new ArrayList<Vertex>();
 	protected abstract void preProcessAllHalfEdges();
 	protected void postProcessAllHalfEdges()
 	{
@@ -69,6 +96,15 @@ public abstract class AbstractAlgoHalfEdge
 	protected abstract boolean canProcessEdge(HalfEdge e);
 	protected abstract HalfEdge processEdge(HalfEdge e, double cost);
 	protected abstract double cost(HalfEdge e);
+	/**
+	 * Compute the cost of an edge.  This method is called concurrently in
+	 * concurrent cost mode, default implementation calls {@link #cost} which must
+	 * then be thread-safe.
+	 */
+	protected double concurrentCost(HalfEdge e)
+	{
+		return cost(e);
+	}
 	protected abstract Logger thisLogger();
 	private static final String dumpFile = "/tmp/jcae.dump";
 
@@ -105,7 +141,10 @@ public abstract class AbstractAlgoHalfEdge
 		computeTree();
 		postComputeTree();
 		thisLogger().info("Initial number of triangles: "+countInnerTriangles(mesh));
-		processAllHalfEdges();
+		if (concurrentCosts)
+			processAllHalfEdgesByBatch();
+		else
+			processAllHalfEdges();
 		thisLogger().info("Final number of triangles: "+countInnerTriangles(mesh));
 		mesh.getTrace().println("# End "+getClass().getName());
 		postCheck();
@@ -119,6 +158,37 @@ public abstract class AbstractAlgoHalfEdge
 		progressBarStatus = n;
 	}
 
+	/**
+	 * Compute edge costs concurrently.  In this mode, a batch of cheap
+	 * edges whose one-rings are disjoint is selected and these edges are
+	 * processed sequentially: edge collapses and swaps are not concurrent,
+	 * because mesh, liaison and tree are not thread-safe.  Costs of modified edges do not depend on
+	 * each other and are then computed concurrently.  Batches are selected
+	 * in tree order and costs are put into the tree in the order edges
+	 * have been modified, so that results are reproducible.  Subclasses
+	 * must check that {@link #concurrentCost} is thread-safe before
+	 * enabling this mode.
+	 */
+	void setConcurrentCosts(boolean concurrentCosts)
+	{
+		this.concurrentCosts = concurrentCosts;
+	}
+
+	/**
+	 * Sort edges with an indexed d-ary heap instead of a binary tree.
+	 * This method must be called before {@link #compute}.
+	 *
+	 * @param arity  number of children of heap nodes, or 0 to use
+	 * the default binary tree
+	 */
+	public void setHeapArity(int arity)
+	{
+		if (arity == 0)
+			tree = new PAVLSortedTree<HalfEdge>();
+		else
+			tree = new DaryHeap<HalfEdge>(arity, mesh.getTriangles().size() + 1);
+	}
+
 	public static int countInnerTriangles(final Mesh mesh)
 	{
 		int ret = 0;
@@ -211,6 +281,11 @@ public abstract class AbstractAlgoHalfEdge
 			return;
 		if (e.hasAttributes(AbstractHalfEdge.IMMUTABLE))
 			return;
+		if (deferredActions != null)
+		{
+			defer(e, ADD_TO_TREE);
+			return;
+		}
 		double val = cost(e);
 		// If an edge will not be processed because of its cost, it is
 		// better to not put it in the tree.  One drawback though is
@@ -236,7 +311,8 @@ public abstract class AbstractAlgoHalfEdge
 			HalfEdge h = uniqueOrientation(f);
 			if(notProcessedObjects.remove(h))
 				assert !tree.contains(h);
-			if (!tree.remove(h))
+			boolean deferred = deferredActions != null && deferredActions.remove(h) != NO_ACTION;
+			if (!tree.remove(h) && !deferred)
 				notInTree++;
 			h.clearAttributes(AbstractHalfEdge.MARKED);
 			assert !tree.contains(h);
@@ -250,12 +326,12 @@ public abstract class AbstractAlgoHalfEdge
 		{
 			preProcessEdge();
 			HalfEdge current = null;
-			Iterator<QSortedTree.Node<HalfEdge>> itt = tree.iterator();
+			Iterator<? extends SortedQueue.Entry<HalfEdge>> itt = tree.iterator();
 			if (processed > 0 && (processed % progressBarStatus) == 0)
 				thisLogger().info("Edges processed: "+processed);
 			while (itt.hasNext())
 			{
-				QSortedTree.Node<HalfEdge> q = itt.next();
+				SortedQueue.Entry<HalfEdge> q = itt.next();
 				current = q.getData();
 				assert current == uniqueOrientation(current);
 				cost = q.getValue();
@@ -269,6 +345,9 @@ public abstract class AbstractAlgoHalfEdge
 				tree.remove(current);
 				notProcessedObjects.add(current);
 				current = null;
+				// Queue has been modified, but current was the
+				// first element so nothing is skipped
+				itt = tree.iterator();
 			}
 			if ((nrFinal == 0 && cost > tolerance) || current == null)
 				break;
@@ -287,72 +366,294 @@ public abstract class AbstractAlgoHalfEdge
 			if (noSwapAfterProcessing || minCos < -1.0)
 				continue;
 			
-			// Loop around current.apex with
-			//   current = current.nextApexLoop();
-			// to check all edges which have current.apex
-			// as apical vertex and swap them if this improves
-			// mesh quality.
-			Vertex o = current.origin();
-			boolean redo = true;
-			while(redo)
+			swapAroundApex(current);
+			afterSwapHook();
+		}
+		postProcessAllHalfEdges();
+		return processed > 0;
+	}
+
+	/**
+	 * Loop around current.apex with
+	 *   current = current.nextApexLoop();
+	 * to check all edges which have current.apex
+	 * as apical vertex and swap them if this improves
+	 * mesh quality.
+	 */
+	private void swapAroundApex(HalfEdge current)
+	{
+		Vertex o = current.origin();
+		boolean redo = true;
+		while(redo)
+		{
+			redo = false;
+			while(true)
 			{
-				redo = false;
-				while(true)
+				if (current.checkSwap3D(mesh, minCos) >= 0.0 && current.canSwapTopology())
 				{
-					if (current.checkSwap3D(mesh, minCos) >= 0.0 && current.canSwapTopology())
+					// Swap edge
+					for (int i = 0; i < 3; i++)
 					{
-						// Swap edge
-						for (int i = 0; i < 3; i++)
-						{
-							current = current.next();
-							removeFromTree(current);
-						}
-						HalfEdge sym = current.sym();
-						for (int i = 0; i < 2; i++)
-						{
-							sym = sym.next();
-							removeFromTree(sym);
-						}
-						Vertex a = current.apex();
-						current = (HalfEdge) mesh.edgeSwap(current);
-						swapped++;
-						redo = true;
-						// Now current = (ona)
-						assert a == current.apex();
-						for (int i = 0; i < 3; i++)
-						{
-							current = current.next();
-							for (Iterator<AbstractHalfEdge> it = current.fanIterator(); it.hasNext(); )
-							{
-								HalfEdge e = uniqueOrientation((HalfEdge) it.next());
-								addToTree(e);
-							}
-						}
-						sym = current.next().sym();
-						for (int i = 0; i < 2; i++)
+						current = current.next();
+						removeFromTree(current);
+					}
+					HalfEdge sym = current.sym();
+					for (int i = 0; i < 2; i++)
+					{
+						sym = sym.next();
+						removeFromTree(sym);
+					}
+					Vertex a = current.apex();
+					current = (HalfEdge) mesh.edgeSwap(current);
+					swapped++;
+					redo = true;
+					// Now current = (ona)
+					assert a == current.apex();
+					for (int i = 0; i < 3; i++)
+					{
+						current = current.next();
+						for (Iterator<AbstractHalfEdge> it = current.fanIterator(); it.hasNext(); )
 						{
-							sym = sym.next();
-							for (Iterator<AbstractHalfEdge> it = sym.fanIterator(); it.hasNext(); )
-							{
-								HalfEdge e = uniqueOrientation((HalfEdge) it.next());
-								addToTree(e);
-							}
+							HalfEdge e = uniqueOrientation((HalfEdge) it.next());
+							addToTree(e);
 						}
 					}
-					else
+					sym = current.next().sym();
+					for (int i = 0; i < 2; i++)
 					{
-						current = current.nextApexLoop();
-						if (current.origin() == o)
-							break;
+						sym = sym.next();
+						for (Iterator<AbstractHalfEdge> it = sym.fanIterator(); it.hasNext(); )
+						{
+							HalfEdge e = uniqueOrientation((HalfEdge) it.next());
+							addToTree(e);
+						}
 					}
 				}
+				else
+				{
+					current = current.nextApexLoop();
+					if (current.origin() == o)
+						break;
+				}
+			}
+		}
+	}
+
+	private boolean processAllHalfEdgesByBatch()
+	{
+		deferredActions = new TObjectIntHashMap<HalfEdge>(
+			COST_CHUNK_SIZE, 0.5f, NO_ACTION);
+		List<HalfEdge> batch = new ArrayList<HalfEdge>();
+		TDoubleArrayList batchCosts = new TDoubleArrayList();
+		Set<Vertex> locked = HashFactory.createSet();
+		int nrBatches = 0;
+		while (!tree.isEmpty() && !isTargetReached())
+		{
+			// Select cheap edges whose one-rings are disjoint.  Only the
+			// first maxBatchSize edges are candidates, so that edges are
+			// processed almost in the same order as in sequential mode.
+			batch.clear();
+			batchCosts.clear();
+			locked.clear();
+			int maxBatchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, tree.size() / 16));
+			int expectedTriangles = nrTriangles;
+			int scanned = 0;
+			for (Iterator<? extends SortedQueue.Entry<HalfEdge>> itt = tree.iterator(); itt.hasNext(); )
+			{
+				SortedQueue.Entry<HalfEdge> q = itt.next();
+				if (nrFinal == 0 && q.getValue() > tolerance)
+					break;
+				if (nrFinal != 0 && (moreTriangles ? expectedTriangles >= nrFinal : expectedTriangles <= nrFinal))
+					break;
+				if (scanned >= maxBatchSize)
+					break;
+				scanned++;
+				HalfEdge current = q.getData();
+				if (lockOneRings(current, locked))
+				{
+					batch.add(current);
+					batchCosts.add(q.getValue());
+					expectedTriangles += moreTriangles ? 2 : -2;
+				}
+			}
+			if (batch.isEmpty())
+				break;
+			nrBatches++;
+			// Process selected edges.  They are checked again, because
+			// edge swaps may have modified their neighborhood.
+			for (int i = 0, n = batch.size(); i < n; i++)
+			{
+				HalfEdge current = batch.get(i);
+				if (isTargetReached())
+					break;
+				if (!tree.contains(current))
+					continue;
+				preProcessEdge();
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					thisLogger().info("Edges processed: "+processed);
+				// Cost of this edge has not been modified, because
+				// endpoints do not belong to other one-rings
+				double cost = batchCosts.get(i);
+				if (!canProcessEdge(current))
+				{
+					if (thisLogger().isLoggable(Level.FINE))
+						thisLogger().fine("Edge not processed: "+current);
+					notProcessed++;
+					tree.remove(current);
+					notProcessedObjects.add(current);
+					continue;
+				}
+				current = processEdge(current, cost);
+				afterProcessHook();
+				processed++;
+				if (noSwapAfterProcessing || minCos < -1.0)
+					continue;
+				swapAroundApex(current);
+				afterSwapHook();
+			}
+			computeDeferredCosts();
+			// Update costs for edges which were not contracted because
+			// canProcessEdge returned false
+			if(tree.isEmpty())
+			{
+				for(HalfEdge e: notProcessedObjects)
+					tree.insert(e, cost(e));
+				notProcessedObjects.clear();
 			}
-			afterSwapHook();
 		}
+		deferredActions = null;
+		deferredEdges.clear();
+		thisLogger().info("Number of batches: "+nrBatches);
 		postProcessAllHalfEdges();
 		return processed > 0;
 	}
 
+	private boolean isTargetReached()
+	{
+		if (nrFinal == 0)
+			return false;
+		return moreTriangles ? nrTriangles >= nrFinal : nrTriangles <= nrFinal;
+	}
+
+	/**
+	 * Lock vertices of the one-rings of edge endpoints.
+	 * @return false if one of these vertices had already been locked, and
+	 * in this case no vertex is locked.
+	 */
+	private boolean lockOneRings(HalfEdge e, Set<Vertex> locked)
+	{
+		Vertex o = e.origin();
+		Vertex d = e.destination();
+		if (locked.contains(o) || locked.contains(d))
+			return false;
+		ring.clear();
+		ring.add(o);
+		ring.add(d);
+		for (Iterator<Vertex> it = o.getNeighbourIteratorVertex(); it.hasNext(); )
+			ring.add(it.next());
+		for (Iterator<Vertex> it = d.getNeighbourIteratorVertex(); it.hasNext(); )
+			ring.add(it.next());
+		for (Vertex v : ring)
+		{
+			if (v != mesh.outerVertex && locked.contains(v))
+				return false;
+		}
+		locked.addAll(ring);
+		return true;
+	}
+	private void defer(HalfEdge h, int action)
+	{
+		// Edge is tagged as if it was in the tree, so that
+		// uniqueOrientation() returns the same orientation
+		h.setAttributes(AbstractHalfEdge.MARKED);
+		int old = deferredActions.get(h);
+		if (old == NO_ACTION)
+		{
+			deferredEdges.add(h);
+			deferredActions.put(h, action);
+		}
+		else if (action < old)
+			deferredActions.put(h, action);
+	}
+
+	/** Compute costs of deferred edges, and insert them into the tree */
+	private void computeDeferredCosts()
+	{
+		if (deferredActions.isEmpty())
+		{
+			deferredEdges.clear();
+			return;
+		}
+		HalfEdge[] edges = new HalfEdge[deferredActions.size()];
+		int[] actions = new int[edges.length];
+		double[] costs = new double[edges.length];
+		int n = 0;
+		for (HalfEdge h : deferredEdges)
+		{
+			// An edge may appear twice if it has been removed and
+			// deferred again, only its first occurrence is kept
+			int action = deferredActions.remove(h);
+			if (action == NO_ACTION)
+				continue;
+			edges[n] = h;
+			actions[n] = action;
+			n++;
+		}
+		assert n == edges.length && deferredActions.isEmpty();
+		deferredEdges.clear();
+		CostTask task = new CostTask(edges, costs, 0, n);
+		if (n <= COST_CHUNK_SIZE)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+		for (int i = 0; i < n; i++)
+		{
+			HalfEdge h = edges[i];
+			double val = costs[i];
+			if (actions[i] == ADD_TO_TREE && nrFinal == 0 && val > tolerance)
+			{
+				if (!tree.contains(h))
+					h.clearAttributes(AbstractHalfEdge.MARKED);
+				continue;
+			}
+			notProcessedObjects.remove(h);
+			if (tree.contains(h))
+				tree.update(h, val);
+			else
+				tree.insert(h, val);
+			h.setAttributes(AbstractHalfEdge.MARKED);
+		}
+	}
+
+	private final class CostTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 6138217396342850812L;
+		private final HalfEdge[] edges;
+		private final double[] costs;
+		private final int from, to;
+		CostTask(HalfEdge[] edges, double[] costs, int from, int to)
+		{
+			this.edges = edges;
+			this.costs = costs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > COST_CHUNK_SIZE)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new CostTask(edges, costs, from, middle),
+					new CostTask(edges, costs, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++)
+				costs[i] = concurrentCost(edges[i]);
+		}
+	}
+
 	public void setNoSwapAfterProcessing(boolean noSwapAfterProcessing)
 	{
 		this.noSwapAfterProcessing = noSwapAfterProcessing;
@@ -390,7 +691,7 @@ public abstract class AbstractAlgoHalfEdge
 			ObjectInputStream q = new ObjectInputStream(istream);
 			System.out.println("Loading restored state");
 			mesh = (Mesh) q.readObject();
-			tree = (QSortedTree<HalfEdge>) q.readObject();
+			tree = (SortedQueue<HalfEdge>) q.readObject();
 			appendRestoreState(q);
 			System.out.println("... Done.");
 			q.close();
@@ -423,6 +724,13 @@ public abstract class AbstractAlgoHalfEdge
 
 	protected void updateCost(HalfEdge f)
 	{
+		if (deferredActions != null)
+		{
+			HalfEdge h = uniqueOrientation(f);
+			notProcessedObjects.remove(h);
+			defer(h, UPDATE_COST);
+			return;
+		}
 		updateCost(f, cost(f));
 	}
 
@@ -444,6 +752,12 @@ public abstract class AbstractAlgoHalfEdge
 	protected HalfEdge removeOneFromTree(HalfEdge e)
 	{
 		HalfEdge h = uniqueOrientation(e);
+		if (deferredActions != null && deferredActions.remove(h) != NO_ACTION)
+		{
+			// Edge may also be in the tree if its cost was updated
+			tree.remove(h);
+			return h;
+		}
 		if(notProcessedObjects.remove(h))
 		{
 			// and edge cannot be in tree and in notProcessedObjects at the same
@@ -25,8 +25,9 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
-import org.jcae.mesh.amibe.util.QSortedTree;
+import org.jcae.mesh.amibe.util.DaryHeap;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.SortedQueue;
 
 import java.util.Stack;
 import java.util.Iterator;
@@ -52,7 +53,7 @@ public abstract class AbstractAlgoVertex
 	int notInTree = 0;
 	private int progressBarStatus = 10000;
 	double minCos = 0.95;
-	QSortedTree<Vertex> tree = new PAVLSortedTree<Vertex>();
+	SortedQueue<Vertex> tree = new PAVLSortedTree<Vertex>();
 	private Collection<Vertex> nodeset;
 	
 	protected abstract void preProcessAllVertices();
@@ -100,6 +101,21 @@ public abstract class AbstractAlgoVertex
 		progressBarStatus = n;
 	}
 
+	/**
+	 * Sort vertices with an indexed d-ary heap instead of a binary tree.
+	 * This method must be called before {@link #compute}.
+	 *
+	 * @param arity  number of children of heap nodes, or 0 to use
+	 * the default binary tree
+	 */
+	public void setHeapArity(int arity)
+	{
+		if (arity == 0)
+			tree = new PAVLSortedTree<Vertex>();
+		else
+			tree = new DaryHeap<Vertex>(arity, mesh.getTriangles().size() / 2 + 1);
+	}
+
 	private void computeTree()
 	{
 		if (nodeset == null)
@@ -146,12 +162,12 @@ public abstract class AbstractAlgoVertex
 		{
 			preProcessVertex();
 			Vertex current = null;
-			Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator();
+			Iterator<? extends SortedQueue.Entry<Vertex>> itt = tree.iterator();
 			if (processed > 0 && (processed % progressBarStatus) == 0)
 				thisLogger().info("Vertices processed: "+processed);
 			while (itt.hasNext())
 			{
-				QSortedTree.Node<Vertex> q = itt.next();
+				SortedQueue.Entry<Vertex> q = itt.next();
 				current = q.getData();
 				cost = q.getValue();
 				if (cost > tolerance)
@@ -163,7 +179,7 @@ public abstract class AbstractAlgoVertex
 				notProcessed++;
 				// Add a penalty to vertices which could not have been
 				// processed.  This has to be done outside this loop,
-				// because PAVLSortedTree instances must not be modified
+				// because sorted queues must not be modified
 				// when walked through.
 				stackNotProcessedObject.push(current);
 				if (tolerance != 0.0)
@@ -223,7 +239,7 @@ public abstract class AbstractAlgoVertex
 			ObjectInputStream q = new ObjectInputStream(istream);
 			System.out.println("Loading restored state");
 			mesh = (Mesh) q.readObject();
-			tree = (QSortedTree<Vertex>) q.readObject();
+			tree = (SortedQueue<Vertex>) q.readObject();
 			appendRestoreState(q);
 			System.out.println("... Done.");
 			q.close();
@@ -34,14 +34,15 @@ import org.jcae.mesh.amibe.util.AStar;
  * one half edge.
  * Unlike EdgesCollapser this algorithm does not need the vertices to be aligned
  * because it internally use a A-star algorithm.
- * Moreover if the Ming Zou TriMultPoly tool is available it will never fail
- * to collapse.
- * @see TriMultPoly
+ * It fails when edges of the path cannot be collapsed.
+ * TODO: in this case, remesh triangles around the path with
+ * {@link org.jcae.mesh.amibe.projection.HoleTriangulator}.  The path is made
+ * of boundary or non-manifold edges, so this needs AbstractLocaleRemesher to
+ * create the new boundary edge and its virtual triangles.
  * @author Jerome Robert
  */
 public class EdgesCollapserNG {
 	private final Mesh mesh;
-	private final TriMultPoly triMultPoly = new TriMultPoly();
 	private final AStar<Vertex> astar = new AStar<Vertex>()
 	{
 		private final Collection<Vertex> neightbors = new ArrayList<Vertex>();
@@ -146,7 +147,7 @@ public class EdgesCollapserNG {
 	 * @param v2
 	 * @param intermediate a vertex between v1 and v2. This vertex help to find
 	 * the path between v1 and v2. It may be null.
-	 * @return
+	 * @return the edge v1 v2, or null if some edges cannot be collapsed
 	 */
 	public AbstractHalfEdge collapse(Vertex v1, Vertex v2, Vertex intermediate)
 	{
@@ -219,18 +220,6 @@ public class EdgesCollapserNG {
 		if(path.size() == 2)
 			return getEdge(v1, v2);
 		else
-		{
-			if(triMultPoly.isAvailable())
-			{
-				runTriMultPoly(path);
-				return getEdge(v1, v2);
-			}
-			else
-				return null;
-		}
-	}
-
-	private void runTriMultPoly(List<Vertex> path) {
-
+			return null;
 	}
 }
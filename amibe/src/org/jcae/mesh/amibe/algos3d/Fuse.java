@@ -28,7 +28,9 @@ import java.util.Iterator;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.EuclidianMetric3D;
 import org.jcae.mesh.amibe.metrics.KdTree;
+import org.jcae.mesh.amibe.metrics.Metric;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -100,17 +102,21 @@ public class Fuse
 			bbox[i+3] = bmax[i];
 		}
 		Map<Vertex, Vertex> map = HashFactory.createMap();
+		// Tolerances are euclidian distances
+		Metric metric = new EuclidianMetric3D();
 		for(double tolerance: tolerances)
 		{
 			KdTree<Vertex> octree = new KdTree<Vertex>(bbox);
+			KdTree<Vertex>.Query query = octree.new Query();
 			map.clear();
 			for (Vertex n: nodes)
 			{
-				Vertex p = octree.getNearestVertex(mesh.getMetric(n), n);
-				if (p == null || n.sqrDistance3D(p) > tolerance)
+				// Nearest vertex within tolerance
+				if (octree.getNearestVertices(metric, n, 1, tolerance, query) == 0)
 					octree.add(n);
 				else
 				{
+					Vertex p = query.get(0);
 					LOGGER.log(Level.FINE,
 						"Node {0} is removed, it is too close from {1}",
 						new Object[]{n, p});
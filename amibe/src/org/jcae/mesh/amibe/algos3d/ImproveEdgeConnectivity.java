@@ -77,6 +77,11 @@ public class ImproveEdgeConnectivity extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Coplanar value: "+minCos);
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
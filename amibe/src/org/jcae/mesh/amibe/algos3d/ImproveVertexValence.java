@@ -39,7 +39,7 @@ import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.amibe.util.HashFactory;
-import org.jcae.mesh.amibe.util.QSortedTree.Node;
+import org.jcae.mesh.amibe.util.SortedQueue;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
 
@@ -110,6 +110,11 @@ public class ImproveVertexValence extends AbstractAlgoVertex
 			{
 				maxValence = Integer.parseInt(val);
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -570,10 +575,10 @@ public class ImproveVertexValence extends AbstractAlgoVertex
 	/** Debugging method to check that the tree has been properly updated */
 	private void checkTree()
 	{
-		Iterator<Node<Vertex>> it = tree.iterator();
+		Iterator<? extends SortedQueue.Entry<Vertex>> it = tree.iterator();
 		while(it.hasNext())
 		{
-			Node<Vertex> n = it.next();
+			SortedQueue.Entry<Vertex> n = it.next();
 			if(n.getValue() != cost(n.getData()))
 			{
 				System.err.println(n.getData());
@@ -93,6 +93,11 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 				freeEdgesOnly = Boolean.parseBoolean(val);
 				LOGGER.fine("freeEdgesOnly: "+freeEdgesOnly);
 			}
+			else if ("concurrentCosts".equals(key))
+			{
+				setConcurrentCosts(Boolean.parseBoolean(val));
+				LOGGER.fine("concurrentCosts: "+val);
+			}
 			else if ("freeEdgeTol".equals(key))
 			{
 				freeEdgeTol = Double.parseDouble(val);
@@ -103,6 +108,11 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Minimum dot product of face normals allowed for swapping an edge: "+minCos);
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else if(!metrics.isKnownOption(key))
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -113,14 +113,34 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 {
 	private static final Logger LOGGER=Logger.getLogger(QEMDecimateHalfEdge.class.getName());
 	private Quadric3DError.Placement placement = Quadric3DError.Placement.OPTIMAL;
-	private HashMap<Vertex, Quadric3DError> quadricMap = null;
+	private QuadricStore quadrics = null;
 	private boolean freeEdgesOnly = false;
 	private Vertex v3;
-	private Quadric3DError q3 = new Quadric3DError();
+	private final Quadric3DError q3 = new Quadric3DError();
+	// Views of vertex quadrics used by canProcessEdge()
+	private final Quadric3DError q1View = new Quadric3DError();
+	private final Quadric3DError q2View = new Quadric3DError();
 	// vCostOpt and qCostOpt must be used only by cost() method.
 	// Their aim is to avoid creating new objects for each cost() call.
+	// qCostOpt[0] is the sum of quadrics, qCostOpt[1] and qCostOpt[2]
+	// are views of vertex quadrics.
 	private final Vertex vCostOpt;
-	private final Quadric3DError qCostOpt = new Quadric3DError();
+	private final Quadric3DError [] qCostOpt = newCostQuadrics();
+	// Per-thread vertex and quadrics used by concurrentCost()
+	private final ThreadLocal<Vertex> vConcurrentCost = new ThreadLocal<Vertex>() {
+		@Override
+		protected Vertex initialValue()
+		{
+			return mesh.createVertex(0.0, 0.0, 0.0);
+		}
+	};
+	private final ThreadLocal<Quadric3DError[]> qConcurrentCost = new ThreadLocal<Quadric3DError[]>() {
+		@Override
+		protected Quadric3DError[] initialValue()
+		{
+			return newCostQuadrics();
+		}
+	};
 	private static final boolean testDump = false;
 	private final MetricSupport metrics;
 	private MetricSupport.AnalyticMetricInterface analyticMetric;
@@ -132,7 +152,8 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	 * @param m  the <code>Mesh</code> instance to refine.
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
-	 *        <code>placement</code> and <code>maxtriangles</code>.
+	 *        <code>placement</code>, <code>maxtriangles</code>,
+	 *        <code>concurrentCosts</code> and <code>heapArity</code>.
 	 */
 	public QEMDecimateHalfEdge(final Mesh m, final Map<String, String> options)
 	{
@@ -180,6 +201,11 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 				freeEdgesOnly = Boolean.parseBoolean(val);
 				LOGGER.info("freeEdgesOnly: "+freeEdgesOnly);
 			}
+			else if ("concurrentCosts".equals(key))
+			{
+				setConcurrentCosts(Boolean.parseBoolean(val));
+				LOGGER.info("concurrentCosts: "+val);
+			}
 			// This is a workaround for a bug which currently cannot be found.
 			// When the metric is small close to a non-manifold or boundary
 			// edge, adjacent triangles may be collapsed. So it break the border.
@@ -194,6 +220,11 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 					}
 				}
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else if(!metrics.isKnownOption(key))
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -256,17 +287,13 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	{
 		metrics.compute();
 		final int roughNrNodes = mesh.getTriangles().size()/2;
-		quadricMap = new HashMap<Vertex, Quadric3DError>(roughNrNodes);
+		quadrics = new QuadricStore(roughNrNodes);
 		for (Triangle af: mesh.getTriangles())
 		{
 			if (!af.isWritable())
 				continue;
 			for (int i = 0; i < 3; i++)
-			{
-				final Vertex n = af.getV(i);
-				if (!quadricMap.containsKey(n))
-					quadricMap.put(n, new Quadric3DError());
-			}
+				quadrics.add(af.getV(i));
 		}
 		// Compute quadrics
 		final double [] vect1 = new double[3];
@@ -291,8 +318,8 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 			double d = - Matrix3D.prodSca(normal, f.getV0());
 			for (int i = 0; i < 3; i++)
 			{
-				final Quadric3DError q = quadricMap.get(f.getV(i));
-				q.addError(normal, d, area);
+				quadrics.get(f.getV(i), q1View);
+				q1View.addError(normal, d, area);
 			}
 			// Penalty for boundary triangles
 			HalfEdge e = (HalfEdge) f.getAbstractHalfEdge();
@@ -319,10 +346,10 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 								vect2[k] *=  invNorm;
 						}
 						d = - Matrix3D.prodSca(vect2, b.origin());
-						final Quadric3DError q1 = quadricMap.get(b.origin());
-						final Quadric3DError q2 = quadricMap.get(b.destination());
-						q1.addWeightedError(vect2, d, norm);
-						q2.addWeightedError(vect2, d, norm);
+						quadrics.get(b.origin(), q1View);
+						quadrics.get(b.destination(), q2View);
+						q1View.addWeightedError(vect2, d, norm);
+						q2View.addWeightedError(vect2, d, norm);
 					}
 				}
 			}
@@ -340,17 +367,16 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	protected void appendDumpState(final ObjectOutputStream out)
 		throws IOException
 	{
-		out.writeObject(quadricMap);
+		out.writeObject(quadrics);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	protected void appendRestoreState(final ObjectInputStream q)
 		throws IOException
 	{
 		try
 		{
-			quadricMap = (HashMap<Vertex, Quadric3DError>) q.readObject();
+			quadrics = (QuadricStore) q.readObject();
 		}
 		catch (final ClassNotFoundException ex)
 		{
@@ -361,6 +387,23 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 
 	@Override
 	protected final double cost(final HalfEdge e)
+	{
+		return cost(e, qCostOpt, vCostOpt);
+	}
+
+	@Override
+	protected final double concurrentCost(final HalfEdge e)
+	{
+		return cost(e, qConcurrentCost.get(), vConcurrentCost.get());
+	}
+
+	private static Quadric3DError[] newCostQuadrics()
+	{
+		return new Quadric3DError[] {
+			new Quadric3DError(), new Quadric3DError(), new Quadric3DError() };
+	}
+
+	private double cost(final HalfEdge e, final Quadric3DError [] qCost, final Vertex vCost)
 	{
 		final Vertex o = e.origin();
 		final Vertex d = e.destination();
@@ -381,13 +424,15 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		if (!v1.isMutable() && !v2.isMutable())
 			return Double.MAX_VALUE;
 
-		final Quadric3DError q1 = quadricMap.get(o);
-		assert q1 != null : o;
-		final Quadric3DError q2 = quadricMap.get(d);
-		assert q2 != null : d;
-		qCostOpt.computeQuadric3DError(q1, q2);
-		qCostOpt.optimalPlacement(o, d, q1, q2, placement, vCostOpt);
-		final double ret = q1.value(vCostOpt) + q2.value(vCostOpt);
+		final Quadric3DError q1 = qCost[1];
+		final Quadric3DError q2 = qCost[2];
+		boolean found = quadrics.get(o, q1);
+		assert found : o;
+		found = quadrics.get(d, q2);
+		assert found : d;
+		qCost[0].computeQuadric3DError(q1, q2);
+		qCost[0].optimalPlacement(o, d, q1, q2, placement, vCost);
+		final double ret = q1.value(vCost) + q2.value(vCost);
 		// TODO: check why this assertion sometimes fail
 		// assert ret >= -1.e-2 : q1+"\n"+q2+"\n"+ret;
 		return ret;
@@ -400,12 +445,18 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		final Vertex v1 = current.origin();
 		final Vertex v2 = current.destination();
 		assert v1 != v2 : current;
-		final Quadric3DError q1 = quadricMap.get(v1);
-		final Quadric3DError q2 = quadricMap.get(v2);
-		assert q1 != null : v1;
-		assert q2 != null : v2;
-		q3.computeQuadric3DError(q1, q2);
-		q3.optimalPlacement(v1, v2, q1, q2, placement, v3);
+		// When a target number of triangles is given, edges with an
+		// infinite cost are not discarded by tolerance
+		if (!v1.isWritable() || !v2.isWritable())
+			return false;
+		if (!v1.isMutable() && !v2.isMutable())
+			return false;
+		boolean found = quadrics.get(v1, q1View);
+		assert found : v1;
+		found = quadrics.get(v2, q2View);
+		assert found : v2;
+		q3.computeQuadric3DError(q1View, q2View);
+		q3.optimalPlacement(v1, v2, q1View, q2View, placement, v3);
 		if (!mesh.canCollapseEdge(current, v3))
 			return false;
 		if (!metrics.isEmpty())
@@ -505,16 +556,15 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		// are not.  Add an isMutable() test, but ideally isManifold()
 		// should get fixed.
 		Vertex vFree = null;
-		Quadric3DError qFree = null;
 		if (v1.isManifold() && v1.isMutable())
 		{
 			vFree = v1;
-			qFree = quadricMap.remove(vFree);
+			quadrics.remove(vFree);
 		}
 		if (v2.isManifold() && v2.isMutable())
 		{
 			vFree = v2;
-			qFree = quadricMap.remove(vFree);
+			quadrics.remove(vFree);
 		}
 		current = (HalfEdge) mesh.edgeCollapse(current, v3);
 		if (liaison != null)
@@ -533,7 +583,8 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		}
 		// Now current == (v3*a)
 		// Update edge costs
-		quadricMap.put(v3, q3);
+		// q3 is copied into the slot which has just been released
+		quadrics.put(v3, q3);
 		assert current != null : v3+" not connected to "+apex;
 		if(!metrics.isEmpty())
 			metrics.put(v3, metrics.get(v3, current.getTri()));
@@ -542,9 +593,6 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		v3 = vFree;
 		if (v3 == null)
 			v3 = mesh.createVertex(0.0, 0.0, 0.0);
-		q3 = qFree;
-		if (q3 == null)
-			q3 = new Quadric3DError();
 		updateIncidentEdges(current);
 		if (!freeEdgesOnly && minCos >= -1.0)
 			checkAndSwapAroundOrigin(current);
@@ -21,7 +21,6 @@
 
 package org.jcae.mesh.amibe.algos3d;
 
-import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.ds.Vertex;
 import java.io.Serializable;
 import org.jcae.mesh.amibe.metrics.Location;
@@ -64,12 +63,74 @@ public class Quadric3DError implements Serializable
 {
 	private static final long serialVersionUID = -9198789443096689948L;
 
-	private final double [] A = new double[6];
-	private final double [] b = new double[3];
-	private double c;
+	// Size of a quadric: 6 coefficients for the symmetric matrix A,
+	// 3 for vector b and c
+	static final int SIZE = 10;
+	private static final int B = 6;
+	private static final int C = 9;
+	// Coefficients are stored in data[offset..offset+SIZE[, either in
+	// a private array or in a QuadricStore slot
+	private double [] data;
+	private int offset;
 	private double detA;
 	private boolean cachedDet = false;
 
+	/**
+	 * Create a quadric with its own storage.
+	 */
+	public Quadric3DError()
+	{
+		data = new double[SIZE];
+	}
+
+	/**
+	 * Make this instance a view of the quadric stored at
+	 * <code>data[offset..offset+10[</code>.
+	 */
+	final void wrap(double [] data, int offset)
+	{
+		this.data = data;
+		this.offset = offset;
+		cachedDet = false;
+	}
+
+	/**
+	 * Copy coefficients of another quadric.
+	 */
+	public final void copy(Quadric3DError that)
+	{
+		System.arraycopy(that.data, that.offset, data, offset, SIZE);
+		cachedDet = false;
+	}
+
+	/**
+	 * Copy coefficients into <code>dest[destOffset..destOffset+10[</code>.
+	 */
+	final void copyTo(double [] dest, int destOffset)
+	{
+		System.arraycopy(data, offset, dest, destOffset, SIZE);
+	}
+
+	/**
+	 * Reset all coefficients to zero.
+	 */
+	public final void clear()
+	{
+		for (int i = 0; i < SIZE; i++)
+			data[offset + i] = 0.0;
+		cachedDet = false;
+	}
+
+	private double a(int i)
+	{
+		return data[offset + i];
+	}
+
+	private double b(int i)
+	{
+		return data[offset + B + i];
+	}
+
 	public enum Placement {
 		// Select the best vertex
 		VERTEX("VERTEX"),
@@ -104,24 +165,19 @@ public class Quadric3DError implements Serializable
 	// Add 2 quadrics
 	public final void computeQuadric3DError(Quadric3DError q1, Quadric3DError q2)
 	{
-		for (int i = 0; i < 6; i++)
-			A[i] = q1.A[i] + q2.A[i];
-
-		for (int i = 0; i < 3; i++)
-			b[i] = q1.b[i] + q2.b[i];
-
-		c = q1.c + q2.c;
+		for (int i = 0; i < SIZE; i++)
+			data[offset + i] = q1.data[q1.offset + i] + q2.data[q2.offset + i];
 		cachedDet = false;
 	}
 
 	public final double value(Location vect)
 	{
-		double ret = c;
-		ret += 2.0 * Matrix3D.prodSca(b, vect);
+		double ret = data[offset + C];
+		ret += 2.0 * (b(0) * vect.getX() + b(1) * vect.getY() + b(2) * vect.getZ());
 		ret +=
-			(A[0] * vect.getX() + A[1] * vect.getY() + A[2] * vect.getZ()) * vect.getX() +
-			(A[1] * vect.getX() + A[3] * vect.getY() + A[4] * vect.getZ()) * vect.getY() +
-			(A[2] * vect.getX() + A[4] * vect.getY() + A[5] * vect.getZ()) * vect.getZ();
+			(a(0) * vect.getX() + a(1) * vect.getY() + a(2) * vect.getZ()) * vect.getX() +
+			(a(1) * vect.getX() + a(3) * vect.getY() + a(4) * vect.getZ()) * vect.getY() +
+			(a(2) * vect.getX() + a(4) * vect.getY() + a(5) * vect.getZ()) * vect.getZ();
 		return ret;
 	}
 
@@ -129,15 +185,15 @@ public class Quadric3DError implements Serializable
 	{
 		for (int k = 0; k < 3; k++)
 		{
-			b[k] += a * d * normal[k];
-			A[k] += a * normal[0] * normal[k];
+			data[offset + B + k] += a * d * normal[k];
+			data[offset + k] += a * normal[0] * normal[k];
 		}
 
-		A[3] += a * normal[1] * normal[1];
-		A[4] += a * normal[1] * normal[2];
-		A[5] += a * normal[2] * normal[2];
+		data[offset + 3] += a * normal[1] * normal[1];
+		data[offset + 4] += a * normal[1] * normal[2];
+		data[offset + 5] += a * normal[2] * normal[2];
 
-		c += a * d*d;
+		data[offset + C] += a * d*d;
 		cachedDet = false;
 	}
 
@@ -146,15 +202,15 @@ public class Quadric3DError implements Serializable
 	{
 		for (int k = 0; k < 3; k++)
 		{
-			b[k] += scale * d * normal[k];
-			A[k] += scale * normal[0] * normal[k];
+			data[offset + B + k] += scale * d * normal[k];
+			data[offset + k] += scale * normal[0] * normal[k];
 		}
 
-		A[3] += scale * normal[1] * normal[1];
-		A[4] += scale * normal[1] * normal[2];
-		A[5] += scale * normal[2] * normal[2];
+		data[offset + 3] += scale * normal[1] * normal[1];
+		data[offset + 4] += scale * normal[1] * normal[2];
+		data[offset + 5] += scale * normal[2] * normal[2];
 
-		c += scale * d*d;
+		data[offset + C] += scale * d*d;
 		cachedDet = false;
 	}
 
@@ -162,7 +218,7 @@ public class Quadric3DError implements Serializable
 	{
 		if (!cachedDet)
 		{
-			detA = A[0] * (A[3] * A[5] - A[4] * A[4]) + A[1] * (A[4] * A[2] - A[1] * A[5]) + A[2] * (A[1] * A[4] - A[3] * A[2]);
+			detA = a(0) * (a(3) * a(5) - a(4) * a(4)) + a(1) * (a(4) * a(2) - a(1) * a(5)) + a(2) * (a(1) * a(4) - a(3) * a(2));
 			cachedDet = true;
 		}
 		return detA;
@@ -213,33 +269,33 @@ public class Quadric3DError implements Serializable
 			}
 			break;
 		case OPTIMAL:
-			norm2Row0 = A[0]*A[0] + A[1]*A[1] + A[2]*A[2];
-			norm2Row1 = A[1]*A[1] + A[3]*A[3] + A[4]*A[4];
-			norm2Row2 = A[2]*A[2] + A[4]*A[4] + A[5]*A[5];
+			norm2Row0 = a(0)*a(0) + a(1)*a(1) + a(2)*a(2);
+			norm2Row1 = a(1)*a(1) + a(3)*a(3) + a(4)*a(4);
+			norm2Row2 = a(2)*a(2) + a(4)*a(4) + a(5)*a(5);
 			norm = Math.sqrt(Math.max(norm2Row0, Math.max(norm2Row1, norm2Row2)));
 			ret.copy(bestCandidateV1V2Ref(v1, v2, q1, q2));
 			if (!ret.isMutable())
 				return;
 			if (detA() > 1.e-10*(norm*norm*norm))
 			{
-				double cfxx = A[3] * A[5] - A[4] * A[4];
-				double cfxy = A[2] * A[4] - A[1] * A[5];
-				double cfxz = A[1] * A[4] - A[2] * A[3];
-				double cfyy = A[0] * A[5] - A[2] * A[2];
-				double cfyz = A[2] * A[1] - A[0] * A[4];
-				double cfzz = A[0] * A[3] - A[1] * A[1];
-				double dx = (cfxx * b[0] + cfxy * b[1] + cfxz * b[2]) / detA;
-				double dy = (cfxy * b[0] + cfyy * b[1] + cfyz * b[2]) / detA;
-				double dz = (cfxz * b[0] + cfyz * b[1] + cfzz * b[2]) / detA;
+				double cfxx = a(3) * a(5) - a(4) * a(4);
+				double cfxy = a(2) * a(4) - a(1) * a(5);
+				double cfxz = a(1) * a(4) - a(2) * a(3);
+				double cfyy = a(0) * a(5) - a(2) * a(2);
+				double cfyz = a(2) * a(1) - a(0) * a(4);
+				double cfzz = a(0) * a(3) - a(1) * a(1);
+				double dx = (cfxx * b(0) + cfxy * b(1) + cfxz * b(2)) / detA;
+				double dy = (cfxy * b(0) + cfyy * b(1) + cfyz * b(2)) / detA;
+				double dz = (cfxz * b(0) + cfyz * b(1) + cfzz * b(2)) / detA;
 				ret.moveTo(-dx, -dy, -dz);
 			}
 			else
 				moveAlongSegment(v1, v2, q1, q2, ret);
 			break;
 		case EDGE:
-			norm2Row0 = A[0]*A[0] + A[1]*A[1] + A[2]*A[2];
-			norm2Row1 = A[1]*A[1] + A[3]*A[3] + A[4]*A[4];
-			norm2Row2 = A[2]*A[2] + A[4]*A[4] + A[5]*A[5];
+			norm2Row0 = a(0)*a(0) + a(1)*a(1) + a(2)*a(2);
+			norm2Row1 = a(1)*a(1) + a(3)*a(3) + a(4)*a(4);
+			norm2Row2 = a(2)*a(2) + a(4)*a(4) + a(5)*a(5);
 			norm = Math.sqrt(Math.max(norm2Row0, Math.max(norm2Row1, norm2Row2)));
 			ret.copy(bestCandidateV1V2Ref(v1, v2, q1, q2));
 			if (!ret.isMutable())
@@ -254,9 +310,9 @@ public class Quadric3DError implements Serializable
 				double dz = v2.getZ() - v1.getZ();
 				double den = 0.0;
 
-				double num = b[0] * dx + b[1] * dy + b[2] * dz;
-				den += A[0] * dx * dx + 2.0 * A[1] * dx * dy + 2.0 * A[2] * dx * dz + A[3] * dy * dy + 2.0 * A[4] * dy * dz + A[5] * dz * dz;
-				num += A[0] * dx * v1.getX() + A[1] * (dx * v1.getY() + dy * v1.getX()) + A[2] * (dx * v1.getZ() + dz * v1.getX()) + A[3] * dy * v1.getY() + A[4] * (dy * v1.getZ() + dz * v1.getY()) + A[5] * dz * v1.getZ();
+				double num = b(0) * dx + b(1) * dy + b(2) * dz;
+				den += a(0) * dx * dx + 2.0 * a(1) * dx * dy + 2.0 * a(2) * dx * dz + a(3) * dy * dy + 2.0 * a(4) * dy * dz + a(5) * dz * dz;
+				num += a(0) * dx * v1.getX() + a(1) * (dx * v1.getY() + dy * v1.getX()) + a(2) * (dx * v1.getZ() + dz * v1.getX()) + a(3) * dy * v1.getY() + a(4) * (dy * v1.getZ() + dz * v1.getY()) + a(5) * dz * v1.getZ();
 				if (den > 1.0e-4 * Math.abs(num))
 				{
 					double s = - num / den;
@@ -305,9 +361,9 @@ public class Quadric3DError implements Serializable
 	@Override
 	public final String toString()
 	{
-		return "A: data|0][]  "+A[0]+" "+A[1]+" "+A[2]+"\ndata|1][]  "+A[1]+" "+A[3]+" "+A[4]+"\ndata|2][]  "+A[2]+" "+A[4]+" "+A[5]+"\n"+
-		       " b: "+b[0]+" "+b[1]+" "+b[2]+"\n"+
-		       " c: "+c;
+		return "A: data|0][]  "+a(0)+" "+a(1)+" "+a(2)+"\ndata|1][]  "+a(1)+" "+a(3)+" "+a(4)+"\ndata|2][]  "+a(2)+" "+a(4)+" "+a(5)+"\n"+
+		       " b: "+b(0)+" "+b(1)+" "+b(2)+"\n"+
+		       " c: "+data[offset + C];
 	}
 	
 }
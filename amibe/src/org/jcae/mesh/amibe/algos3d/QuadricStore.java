@@ -0,0 +1,154 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos3d;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import org.jcae.mesh.amibe.ds.Vertex;
+
+/**
+ * Packed storage of vertex quadrics.  Coefficients of all quadrics are
+ * stored in a single <code>double[]</code>, 10 values per slot.  Slot
+ * numbers are stored into vertices, see {@link Vertex#getIndex}, so that a
+ * quadric is found by an array offset; slots of removed vertices are
+ * recycled.  There is thus no object allocated per vertex, and no hash
+ * lookup.  Vertices must not be stored into another
+ * {@link org.jcae.mesh.amibe.util.Indexable} container at the same time.
+ *
+ * Quadrics are accessed through {@link Quadric3DError} views, see
+ * {@link #get}.  Views become invalid when a slot is allocated, because
+ * the underlying array may then be reallocated.
+ */
+final class QuadricStore implements Serializable
+{
+	private static final long serialVersionUID = -2853127442092764371L;
+	private static final int NO_SLOT = -1;
+	// Vertices indexed by slot numbers
+	private Vertex [] owners;
+	private double [] data;
+	private int nextSlot;
+	private int size;
+	// Slots which can be recycled
+	private int [] freeSlots = new int[16];
+	private int nrFreeSlots;
+
+	/**
+	 * Create an empty store.
+	 * @param capacity  expected number of vertices
+	 */
+	QuadricStore(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		owners = new Vertex[capacity];
+		data = new double[capacity * Quadric3DError.SIZE];
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean contains(Vertex v)
+	{
+		return slot(v) != NO_SLOT;
+	}
+
+	/**
+	 * Add a null quadric for this vertex if it is not already present.
+	 */
+	void add(Vertex v)
+	{
+		if (slot(v) == NO_SLOT)
+		{
+			int slot = newSlot(v);
+			Arrays.fill(data, slot * Quadric3DError.SIZE, (slot + 1) * Quadric3DError.SIZE, 0.0);
+		}
+	}
+
+	/**
+	 * Make <code>view</code> point to the quadric of a vertex.
+	 * @return <code>false</code> if there is no quadric for this vertex
+	 */
+	boolean get(Vertex v, Quadric3DError view)
+	{
+		int slot = slot(v);
+		if (slot == NO_SLOT)
+			return false;
+		view.wrap(data, slot * Quadric3DError.SIZE);
+		return true;
+	}
+
+	/**
+	 * Store a copy of quadric <code>q</code> for this vertex.
+	 */
+	void put(Vertex v, Quadric3DError q)
+	{
+		int slot = slot(v);
+		if (slot == NO_SLOT)
+			slot = newSlot(v);
+		q.copyTo(data, slot * Quadric3DError.SIZE);
+	}
+
+	/**
+	 * Remove the quadric of a vertex, its slot will be recycled.
+	 * @return <code>false</code> if there is no quadric for this vertex
+	 */
+	boolean remove(Vertex v)
+	{
+		int slot = slot(v);
+		if (slot == NO_SLOT)
+			return false;
+		owners[slot] = null;
+		v.setIndex(NO_SLOT);
+		size--;
+		if (nrFreeSlots == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+		freeSlots[nrFreeSlots++] = slot;
+		return true;
+	}
+
+	private int slot(Vertex v)
+	{
+		int slot = v.getIndex();
+		if (slot >= 0 && slot < nextSlot && owners[slot] == v)
+			return slot;
+		return NO_SLOT;
+	}
+
+	private int newSlot(Vertex v)
+	{
+		int slot;
+		if (nrFreeSlots > 0)
+			slot = freeSlots[--nrFreeSlots];
+		else
+		{
+			if (nextSlot == owners.length)
+			{
+				owners = Arrays.copyOf(owners, 2 * owners.length);
+				data = Arrays.copyOf(data, 2 * data.length);
+			}
+			slot = nextSlot++;
+		}
+		owners[slot] = v;
+		v.setIndex(slot);
+		size++;
+		return slot;
+	}
+}
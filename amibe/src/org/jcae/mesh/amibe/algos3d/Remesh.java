@@ -39,8 +39,10 @@ import org.jcae.mesh.xmldata.MeshWriter;
 
 import gnu.trove.impl.PrimeFinder;
 import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import java.io.IOException;
 import java.util.Map;
@@ -52,6 +54,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
@@ -69,6 +73,9 @@ public class Remesh
 {
 	private final static Logger LOGGER = Logger.getLogger(Remesh.class.getName());
 	private static final double ONE_PLUS_SQRT2 = 1.0 + Math.sqrt(2.0);
+	// Number of edges processed by a single task when candidates are
+	// collected concurrently
+	private static final int CANDIDATES_CHUNK_SIZE = 1024;
 	private int progressBarStatus = 10000;
 	private final Mesh mesh;
 	private final MeshLiaison liaison;
@@ -88,6 +95,9 @@ public class Remesh
 	private final boolean hasRidges;
 	private final double coplanarity;
 	private final boolean allowNearNodes;
+	// If true, candidate points are computed concurrently; they are always
+	// checked and inserted sequentially
+	private final boolean concurrentCandidates;
 	private final MetricSupport metrics;
 	private double minCosAfterSwap = -2;
 	// Number of nodes which are too near from existing vertices
@@ -107,6 +117,11 @@ public class Remesh
 	//  We keep track of the background triangle so that it is not
 	//  searched again.
 	private final List<Triangle> bgTriangles = new ArrayList<Triangle>();
+	//  Edges which are checked during current iteration, and their
+	//  triangles when candidates are collected concurrently
+	private final List<EdgeCandidates> work = new ArrayList<EdgeCandidates>();
+	private final List<Triangle> workTriangles = new ArrayList<Triangle>();
+	private final TIntArrayList workEnd = new TIntArrayList();
 	private double currentScale = Double.MAX_VALUE;
 
 	private final double[][] temp = new double[4][3];
@@ -143,6 +158,20 @@ public class Remesh
 		this(new MapMeshLiaison(bgMesh, mtb), options);
 	}
 
+	/**
+	 * Creates a <code>Remesh</code> instance.
+	 *
+	 * When <code>concurrentCandidates</code> option is set to
+	 * <code>true</code>, candidate points of all edges are computed
+	 * concurrently.  Refinement itself is not parallel: candidates are
+	 * then checked and inserted sequentially, so the output mesh is the
+	 * same as in sequential mode.  Analytic metrics must be thread-safe
+	 * in this mode.
+	 *
+	 * @param liaison  liaison between the mesh to refine and its background mesh
+	 * @param options  map containing key-value pairs to modify algorithm
+	 *        behaviour.
+	 */
 	public Remesh(final MeshLiaison liaison, final Map<String, String> options)
 	{
 		this(liaison.getMesh(), liaison, options);
@@ -156,6 +185,7 @@ public class Remesh
 		double nearLengthRatio = 1.0 / Math.sqrt(2.0);
 		boolean proj = false;
 		boolean nearNodes = false;
+		boolean concurrent = false;
 		double copl = 0.8;
 		Map<String, String> decimateOptions = new HashMap<String, String>();
 		for (final Map.Entry<String, String> opt: options.entrySet())
@@ -186,6 +216,8 @@ public class Remesh
 				proj = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("allowNearNodes"))
 				nearNodes = Boolean.valueOf(val).booleanValue();
+			else if (key.equals("concurrentCandidates"))
+				concurrent = Boolean.valueOf(val).booleanValue();
 			else if(!metrics.isKnownOption(key))
 				LOGGER.warning("Unknown option: "+key);
 		}
@@ -197,6 +229,7 @@ public class Remesh
 		project = proj;
 		coplanarity = copl;
 		allowNearNodes = nearNodes;
+		concurrentCandidates = concurrent;
 		liaison.buildSkeleton();
 
 		if (!decimateOptions.isEmpty())
@@ -272,16 +305,17 @@ public class Remesh
 			bbox[5] = Math.max(bbox[5], v.getZ());
 		}
 		LOGGER.fine("Bounding box: lower("+bbox[0]+", "+bbox[1]+", "+bbox[2]+"), upper("+bbox[3]+", "+bbox[4]+", "+bbox[5]+")");
-		TIntObjectHashMap<KdTree<Vertex>> kdTrees = new TIntObjectHashMap<KdTree<Vertex>>();
-		KdTree<Vertex> globalKdTree = new KdTree<Vertex>(bbox);
-		kdTrees.put(-1, globalKdTree);
+		// Vertices are collected first, and kd-trees are built at once
+		TIntObjectHashMap<List<Vertex>> verticesByGroup = new TIntObjectHashMap<List<Vertex>>(numberOfTriangles.size() + 1);
+		List<Vertex> globalVertices = new ArrayList<Vertex>(nodeset.size());
+		verticesByGroup.put(-1, globalVertices);
 		TIntObjectHashMap<Set<Vertex>> seenByGroup = new TIntObjectHashMap<Set<Vertex>>(numberOfTriangles.size());
 		Set<Vertex> globalSeen = HashFactory.createSet(nodeset.size());
 		seenByGroup.put(-1, globalSeen);
 		for (TIntIntIterator it = numberOfTriangles.iterator(); it.hasNext(); )
 		{
 			it.advance();
-			kdTrees.put(it.key(), new KdTree<Vertex>(bbox));
+			verticesByGroup.put(it.key(), new ArrayList<Vertex>(it.value() / 2));
 			seenByGroup.put(it.key(), HashFactory.<Vertex>createSet(it.value() / 2));
 		}
 		
@@ -290,7 +324,7 @@ public class Remesh
 			if (f.hasAttributes(AbstractHalfEdge.OUTER))
 					continue;
 			int group = f.getGroupId();
-			KdTree<Vertex> kdTree = kdTrees.get(group);
+			List<Vertex> vertices = verticesByGroup.get(group);
 			for (int i = 0; i < 3; ++i)
 			{
 				Vertex v = f.getV(i);
@@ -298,11 +332,11 @@ public class Remesh
 				if (seen.contains(v))
 					continue;
 				seen.add(v);
-				kdTree.add(v);
+				vertices.add(v);
 				if (globalSeen.contains(v))
 					continue;
 				globalSeen.add(v);
-				globalKdTree.add(v);
+				globalVertices.add(v);
 			}
 		}
 		for (TIntIntIterator it = numberOfTriangles.iterator(); it.hasNext(); )
@@ -310,6 +344,12 @@ public class Remesh
 			it.advance();
 			seenByGroup.get(it.key()).clear();
 		}
+		TIntObjectHashMap<KdTree<Vertex>> kdTrees = new TIntObjectHashMap<KdTree<Vertex>>(verticesByGroup.size());
+		for (TIntObjectIterator<List<Vertex>> it = verticesByGroup.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			kdTrees.put(it.key(), new KdTree<Vertex>(bbox, it.value()));
+		}
 		seenByGroup.clear();
 		return kdTrees;
 	}
@@ -490,11 +530,8 @@ public class Remesh
 					continue;
 				h = t.getAbstractHalfEdge(h);
 				sym = t.getAbstractHalfEdge(sym);
-				triNodes.clear();
-				triMetrics.clear();
-				triNeighbor.clear();
+				int first = work.size();
 				// Step B. Iterate over its edges which had not been scanned yet
-				int nrTriNodes = 0;
 				for (int i = 0; i < 3; i++)
 				{
 					h = h.next();
@@ -519,36 +556,30 @@ public class Remesh
 							f.sym().setAttributes(AbstractHalfEdge.MARKED);
 						}
 					}
-
-					// Step C. Compute nodes which would be at the right distance
-					//         and store them into a bag (triNodes).
-					int nrNodes = collectCandidatesOnEdge(h, reversed);
-					if (nrNodes > nrTriNodes)
-					{
-						nrTriNodes = nrNodes;
-					}
+					work.add(new EdgeCandidates(h));
 					edgesCheckedDuringIteration++;
 				}
-				// Number of nodes which are inserted on edges of this triangle
-				if (nrTriNodes > maxNodes)
-					maxNodes = nrTriNodes;
-				// Step D. Iterate randomly over this bag and keep only vertices
-				//         which are not too near of an existing vertex; these valid
-			        //         candidate points are inserted into the 'nodes' list.
-				if (!triNodes.isEmpty())
+				if (work.size() == first)
+					continue;
+				if (concurrentCandidates)
+				{
+					// Candidates are computed below for all triangles
+					workTriangles.add(t);
+					workEnd.add(work.size());
+				}
+				else
 				{
-					//  Process in pseudo-random order
-					int prime = PrimeFinder.nextPrime(nrTriNodes);
-					int imax = triNodes.size();
-					while (imax % prime == 0)
-						prime = PrimeFinder.nextPrime(prime+1);
-					if (prime >= imax)
-						prime = 1;
-					Collection<Vertex> newVertices = checkDistanceCandidates(t, prime);
-					if (!newVertices.isEmpty())
-						mapTriangleVertices.put(t, newVertices);
+					// Step C. Compute nodes which would be at the right distance
+					for (EdgeCandidates c : work)
+						collectCandidatesOnEdge(c, reversed);
+					int nrTriNodes = checkCandidates(t, work, 0, work.size());
+					if (nrTriNodes > maxNodes)
+						maxNodes = nrTriNodes;
+					work.clear();
 				}
 			}
+			if (concurrentCandidates && !work.isEmpty())
+				maxNodes = collectCandidatesConcurrently(reversed);
 			if (nodes.isEmpty())
 			{
 				if (meshingDone())
@@ -615,6 +646,37 @@ public class Remesh
 		return this;
 	}
 
+	/**
+	 * Computes candidate points of all edges stored into <code>work</code>
+	 * concurrently, then checks them sequentially triangle by triangle,
+	 * in the same order as in sequential mode.
+	 *
+	 * @param reversed  direction in which edges are split
+	 * @return maximal number of nodes kept on a triangle
+	 */
+	private int collectCandidatesConcurrently(boolean reversed)
+	{
+		// Step C. Candidates do not depend on each other, they are
+		// computed concurrently.  Mesh is not modified during this
+		// step, all updates are performed by checkCandidates.
+		ForkJoinPool.commonPool().invoke(
+			new CollectCandidates(work, 0, work.size(), reversed));
+		int maxNodes = 0;
+		int first = 0;
+		for (int i = 0, n = workTriangles.size(); i < n; i++)
+		{
+			int last = workEnd.get(i);
+			int nrTriNodes = checkCandidates(workTriangles.get(i), work, first, last);
+			if (nrTriNodes > maxNodes)
+				maxNodes = nrTriNodes;
+			first = last;
+		}
+		work.clear();
+		workTriangles.clear();
+		workEnd.clear();
+		return maxNodes;
+	}
+
 	/**
 	 *
 	 * @param maxNodes maximum number by triangles
@@ -809,9 +871,14 @@ public class Remesh
 		return false;
 	}
 
-	private int collectCandidatesOnEdge(AbstractHalfEdge ot, boolean reversed)
+	/**
+	 * Compute candidate points on an edge.  The mesh and the liaison are
+	 * not modified, results are stored into <code>c</code>, so this method
+	 * can be called concurrently on distinct edges.
+	 */
+	private void collectCandidatesOnEdge(EdgeCandidates c, boolean reversed)
 	{
-		int nrNodes = 0;
+		AbstractHalfEdge ot = c.edge;
 		int group = ot.getTri().getGroupId();
 		Vertex start = ot.origin();
 		Vertex end = ot.destination();
@@ -821,8 +888,8 @@ public class Remesh
 		if (edgeLength < currentScale * maxlen)
 		{
 			// This edge is smaller than target size and is not split
-			ot.setAttributes(AbstractHalfEdge.MARKED);
-			return nrNodes;
+			c.small = true;
+			return;
 		}
 		EuclidianMetric3D mS = metrics.get(start);
 		EuclidianMetric3D mE = metrics.get(end);
@@ -842,6 +909,8 @@ public class Remesh
 		Location lower = new Location();
 		Location upper = new Location();
 		boolean border = ot.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD | AbstractHalfEdge.SHARP);
+		c.border = border;
+		int[] edgeGroups = null;
 		int nr;
 		double maxError, target;
 		double scaledEdgeLength = edgeLength / currentScale;
@@ -910,20 +979,18 @@ public class Remesh
 							break;
 						}
 					}
-					else
-						boundaryNodes.add(last);
-					triNodes.add(last);
-					triMetrics.add(m);
+					Vertex neighbor;
 					if (start.getRef() == 0 && end.getRef() != 0)
-						triNeighbor.add(start);
+						neighbor = start;
 					else if (start.getRef() != 0 && end.getRef() == 0)
-							triNeighbor.add(end);
+						neighbor = end;
 					else if (m.distance2(np, start) < m.distance2(np, end))
-						triNeighbor.add(start);
+						neighbor = start;
 					else
-						triNeighbor.add(end);
-					addGroups(ot, last);
-					nrNodes++;
+						neighbor = end;
+					if (edgeGroups == null)
+						edgeGroups = computeGroups(ot);
+					c.add(last, m, neighbor, edgeGroups);
 					r--;
 					break;
 				}
@@ -944,11 +1011,69 @@ public class Remesh
 			}
 			if (cnt < 0)
 			{
+				c.failed = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Store candidates found on edges of a triangle into triNodes,
+	 * triMetrics and triNeighbor, and keep only those which are not
+	 * too near of an existing vertex.
+	 *
+	 * @param t  triangle
+	 * @param work  list of candidates
+	 * @param from  index of the first edge of this triangle in work
+	 * @param to  index after the last edge of this triangle in work
+	 * @return the maximal number of nodes inserted on an edge of t
+	 */
+	private int checkCandidates(Triangle t, List<EdgeCandidates> work, int from, int to)
+	{
+		triNodes.clear();
+		triMetrics.clear();
+		triNeighbor.clear();
+		int nrTriNodes = 0;
+		for (int i = from; i < to; i++)
+		{
+			EdgeCandidates c = work.get(i);
+			if (c.small)
+				c.edge.setAttributes(AbstractHalfEdge.MARKED);
+			if (c.failed)
 				nrFailedInterpolations++;
-				return nrNodes;
+			if (c.nodes == null)
+				continue;
+			for (int k = 0, n = c.nodes.size(); k < n; k++)
+			{
+				Vertex v = c.nodes.get(k);
+				if (c.border)
+					boundaryNodes.add(v);
+				triNodes.add(v);
+				triMetrics.add(c.metrics.get(k));
+				triNeighbor.add(c.neighbors.get(k));
+				assert !groups.containsKey(v);
+				groups.put(v, c.groups);
 			}
+			if (c.nodes.size() > nrTriNodes)
+				nrTriNodes = c.nodes.size();
 		}
-		return nrNodes;
+		// Step D. Iterate randomly over this bag and keep only vertices
+		//         which are not too near of an existing vertex; these valid
+		//         candidate points are inserted into the 'nodes' list.
+		if (!triNodes.isEmpty())
+		{
+			//  Process in pseudo-random order
+			int prime = PrimeFinder.nextPrime(nrTriNodes);
+			int imax = triNodes.size();
+			while (imax % prime == 0)
+				prime = PrimeFinder.nextPrime(prime+1);
+			if (prime >= imax)
+				prime = 1;
+			Collection<Vertex> newVertices = checkDistanceCandidates(t, prime);
+			if (!newVertices.isEmpty())
+				mapTriangleVertices.put(t, newVertices);
+		}
+		return nrTriNodes;
 	}
 
 	private Collection<Vertex> checkDistanceCandidates(Triangle t, int step)
@@ -999,9 +1124,9 @@ public class Remesh
 		return newVertices;
 	}
 
-	private void addGroups(AbstractHalfEdge ot, Vertex v)
+	/** Return groups of triangles adjacent to an edge */
+	private static int[] computeGroups(AbstractHalfEdge ot)
 	{
-		assert !groups.containsKey(v);
 		if (!ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
 		{
 			int g1 = ot.getTri().getGroupId();
@@ -1012,19 +1137,19 @@ public class Remesh
 			}
 			if (g1 == g2 && g1 == -1)
 			{
-				groups.put(v, new int[] {-1});
+				return new int[] {-1};
 			}
 			if (g1 == g2 && g1 != -1)
 			{
-				groups.put(v, new int[] {-1, g1});
+				return new int[] {-1, g1};
 			}
 			else if (g1 == -1 || g2 == -1)
 			{
-				groups.put(v, new int[] {g1, g2});
+				return new int[] {g1, g2};
 			}
 			else
 			{
-				groups.put(v, new int[] {-1, g1, g2});
+				return new int[] {-1, g1, g2};
 			}
 		}
 		else
@@ -1035,7 +1160,74 @@ public class Remesh
 				groupSet.add(it.next().getTri().getGroupId());
 			}
 			groupSet.add(-1);
-			groups.put(v, groupSet.toArray());
+			return groupSet.toArray();
+		}
+	}
+
+	/** Candidate points found on an edge */
+	private static final class EdgeCandidates
+	{
+		private final AbstractHalfEdge edge;
+		// Lists are allocated only when a candidate is found
+		private List<Vertex> nodes;
+		private List<EuclidianMetric3D> metrics;
+		private List<Vertex> neighbors;
+		// Groups adjacent to this edge, shared by all candidates
+		private int[] groups;
+		// True if edge is on a boundary, non-manifold or sharp
+		private boolean border;
+		// True if this edge is too small to be split
+		private boolean small;
+		// True if an interpolation failed
+		private boolean failed;
+
+		EdgeCandidates(AbstractHalfEdge edge)
+		{
+			this.edge = edge;
+		}
+
+		void add(Vertex v, EuclidianMetric3D m, Vertex neighbor, int[] g)
+		{
+			if (nodes == null)
+			{
+				nodes = new ArrayList<Vertex>(3);
+				metrics = new ArrayList<EuclidianMetric3D>(3);
+				neighbors = new ArrayList<Vertex>(3);
+			}
+			nodes.add(v);
+			metrics.add(m);
+			neighbors.add(neighbor);
+			groups = g;
+		}
+	}
+
+	/** Compute candidates of a range of edges */
+	private final class CollectCandidates extends RecursiveAction
+	{
+		private static final long serialVersionUID = 2651842935185214536L;
+		private final List<EdgeCandidates> work;
+		private final int from, to;
+		private final boolean reversed;
+		CollectCandidates(List<EdgeCandidates> work, int from, int to, boolean reversed)
+		{
+			this.work = work;
+			this.from = from;
+			this.to = to;
+			this.reversed = reversed;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > CANDIDATES_CHUNK_SIZE)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new CollectCandidates(work, from, middle, reversed),
+					new CollectCandidates(work, middle, to, reversed));
+				return;
+			}
+			for (int i = from; i < to; i++)
+				collectCandidatesOnEdge(work.get(i), reversed);
 		}
 	}
 
@@ -68,6 +68,10 @@ public class RemeshSkeleton {
 
 	public RemeshSkeleton(MeshLiaison liaison, double angle,
 		AnalyticMetricInterface metric, double toleranceFactor) {
+		// Inserted vertices are projected on skeleton edges
+		if (!liaison.canMoveToClosestEdge())
+			throw new IllegalArgumentException(liaison.getClass().getSimpleName()+
+				" cannot project vertices on skeleton edges, use MeshLiaison.create");
 		this.liaison = liaison;
 		this.mesh = liaison.getMesh();
 		this.angle = angle;
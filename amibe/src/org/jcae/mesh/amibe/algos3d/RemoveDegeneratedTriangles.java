@@ -113,6 +113,11 @@ public class RemoveDegeneratedTriangles extends AbstractAlgoHalfEdge
 				double sizeTarget = Double.valueOf(val).doubleValue();
 				tolerance = 1. / (sizeTarget * sizeTarget);
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -25,19 +25,25 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.projection.QuadricProjection;
 import org.jcae.mesh.amibe.projection.LocalSurfaceProjection;
 import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.io.IOException;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,6 +56,13 @@ import java.util.logging.Logger;
  * <a href="http://www.ann.jussieu.fr/~frey/publications/ijnme4198.pdf">Adaptive Triangular-Quadrilateral Mesh Generation</a>, by Houman Borouchaky and
  * Pascal J. Frey.
  * If final position improves vertex quality, point is moved.
+ *
+ * <p>
+ * When <code>parallel</code> option is set, vertices are coloured so that
+ * adjacent vertices have different colours, and vertices of the same
+ * colour are smoothed concurrently, one colour after the other.  Vertices
+ * are then no more processed by increasing quality.
+ * </p>
  */
 public class SmoothNodes3D
 {
@@ -63,7 +76,6 @@ public class SmoothNodes3D
 	private int progressBarStatus = 10000;
 	private static final double scaleFactor = 12.0 * Math.sqrt(3.0);
 	private double relaxation = 0.6;
-	private final Vertex c;
 	private final QSortedTree<Vertex> tree = new PAVLSortedTree<Vertex>();
 	private boolean refresh = false;
 	private int processed = 0;
@@ -71,6 +83,16 @@ public class SmoothNodes3D
 	private TObjectDoubleHashMap<Triangle> qualityMap;
 	private Map<Vertex, LocalSurfaceProjection> nodeProjection;
 	private Collection<Vertex> nodeset;
+	private boolean parallel = false;
+	private static final int SMOOTH_CHUNK_SIZE = 64;
+	// Movable vertices sorted by colour, vertices of colour i are
+	// colouredNodes[colourEnd[i-1]..colourEnd[i]-1]
+	private Vertex [] colouredNodes;
+	private int [] colourEnd;
+	// Statistics of current iteration
+	private int iterationMoved;
+	private double iterationMaxDisplacement;
+	private double iterationSumDisplacement;
 	
 	/**
 	 * Creates a <code>SmoothNodes3D</code> instance.
@@ -89,13 +111,12 @@ public class SmoothNodes3D
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code> and <code>parallel</code>.
 	 */
 	public SmoothNodes3D(final Mesh m, final Map<String, String> options)
 	{
 		mesh = m;
-		c = mesh.createVertex(0.0, 0.0, 0.0);
 		for (final Map.Entry<String, String> opt: options.entrySet())
 		{
 			final String key = opt.getKey();
@@ -114,6 +135,8 @@ public class SmoothNodes3D
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("parallel"))
+				parallel = Boolean.valueOf(val).booleanValue();
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -126,6 +149,7 @@ public class SmoothNodes3D
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Parallel: "+parallel);
 		}
 	}
 	
@@ -179,9 +203,21 @@ public class SmoothNodes3D
 					continue;
 				nodeProjection.put(v, qP);
 			}
+			if (parallel)
+				colourNodes();
 			for (int i = 0; i < nloop; i++)
 			{
-				processAllNodes();
+				iterationMoved = 0;
+				iterationMaxDisplacement = 0.0;
+				iterationSumDisplacement = 0.0;
+				if (parallel)
+					processAllNodesByColour();
+				else
+					processAllNodes();
+				if (LOGGER.isLoggable(Level.INFO))
+					LOGGER.info("Iteration "+(i+1)+": "+iterationMoved+" moved vertices, mean displacement: "+
+						(iterationMoved == 0 ? 0.0 : iterationSumDisplacement / iterationMoved)+
+						", max displacement: "+iterationMaxDisplacement);
 				postProcessIteration(mesh, i);
 			}
 		}
@@ -226,8 +262,12 @@ public class SmoothNodes3D
 				notProcessed++;
 				continue;
 			}
+			double x = v.getX();
+			double y = v.getY();
+			double z = v.getZ();
 			if (smoothNode(v, ot, q.getValue()))
 			{
+				addDisplacement(v, x, y, z);
 				processed++;
 				if (processed > 0 && (processed % progressBarStatus) == 0)
 					LOGGER.info("Vertices processed: "+processed);
@@ -289,7 +329,7 @@ public class SmoothNodes3D
 		
 		//  Compute 3D coordinates centroid
 		int nn = 0;
-		c.moveTo(0, 0, 0);
+		Location c = new Location();
 		assert n.isManifold();
 		Vertex d = ot.destination();
 		do
@@ -355,7 +395,163 @@ public class SmoothNodes3D
 		}
 		return true;
 	}
-	
+
+	private void addDisplacement(Vertex v, double x, double y, double z)
+	{
+		double dx = v.getX() - x;
+		double dy = v.getY() - y;
+		double dz = v.getZ() - z;
+		double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		iterationMoved++;
+		iterationSumDisplacement += d;
+		if (d > iterationMaxDisplacement)
+			iterationMaxDisplacement = d;
+	}
+
+	private boolean canSmooth(Vertex v)
+	{
+		return v.isManifold() && v.isMutable() && v.getRef() <= 0 &&
+			!(v.getRef() != 0 && preserveBoundaries);
+	}
+
+	private static AbstractHalfEdge originEdge(Vertex v)
+	{
+		AbstractHalfEdge ot = ((Triangle) v.getLink()).getAbstractHalfEdge();
+		if (ot.destination() == v)
+			ot = ot.next();
+		else if (ot.apex() == v)
+			ot = ot.prev();
+		assert ot.origin() == v;
+		return ot;
+	}
+
+	/**
+	 * Greedy colouring of movable vertices, adjacent vertices get
+	 * different colours.
+	 */
+	private void colourNodes()
+	{
+		TObjectIntHashMap<Vertex> colours = new TObjectIntHashMap<Vertex>(nodeset.size(), 0.5f, -1);
+		TIntArrayList counts = new TIntArrayList();
+		BitSet used = new BitSet();
+		for (Vertex v: nodeset)
+		{
+			if (!canSmooth(v))
+				continue;
+			used.clear();
+			AbstractHalfEdge ot = originEdge(v);
+			Vertex d = ot.destination();
+			do
+			{
+				ot = ot.nextOriginLoop();
+				int c = colours.get(ot.destination());
+				if (c >= 0)
+					used.set(c);
+			}
+			while (ot.destination() != d);
+			int c = used.nextClearBit(0);
+			colours.put(v, c);
+			if (c == counts.size())
+				counts.add(0);
+			counts.set(c, counts.get(c) + 1);
+		}
+		colourEnd = new int[counts.size()];
+		int [] next = new int[counts.size()];
+		for (int c = 0, offset = 0; c < counts.size(); c++)
+		{
+			next[c] = offset;
+			offset += counts.get(c);
+			colourEnd[c] = offset;
+		}
+		colouredNodes = new Vertex[colours.size()];
+		for (Vertex v: nodeset)
+		{
+			int c = colours.get(v);
+			if (c >= 0)
+				colouredNodes[next[c]++] = v;
+		}
+		LOGGER.fine("Number of colours: "+colourEnd.length);
+	}
+
+	/*
+	 * Moves all nodes, vertices of the same colour are processed
+	 * concurrently.
+	 */
+	private void processAllNodesByColour()
+	{
+		byte [] moved = new byte[colouredNodes.length];
+		double [] oldPositions = new double[3 * colouredNodes.length];
+		int start = 0;
+		for (int end: colourEnd)
+		{
+			SmoothTask task = new SmoothTask(moved, oldPositions, start, end);
+			if (end - start > SMOOTH_CHUNK_SIZE)
+				ForkJoinPool.commonPool().invoke(task);
+			else
+				task.compute();
+			for (int i = start; i < end; i++)
+			{
+				if (moved[i] == NOT_SMOOTHED)
+					notProcessed++;
+				if (moved[i] != SMOOTHED)
+					continue;
+				processed++;
+				if ((processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
+				addDisplacement(colouredNodes[i], oldPositions[3*i], oldPositions[3*i+1], oldPositions[3*i+2]);
+			}
+			start = end;
+		}
+	}
+
+	private static final byte SKIPPED = 0;
+	private static final byte SMOOTHED = 1;
+	private static final byte NOT_SMOOTHED = 2;
+
+	/**
+	 * Smoothes vertices colouredNodes[from..to-1], which are not adjacent.
+	 */
+	private final class SmoothTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = -6192840527163948135L;
+		private final byte [] moved;
+		private final double [] oldPositions;
+		private final int from, to;
+		SmoothTask(byte [] moved, double [] oldPositions, int from, int to)
+		{
+			this.moved = moved;
+			this.oldPositions = oldPositions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > SMOOTH_CHUNK_SIZE && getPool() != null)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new SmoothTask(moved, oldPositions, from, middle),
+					new SmoothTask(moved, oldPositions, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++)
+			{
+				Vertex v = colouredNodes[i];
+				double qv = vertexQuality(originEdge(v));
+				if (qv > tolerance)
+				{
+					moved[i] = SKIPPED;
+					continue;
+				}
+				oldPositions[3*i] = v.getX();
+				oldPositions[3*i+1] = v.getY();
+				oldPositions[3*i+2] = v.getZ();
+				moved[i] = smoothNode(v, null, qv) ? SMOOTHED : NOT_SMOOTHED;
+			}
+		}
+	}
+
 	private double triangleQuality(AbstractHalfEdge edge)
 	{
 		Triangle f = edge.getTri();
@@ -29,6 +29,7 @@ import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -36,7 +37,11 @@ import java.util.LinkedHashSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.io.IOException;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
@@ -52,6 +57,15 @@ import org.jcae.mesh.amibe.projection.MapMeshLiaison;
  * <a href="http://www.ann.jussieu.fr/~frey/publications/ijnme4198.pdf">Adaptive Triangular-Quadrilateral Mesh Generation</a>, by Houman Borouchaky and
  * Pascal J. Frey.
  * If final position improves vertex quality, point is moved.
+ *
+ * <p>
+ * When <code>parallel</code> option is set, vertices are coloured so that
+ * adjacent vertices have different colours, and vertices of the same
+ * colour are smoothed concurrently, one colour after the other.  Vertices
+ * are then no more processed by increasing quality.  Projections are
+ * computed concurrently only if {@link MeshLiaison#canMoveConcurrently}
+ * returns <code>true</code>.
+ * </p>
  */
 public class SmoothNodes3DBg
 {
@@ -74,6 +88,16 @@ public class SmoothNodes3DBg
 	private Collection<Vertex> nodeset;
 	private final Set<Vertex> immutableNodes = new LinkedHashSet<Vertex>();
 	private MetricSupport metrics;
+	private boolean parallel = false;
+	private static final int SMOOTH_CHUNK_SIZE = 64;
+	// Mutable vertices sorted by colour, vertices of colour i are
+	// colouredNodes[colourEnd[i-1]..colourEnd[i]-1]
+	private Vertex [] colouredNodes;
+	private int [] colourEnd;
+	// Statistics of current iteration
+	private int iterationMoved;
+	private double iterationMaxDisplacement;
+	private double iterationSumDisplacement;
 	/**
 	 * Creates a <code>SmoothNodes3DBg</code> instance.
 	 *
@@ -92,8 +116,8 @@ public class SmoothNodes3DBg
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code> and <code>parallel</code>.
 	 */
 	@Deprecated
 	public SmoothNodes3DBg(final Mesh bgMesh, final Map<String, String> options)
@@ -122,6 +146,8 @@ public class SmoothNodes3DBg
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("parallel"))
+				parallel = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("coplanarity"))
 			{
 				minCos = Double.parseDouble(val);
@@ -139,6 +165,7 @@ public class SmoothNodes3DBg
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Parallel: "+parallel);
 		}
 	}
 
@@ -223,9 +250,21 @@ public class SmoothNodes3DBg
 					immutableNodes.add(v);
 			}
 
+			if (parallel)
+				colourNodes();
 			for (int i = 0; i < nloop; i++)
 			{
-				processAllNodes();
+				iterationMoved = 0;
+				iterationMaxDisplacement = 0.0;
+				iterationSumDisplacement = 0.0;
+				if (parallel)
+					processAllNodesByColour();
+				else
+					processAllNodes();
+				if (LOGGER.isLoggable(Level.INFO))
+					LOGGER.info("Iteration "+(i+1)+": "+iterationMoved+" moved vertices, mean displacement: "+
+						(iterationMoved == 0 ? 0.0 : iterationSumDisplacement / iterationMoved)+
+						", max displacement: "+iterationMaxDisplacement);
 				postProcessIteration(mesh, i);
 			}
 		}
@@ -280,8 +319,14 @@ public class SmoothNodes3DBg
 			Vertex v = q.getData();
 			assert !immutableNodes.contains(v);
 			tree.remove(v);
+			double x = v.getX();
+			double y = v.getY();
+			double z = v.getZ();
 			if (smoothNode(v, ot, q.getValue()))
 			{
+				addDisplacement(v, x, y, z);
+				if (!metrics.isEmpty())
+					metrics.put(v, metrics.get(v, (Triangle) v.getLink()));
 				processed++;
 				if (processed > 0 && (processed % progressBarStatus) == 0)
 					LOGGER.info("Vertices processed: "+processed);
@@ -405,11 +450,177 @@ public class SmoothNodes3DBg
 			}
 		}
 		liaison.backupRestore(n, false, group);
-		if (!metrics.isEmpty())
-			metrics.put(n, metrics.get(n, f));
 		return true;
 	}
 
+	private void addDisplacement(Vertex v, double x, double y, double z)
+	{
+		double dx = v.getX() - x;
+		double dy = v.getY() - y;
+		double dz = v.getZ() - z;
+		double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		iterationMoved++;
+		iterationSumDisplacement += d;
+		if (d > iterationMaxDisplacement)
+			iterationMaxDisplacement = d;
+	}
+
+	private static AbstractHalfEdge originEdge(Vertex v)
+	{
+		AbstractHalfEdge ot = ((Triangle) v.getLink()).getAbstractHalfEdge();
+		if (ot.destination() == v)
+			ot = ot.next();
+		else if (ot.apex() == v)
+			ot = ot.prev();
+		assert ot.origin() == v;
+		return ot;
+	}
+
+	/**
+	 * Greedy colouring of mutable vertices, adjacent vertices get
+	 * different colours.
+	 */
+	private void colourNodes()
+	{
+		TObjectIntHashMap<Vertex> colours = new TObjectIntHashMap<Vertex>(nodeset.size(), 0.5f, -1);
+		TIntArrayList counts = new TIntArrayList();
+		BitSet used = new BitSet();
+		for (Vertex v: nodeset)
+		{
+			if (immutableNodes.contains(v))
+				continue;
+			used.clear();
+			AbstractHalfEdge ot = originEdge(v);
+			Vertex d = ot.destination();
+			do
+			{
+				ot = ot.nextOriginLoop();
+				int c = colours.get(ot.destination());
+				if (c >= 0)
+					used.set(c);
+			}
+			while (ot.destination() != d);
+			int c = used.nextClearBit(0);
+			colours.put(v, c);
+			if (c == counts.size())
+				counts.add(0);
+			counts.set(c, counts.get(c) + 1);
+		}
+		colourEnd = new int[counts.size()];
+		int [] next = new int[counts.size()];
+		for (int c = 0, offset = 0; c < counts.size(); c++)
+		{
+			next[c] = offset;
+			offset += counts.get(c);
+			colourEnd[c] = offset;
+		}
+		colouredNodes = new Vertex[colours.size()];
+		for (Vertex v: nodeset)
+		{
+			int c = colours.get(v);
+			if (c >= 0)
+				colouredNodes[next[c]++] = v;
+		}
+		LOGGER.fine("Number of colours: "+colourEnd.length);
+	}
+
+	/*
+	 * Moves all nodes, vertices of the same colour are processed
+	 * concurrently.
+	 */
+	private void processAllNodesByColour()
+	{
+		byte [] moved = new byte[colouredNodes.length];
+		double [] oldPositions = new double[3 * colouredNodes.length];
+		int start = 0;
+		for (int end: colourEnd)
+		{
+			SmoothTask task = new SmoothTask(moved, oldPositions, start, end);
+			if (liaison.canMoveConcurrently() && end - start > SMOOTH_CHUNK_SIZE)
+				ForkJoinPool.commonPool().invoke(task);
+			else
+				task.compute();
+			// Serial part: update metrics and triangle quality
+			for (int i = start; i < end; i++)
+			{
+				if (moved[i] == NOT_SMOOTHED)
+					notProcessed++;
+				if (moved[i] != SMOOTHED)
+					continue;
+				Vertex v = colouredNodes[i];
+				processed++;
+				if ((processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
+				addDisplacement(v, oldPositions[3*i], oldPositions[3*i+1], oldPositions[3*i+2]);
+				if (!metrics.isEmpty())
+					metrics.put(v, metrics.get(v, (Triangle) v.getLink()));
+				if (!refresh)
+					continue;
+				AbstractHalfEdge ot = originEdge(v);
+				Vertex d = ot.destination();
+				do
+				{
+					ot = ot.nextOriginLoop();
+					if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+						continue;
+					qualityMap.put(ot.getTri(), triangleQuality(ot));
+				}
+				while (ot.destination() != d);
+			}
+			start = end;
+		}
+	}
+
+	private static final byte SKIPPED = 0;
+	private static final byte SMOOTHED = 1;
+	private static final byte NOT_SMOOTHED = 2;
+
+	/**
+	 * Smoothes vertices colouredNodes[from..to-1], which are not adjacent.
+	 * Triangle quality is read but not updated.
+	 */
+	private final class SmoothTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4823516719384028771L;
+		private final byte [] moved;
+		private final double [] oldPositions;
+		private final int from, to;
+		SmoothTask(byte [] moved, double [] oldPositions, int from, int to)
+		{
+			this.moved = moved;
+			this.oldPositions = oldPositions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > SMOOTH_CHUNK_SIZE && getPool() != null)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new SmoothTask(moved, oldPositions, from, middle),
+					new SmoothTask(moved, oldPositions, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++)
+			{
+				Vertex v = colouredNodes[i];
+				AbstractHalfEdge ot = originEdge(v);
+				double qv = vertexQuality(ot);
+				if (qv > tolerance)
+				{
+					moved[i] = SKIPPED;
+					continue;
+				}
+				oldPositions[3*i] = v.getX();
+				oldPositions[3*i+1] = v.getY();
+				oldPositions[3*i+2] = v.getZ();
+				moved[i] = smoothNode(v, null, qv) ? SMOOTHED : NOT_SMOOTHED;
+			}
+		}
+	}
+
 	private double triangleQuality(AbstractHalfEdge edge)
 	{
 		Triangle f = edge.getTri();
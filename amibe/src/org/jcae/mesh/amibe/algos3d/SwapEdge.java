@@ -97,6 +97,11 @@ public class SwapEdge extends AbstractAlgoHalfEdge
 			{
 				expectInsert = Boolean.parseBoolean(val);
 			}
+			else if ("heapArity".equals(key))
+			{
+				setHeapArity(Integer.parseInt(val));
+				LOGGER.fine("heapArity: "+val);
+			}
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
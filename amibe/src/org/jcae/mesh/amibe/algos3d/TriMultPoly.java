@@ -50,6 +50,8 @@ import org.jcae.mesh.xmldata.MeshWriter;
  * </ul>
  * Run with java -Dorg.jcae.amibe.trimultpoly.path=/path/to/trimultpoly.exe with
  * to enable this algorithm.
+ * {@link org.jcae.mesh.amibe.projection.HoleTriangulator} uses the same
+ * weights and runs in process.
  * @author Jerome Robert
  */
 public class TriMultPoly extends AbstractLocaleRemesher {
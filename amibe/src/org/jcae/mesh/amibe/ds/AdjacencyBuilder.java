@@ -0,0 +1,306 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.ds;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Build adjacency relations of a {@link Mesh} with primitive arrays.
+ * {@link Mesh#glueSymmetricHalfEdges} needs a map between each vertex and
+ * the list of its incident triangles, which requires an object per vertex.
+ * This class stores vertex/triangle incidence in arrays, buckets half-edges
+ * by their smallest end point and sorts each bucket by the other end point,
+ * so that half-edges with the same end points are consecutive.  A run
+ * of two half-edges with opposite directions is a manifold edge and both
+ * half-edges are glued together, a run of one half-edge is a boundary edge
+ * and is bound to a virtual triangle later by <code>Mesh</code>.  Other
+ * runs (non-manifold edges, incompatible orientations) are processed
+ * by {@link Mesh#glueSymmetricHalfEdges} on the small subset of vertices
+ * lying on these edges, so that virtual triangles are created in the same
+ * order as with the original algorithm.
+ */
+final class AdjacencyBuilder
+{
+	private static final int SMALL_BUCKET = 16;
+	private final Mesh mesh;
+	private final Vertex [] vertices;
+	private final Triangle [] triangles;
+	// Vertex indices of triangles, -1 means that this vertex is not
+	// taken into account (unreadable vertex or missing in the list of
+	// vertices).
+	private final int [] triangleVertices;
+	// Incident triangles of vertex i are incidence[start[i]..start[i+1]-1]
+	private final int [] start;
+	private final int [] incidence;
+
+	/**
+	 * Index triangles and their vertices.  As in original algorithm, vertex
+	 * links are also set to an incident triangle.
+	 *
+	 * @param mesh  mesh
+	 * @param vertexList  vertices, in the order in which they are processed
+	 * @param triangleList  triangles
+	 */
+	AdjacencyBuilder(Mesh mesh, Collection<Vertex> vertexList, Collection<Triangle> triangleList)
+	{
+		this.mesh = mesh;
+		vertices = vertexList.toArray(new Vertex[vertexList.size()]);
+		TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(vertices.length, 0.5f, -1);
+		for (int i = 0; i < vertices.length; i++)
+			index.put(vertices[i], i);
+		int nrTriangles = 0;
+		for (Triangle t: triangleList)
+		{
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				nrTriangles++;
+		}
+		triangles = new Triangle[nrTriangles];
+		triangleVertices = new int[3*nrTriangles];
+		start = new int[vertices.length + 1];
+		int cnt = 0;
+		for (Triangle t: triangleList)
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			triangles[cnt] = t;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex v = t.getV(i);
+				int iv = v.isReadable() ? index.get(v) : -1;
+				triangleVertices[3*cnt+i] = iv;
+				if (iv >= 0)
+					start[iv + 1]++;
+				v.setLink(t);
+			}
+			cnt++;
+		}
+		index = null;
+		for (int i = 0; i < vertices.length; i++)
+			start[i + 1] += start[i];
+		incidence = new int[start[vertices.length]];
+		int [] fill = new int[vertices.length];
+		for (int t = 0; t < nrTriangles; t++)
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				int iv = triangleVertices[3*t+i];
+				if (iv >= 0)
+				{
+					incidence[start[iv] + fill[iv]] = t;
+					fill[iv]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return vertices, in the order given to constructor.
+	 */
+	Collection<Vertex> getVertices()
+	{
+		return Arrays.asList(vertices);
+	}
+
+	private int origin(int h)
+	{
+		return triangleVertices[h - h % 3 + (h % 3 + 1) % 3];
+	}
+
+	private int destination(int h)
+	{
+		return triangleVertices[h - h % 3 + (h % 3 + 2) % 3];
+	}
+
+	private int other(int h)
+	{
+		return Math.max(origin(h), destination(h));
+	}
+
+	/**
+	 * Connect all edges together.  Boundary edges are not processed.
+	 *
+	 * @param newTri  list of virtual triangles created for non-manifold edges
+	 */
+	void glueSymmetricHalfEdges(Collection<Triangle> newTri)
+	{
+		int nrHalfEdges = triangleVertices.length;
+		// Bucket half-edges by their smallest end point.  Half-edges
+		// with an end point which is not indexed are ignored.
+		int [] bucketStart = new int[vertices.length + 1];
+		for (int h = 0; h < nrHalfEdges; h++)
+		{
+			int o = origin(h);
+			int d = destination(h);
+			if (o >= 0 && d >= 0)
+				bucketStart[Math.min(o, d) + 1]++;
+		}
+		for (int i = 0; i < vertices.length; i++)
+			bucketStart[i + 1] += bucketStart[i];
+		int [] bucket = new int[bucketStart[vertices.length]];
+		int [] fill = new int[vertices.length];
+		for (int h = 0; h < nrHalfEdges; h++)
+		{
+			int o = origin(h);
+			int d = destination(h);
+			if (o >= 0 && d >= 0)
+			{
+				int v = Math.min(o, d);
+				bucket[bucketStart[v] + fill[v]] = h;
+				fill[v]++;
+			}
+		}
+		fill = null;
+
+		boolean [] complex = null;
+		AbstractHalfEdge ot = null;
+		AbstractHalfEdge sym = null;
+		long [] work = new long[SMALL_BUCKET];
+		for (int v = 0; v < vertices.length; v++)
+		{
+			int first = bucketStart[v];
+			int last = bucketStart[v + 1];
+			if (last - first > SMALL_BUCKET)
+				work = sortBucket(bucket, first, last, work);
+			else
+			{
+				for (int i = first + 1; i < last; i++)
+				{
+					int h = bucket[i];
+					int key = other(h);
+					int j = i - 1;
+					for (; j >= first && other(bucket[j]) > key; j--)
+						bucket[j + 1] = bucket[j];
+					bucket[j + 1] = h;
+				}
+			}
+			for (int i = first; i < last; )
+			{
+				int h1 = bucket[i];
+				int key = other(h1);
+				int j = i + 1;
+				while (j < last && other(bucket[j]) == key)
+					j++;
+				if (j - i == 2)
+				{
+					int h2 = bucket[i + 1];
+					if (origin(h1) == destination(h2) && origin(h1) != destination(h1))
+					{
+						ot = getHalfEdge(h1, ot);
+						sym = getHalfEdge(h2, sym);
+						if (!ot.hasSymmetricEdge() && !sym.hasSymmetricEdge())
+						{
+							ot.glue(sym);
+							i = j;
+							continue;
+						}
+					}
+				}
+				if (j - i > 1)
+				{
+					if (complex == null)
+						complex = new boolean[vertices.length];
+					complex[v] = true;
+					complex[key] = true;
+				}
+				i = j;
+			}
+		}
+		if (complex == null)
+			return;
+
+		// Process remaining edges with the original algorithm
+		Map<Vertex, Collection<Triangle>> tVertList = new LinkedHashMap<Vertex, Collection<Triangle>>();
+		for (int v = 0; v < vertices.length; v++)
+		{
+			if (!complex[v])
+				continue;
+			ArrayList<Triangle> list = new ArrayList<Triangle>(start[v + 1] - start[v]);
+			for (int i = start[v]; i < start[v + 1]; i++)
+				list.add(triangles[incidence[i]]);
+			tVertList.put(vertices[v], list);
+		}
+		mesh.glueSymmetricHalfEdges(tVertList, newTri);
+	}
+
+	private long [] sortBucket(int [] bucket, int first, int last, long [] work)
+	{
+		if (work.length < last - first)
+			work = new long[last - first];
+		for (int i = first; i < last; i++)
+			work[i - first] = ((long) other(bucket[i]) << 32) | bucket[i];
+		Arrays.sort(work, 0, last - first);
+		for (int i = first; i < last; i++)
+			bucket[i] = (int) work[i - first];
+		return work;
+	}
+
+	private AbstractHalfEdge getHalfEdge(int h, AbstractHalfEdge ot)
+	{
+		ot = triangles[h / 3].getAbstractHalfEdge(ot);
+		for (int i = ot.getLocalNumber(); i != h % 3; i = (i + 1) % 3)
+			ot = ot.next();
+		return ot;
+	}
+
+	/**
+	 * Fix links for non-manifold vertices.
+	 * @see Mesh#rebuildVertexLinks(Map)
+	 */
+	void rebuildVertexLinks()
+	{
+		IncidentTriangles list = new IncidentTriangles();
+		for (int v = 0; v < vertices.length; v++)
+		{
+			list.bind(start[v], start[v + 1]);
+			Mesh.rebuildVertexLink(vertices[v], list);
+		}
+	}
+
+	/** Read-only view of the triangles incident to a vertex. */
+	private class IncidentTriangles extends AbstractList<Triangle>
+	{
+		private int first, last;
+
+		void bind(int first, int last)
+		{
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		public Triangle get(int index)
+		{
+			return triangles[incidence[first + index]];
+		}
+
+		@Override
+		public int size()
+		{
+			return last - first;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.ds;
+
+/**
+ * Read-only half-edge cursor on a {@link CompactMesh}.
+ * This class provides the same navigation primitives as
+ * {@link AbstractHalfEdge}, but vertices and triangles are returned as
+ * indices into <code>CompactMesh</code> arrays.  As with
+ * {@link VirtualHalfEdge}, these methods modify current instance and
+ * return it, so that mesh traversal does not allocate any object.
+ */
+public final class CompactHalfEdge
+{
+	private static final int [] next3 = { 1, 2, 0 };
+	private static final int [] prev3 = { 2, 0, 1 };
+
+	private final CompactMesh mesh;
+	private int tri;
+	private int localNumber;
+
+	public CompactHalfEdge(CompactMesh mesh)
+	{
+		this.mesh = mesh;
+	}
+
+	/**
+	 * Move this cursor to an half-edge.
+	 *
+	 * @param t  triangle index
+	 * @param l  local number
+	 * @return current instance after its transformation
+	 */
+	public CompactHalfEdge bind(int t, int l)
+	{
+		tri = t;
+		localNumber = l;
+		return this;
+	}
+
+	/**
+	 * Copy another cursor into current instance.
+	 *
+	 * @param that  cursor to copy
+	 * @return current instance after its transformation
+	 */
+	public CompactHalfEdge bind(CompactHalfEdge that)
+	{
+		return bind(that.tri, that.localNumber);
+	}
+
+	public CompactMesh getMesh()
+	{
+		return mesh;
+	}
+
+	/**
+	 * Return triangle index.
+	 */
+	public int getTri()
+	{
+		return tri;
+	}
+
+	public int getLocalNumber()
+	{
+		return localNumber;
+	}
+
+	/**
+	 * Return half-edge index, which is <code>3*getTri()+getLocalNumber()</code>.
+	 */
+	public int getIndex()
+	{
+		return 3 * tri + localNumber;
+	}
+
+	/**
+	 * Return start vertex index of this edge.
+	 */
+	public int origin()
+	{
+		return mesh.getV(tri, next3[localNumber]);
+	}
+
+	/**
+	 * Return end vertex index of this edge.
+	 */
+	public int destination()
+	{
+		return mesh.getV(tri, prev3[localNumber]);
+	}
+
+	/**
+	 * Return apex vertex index of this edge.
+	 */
+	public int apex()
+	{
+		return mesh.getV(tri, localNumber);
+	}
+
+	/**
+	 * Move to the next edge in the same triangle.
+	 *
+	 * @return current instance after its transformation
+	 */
+	public CompactHalfEdge next()
+	{
+		localNumber = next3[localNumber];
+		return this;
+	}
+
+	/**
+	 * Move to the previous edge in the same triangle.
+	 *
+	 * @return current instance after its transformation
+	 */
+	public CompactHalfEdge prev()
+	{
+		localNumber = prev3[localNumber];
+		return this;
+	}
+
+	/**
+	 * Tell whether this edge has a symmetric edge.  This method
+	 * returns <code>false</code> for boundary and non-manifold edges.
+	 */
+	public boolean hasSymmetricEdge()
+	{
+		return mesh.sym(getIndex()) >= 0;
+	}
+
+	public boolean isBoundary()
+	{
+		return mesh.sym(getIndex()) == CompactMesh.BOUNDARY;
+	}
+
+	public boolean isNonManifold()
+	{
+		return mesh.sym(getIndex()) == CompactMesh.NONMANIFOLD;
+	}
+
+	/**
+	 * Move to the symmetric edge.  {@link #hasSymmetricEdge} must
+	 * return <code>true</code>.
+	 *
+	 * @return current instance after its transformation
+	 */
+	public CompactHalfEdge sym()
+	{
+		int h = mesh.sym(getIndex());
+		assert h >= 0 : "No symmetric edge: "+this;
+		tri = h / 3;
+		localNumber = h % 3;
+		return this;
+	}
+
+	/**
+	 * Move another cursor to the symmetric edge.
+	 *
+	 * @param that  cursor to move
+	 * @return <code>that</code> after its transformation
+	 */
+	public CompactHalfEdge sym(CompactHalfEdge that)
+	{
+		return that.bind(this).sym();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Triangle: "+tri+" local number: "+localNumber+
+			" origin: "+origin()+" destination: "+destination()+" apex: "+apex();
+	}
+}
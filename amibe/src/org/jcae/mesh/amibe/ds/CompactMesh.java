@@ -0,0 +1,471 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.ds;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
+
+/**
+ * Read-only triangle mesh stored in primitive arrays.
+ * A {@link Mesh} instance creates a {@link Vertex} object per node and
+ * a {@link Triangle} object plus three {@link HalfEdge} objects per
+ * triangle, which is too expensive when a mesh only has to be inspected
+ * or converted.  This class stores:
+ * <ul>
+ *   <li>node coordinates in a <code>double[3*nrNodes]</code> array,</li>
+ *   <li>triangle connectivity in an <code>int[3*nrTriangles]</code> array,</li>
+ *   <li>group ids of triangles in an <code>int[nrTriangles]</code> array,
+ *       0 meaning that triangle does not belong to any group,</li>
+ *   <li>an <code>int[3*nrTriangles]</code> table of opposite half-edges,
+ *       which is built by {@link #buildAdjacency},</li>
+ *   <li>a bit set of sharp half-edges, see {@link #setSharp} and
+ *       {@link #buildRidges}.</li>
+ * </ul>
+ * Half-edges are numbered <code>3*t+l</code>, where <code>t</code> is a
+ * triangle index and <code>l</code> a local number; as in
+ * {@link AbstractHalfEdge}, edge <code>l</code> is opposite to vertex
+ * <code>l</code>.  Mesh traversal is performed with {@link CompactHalfEdge}
+ * cursors.
+ */
+public final class CompactMesh
+{
+	/** Value of the opposite table for boundary edges. */
+	public static final int BOUNDARY = -1;
+	/** Value of the opposite table for non-manifold edges. */
+	public static final int NONMANIFOLD = -2;
+
+	private static final int [] next3 = { 1, 2, 0 };
+	private static final int [] prev3 = { 2, 0, 1 };
+
+	private final int nrNodes;
+	private final int nrTriangles;
+	private final double [] coords;
+	private final int [] triangles;
+	private final int [] groups;
+	private final int [] refs;
+	private String [] groupNames = new String[1];
+	private int [] opposite;
+	private final BitSet sharp = new BitSet();
+
+	/**
+	 * Create an empty mesh.  Arrays are allocated but not filled,
+	 * callers have to fill arrays returned by {@link #getCoordinates},
+	 * {@link #getTriangles} and {@link #getGroups}.
+	 *
+	 * @param nrNodes  number of nodes
+	 * @param nrTriangles  number of triangles
+	 */
+	public CompactMesh(int nrNodes, int nrTriangles)
+	{
+		this(new double[3*nrNodes], new int[3*nrTriangles], new int[nrTriangles], null);
+	}
+
+	/**
+	 * Create a mesh which wraps existing arrays.  Arrays are not copied.
+	 *
+	 * @param coords  node coordinates, length is <code>3*nrNodes</code>
+	 * @param triangles  triangle connectivity, length is <code>3*nrTriangles</code>
+	 * @param groups  group ids, length is <code>nrTriangles</code>
+	 * @param refs  1D references of nodes, length is <code>nrNodes</code>; may be <code>null</code>
+	 */
+	public CompactMesh(double [] coords, int [] triangles, int [] groups, int [] refs)
+	{
+		if (triangles.length % 3 != 0 || coords.length % 3 != 0)
+			throw new IllegalArgumentException("Array lengths must be multiple of 3");
+		if (groups.length * 3 != triangles.length)
+			throw new IllegalArgumentException("Invalid length of groups array: "+groups.length);
+		if (refs != null && refs.length * 3 != coords.length)
+			throw new IllegalArgumentException("Invalid length of refs array: "+refs.length);
+		this.nrNodes = coords.length / 3;
+		this.nrTriangles = triangles.length / 3;
+		this.coords = coords;
+		this.triangles = triangles;
+		this.groups = groups;
+		this.refs = refs;
+	}
+
+	public int getNumberOfNodes()
+	{
+		return nrNodes;
+	}
+
+	public int getNumberOfTriangles()
+	{
+		return nrTriangles;
+	}
+
+	/**
+	 * Return the array of node coordinates.  This is not a copy.
+	 */
+	public double [] getCoordinates()
+	{
+		return coords;
+	}
+
+	/**
+	 * Return the array of triangle connectivity.  This is not a copy.
+	 */
+	public int [] getTriangles()
+	{
+		return triangles;
+	}
+
+	/**
+	 * Return the array of triangle group ids.  This is not a copy.
+	 */
+	public int [] getGroups()
+	{
+		return groups;
+	}
+
+	/**
+	 * Return 1D reference of a node, or 0 if this node is an inner node.
+	 *
+	 * @param node  node index
+	 * @return 1D reference of this node
+	 */
+	public int getRef(int node)
+	{
+		return refs == null ? 0 : refs[node];
+	}
+
+	public double getX(int node)
+	{
+		return coords[3*node];
+	}
+
+	public double getY(int node)
+	{
+		return coords[3*node+1];
+	}
+
+	public double getZ(int node)
+	{
+		return coords[3*node+2];
+	}
+
+	/**
+	 * Copy node coordinates into a <code>Location</code> instance.
+	 *
+	 * @param node  node index
+	 * @param dest  location which is moved to this node
+	 */
+	public void get(int node, Location dest)
+	{
+		dest.moveTo(coords[3*node], coords[3*node+1], coords[3*node+2]);
+	}
+
+	/**
+	 * Return a node index of a triangle.
+	 *
+	 * @param triangle  triangle index
+	 * @param i  local vertex number (0, 1 or 2)
+	 * @return node index
+	 */
+	public int getV(int triangle, int i)
+	{
+		return triangles[3*triangle+i];
+	}
+
+	public int getGroupId(int triangle)
+	{
+		return groups[triangle];
+	}
+
+	/**
+	 * Set group name.
+	 *
+	 * @param id  group id, must be positive
+	 * @param name  group name
+	 */
+	public void setGroupName(int id, String name)
+	{
+		if (id >= groupNames.length)
+		{
+			String [] tmp = new String[Math.max(id + 1, 2 * groupNames.length)];
+			System.arraycopy(groupNames, 0, tmp, 0, groupNames.length);
+			groupNames = tmp;
+		}
+		groupNames[id] = name;
+	}
+
+	public String getGroupName(int id)
+	{
+		return id < groupNames.length ? groupNames[id] : null;
+	}
+
+	/**
+	 * Return the origin of an half-edge.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return node index
+	 */
+	public int origin(int halfEdge)
+	{
+		return triangles[halfEdge - halfEdge % 3 + next3[halfEdge % 3]];
+	}
+
+	/**
+	 * Return the destination of an half-edge.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return node index
+	 */
+	public int destination(int halfEdge)
+	{
+		return triangles[halfEdge - halfEdge % 3 + prev3[halfEdge % 3]];
+	}
+
+	/**
+	 * Return the apex of an half-edge.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return node index
+	 */
+	public int apex(int halfEdge)
+	{
+		return triangles[halfEdge];
+	}
+
+	/**
+	 * Return the opposite half-edge.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return opposite half-edge index, or {@link #BOUNDARY} or
+	 *    {@link #NONMANIFOLD}
+	 * @throws IllegalStateException if {@link #buildAdjacency} has not been called
+	 */
+	public int sym(int halfEdge)
+	{
+		if (opposite == null)
+			throw new IllegalStateException("buildAdjacency() must be called first");
+		return opposite[halfEdge];
+	}
+
+	public boolean hasAdjacency()
+	{
+		return opposite != null;
+	}
+
+	/**
+	 * Return the table of opposite half-edges, or <code>null</code> if
+	 * {@link #buildAdjacency} has not been called.  This is not a copy.
+	 */
+	public int [] getOpposite()
+	{
+		return opposite;
+	}
+
+	/**
+	 * Mark an half-edge as sharp.  Its opposite half-edge is also marked
+	 * if adjacency relations have been built.
+	 *
+	 * @param halfEdge  half-edge index
+	 */
+	public void setSharp(int halfEdge)
+	{
+		sharp.set(halfEdge);
+		if (opposite != null && opposite[halfEdge] >= 0)
+			sharp.set(opposite[halfEdge]);
+	}
+
+	/**
+	 * Tell whether an half-edge has been marked as sharp.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return <code>true</code> if this half-edge is sharp
+	 */
+	public boolean isSharp(int halfEdge)
+	{
+		return sharp.get(halfEdge);
+	}
+
+	/**
+	 * Tell whether an half-edge separates two triangles of different
+	 * groups.  Boundary and non-manifold edges are not group borders.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return <code>true</code> if this half-edge is a group border
+	 * @throws IllegalStateException if {@link #buildAdjacency} has not been called
+	 */
+	public boolean isGroupBorder(int halfEdge)
+	{
+		int s = sym(halfEdge);
+		return s >= 0 && groups[halfEdge / 3] != groups[s / 3];
+	}
+
+	/**
+	 * Tell whether an half-edge is a boundary, non-manifold, group border
+	 * or sharp edge.  These edges are the features of
+	 * {@link org.jcae.mesh.amibe.projection.MeshLiaison} skeletons.
+	 *
+	 * @param halfEdge  half-edge index
+	 * @return <code>true</code> if this half-edge is a feature edge
+	 * @throws IllegalStateException if {@link #buildAdjacency} has not been called
+	 */
+	public boolean isFeature(int halfEdge)
+	{
+		return sym(halfEdge) < 0 || isGroupBorder(halfEdge) || sharp.get(halfEdge);
+	}
+
+	/**
+	 * Mark sharp edges, as {@link Mesh#buildRidges} does.  Adjacency
+	 * relations are built if needed.
+	 *
+	 * @param coplanarity  when dot product of normals adjacent to an edge is
+	 *   lower than this value, it is marked as sharp
+	 * @return number of new sharp edges
+	 */
+	public int buildRidges(double coplanarity)
+	{
+		int toReturn = 0;
+		if (coplanarity < -1.0)
+			return toReturn;
+		if (opposite == null)
+			buildAdjacency();
+		Location [] v = new Location[4];
+		for (int i = 0; i < v.length; i++)
+			v[i] = new Location();
+		double [][] temp = new double[4][3];
+		for (int h = 0; h < opposite.length; h++)
+		{
+			int s = opposite[h];
+			if (s < h || sharp.get(h))
+				continue;
+			get(origin(h), v[0]);
+			get(destination(h), v[1]);
+			get(apex(h), v[2]);
+			get(apex(s), v[3]);
+			Matrix3D.computeNormal3D(v[0], v[1], v[2], temp[0], temp[1], temp[2]);
+			// Opposite half-edges may have the same direction, so the
+			// opposite triangle is oriented like this one
+			Matrix3D.computeNormal3D(v[1], v[0], v[3], temp[0], temp[1], temp[3]);
+			if (Matrix3D.prodSca(temp[2], temp[3]) <= coplanarity)
+			{
+				sharp.set(h);
+				sharp.set(s);
+				toReturn++;
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Return a new cursor on the first half-edge of a triangle.
+	 *
+	 * @param triangle  triangle index
+	 * @return a new cursor
+	 */
+	public CompactHalfEdge getHalfEdge(int triangle)
+	{
+		CompactHalfEdge ret = new CompactHalfEdge(this);
+		ret.bind(triangle, 0);
+		return ret;
+	}
+
+	/**
+	 * Build the table of opposite half-edges.  Half-edges are sorted by
+	 * their largest end point and then by their smallest end point with
+	 * two stable counting sorts, so this method runs in linear time and
+	 * only allocates primitive arrays.  An edge shared by two triangles
+	 * links both half-edges, even if they have the same direction;
+	 * edges with a single triangle are marked as {@link #BOUNDARY}
+	 * and edges shared by more than two triangles are marked as
+	 * {@link #NONMANIFOLD}.
+	 */
+	public void buildAdjacency()
+	{
+		int nrHalfEdges = 3 * nrTriangles;
+		int [] start = new int[nrNodes + 1];
+		int [] bucket = sortByEndPoint(null, false, start);
+		bucket = sortByEndPoint(bucket, true, start);
+		int [] sym = new int[nrHalfEdges];
+		for (int v = 0; v < nrNodes; v++)
+		{
+			int first = start[v];
+			int last = start[v + 1];
+			// Process runs of half-edges with the same end points
+			for (int i = first; i < last; )
+			{
+				int key = endPoint(bucket[i], false);
+				int j = i + 1;
+				while (j < last && endPoint(bucket[j], false) == key)
+					j++;
+				if (j - i == 1)
+					sym[bucket[i]] = BOUNDARY;
+				else if (j - i == 2)
+				{
+					sym[bucket[i]] = bucket[i + 1];
+					sym[bucket[i + 1]] = bucket[i];
+				}
+				else
+				{
+					for (int k = i; k < j; k++)
+						sym[bucket[k]] = NONMANIFOLD;
+				}
+				i = j;
+			}
+		}
+		opposite = sym;
+	}
+
+	/**
+	 * Stable counting sort of half-edges by one of their end points.
+	 *
+	 * @param order  half-edges to sort, or <code>null</code> to sort all
+	 *               half-edges in index order
+	 * @param min  sort by the smallest end point if <code>true</code>,
+	 *             otherwise by the largest one
+	 * @param start  array of size <code>getNumberOfNodes() + 1</code>;
+	 *               on return, half-edges whose end point is
+	 *               <code>v</code> are stored between indices
+	 *               <code>start[v]</code> and <code>start[v+1]</code>
+	 * @return sorted half-edges
+	 */
+	private int [] sortByEndPoint(int [] order, boolean min, int [] start)
+	{
+		int nrHalfEdges = 3 * nrTriangles;
+		Arrays.fill(start, 0);
+		for (int h = 0; h < nrHalfEdges; h++)
+			start[endPoint(h, min) + 1]++;
+		for (int i = 0; i < nrNodes; i++)
+			start[i + 1] += start[i];
+		int [] fill = new int[nrNodes];
+		int [] ret = new int[nrHalfEdges];
+		for (int i = 0; i < nrHalfEdges; i++)
+		{
+			int h = order == null ? i : order[i];
+			int v = endPoint(h, min);
+			ret[start[v] + fill[v]] = h;
+			fill[v]++;
+		}
+		return ret;
+	}
+
+	private int endPoint(int halfEdge, boolean min)
+	{
+		int o = origin(halfEdge);
+		int d = destination(halfEdge);
+		return min ? Math.min(o, d) : Math.max(o, d);
+	}
+}
@@ -22,6 +22,7 @@ package org.jcae.mesh.amibe.ds;
 
 import org.jcae.mesh.amibe.traits.HalfEdgeTraitsBuilder;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
+import org.jcae.mesh.amibe.metrics.PoolWorkVectors;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -33,6 +34,7 @@ import java.io.Serializable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.util.Indexable;
 
 /**
  * Half-edge data structure.  This is a straightforward implementation of
@@ -40,7 +42,7 @@ import org.jcae.mesh.amibe.metrics.Location;
  * (between 0 and 2) and a triangle.  It has a link to the next edge in the
  * same triangle, and to its symmetric edge.
  */
-public class HalfEdge extends AbstractHalfEdge implements Serializable
+public class HalfEdge extends AbstractHalfEdge implements Serializable, Indexable
 {
 	private static final long serialVersionUID = -2460993797089718106L;
 	private static final Logger logger=Logger.getLogger(HalfEdge.class.getName());
@@ -49,6 +51,8 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	private byte attributes;
 	private HalfEdge sym;
 	private HalfEdge next;
+	// Identifier given by a container, see Indexable
+	private int index = -1;
 
 	private static final int [] next3 = { 1, 2, 0 };
 	private static final int [] prev3 = { 2, 0, 1 };
@@ -87,6 +91,16 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	{
 		return attributes;
 	}
+
+	public final int getIndex()
+	{
+		return index;
+	}
+
+	public final void setIndex(int index)
+	{
+		this.index = index;
+	}
 	
 	/**
 	 * Sets the edge tied to this object.
@@ -443,11 +457,12 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 		// Do not create an edge which will be difficult to modify later
 		if (expectInsert && a.getRef() != 0 && n.getRef() != 0 && (o.getRef() == 0 || d.getRef() == 0))
 			return invalid;
-		double[] temp0 = mesh.temp.t3_0;
-		double[] temp1 = mesh.temp.t3_1;
-		double[] temp2 = mesh.temp.t3_2;
-		double[] temp3 = mesh.temp.t3_3;
-		double[] temp4 = mesh.temp.t3_4;
+		PoolWorkVectors temp = mesh.getWorkVectors();
+		double[] temp0 = temp.t3_0;
+		double[] temp1 = temp.t3_1;
+		double[] temp2 = temp.t3_2;
+		double[] temp3 = temp.t3_3;
+		double[] temp4 = temp.t3_4;
 		//normals of current side triangles
 		double s1 = Matrix3D.computeNormal3D(o, d, a, temp0, temp1, temp2);
 		double s2 = Matrix3D.computeNormal3D(d, o, n, temp0, temp1, temp3);
@@ -532,10 +547,11 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 		// Do not create an edge which will be difficult to modify later
 		if (expectInsert && a.getRef() != 0 && n.getRef() != 0 && (o.getRef() == 0 || d.getRef() == 0))
 			return invalid;
-		double[] temp0 = mesh.temp.t3_0;
-		double[] temp1 = mesh.temp.t3_1;
-		double[] temp2 = mesh.temp.t3_2;
-		double[] temp3 = mesh.temp.t3_3;
+		PoolWorkVectors temp = mesh.getWorkVectors();
+		double[] temp0 = temp.t3_0;
+		double[] temp1 = temp.t3_1;
+		double[] temp2 = temp.t3_2;
+		double[] temp3 = temp.t3_3;
 		double s1 = Matrix3D.computeNormal3D(o, d, a, temp0, temp1, temp2);
 		double s2 = Matrix3D.computeNormal3D(d, o, n, temp0, temp1, temp3);
 		double cBefore1 = Matrix3D.prodSca(temp2, normal);
@@ -656,9 +672,10 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	@Override
 	public double area(Mesh m)
 	{
-		double[] temp0 = m.temp.t3_0;
-		double[] temp1 = m.temp.t3_1;
-		double[] temp2 = m.temp.t3_2;
+		PoolWorkVectors temp = m.getWorkVectors();
+		double[] temp0 = temp.t3_0;
+		double[] temp1 = temp.t3_1;
+		double[] temp2 = temp.t3_2;
 		destination().sub(origin(), temp1);
 		apex().sub(origin(), temp2);
 		Matrix3D.prodVect3D(temp1, temp2, temp0);
@@ -853,10 +870,11 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 		assert origin().isManifold() && origin().isMutable();
 		Vertex d = destination();
 		HalfEdge f = this;
-		double [] temp0 = mesh.temp.t3_0;
-		double [] temp1 = mesh.temp.t3_1;
-		double [] temp2 = mesh.temp.t3_2;
-		double [] temp3 = mesh.temp.t3_3;
+		PoolWorkVectors temp = mesh.getWorkVectors();
+		double [] temp0 = temp.t3_0;
+		double [] temp1 = temp.t3_1;
+		double [] temp2 = temp.t3_2;
+		double [] temp3 = temp.t3_3;
 		// Loop around origin
 		do
 		{
@@ -908,10 +926,11 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	{
 		// Loop around origin
 		HalfEdge f = this;
-		double [] temp0 = mesh.temp.t3_0;
-		double [] temp1 = mesh.temp.t3_1;
-		double [] temp2 = mesh.temp.t3_2;
-		double [] temp3 = mesh.temp.t3_3;
+		PoolWorkVectors temp = mesh.getWorkVectors();
+		double [] temp0 = temp.t3_0;
+		double [] temp1 = temp.t3_1;
+		double [] temp2 = temp.t3_2;
+		double [] temp3 = temp.t3_3;
 		Vertex d = f.destination();
 		do
 		{
@@ -954,10 +973,11 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	{
 		// Loop around origin
 		HalfEdge f = this;
-		double [] temp0 = mesh.temp.t3_0;
-		double [] temp1 = mesh.temp.t3_1;
-		double [] temp2 = mesh.temp.t3_2;
-		double [] temp3 = mesh.temp.t3_3;
+		PoolWorkVectors temp = mesh.getWorkVectors();
+		double [] temp0 = temp.t3_0;
+		double [] temp1 = temp.t3_1;
+		double [] temp2 = temp.t3_2;
+		double [] temp3 = temp.t3_3;
 		Vertex d = f.destination();
 		do
 		{
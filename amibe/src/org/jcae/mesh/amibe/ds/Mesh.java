@@ -141,14 +141,28 @@ public class Mesh implements Serializable
 	//  Set to true if references must be written onto disk
 	private boolean persistentReferences = false;
 
+	//  Set to true to build adjacency relations with vertex link maps
+	//  instead of AdjacencyBuilder
+	private boolean legacyAdjacency = Boolean.getBoolean("org.jcae.mesh.amibe.ds.Mesh.legacyAdjacency");
+
 	private int maxLabel = 0;
 
 	// 3D euclidian metric
 	private final Metric euclidian_metric3d = new EuclidianMetric3D();
 
-	// Temporary vectors used as work arrays in HalfEdge
+	// Temporary vectors used as work arrays
 	protected final PoolWorkVectors temp = new PoolWorkVectors();
 
+	// Temporary vectors used as work arrays in HalfEdge, one set per
+	// thread so that geometric predicates can be evaluated concurrently
+	private static final ThreadLocal<PoolWorkVectors> WORK_VECTORS = new ThreadLocal<PoolWorkVectors>() {
+		@Override
+		protected PoolWorkVectors initialValue()
+		{
+			return new PoolWorkVectors();
+		}
+	};
+
 	//  Complex algorithms require several VirtualHalfEdge, they are
 	//  allocated here to prevent allocation/deallocation overhead.
 	protected final VirtualHalfEdge[] tempVH = new VirtualHalfEdge[4];
@@ -487,6 +501,14 @@ public class Mesh implements Serializable
 		return traitsBuilder.getTrace(traits);
 	}
 
+	/**
+	 * Returns work vectors of the current thread.
+	 */
+	final PoolWorkVectors getWorkVectors()
+	{
+		return WORK_VECTORS.get();
+	}
+
 	/**
 	 * Returns the Kd-tree associated with this mesh.
 	 *
@@ -712,6 +734,20 @@ public class Mesh implements Serializable
 		this.persistentReferences = persistentReferences;
 	}
 
+	/**
+	 * Selects the algorithm used by {@link #buildAdjacency}.  By default,
+	 * vertex links are stored into flat arrays, which is much faster and
+	 * uses less memory on large meshes.  The former algorithm is kept for
+	 * comparison purpose and can be enabled by setting the
+	 * <code>org.jcae.mesh.amibe.ds.Mesh.legacyAdjacency</code> property.
+	 *
+	 * @param legacy  <code>true</code> to use the former algorithm
+	 */
+	void setLegacyAdjacency(boolean legacy)
+	{
+		legacyAdjacency = legacy;
+	}
+
 	/**
 	 * Tells whether mesh contains adjacency relations.
 	 * @return <code>true</code> if mesh contains adjacency relations,
@@ -734,11 +770,24 @@ public class Mesh implements Serializable
 		//  Connect all edges together
 		logger.fine("Connect triangles");
 		ArrayList<Triangle> newTri = new ArrayList<Triangle>();
-		//  For each vertex, build the list of triangles
-		//  connected to this vertex.
-		Map<Vertex, Collection<Triangle>> tVertList = getMapVertexLinks();
-		//  Connect all edges together
-		glueSymmetricHalfEdges(tVertList, newTri);
+		Map<Vertex, Collection<Triangle>> tVertList = null;
+		AdjacencyBuilder builder = null;
+		Collection<Vertex> vertices;
+		if (legacyAdjacency)
+		{
+			//  For each vertex, build the list of triangles
+			//  connected to this vertex.
+			tVertList = getMapVertexLinks();
+			//  Connect all edges together
+			glueSymmetricHalfEdges(tVertList, newTri);
+			vertices = tVertList.keySet();
+		}
+		else
+		{
+			builder = new AdjacencyBuilder(this, getAdjacencyVertices(), triangleList);
+			builder.glueSymmetricHalfEdges(newTri);
+			vertices = builder.getVertices();
+		}
 
 		//  Mark boundary edges and bind them to virtual triangles.
 		logger.fine("Connect boundary triangles");
@@ -746,7 +795,11 @@ public class Mesh implements Serializable
 
 		//  Fix links for junctions
 		logger.fine("Fix vertex links");
-		rebuildVertexLinks(tVertList);
+		if (builder == null)
+			rebuildVertexLinks(tVertList);
+		else
+			builder.rebuildVertexLinks();
+		builder = null;
 		
 		//  Find the list of vertices which are on mesh boundary
 		logger.fine("Build the list of nodes on boundaries and non-manifold edges");
@@ -779,7 +832,7 @@ public class Mesh implements Serializable
 
 		int nrJunctionPoints = 0;
 		Collection<Vertex> freeVertices = new HashSet<Vertex>();
-		for (Vertex v: tVertList.keySet())
+		for (Vertex v: vertices)
 		{
 			if (bndNodes.contains(v))
 				continue;
@@ -807,8 +860,11 @@ public class Mesh implements Serializable
 		if (maxLabel != currentMaxLabel)
 			logger.fine("Created "+(maxLabel - currentMaxLabel)+" more references");
 		//  Remove all references to help the garbage collector.
-		for (Collection<Triangle> list : tVertList.values())
-			list.clear();
+		if (tVertList != null)
+		{
+			for (Collection<Triangle> list : tVertList.values())
+				list.clear();
+		}
 		// Add outer triangles
 		triangleList.addAll(newTri);
 		if (traitsBuilder.hasTrace())
@@ -819,7 +875,7 @@ public class Mesh implements Serializable
 		}
 	}
 
-	private Map<Vertex, Collection<Triangle>> getMapVertexLinks()
+	private Collection<Vertex> getAdjacencyVertices()
 	{
 		Collection<Vertex> vertices;
 		if (nodeList == null)
@@ -836,6 +892,12 @@ public class Mesh implements Serializable
 		{
 			vertices = nodeList;
 		}
+		return vertices;
+	}
+
+	private Map<Vertex, Collection<Triangle>> getMapVertexLinks()
+	{
+		Collection<Vertex> vertices = getAdjacencyVertices();
 		Map<Vertex, Collection<Triangle>> tVertList = new LinkedHashMap<Vertex, Collection<Triangle>>(vertices.size());
 		for (Vertex v: vertices)
 			tVertList.put(v, new ArrayList<Triangle>(10));
@@ -865,51 +927,58 @@ public class Mesh implements Serializable
 	public static void rebuildVertexLinks(Map<Vertex, Collection<Triangle>> tVertList)
 	{
 		for (Map.Entry<Vertex, Collection<Triangle>> entry : tVertList.entrySet())
+			rebuildVertexLink(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Fix link of a vertex if it is non-manifold.
+	 *
+	 * @param v  vertex
+	 * @param list  triangles incident to this vertex
+	 */
+	static void rebuildVertexLink(Vertex v, Collection<Triangle> list)
+	{
+		int cnt = 0;
+		AbstractHalfEdge ot = null;
+		if (null == v.getLink())
+			return;
+		assert v.getLink() instanceof Triangle: v;
+		ot = v.getIncidentAbstractHalfEdge((Triangle) v.getLink(), ot);
+		Vertex d = ot.destination();
+		do
 		{
-			Vertex v = entry.getKey();
-			Collection<Triangle> list = entry.getValue();
-			int cnt = 0;
-			AbstractHalfEdge ot = null;
-			if (null == v.getLink())
-				continue;
-			assert v.getLink() instanceof Triangle: v;
-			ot = v.getIncidentAbstractHalfEdge((Triangle) v.getLink(), ot);
-			Vertex d = ot.destination();
+			if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
+				cnt++;
+			if (ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
+			{
+				cnt = 0;
+				break;
+			}
+			ot = ot.nextOriginLoop();
+		}
+		while (ot.destination() != d);
+		if (cnt == list.size())
+			return;
+		// Non-manifold vertex
+		LinkedHashSet<Triangle> neighbours = new LinkedHashSet<Triangle>(list);
+		ArrayList<Triangle> fans = new ArrayList<Triangle>();
+		while (!neighbours.isEmpty())
+		{
+			ot = v.getIncidentAbstractHalfEdge(neighbours.iterator().next(), ot);
+			d = ot.destination();
+			fans.add(ot.getTri());
 			do
 			{
 				if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
-					cnt++;
-				if (ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
-				{
-					cnt = 0;
-					break;
-				}
+					neighbours.remove(ot.getTri());
 				ot = ot.nextOriginLoop();
 			}
 			while (ot.destination() != d);
-			if (cnt == list.size())
-				continue;
-			// Non-manifold vertex
-			LinkedHashSet<Triangle> neighbours = new LinkedHashSet<Triangle>(list);
-			ArrayList<Triangle> fans = new ArrayList<Triangle>();
-			while (!neighbours.isEmpty())
-			{
-				ot = v.getIncidentAbstractHalfEdge(neighbours.iterator().next(), ot);
-				d = ot.destination();
-				fans.add(ot.getTri());
-				do
-				{
-					if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
-						neighbours.remove(ot.getTri());
-					ot = ot.nextOriginLoop();
-				}
-				while (ot.destination() != d);
-			}
-			Triangle[] links = new Triangle[fans.size()];
-			fans.toArray(links);
-			v.setLink(links);
-			logger.fine("Non-manifold vertex has "+fans.size()+" fans");
 		}
+		Triangle[] links = new Triangle[fans.size()];
+		fans.toArray(links);
+		v.setLink(links);
+		logger.fine("Non-manifold vertex has "+fans.size()+" fans");
 	}
 
 	private void connectBoundaryTriangles(ArrayList<Triangle> newTri)
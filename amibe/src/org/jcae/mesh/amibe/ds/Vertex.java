@@ -22,6 +22,7 @@ package org.jcae.mesh.amibe.ds;
 
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.traits.VertexTraitsBuilder;
+import org.jcae.mesh.amibe.util.Indexable;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.metrics.Location;
 import java.util.Iterator;
@@ -51,7 +52,7 @@ import java.util.TreeSet;
  * all incident triangles through their adjacency relations.
  * </p>
  */
-public class Vertex extends Location implements Serializable
+public class Vertex extends Location implements Serializable, Indexable
 {
 	private static final long serialVersionUID = 8049983674054731722L;
 	private static final Logger logger=Logger.getLogger(Vertex.class.getName());
@@ -76,6 +77,8 @@ public class Vertex extends Location implements Serializable
 	private int label;
 	private boolean readable = true;
 	private boolean writable = true;
+	// Identifier given by a container, see Indexable
+	private int index = -1;
 	
 	/**
 	 * Constructor.
@@ -203,6 +206,16 @@ public class Vertex extends Location implements Serializable
 	{
 		label = l;
 	}
+
+	public final int getIndex()
+	{
+		return index;
+	}
+
+	public final void setIndex(int index)
+	{
+		this.index = index;
+	}
 	
 	/**
 	 * Get a finite element containing this Vertex.
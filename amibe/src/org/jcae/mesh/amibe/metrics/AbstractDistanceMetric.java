@@ -51,6 +51,16 @@ public abstract class AbstractDistanceMetric extends MetricSupport.AnalyticMetri
 	public abstract class DistanceMetricInterface
 	{
 		public abstract double getSqrDistance(double x, double y, double z);
+		/**
+		 * Compute the bounding box of this source.
+		 * @param bbox array of size 6 filled with xmin, ymin, zmin, xmax,
+		 * ymax, zmax
+		 * @return false if this source is unbounded
+		 */
+		public boolean getBounds(double[] bbox)
+		{
+			return false;
+		}
 		public double sqrD0;
 		public double size0;
 		/**
@@ -84,6 +94,15 @@ public abstract class AbstractDistanceMetric extends MetricSupport.AnalyticMetri
 			final double dz = sz-z;
 			return dx*dx+dy*dy+dz*dz;
 		}
+
+		@Override
+		public boolean getBounds(double[] bbox)
+		{
+			bbox[0] = bbox[3] = sx;
+			bbox[1] = bbox[4] = sy;
+			bbox[2] = bbox[5] = sz;
+			return true;
+		}
 	}
 
 	protected class LineSource extends DistanceMetricInterface
@@ -141,6 +160,20 @@ public abstract class AbstractDistanceMetric extends MetricSupport.AnalyticMetri
 			dz -= dir[2] * abscissa;
 			return dx * dx + dy * dy + dz * dz;
 		}
+
+		@Override
+		public boolean getBounds(double[] bbox)
+		{
+			if (!closed0 || !closed1)
+				return false;
+			bbox[0] = Math.min(sx0, sx1);
+			bbox[1] = Math.min(sy0, sy1);
+			bbox[2] = Math.min(sz0, sz1);
+			bbox[3] = Math.max(sx0, sx1);
+			bbox[4] = Math.max(sy0, sy1);
+			bbox[5] = Math.max(sz0, sz1);
+			return true;
+		}
 	}
 
 
@@ -154,6 +187,13 @@ public abstract class AbstractDistanceMetric extends MetricSupport.AnalyticMetri
 	/** choose analytic metric with numerical criterion if true */
 	protected boolean mixed = false;
 	protected double scaling = 1.0;
+	/** sources are scanned linearly when there are less of them */
+	private int sourceTreeThreshold = 32;
+	private volatile DistanceSourceTree sourceTree;
+	/** values of sources.size(), sizeInf and rho when sourceTree was built */
+	private int sourceTreeSize;
+	private double sourceTreeSizeInf, sourceTreeRho;
+
 	public AbstractDistanceMetric(double sizeInf) {
 		this.sizeInf = sizeInf;
 	}
@@ -242,33 +282,101 @@ public abstract class AbstractDistanceMetric extends MetricSupport.AnalyticMetri
 	public double getTargetSizeNumeric(double x, double y, double z,
 		int groupId)
 	{
-		double minValue = getSize(groupId);
-		for (DistanceMetricInterface s : sources) {
-			double d = Math.sqrt(s.getSqrDistance(x, y, z));
-			double v;
-			/** constant metric [0 s.size0] */
-			if(d < s.size0)
-				v = s.size0;
-			/** geometric interpolation on first interval */
-			else if(d < s.size0 * (1. + rho))
-			{
-				double t = (d - s.size0) / (rho * s.size0);
-				v = s.size0 * Math.pow(rho, t);
-			}
-			/** linear interpolation otherwise */
+		return getMinSourceSize(x, y, z, getSize(groupId), true) * scaling;
+	}
+
+	/**
+	 * Compute the size induced by a source with the analytic metric.
+	 * @param s the source
+	 * @param d2 the square distance to the source
+	 */
+	protected abstract double getSourceSizeAnalytic(DistanceMetricInterface s, double d2);
+
+	/**
+	 * Compute the size induced by a source with the numeric metric.
+	 * @param s the source
+	 * @param d2 the square distance to the source
+	 */
+	protected final double getSourceSizeNumeric(DistanceMetricInterface s, double d2)
+	{
+		double d = Math.sqrt(d2);
+		double v;
+		/** constant metric [0 s.size0] */
+		if(d < s.size0)
+			v = s.size0;
+		/** geometric interpolation on first interval */
+		else if(d < s.size0 * (1. + rho))
+		{
+			double t = (d - s.size0) / (rho * s.size0);
+			v = s.size0 * Math.pow(rho, t);
+		}
+		/** linear interpolation otherwise */
+		else
+		{
+			double deltaS = sizeInf - s.size0;
+			double arho = (rho - 1.0) / rho;
+			double drho = s.size0 + deltaS / arho;
+			if (d > drho)
+				v = sizeInf;
 			else
+				v = s.size0 + arho * (d - s.size0);
+		}
+		return v;
+	}
+
+	final double getSourceSize(DistanceMetricInterface s, double d2, boolean numeric)
+	{
+		return numeric ? getSourceSizeNumeric(s, d2) : getSourceSizeAnalytic(s, d2);
+	}
+
+	/**
+	 * Compute the minimum of <code>minValue</code> and of the sizes induced
+	 * by all sources at a given location.  When there are many sources,
+	 * only those whose influence area contains this location are visited.
+	 * @param numeric true for the numeric metric, false for the analytic one
+	 */
+	protected final double getMinSourceSize(double x, double y, double z,
+		double minValue, boolean numeric)
+	{
+		DistanceSourceTree tree = getSourceTree();
+		if (tree != null)
+			return tree.getMinSize(x, y, z, minValue, numeric);
+		for (DistanceMetricInterface s : sources)
+			minValue = Math.min(getSourceSize(s, s.getSqrDistance(x, y, z), numeric), minValue);
+		return minValue;
+	}
+
+	private DistanceSourceTree getSourceTree()
+	{
+		int n = sources.size();
+		if (n < sourceTreeThreshold)
+			return null;
+		DistanceSourceTree tree = sourceTree;
+		if (tree != null && n == sourceTreeSize && sizeInf == sourceTreeSizeInf &&
+			rho == sourceTreeRho)
+			return tree;
+		synchronized (this)
+		{
+			if (sourceTree == null || n != sourceTreeSize ||
+				sizeInf != sourceTreeSizeInf || rho != sourceTreeRho)
 			{
-				double deltaS = sizeInf - s.size0;
-				double arho = (rho - 1.0) / rho;
-				double drho = s.size0 + deltaS / arho;
-				if (d > drho)
-					v = sizeInf;
-				else
-					v = s.size0 + arho * (d - s.size0);
+				sourceTreeSize = n;
+				sourceTreeSizeInf = sizeInf;
+				sourceTreeRho = rho;
+				sourceTree = new DistanceSourceTree(this, sources);
 			}
-			minValue = Math.min(v, minValue);
+			return sourceTree;
 		}
-		return minValue * scaling;
+	}
+
+	/**
+	 * Set the minimal number of sources above which a spatial index is
+	 * used to find sources.
+	 */
+	void setSourceTreeThreshold(int n)
+	{
+		sourceTreeThreshold = n;
+		sourceTree = null;
 	}
 
 	public double getSize(int group)
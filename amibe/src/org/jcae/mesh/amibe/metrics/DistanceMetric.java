@@ -162,22 +162,23 @@ public class DistanceMetric extends AbstractDistanceMetric {
 	public double getTargetSizeAnalytic(double x, double y, double z,
 		int groupId)
 	{
-		double minValue = getSize(groupId);
-		for (DistanceMetricInterface s : sources) {
-			double d2 = s.getSqrDistance(x, y, z);
-			double v;
-			if(d2 > s.sqrD1)
-				v = sizeInf;
-			else if(d2 < s.sqrD0)
-				v = s.size0;
-			else
-			{
-				double deltaS = sizeInf - s.size0;
-				v = deltaS * d2 / s.delta + (s.size0 - s.ratio * deltaS);
-			}
-			minValue = Math.min(v, minValue);
+		return getMinSourceSize(x, y, z, getSize(groupId), false) * scaling;
+	}
+
+	@Override
+	protected double getSourceSizeAnalytic(DistanceMetricInterface s, double d2)
+	{
+		double v;
+		if(d2 > s.sqrD1)
+			v = sizeInf;
+		else if(d2 < s.sqrD0)
+			v = s.size0;
+		else
+		{
+			double deltaS = sizeInf - s.size0;
+			v = deltaS * d2 / s.delta + (s.size0 - s.ratio * deltaS);
 		}
-		return minValue * scaling;
+		return v;
 	}
 
 	/**
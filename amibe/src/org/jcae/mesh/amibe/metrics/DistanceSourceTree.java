@@ -0,0 +1,243 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.mesh.amibe.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.jcae.mesh.amibe.metrics.AbstractDistanceMetric.DistanceMetricInterface;
+
+/**
+ * Bounding volume hierarchy over the sources of an
+ * {@link AbstractDistanceMetric}.  The bounding box of each source is
+ * enlarged by its influence radius, so that a size query only visits
+ * sources which may give a size different from <code>sizeInf</code>.
+ * Two sets of boxes are stored, one for the analytic metric (radius is
+ * <code>d1</code>) and one for the numeric metric (radius depends on
+ * <code>rho</code>).  Infinite lines cannot be bounded and are always
+ * visited.
+ *
+ * Instances are immutable and can be queried concurrently.
+ */
+final class DistanceSourceTree
+{
+	private static final int LEAF_SIZE = 4;
+	// Relative margin added to influence radii to be safe against rounding
+	// errors, pruning is always conservative.
+	private static final double MARGIN = 1.e-6;
+	private static final int STACK_SIZE = 64;
+	// Traversal stack, allocated once per thread
+	private static final ThreadLocal<int[]> STACK = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[STACK_SIZE];
+		}
+	};
+
+	private final AbstractDistanceMetric metric;
+	// Bounded sources, sorted so that each node contains a contiguous range
+	private final DistanceMetricInterface[] sources;
+	// Sources which have no bounding box
+	private final DistanceMetricInterface[] unbounded;
+	// Number of sources
+	private final int size;
+	// 6 values per node: xmin, ymin, zmin, xmax, ymax, zmax
+	private final double[] analyticBounds;
+	private final double[] numericBounds;
+	// For leaves, start and end indices in sources; for inner nodes,
+	// start is -1 and end is the index of the right child, left child
+	// is the next node.
+	private final int[] start;
+	private final int[] end;
+	private int nrNodes;
+
+	/** Per source data used while building the tree */
+	private static final class Entry
+	{
+		final DistanceMetricInterface source;
+		final double[] bbox = new double[6];
+		double analyticRadius;
+		double numericRadius;
+		Entry(DistanceMetricInterface source)
+		{
+			this.source = source;
+		}
+		double center(int axis)
+		{
+			return 0.5 * (bbox[axis] + bbox[axis+3]);
+		}
+	}
+
+	DistanceSourceTree(AbstractDistanceMetric metric, List<DistanceMetricInterface> list)
+	{
+		this.metric = metric;
+		this.size = list.size();
+		ArrayList<Entry> bounded = new ArrayList<Entry>(list.size());
+		ArrayList<DistanceMetricInterface> others = new ArrayList<DistanceMetricInterface>();
+		for (DistanceMetricInterface s : list)
+		{
+			Entry e = new Entry(s);
+			if (s.getBounds(e.bbox))
+			{
+				e.analyticRadius = Math.sqrt(s.sqrD1) * (1.0 + MARGIN);
+				e.numericRadius = numericRadius(s) * (1.0 + MARGIN);
+				bounded.add(e);
+			}
+			else
+				others.add(s);
+		}
+		unbounded = others.toArray(new DistanceMetricInterface[others.size()]);
+		Entry[] entries = bounded.toArray(new Entry[bounded.size()]);
+		sources = new DistanceMetricInterface[entries.length];
+		int maxNodes = Math.max(1, 2 * entries.length);
+		analyticBounds = new double[6 * maxNodes];
+		numericBounds = new double[6 * maxNodes];
+		start = new int[maxNodes];
+		end = new int[maxNodes];
+		if (entries.length > 0)
+			build(entries, 0, entries.length);
+	}
+
+	/**
+	 * Returns the distance beyond which a source gives <code>sizeInf</code>
+	 * with the numeric metric, see
+	 * {@link AbstractDistanceMetric#getSourceSizeNumeric}.
+	 */
+	private double numericRadius(DistanceMetricInterface s)
+	{
+		double rho = metric.rho;
+		if (rho <= 1.0)
+			return 0.0;
+		double arho = (rho - 1.0) / rho;
+		double drho = s.size0 + (metric.sizeInf - s.size0) / arho;
+		return Math.max(drho, s.size0 * (1.0 + rho));
+	}
+
+	private int build(Entry[] entries, int from, int to)
+	{
+		int node = nrNodes++;
+		double[] ab = new double[6];
+		double[] nb = new double[6];
+		Arrays.fill(ab, 0, 3, Double.MAX_VALUE);
+		Arrays.fill(ab, 3, 6, -Double.MAX_VALUE);
+		Arrays.fill(nb, 0, 3, Double.MAX_VALUE);
+		Arrays.fill(nb, 3, 6, -Double.MAX_VALUE);
+		double[] cmin = new double[] { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		double[] cmax = new double[] { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (int i = from; i < to; i++)
+		{
+			Entry e = entries[i];
+			for (int k = 0; k < 3; k++)
+			{
+				ab[k]   = Math.min(ab[k],   e.bbox[k]   - e.analyticRadius);
+				ab[k+3] = Math.max(ab[k+3], e.bbox[k+3] + e.analyticRadius);
+				nb[k]   = Math.min(nb[k],   e.bbox[k]   - e.numericRadius);
+				nb[k+3] = Math.max(nb[k+3], e.bbox[k+3] + e.numericRadius);
+				double c = e.center(k);
+				cmin[k] = Math.min(cmin[k], c);
+				cmax[k] = Math.max(cmax[k], c);
+			}
+		}
+		System.arraycopy(ab, 0, analyticBounds, 6 * node, 6);
+		System.arraycopy(nb, 0, numericBounds, 6 * node, 6);
+		if (to - from <= LEAF_SIZE)
+		{
+			for (int i = from; i < to; i++)
+				sources[i] = entries[i].source;
+			start[node] = from;
+			end[node] = to;
+			return node;
+		}
+		// Split at the median along the largest extent of centers
+		int axis = 0;
+		for (int k = 1; k < 3; k++)
+			if (cmax[k] - cmin[k] > cmax[axis] - cmin[axis])
+				axis = k;
+		final int a = axis;
+		Arrays.sort(entries, from, to, new Comparator<Entry>() {
+			public int compare(Entry e1, Entry e2)
+			{
+				return Double.compare(e1.center(a), e2.center(a));
+			}
+		});
+		int mid = (from + to) / 2;
+		build(entries, from, mid);
+		start[node] = -1;
+		end[node] = build(entries, mid, to);
+		return node;
+	}
+
+	private static boolean contains(double[] bounds, int node, double x, double y, double z)
+	{
+		int o = 6 * node;
+		return x >= bounds[o]   && y >= bounds[o+1] && z >= bounds[o+2] &&
+		       x <= bounds[o+3] && y <= bounds[o+4] && z <= bounds[o+5];
+	}
+
+	/**
+	 * Returns the minimum of <code>minValue</code> and of the sizes
+	 * induced by all sources at a given location.
+	 *
+	 * @param numeric  <code>true</code> to compute the numeric metric,
+	 *                 <code>false</code> for the analytic one
+	 */
+	double getMinSize(double x, double y, double z, double minValue, boolean numeric)
+	{
+		int visited = 0;
+		for (DistanceMetricInterface s : unbounded)
+		{
+			minValue = Math.min(minValue, metric.getSourceSize(s, s.getSqrDistance(x, y, z), numeric));
+			visited++;
+		}
+		if (nrNodes > 0)
+		{
+			double[] bounds = numeric ? numericBounds : analyticBounds;
+			int[] stack = STACK.get();
+			int sp = 0;
+			stack[sp++] = 0;
+			while (sp > 0)
+			{
+				int node = stack[--sp];
+				if (!contains(bounds, node, x, y, z))
+					continue;
+				if (start[node] >= 0)
+				{
+					for (int i = start[node]; i < end[node]; i++)
+					{
+						DistanceMetricInterface s = sources[i];
+						minValue = Math.min(minValue, metric.getSourceSize(s, s.getSqrDistance(x, y, z), numeric));
+					}
+					visited += end[node] - start[node];
+				}
+				else
+				{
+					stack[sp++] = end[node];
+					stack[sp++] = node + 1;
+				}
+			}
+		}
+		// Skipped sources give sizeInf
+		if (visited < size)
+			minValue = Math.min(minValue, metric.sizeInf);
+		return minValue;
+	}
+}
@@ -23,6 +23,9 @@ package org.jcae.mesh.amibe.metrics;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -263,6 +266,141 @@ public class KdTree<T extends Location>
 		setup(bbox);
 	}
 	
+	/**
+	 * Create a new <code>KdTree</code> containing a collection of vertices.
+	 * The result is the same as calling {@link #add} on each vertex, but
+	 * it is much faster on large collections: integer coordinates are
+	 * computed once, vertices are partitioned level by level with a stable
+	 * counting sort, and large subtrees are built in parallel.
+	 *
+	 * @param bbox   coordinates of bottom-left vertex and upper-right vertices
+	 * @param vertices  vertices to insert
+	 */
+	public KdTree(double [] bbox, Collection<? extends T> vertices)
+	{
+		this(bbox, 10);
+		int n = vertices.size();
+		if (n == 0)
+			return;
+		Object [] items = vertices.toArray();
+		int [] ijk = new int[n * dimension];
+		int [] tmp = new int[dimension];
+		for (int i = 0; i < n; i++)
+		{
+			@SuppressWarnings("unchecked")
+			T v = (T) items[i];
+			double2int(v, tmp);
+			System.arraycopy(tmp, 0, ijk, i * dimension, dimension);
+		}
+		int [] index = new int[n];
+		for (int i = 0; i < n; i++)
+			index[i] = i;
+		BulkLoad task = new BulkLoad(root, gridSize, 0, n, items, ijk, index, new int[n]);
+		if (n < BULK_PARALLEL_THRESHOLD)
+			nCells += task.compute();
+		else
+			nCells += ForkJoinPool.commonPool().invoke(task);
+	}
+
+	// Subtrees with less vertices are built sequentially
+	private static final int BULK_PARALLEL_THRESHOLD = 50000;
+
+	/**
+	 * Build the subtree of a cell containing vertices
+	 * <code>index[from..to[</code>.  Returns the number of cells which have
+	 * been created.
+	 */
+	private final class BulkLoad extends RecursiveTask<Integer>
+	{
+		private static final long serialVersionUID = 7421570329446153627L;
+		private final Cell cell;
+		private final int size, from, to;
+		private final Object [] items;
+		private final int [] ijk, index, buffer;
+		private BulkLoad(Cell cell, int size, int from, int to, Object [] items,
+			int [] ijk, int [] index, int [] buffer)
+		{
+			this.cell = cell;
+			this.size = size;
+			this.from = from;
+			this.to = to;
+			this.items = items;
+			this.ijk = ijk;
+			this.index = index;
+			this.buffer = buffer;
+		}
+
+		private int child(int i, int s)
+		{
+			int ret = 0;
+			for (int k = 0; k < dimension; k++)
+			{
+				if ((ijk[index[i] * dimension + k] & s) != 0)
+					ret |= 1 << k;
+			}
+			return ret;
+		}
+
+		@Override
+		protected Integer compute()
+		{
+			int count = to - from;
+			if (count <= BUCKETSIZE)
+			{
+				cell.nItems = count;
+				cell.subCell = new Object[BUCKETSIZE];
+				for (int i = 0; i < count; i++)
+					cell.subCell[i] = items[index[from + i]];
+				return 0;
+			}
+			int s = size >> 1;
+			if (s == 0)
+			{
+				int [] i0 = new int[dimension];
+				System.arraycopy(ijk, index[from] * dimension, i0, 0, dimension);
+				double [] coords = new double[3];
+				int2double(i0, coords);
+				throw new RuntimeException(
+					"Exceeded maximal number of levels for kd-trees around "+
+					Arrays.toString(coords) +"... Aborting");
+			}
+			cell.nItems = - count;
+			cell.subCell = new Object[nrSub];
+			// Stable counting sort by child index
+			int [] offset = new int[nrSub + 1];
+			for (int i = from; i < to; i++)
+				offset[child(i, s) + 1]++;
+			for (int c = 0; c < nrSub; c++)
+				offset[c + 1] += offset[c];
+			int [] pos = Arrays.copyOf(offset, nrSub);
+			for (int i = from; i < to; i++)
+				buffer[from + pos[child(i, s)]++] = index[i];
+			System.arraycopy(buffer, from, index, from, count);
+			int ret = 0;
+			List<BulkLoad> forked = new ArrayList<BulkLoad>(nrSub);
+			for (int c = 0; c < nrSub; c++)
+			{
+				if (offset[c] == offset[c + 1])
+					continue;
+				Cell sub = new Cell();
+				cell.subCell[c] = sub;
+				ret++;
+				BulkLoad task = new BulkLoad(sub, s, from + offset[c], from + offset[c + 1],
+					items, ijk, index, buffer);
+				if (offset[c + 1] - offset[c] >= BULK_PARALLEL_THRESHOLD && inForkJoinPool())
+				{
+					task.fork();
+					forked.add(task);
+				}
+				else
+					ret += task.compute();
+			}
+			for (BulkLoad task : forked)
+				ret += task.join();
+			return ret;
+		}
+	}
+
 	/**
 	 * Computes {@link #x0} adapted to this bounding box.
 	 *
@@ -899,6 +1037,317 @@ public class KdTree<T extends Location>
 		return ret;
 	}
 	
+	/**
+	 * Buffers used by {@link #getNearestVertices(Metric, Location, int, double, Query)}
+	 * and {@link #getVerticesInRadius}.
+	 * They are allocated once and reused by subsequent queries, so that
+	 * no garbage is created.  A <code>Query</code> is not thread-safe,
+	 * each thread must use its own instance.  Results are available until
+	 * the next query.
+	 */
+	public final class Query
+	{
+		// Candidates; during search this is a max-heap on dist2, it is
+		// sorted by increasing distance at the end.
+		private Object [] items = new Object[0];
+		private double [] dist2 = new double[0];
+		private int size;
+		private int capacity;
+		// Cells to be visited, with their size and integer origin
+		private final Object [] cellStack = new Object[MAXLEVEL * nrSub + 1];
+		private final int [] sizeStack = new int[MAXLEVEL * nrSub + 1];
+		private final int [] originStack = new int[(MAXLEVEL * nrSub + 1) * dimension];
+		private final int [] ijk = new int[dimension];
+		private final int [] origin = new int[dimension];
+		private final double [] i2d = new double[dimension];
+		private final int [] idist = new int[dimension];
+
+		/**
+		 * Return the number of vertices found by last query.
+		 */
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * Return the i-th nearest vertex found by last query.
+		 */
+		@SuppressWarnings("unchecked")
+		public T get(int i)
+		{
+			assert i < size;
+			return (T) items[i];
+		}
+
+		/**
+		 * Return the square distance between query point and the i-th
+		 * nearest vertex found by last query.
+		 */
+		public double getDistance2(int i)
+		{
+			assert i < size;
+			return dist2[i];
+		}
+
+		private void reset(int k)
+		{
+			if (items.length < k)
+			{
+				items = new Object[k];
+				dist2 = new double[k];
+			}
+			else
+				Arrays.fill(items, 0, size, null);
+			size = 0;
+			capacity = k;
+		}
+
+		private void setBound(double d2)
+		{
+			for (int k = 0; k < dimension; k++)
+			{
+				double d = Math.sqrt(d2) * i2d[k];
+				idist[k] = d > Integer.MAX_VALUE/2 ? Integer.MAX_VALUE/2 : (int) d;
+			}
+		}
+
+		/**
+		 * Insert a candidate into the heap.
+		 * @return <code>true</code> if heap is full and its largest
+		 * distance has changed
+		 */
+		private boolean offer(Object v, double d)
+		{
+			if (size < capacity)
+			{
+				// Sift up
+				int i = size++;
+				while (i > 0)
+				{
+					int parent = (i - 1) >> 1;
+					if (dist2[parent] >= d)
+						break;
+					items[i] = items[parent];
+					dist2[i] = dist2[parent];
+					i = parent;
+				}
+				items[i] = v;
+				dist2[i] = d;
+				return size == capacity;
+			}
+			if (d >= dist2[0])
+				return false;
+			siftDown(v, d, size);
+			return true;
+		}
+
+		private void siftDown(Object v, double d, int n)
+		{
+			int i = 0;
+			while (true)
+			{
+				int child = 2 * i + 1;
+				if (child >= n)
+					break;
+				if (child + 1 < n && dist2[child + 1] > dist2[child])
+					child++;
+				if (dist2[child] <= d)
+					break;
+				items[i] = items[child];
+				dist2[i] = dist2[child];
+				i = child;
+			}
+			items[i] = v;
+			dist2[i] = d;
+		}
+
+		// Heap sort, results are sorted by increasing distance
+		private void sort()
+		{
+			for (int n = size - 1; n > 0; n--)
+			{
+				Object v = items[n];
+				double d = dist2[n];
+				items[n] = items[0];
+				dist2[n] = dist2[0];
+				siftDown(v, d, n);
+			}
+		}
+	}
+
+	/**
+	 * Return the <code>k</code> nearest vertices stored in this
+	 * <code>KdTree</code>.  This is a convenience method which allocates
+	 * a new {@link Query} on each call.
+	 *
+	 * @param metric  metric used to compute distances
+	 * @param uv  coordinates
+	 * @param k  number of vertices
+	 * @return the <code>k</code> nearest vertices, sorted by increasing
+	 * distance; there are less than <code>k</code> elements if this
+	 * <code>KdTree</code> contains less than <code>k</code> vertices.
+	 */
+	public final List<T> getNearestVertices(Metric metric, T uv, int k)
+	{
+		Query query = new Query();
+		int n = getNearestVertices(metric, uv, k, Double.MAX_VALUE, query);
+		List<T> ret = new ArrayList<T>(n);
+		for (int i = 0; i < n; i++)
+			ret.add(query.get(i));
+		return ret;
+	}
+
+	/**
+	 * Find the <code>k</code> nearest vertices stored in this
+	 * <code>KdTree</code> whose square distance to <code>uv</code> is
+	 * not larger than <code>maxDistance2</code>.  Cells are visited in
+	 * depth-first order, nearest child first, and skipped when they
+	 * cannot contain a vertex nearer than the current <code>k</code>-th
+	 * candidate.  Results are stored into <code>query</code>, sorted by
+	 * increasing distance.
+	 *
+	 * @param metric  metric used to compute distances
+	 * @param uv  coordinates
+	 * @param k  maximal number of vertices
+	 * @param maxDistance2  maximal square distance, use
+	 *   <code>Double.MAX_VALUE</code> for an unbounded search
+	 * @param query  buffers to store results
+	 * @return the number of vertices found
+	 */
+	public final int getNearestVertices(Metric metric, Location uv, int k,
+		double maxDistance2, Query query)
+	{
+		query.reset(k);
+		if (k > 0)
+			search(metric, uv, maxDistance2, query, null);
+		query.sort();
+		return query.size;
+	}
+
+	/**
+	 * Procedure called by {@link #getVerticesInRadius} on each vertex found.
+	 */
+	public interface VertexProcedure<T>
+	{
+		/**
+		 * Action performed on a vertex.
+		 * @param vertex  vertex found
+		 * @param distance2  square distance between query point and this vertex
+		 * @return <code>false</code> to stop search, <code>true</code> otherwise
+		 */
+		boolean action(T vertex, double distance2);
+	}
+
+	/**
+	 * Call a procedure on all vertices stored in this <code>KdTree</code>
+	 * whose distance to <code>uv</code> is not larger than
+	 * <code>radius</code>.  Vertices are not sorted.
+	 *
+	 * @param metric  metric used to compute distances
+	 * @param uv  coordinates
+	 * @param radius  search radius
+	 * @param query  buffers used during search, its results are cleared
+	 * @param proc  procedure called on each vertex found
+	 * @return <code>false</code> if search had been aborted by
+	 *   <code>proc</code>, <code>true</code> otherwise
+	 */
+	public final boolean getVerticesInRadius(Metric metric, Location uv,
+		double radius, Query query, VertexProcedure<? super T> proc)
+	{
+		query.reset(0);
+		return search(metric, uv, radius * radius, query, proc);
+	}
+
+	/**
+	 * Visit cells in depth-first order, nearest child first, and skip
+	 * cells which are too far from <code>uv</code>.  When
+	 * <code>proc</code> is <code>null</code>, vertices are inserted
+	 * into the heap of <code>query</code> and search radius decreases
+	 * when this heap is full.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean search(Metric metric, Location uv, double maxDistance2,
+		Query query, VertexProcedure<? super T> proc)
+	{
+		if (root.nItems == 0)
+			return true;
+		final int [] ijk = query.ijk;
+		ijk[0] = (int) ((uv.getX() - x0[0]) * x0[dimension]);
+		ijk[1] = (int) ((uv.getY() - x0[1]) * x0[dimension]);
+		if (dimension > 2)
+			ijk[2] = (int) ((uv.getZ() - x0[2]) * x0[dimension]);
+		double [] r = metric.getUnitBallBBox();
+		for (int d = 0; d < dimension; d++)
+			query.i2d[d] = 1.005 * x0[dimension] * r[d];
+		query.setBound(maxDistance2);
+		final int [] idist = query.idist;
+		final Object [] cellStack = query.cellStack;
+		final int [] sizeStack = query.sizeStack;
+		final int [] originStack = query.originStack;
+		final int [] origin = query.origin;
+		int sp = 0;
+		cellStack[sp] = root;
+		sizeStack[sp] = gridSize;
+		for (int d = 0; d < dimension; d++)
+			originStack[d] = 0;
+		sp++;
+		while (sp > 0)
+		{
+			sp--;
+			Cell current = (Cell) cellStack[sp];
+			cellStack[sp] = null;
+			int s = sizeStack[sp];
+			System.arraycopy(originStack, sp * dimension, origin, 0, dimension);
+			boolean skip = false;
+			for (int d = 0; d < dimension && !skip; d++)
+				skip = ijk[d] < origin[d] - idist[d] || ijk[d] > origin[d] + s + idist[d];
+			if (skip)
+				continue;
+			if (current.nItems >= 0)
+			{
+				boolean updated = false;
+				for (int i = 0; i < current.nItems; i++)
+				{
+					Object v = current.subCell[i];
+					double d2 = metric.distance2(uv, (Location) v);
+					if (d2 > maxDistance2)
+						continue;
+					if (proc != null)
+					{
+						if (!proc.action((T) v, d2))
+						{
+							Arrays.fill(cellStack, 0, sp, null);
+							return false;
+						}
+					}
+					else if (query.offer(v, d2))
+						updated = true;
+				}
+				if (updated)
+					query.setBound(query.dist2[0]);
+				continue;
+			}
+			// Push children, the one containing uv is pushed last so
+			// that it is visited first.
+			int half = s >> 1;
+			int first = indexSubCell(ijk, half);
+			for (int j = nrSub - 1; j >= -1; j--)
+			{
+				int i = j < 0 ? first : j;
+				if (j == first || null == current.subCell[i])
+					continue;
+				cellStack[sp] = current.subCell[i];
+				sizeStack[sp] = half;
+				int no = sp * dimension;
+				for (int d = 0; d < dimension; d++)
+					originStack[no+d] = origin[d] + ((i & (1 << d)) != 0 ? half : 0);
+				sp++;
+			}
+		}
+		return true;
+	}
+
 	private static final class GetMinSizeProcedure implements KdTreeProcedure
 	{
 		private int searchedCells;
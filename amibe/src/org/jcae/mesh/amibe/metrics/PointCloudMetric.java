@@ -30,7 +30,11 @@ import java.util.Collection;
 
 /**
  * Metric define by values on a point cloud.
- * There is no interpolation, the closest point is found using a kd-tree.
+ * By default there is no interpolation, the value of the closest point is
+ * returned.  Other {@link Interpolation} modes can be selected to get a
+ * smoother size field.  Neighbours are found using a kd-tree, and each
+ * thread keeps the result of its last query to speed up spatially coherent
+ * lookups.
  * @author Jerome Robert
  */
 public class PointCloudMetric extends MetricSupport.AnalyticMetric {
@@ -48,11 +52,49 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
         }
     }
 
+    /** Interpolation of values between points of the cloud */
+    public enum Interpolation {
+        /** Value of the nearest point */
+        NEAREST,
+        /** Inverse distance weighting over the k nearest points */
+        IDW,
+        /**
+         * Values of the k nearest points within the support radius,
+         * weighted by a compactly supported Wendland function
+         */
+        RBF
+    }
+
+    /** Per-thread buffers and result of the last query */
+    private final class QueryCache {
+        private final KdTree<Point> tree;
+        private final int version;
+        private final KdTree<Point>.Query query;
+        private final Point location = new Point(0, 0, 0);
+        private Point[] neighbours = new Point[0];
+        private int nrNeighbours;
+        private double lastX = Double.NaN, lastY, lastZ, lastValue;
+
+        private QueryCache(KdTree<Point> tree, int version) {
+            this.tree = tree;
+            this.version = version;
+            this.query = tree.new Query();
+        }
+    }
+
     /** The metric to use while searching in the kd-tree */
     private final Metric metric = new EuclidianMetric3D();
     private double defaultValue = 1;
     protected double scaling = 1;
-    private KdTree<Point> kdTree;
+    private volatile KdTree<Point> kdTree;
+    private Interpolation interpolation = Interpolation.NEAREST;
+    private int nrNeighbours = 8;
+    private double power = 2.0;
+    /** Support radius of the RBF mode, or 0 to derive it from neighbours */
+    private double supportRadius = 0;
+    private final ThreadLocal<QueryCache> cache = new ThreadLocal<QueryCache>();
+    /** Incremented when parameters change to invalidate caches */
+    private volatile int version;
 
     /**
      * Add a point cloud from a binary file.
@@ -98,28 +140,130 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
             bbox[4] = p.getY() > bbox[4] ? p.getY() : bbox[4];
             bbox[5] = p.getZ() > bbox[5] ? p.getZ() : bbox[5];
         }
-        kdTree = new KdTree<Point>(bbox);
+        // Tree is published once it is complete, it may be queried
+        // concurrently
+        KdTree<Point> tree = new KdTree<Point>(bbox);
         for(Point p: points) {
-            kdTree.add(p);
+            tree.add(p);
         }
+        kdTree = tree;
     }
 
     /** Set the metric value to use if no support points can be found */
     public void setDefaultValue(double defaultValue) {
         this.defaultValue = defaultValue;
+        version++;
     }
 
     public void setScaling(double v) {
         this.scaling = v;
     }
 
+    /**
+     * Set the interpolation mode.
+     * @param interpolation interpolation mode
+     * @param k number of neighbours used by IDW and RBF modes
+     */
+    public void setInterpolation(Interpolation interpolation, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException(k+" < 1");
+        this.interpolation = interpolation;
+        this.nrNeighbours = interpolation == Interpolation.NEAREST ? 1 : k;
+        version++;
+    }
+
+    /** Set the exponent of distances in IDW mode, default is 2 */
+    public void setPower(double power) {
+        this.power = power;
+        version++;
+    }
+
+    /**
+     * Set the support radius of the RBF mode.  Points further than this
+     * radius are not taken into account.  If there is no point within
+     * this radius, the value of the nearest point is used.  By default,
+     * the support radius is computed at each location from the local
+     * point spacing: it is twice the distance to the farthest of the k
+     * nearest points, so that all of them are taken into account.
+     */
+    public void setSupportRadius(double radius) {
+        if (radius <= 0)
+            throw new IllegalArgumentException(radius+" <= 0");
+        this.supportRadius = radius;
+        version++;
+    }
+
     @Override
     public double getTargetSize(double x, double y, double z, int groupId) {
         double r = defaultValue;
-        if(kdTree != null) {
-            Point l = kdTree.getNearVertex(metric, new Point(x, y, z));
-            r = l == null ? r : l.value;
+        KdTree<Point> tree = kdTree;
+        if(tree != null) {
+            QueryCache c = cache.get();
+            if (c == null || c.tree != tree || c.version != version) {
+                c = new QueryCache(tree, version);
+                cache.set(c);
+            }
+            if (x == c.lastX && y == c.lastY && z == c.lastZ)
+                r = c.lastValue;
+            else {
+                r = interpolate(c, x, y, z);
+                c.lastX = x;
+                c.lastY = y;
+                c.lastZ = z;
+                c.lastValue = r;
+            }
         }
         return r * scaling;
     }
+
+    private double interpolate(QueryCache c, double x, double y, double z) {
+        c.location.moveTo(x, y, z);
+        // Neighbours of the previous query give an upper bound for the
+        // distance of the k nearest points, use it to prune the search.
+        double maxDistance2 = Double.MAX_VALUE;
+        if (c.nrNeighbours == nrNeighbours) {
+            maxDistance2 = 0;
+            for (int i = 0; i < c.nrNeighbours; i++)
+                maxDistance2 = Math.max(maxDistance2,
+                    metric.distance2(c.location, c.neighbours[i]));
+            maxDistance2 *= 1.0 + 1.e-10;
+        }
+        int n = c.tree.getNearestVertices(metric, c.location, nrNeighbours,
+            maxDistance2, c.query);
+        if (c.neighbours.length < n)
+            c.neighbours = new Point[n];
+        for (int i = 0; i < n; i++)
+            c.neighbours[i] = c.query.get(i);
+        c.nrNeighbours = n;
+        if (n == 0)
+            return defaultValue;
+        if (c.query.getDistance2(0) == 0 || interpolation == Interpolation.NEAREST)
+            return c.neighbours[0].value;
+        double sumW = 0, sumV = 0;
+        if (interpolation == Interpolation.IDW) {
+            double halfPower = 0.5 * power;
+            for (int i = 0; i < n; i++) {
+                double w = halfPower == 1.0 ? 1.0 / c.query.getDistance2(i) :
+                    Math.pow(c.query.getDistance2(i), -halfPower);
+                sumW += w;
+                sumV += w * c.neighbours[i].value;
+            }
+        } else {
+            double radius = supportRadius > 0 ? supportRadius :
+                2.0 * Math.sqrt(c.query.getDistance2(n - 1));
+            // Wendland C2 function: (1 - r)^4 (4 r + 1)
+            for (int i = 0; i < n; i++) {
+                double t = Math.sqrt(c.query.getDistance2(i)) / radius;
+                if (t >= 1.0)
+                    break;
+                double w = (1.0 - t) * (1.0 - t);
+                w = w * w * (4.0 * t + 1.0);
+                sumW += w;
+                sumV += w * c.neighbours[i].value;
+            }
+            if (sumW == 0)
+                return c.neighbours[0].value;
+        }
+        return sumV / sumW;
+    }
 }
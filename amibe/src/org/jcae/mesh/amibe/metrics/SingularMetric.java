@@ -170,25 +170,26 @@ public class SingularMetric extends AbstractDistanceMetric {
 	public double getTargetSizeAnalytic(double x, double y, double z,
 		int groupId)
 	{
-		double minValue = getSize(groupId);
-		for (DistanceMetricInterface s : sources) {
-			double d2 = s.getSqrDistance(x, y, z);
-			double v;
-			if(d2 > s.sqrD1)
-				v = sizeInf;
-			else if(d2 < s.sqrD0)
-				v = s.size0;
-			else
-			{
-				double deltaS = sizeInf - s.size0;
-				double deltaD = Math.sqrt(d2) - Math.sqrt(s.sqrD0);
-				double deltaD1 = Math.sqrt(s.sqrD1) - Math.sqrt(s.sqrD0);
-				double ratio = deltaD / deltaD1;
-				v = s.size0 + deltaS * Math.pow(ratio, 1.0 + s.alpha);
-			}
-			minValue = Math.min(v, minValue);
+		return getMinSourceSize(x, y, z, getSize(groupId), false) * scaling;
+	}
+
+	@Override
+	protected double getSourceSizeAnalytic(DistanceMetricInterface s, double d2)
+	{
+		double v;
+		if(d2 > s.sqrD1)
+			v = sizeInf;
+		else if(d2 < s.sqrD0)
+			v = s.size0;
+		else
+		{
+			double deltaS = sizeInf - s.size0;
+			double deltaD = Math.sqrt(d2) - Math.sqrt(s.sqrD0);
+			double deltaD1 = Math.sqrt(s.sqrD1) - Math.sqrt(s.sqrD0);
+			double ratio = deltaD / deltaD1;
+			v = s.size0 + deltaS * Math.pow(ratio, 1.0 + s.alpha);
 		}
-		return minValue * scaling;
+		return v;
 	}
 
 	/**
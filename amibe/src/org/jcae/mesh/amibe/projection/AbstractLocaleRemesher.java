@@ -149,8 +149,8 @@ public abstract class AbstractLocaleRemesher {
 	{
 		if(v.isManifold())
 		{
-			if(v.getLink() == oldTri)
-				v.setLink(newTri);
+			// The link may be any removed triangle, not only oldTri
+			v.setLink(newTri);
 		}
 		else
 		{
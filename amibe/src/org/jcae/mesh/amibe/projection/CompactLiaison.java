@@ -0,0 +1,400 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TObjectIntProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.CompactMesh;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
+
+/**
+ * Project vertices on a background mesh stored in a {@link CompactMesh}.
+ * <p>
+ * {@link KdTreeLiaison} keeps the background {@link Mesh} and works on a
+ * clone of it, so there are two object graphs in memory.  Here the
+ * background is only stored in primitive arrays (coordinates, triangle
+ * indices, adjacency and groups) and is used to project vertices and to
+ * compute normals; the current mesh is the only {@link Mesh} instance.
+ * As with {@link KdTreeLiaison}, projections are exact and can be
+ * computed concurrently.
+ * </p>
+ * <p>
+ * Both constructors build the skeleton from the same feature edges:
+ * boundary, non-manifold, group border and sharp edges, see
+ * {@link CompactMesh#isFeature}.  As with
+ * {@link org.jcae.mesh.amibe.algos3d.Skeleton},
+ * {@link #moveToClosestEdge} only uses boundary, non-manifold and group
+ * border edges.
+ * </p>
+ * <p>
+ * There are no background {@link Triangle} instances, so
+ * {@link #addVertex(Vertex, Vertex, double, int)} always returns null.
+ * </p>
+ */
+public class CompactLiaison extends MeshLiaison
+{
+	private final CompactTriangleTree tree;
+	private EdgeSkeleton edgeSkeleton;
+	private final ThreadLocal<Projector> projectors = new ThreadLocal<Projector>() {
+		@Override
+		protected Projector initialValue() {
+			return new Projector();
+		}
+	};
+
+	/** Working data of a thread */
+	private final class Projector
+	{
+		final CompactTriangleTree.Query query = tree.new Query();
+		final Location projection = new Location();
+		final Location v0 = new Location();
+		final Location v1 = new Location();
+		final Location v2 = new Location();
+		final double[] work1 = new double[3];
+		final double[] work2 = new double[3];
+	}
+
+	/**
+	 * Use mesh as the current mesh, its geometry is copied into the
+	 * background.  Sharp edges are remembered to build the skeleton.
+	 * @param mesh mesh with adjacency relations
+	 */
+	public CompactLiaison(Mesh mesh)
+	{
+		super(mesh);
+		if (!mesh.hasAdjacency())
+			throw new IllegalArgumentException();
+		tree = new CompactTriangleTree(toCompactMesh(mesh));
+	}
+
+	/**
+	 * @param backgroundMesh background mesh, its adjacency relations are
+	 * built if needed.  Call {@link CompactMesh#buildRidges} before to put
+	 * sharp edges into the skeleton.
+	 * @param currentMesh mesh to be modified
+	 */
+	public CompactLiaison(CompactMesh backgroundMesh, Mesh currentMesh)
+	{
+		super(currentMesh);
+		if (!backgroundMesh.hasAdjacency())
+			backgroundMesh.buildAdjacency();
+		tree = new CompactTriangleTree(backgroundMesh);
+	}
+
+	/**
+	 * Copy the geometry of a mesh.  As when the background is cloned,
+	 * nodes are labelled from 1 if mesh has a node list.
+	 */
+	private static CompactMesh toCompactMesh(Mesh mesh)
+	{
+		int nrTriangles = 0;
+		for (Triangle t : mesh.getTriangles())
+			if (!t.hasAttributes(AbstractHalfEdge.OUTER))
+				nrTriangles++;
+		TObjectIntHashMap<Vertex> index = new TObjectIntHashMap<Vertex>(
+			nrTriangles / 2, 0.5f, -1);
+		if (mesh.hasNodes())
+		{
+			for (Vertex v : mesh.getNodes())
+			{
+				index.put(v, index.size());
+				v.setLabel(index.size());
+			}
+		}
+		int[] trias = new int[3 * nrTriangles];
+		int[] groups = new int[nrTriangles];
+		// Sharp half-edges
+		BitSet sharp = new BitSet();
+		int i = 0;
+		AbstractHalfEdge ot = null;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			for (int j = 0; j < 3; j++)
+			{
+				Vertex v = t.getV(j);
+				int n = index.get(v);
+				if (n < 0)
+				{
+					n = index.size();
+					index.put(v, n);
+				}
+				trias[3 * i + j] = n;
+			}
+			groups[i] = t.getGroupId();
+			if (t.hasAttributes(AbstractHalfEdge.SHARP))
+			{
+				ot = t.getAbstractHalfEdge(ot);
+				for (int j = 0; j < 3; j++)
+				{
+					ot = ot.next();
+					if (ot.hasAttributes(AbstractHalfEdge.SHARP))
+						sharp.set(3 * i + ot.getLocalNumber());
+				}
+			}
+			i++;
+		}
+		final double[] coords = new double[3 * index.size()];
+		index.forEachEntry(new TObjectIntProcedure<Vertex>() {
+			public boolean execute(Vertex v, int n)
+			{
+				coords[3 * n] = v.getX();
+				coords[3 * n + 1] = v.getY();
+				coords[3 * n + 2] = v.getZ();
+				return true;
+			}
+		});
+		CompactMesh toReturn = new CompactMesh(coords, trias, groups, null);
+		toReturn.buildAdjacency();
+		for (int h = sharp.nextSetBit(0); h >= 0; h = sharp.nextSetBit(h + 1))
+			toReturn.setSharp(h);
+		return toReturn;
+	}
+
+	/** Returns the background mesh */
+	public CompactMesh getBackgroundMesh()
+	{
+		return tree.getMesh();
+	}
+
+	@Override
+	protected void init(Collection<Vertex> backgroundNodeset) { }
+
+	@Override
+	Skeleton createSkeleton()
+	{
+		return new Skeleton(tree.getMesh());
+	}
+
+	/**
+	 * Project a vertex on the closest boundary, non-manifold or group
+	 * border edge of the background mesh.  As with {@link Mesh}
+	 * backgrounds, edges are selected by groups:
+	 * <ul>
+	 *   <li>no group: all edges,</li>
+	 *   <li>one group: boundary edges of this group,</li>
+	 *   <li>two groups: edges between the first and the second group,</li>
+	 *   <li>more groups: non-manifold edges of the first group, whose
+	 *       adjacent triangles belong to these groups.</li>
+	 * </ul>
+	 */
+	@Override
+	public boolean moveToClosestEdge(Vertex v, int... groups)
+	{
+		if (edgeSkeleton == null)
+			edgeSkeleton = new EdgeSkeleton(tree.getMesh());
+		return edgeSkeleton.moveToClosestEdge(v, groups);
+	}
+
+	@Override
+	public void backupRestore(Vertex v, boolean restore, int group) { }
+
+	@Override
+	protected boolean move(Vertex v, Location target, boolean backup, int group,
+		boolean doCheck)
+	{
+		Projector p = projectors.get();
+		if (p.query.getClosestTriangle(target, p.projection, group) < 0)
+			return false;
+		v.moveTo(p.projection);
+		return true;
+	}
+
+	/**
+	 * Queries are thread-safe, and there is no backup.
+	 */
+	@Override
+	public boolean canMoveConcurrently()
+	{
+		return true;
+	}
+
+	/**
+	 * Project v on the background mesh, and fill normal if not null.
+	 * @param move whether v has to be moved to its projection
+	 */
+	private void project(Vertex v, boolean move, double[] normal)
+	{
+		Projector p = projectors.get();
+		int t = p.query.getClosestTriangle(v, p.projection, -1);
+		if (t < 0)
+			throw new NoSuchElementException(v.toString());
+		if (move)
+			v.moveTo(p.projection);
+		if (normal != null)
+		{
+			p.query.getVertices(t, p.v0, p.v1, p.v2);
+			Matrix3D.computeNormal3D(p.v0, p.v1, p.v2, p.work1, p.work2, normal);
+		}
+	}
+
+	@Override
+	public double[] getBackgroundNormal(Vertex v)
+	{
+		double[] normal = new double[3];
+		project(v, false, normal);
+		return normal;
+	}
+
+	@Override
+	public Triangle addVertex(Vertex v, Vertex start, double maxError, int group)
+	{
+		project(v, true, null);
+		return null;
+	}
+
+	@Override
+	public void addVertex(Vertex v, Triangle bgT) { }
+
+	@Override
+	public void addVertex(Vertex newV, Vertex existingVertex) { }
+
+	@Override
+	public void addVertex(Vertex v, Vertex existingVertex, double[] normal)
+	{
+		project(v, true, normal);
+	}
+
+	@Override
+	public void removeVertex(Vertex v) { }
+
+	@Override
+	public void replaceVertex(Vertex oldV, Vertex newV) { }
+
+	@Override
+	public void updateAll() { }
+
+	@Override
+	public void initBgMap(TIntIntHashMap numberOfTriangles,
+		Collection<Vertex> nodeset) { }
+
+	@Override
+	public void clearBgMap() { }
+
+	@Override
+	public void addVertexInNeighborBgMap(Vertex v, Triangle bgT) { }
+
+	/**
+	 * Boundary, non-manifold and group border half-edges of a compact
+	 * mesh, used by {@link #moveToClosestEdge}.
+	 */
+	private static final class EdgeSkeleton
+	{
+		private final CompactMesh mesh;
+		private final int[] edges;
+		// Groups of triangles around non-manifold edges, edges are
+		// keyed by their end points
+		private final TLongObjectHashMap<TIntHashSet> fanGroups =
+			new TLongObjectHashMap<TIntHashSet>();
+
+		EdgeSkeleton(CompactMesh mesh)
+		{
+			this.mesh = mesh;
+			TIntArrayList list = new TIntArrayList();
+			int nrHalfEdges = 3 * mesh.getNumberOfTriangles();
+			for (int h = 0; h < nrHalfEdges; h++)
+			{
+				int s = mesh.sym(h);
+				if (s >= 0 && !mesh.isGroupBorder(h))
+					continue;
+				list.add(h);
+				if (s == CompactMesh.NONMANIFOLD)
+				{
+					long key = key(h);
+					TIntHashSet set = fanGroups.get(key);
+					if (set == null)
+					{
+						set = new TIntHashSet();
+						fanGroups.put(key, set);
+					}
+					set.add(mesh.getGroupId(h / 3));
+				}
+			}
+			edges = list.toArray();
+		}
+
+		private long key(int h)
+		{
+			long o = mesh.origin(h);
+			long d = mesh.destination(h);
+			return o < d ? (o << 32) | d : (d << 32) | o;
+		}
+
+		private boolean accept(int h, int[] groups)
+		{
+			if (groups.length == 0)
+				return true;
+			if (mesh.getGroupId(h / 3) != groups[0])
+				return false;
+			int s = mesh.sym(h);
+			switch (groups.length)
+			{
+				case 1:
+					return s == CompactMesh.BOUNDARY;
+				case 2:
+					return s >= 0 && mesh.getGroupId(s / 3) == groups[1];
+				default:
+					return s == CompactMesh.NONMANIFOLD &&
+						fanGroups.get(key(h)).equals(new TIntHashSet(groups));
+			}
+		}
+
+		boolean moveToClosestEdge(Vertex v, int[] groups)
+		{
+			Location o = new Location();
+			Location d = new Location();
+			Location projection = new Location();
+			Location bestProjection = new Location();
+			double minDistSqr = Double.POSITIVE_INFINITY;
+			boolean found = false;
+			for (int h : edges)
+			{
+				if (!accept(h, groups))
+					continue;
+				mesh.get(mesh.origin(h), o);
+				mesh.get(mesh.destination(h), d);
+				double distSqr = v.sqrDistance3D(o, d, projection);
+				if (distSqr < minDistSqr)
+				{
+					found = true;
+					bestProjection.moveTo(projection);
+					minDistSqr = distSqr;
+				}
+			}
+			if (found)
+				v.moveTo(bestProjection);
+			return found;
+		}
+	}
+}
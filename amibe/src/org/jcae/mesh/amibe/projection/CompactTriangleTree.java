@@ -0,0 +1,337 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.jcae.mesh.amibe.ds.CompactMesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.projection.MeshLiaison.TriangleDistance;
+
+/**
+ * Bounding volume hierarchy over the triangles of a {@link CompactMesh},
+ * used to find the closest triangle of a point.  Triangles are first
+ * sorted by group and a subtree is built for each group, so queries
+ * restricted to a group only visit triangles of this group.  There is no
+ * object per node nor per triangle, bounding boxes are stored as floats
+ * rounded outwards.
+ *
+ * Instances are immutable and can be queried concurrently, each thread
+ * using its own {@link Query}.
+ */
+final class CompactTriangleTree
+{
+	private static final int LEAF_SIZE = 8;
+
+	private final CompactMesh mesh;
+	private final double[] coords;
+	private final int[] connectivity;
+	// Triangle indices, sorted so that each node contains a contiguous range
+	private final int[] triangles;
+	// 6 values per node: xmin, ymin, zmin, xmax, ymax, zmax
+	private final float[] bounds;
+	// For leaves, start and end indices in triangles; for inner nodes,
+	// start is -1 and end is the index of the right child, left child
+	// is the next node.
+	private final int[] start;
+	private final int[] end;
+	private int nrNodes;
+	private int maxDepth;
+	// Root node of each group
+	private final TIntIntHashMap groupRoots = new TIntIntHashMap();
+	private final int[] roots;
+
+	CompactTriangleTree(CompactMesh mesh)
+	{
+		this.mesh = mesh;
+		coords = mesh.getCoordinates();
+		connectivity = mesh.getTriangles();
+		int nrTriangles = mesh.getNumberOfTriangles();
+		int[] groups = mesh.getGroups();
+
+		// Sort triangles by group, in order of first appearance
+		TIntIntHashMap offsets = new TIntIntHashMap();
+		int[] order = new int[nrTriangles];
+		int nrGroups = 0;
+		for (int i = 0; i < nrTriangles; i++)
+		{
+			if (!offsets.containsKey(groups[i]))
+			{
+				offsets.put(groups[i], 0);
+				order[nrGroups++] = groups[i];
+			}
+			offsets.adjustValue(groups[i], 1);
+		}
+		int[] groupStart = new int[nrGroups + 1];
+		for (int g = 0; g < nrGroups; g++)
+		{
+			int count = offsets.get(order[g]);
+			offsets.put(order[g], groupStart[g]);
+			groupStart[g + 1] = groupStart[g] + count;
+		}
+		triangles = new int[nrTriangles];
+		for (int i = 0; i < nrTriangles; i++)
+		{
+			int offset = offsets.get(groups[i]);
+			triangles[offset] = i;
+			offsets.put(groups[i], offset + 1);
+		}
+
+		// Leaves contain at least LEAF_SIZE / 2 triangles, except when a
+		// group has less triangles.
+		int maxNodes = 2 * (nrTriangles / (LEAF_SIZE / 2) + nrGroups) + 1;
+		bounds = new float[6 * maxNodes];
+		start = new int[maxNodes];
+		end = new int[maxNodes];
+		roots = new int[nrGroups];
+		for (int g = 0; g < nrGroups; g++)
+		{
+			roots[g] = build(groupStart[g], groupStart[g + 1], 0);
+			groupRoots.put(order[g], roots[g]);
+		}
+	}
+
+	/** Sum of vertex coordinates along an axis, which is 3 times the centroid */
+	private double center(int triangle, int axis)
+	{
+		int o = 3 * triangle;
+		return coords[3 * connectivity[o] + axis] +
+			coords[3 * connectivity[o + 1] + axis] +
+			coords[3 * connectivity[o + 2] + axis];
+	}
+
+	private int build(int from, int to, int depth)
+	{
+		int node = nrNodes++;
+		maxDepth = Math.max(maxDepth, depth);
+		double[] b = new double[] {
+			Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+			-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		double[] cmin = new double[] { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		double[] cmax = new double[] { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (int i = from; i < to; i++)
+		{
+			int o = 3 * triangles[i];
+			for (int j = 0; j < 3; j++)
+			{
+				int v = 3 * connectivity[o + j];
+				for (int k = 0; k < 3; k++)
+				{
+					b[k] = Math.min(b[k], coords[v + k]);
+					b[k+3] = Math.max(b[k+3], coords[v + k]);
+				}
+			}
+			for (int k = 0; k < 3; k++)
+			{
+				double c = center(triangles[i], k);
+				cmin[k] = Math.min(cmin[k], c);
+				cmax[k] = Math.max(cmax[k], c);
+			}
+		}
+		for (int k = 0; k < 3; k++)
+		{
+			bounds[6 * node + k] = Math.nextDown((float) b[k]);
+			bounds[6 * node + k + 3] = Math.nextUp((float) b[k+3]);
+		}
+		if (to - from <= LEAF_SIZE)
+		{
+			start[node] = from;
+			end[node] = to;
+			return node;
+		}
+		// Split at the median along the largest extent of centers
+		int axis = 0;
+		for (int k = 1; k < 3; k++)
+			if (cmax[k] - cmin[k] > cmax[axis] - cmin[axis])
+				axis = k;
+		int mid = (from + to) >>> 1;
+		select(from, to, mid, axis);
+		build(from, mid, depth + 1);
+		start[node] = -1;
+		end[node] = build(mid, to, depth + 1);
+		return node;
+	}
+
+	/**
+	 * Reorder triangles[from..to[ so that triangles before k have lower
+	 * centers along axis than triangles after k.
+	 */
+	private void select(int from, int to, int k, int axis)
+	{
+		int left = from;
+		int right = to - 1;
+		while (left < right)
+		{
+			double pivot = center(triangles[(left + right) >>> 1], axis);
+			int i = left;
+			int j = right;
+			while (i <= j)
+			{
+				while (center(triangles[i], axis) < pivot)
+					i++;
+				while (center(triangles[j], axis) > pivot)
+					j--;
+				if (i <= j)
+				{
+					int tmp = triangles[i];
+					triangles[i] = triangles[j];
+					triangles[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	CompactMesh getMesh()
+	{
+		return mesh;
+	}
+
+	/** Squared distance between a point and the bounding box of a node */
+	private double sqrDistance(int node, Location p)
+	{
+		int o = 6 * node;
+		double ret = 0.0;
+		for (int k = 0; k < 3; k++)
+		{
+			double c = p.get(k);
+			double d = 0.0;
+			if (c < bounds[o + k])
+				d = bounds[o + k] - c;
+			else if (c > bounds[o + k + 3])
+				d = c - bounds[o + k + 3];
+			ret += d * d;
+		}
+		return ret;
+	}
+
+	/** Working data of a thread */
+	final class Query
+	{
+		private final Location v0 = new Location();
+		private final Location v1 = new Location();
+		private final Location v2 = new Location();
+		private final int[] index = new int[2];
+		private final int[] stack = new int[maxDepth + 2];
+		private final TriangleDistance distance = new TriangleDistance() {
+			@Override
+			protected double handleDegenerated(double det, Triangle tri) {
+				return Double.POSITIVE_INFINITY;
+			}
+		};
+		private double dmin;
+		private int closest;
+
+		/**
+		 * Get the closest triangle of a point.
+		 * @param p point to project
+		 * @param projection if not null, it is moved to the projection of p
+		 * @param group only look for triangles of this group, or all
+		 * triangles if negative
+		 * @return the closest triangle, or -1 if there is no triangle in
+		 * this group
+		 */
+		int getClosestTriangle(Location p, Location projection, int group)
+		{
+			dmin = Double.POSITIVE_INFINITY;
+			closest = -1;
+			if (group >= 0)
+			{
+				if (groupRoots.containsKey(group))
+					visit(groupRoots.get(group), p);
+			}
+			else
+			{
+				for (int root : roots)
+					visit(root, p);
+			}
+			if (closest >= 0 && projection != null)
+			{
+				distance(p, closest);
+				distance.getProjection(projection);
+			}
+			return closest;
+		}
+
+		/** Copy vertices of a triangle into v0, v1 and v2 */
+		void getVertices(int triangle, Location v0, Location v1, Location v2)
+		{
+			mesh.get(connectivity[3 * triangle], v0);
+			mesh.get(connectivity[3 * triangle + 1], v1);
+			mesh.get(connectivity[3 * triangle + 2], v2);
+		}
+
+		private double distance(Location p, int triangle)
+		{
+			getVertices(triangle, v0, v1, v2);
+			return distance.compute(p, v0, v1, v2, index);
+		}
+
+		private void visit(int root, Location p)
+		{
+			int sp = 0;
+			stack[sp++] = root;
+			while (sp > 0)
+			{
+				int node = stack[--sp];
+				if (sqrDistance(node, p) >= dmin)
+					continue;
+				if (start[node] >= 0)
+				{
+					for (int i = start[node]; i < end[node]; i++)
+					{
+						double d = distance(p, triangles[i]);
+						if (d < dmin)
+						{
+							dmin = d;
+							closest = triangles[i];
+						}
+					}
+					if (dmin == 0.0)
+						return;
+				}
+				else
+				{
+					// Visit the nearest child first
+					int left = node + 1;
+					int right = end[node];
+					if (sqrDistance(left, p) <= sqrDistance(right, p))
+					{
+						stack[sp++] = right;
+						stack[sp++] = left;
+					}
+					else
+					{
+						stack[sp++] = left;
+						stack[sp++] = right;
+					}
+				}
+			}
+		}
+	}
+}
@@ -29,7 +29,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.jcae.mesh.amibe.algos3d.TriMultPoly;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
@@ -50,8 +49,7 @@ public class EdgeProjectorNG {
 	private final TriangleKdTree kdTree;
 	private final double tolerance;
 	private final EdgeTrianglesLocator triangleFinder;
-    private final TriMultPoly triMultPoly = new TriMultPoly();
-	private final HoleFiller holeFiller = new HoleFiller();
+	private final HoleTriangulator holeFiller = new HoleTriangulator();
 
 	public EdgeProjectorNG(Mesh mesh, TriangleKdTree kdTree, double tolerance) {
 		this.mesh = mesh;
@@ -135,39 +133,15 @@ public class EdgeProjectorNG {
 		return true;
 	}
 
+	/**
+	 * Same as project, kept for compatibility.
+	 * @deprecated the hole is now triangulated in process, use project
+	 */
+	@Deprecated
 	public void projectTriMultPoly(Vertex v1, Vertex v2, int group) throws IOException
 	{
-		//TODO make it work with delauney
-		triMultPoly.setDelauneyTetra(false);
-		triangleFinder.locate(v1, v2, group, tolerance);
-		ArrayList<AbstractHalfEdge> border = new ArrayList<AbstractHalfEdge>();
-		for(Triangle t:triangleFinder.getResult())
-		{
-			AbstractHalfEdge e = t.getAbstractHalfEdge();
-			for(int i = 0; i < 3; i++)
-			{
-				if(!triangleFinder.getResult().contains(e.sym().getTri()))
-					border.add(e);
-				e = e.next();
-			}
-		}
-		Vertex[] vToAdd = new Vertex[3];
-		vToAdd[0] = v2;
-		vToAdd[1] = v1;
-		// Add a 3rd point so that the polyline is not degenerated
-		vToAdd[2] = mesh.createVertex(
-			v1.getX() - 1E-9 * (v1.getX() - v2.getX()),
-			v1.getY(), v1.getZ());
-		vToAdd[2] = mesh.createVertex(v1.getX(), v2.getY(), v1.getZ());
-		triMultPoly.triangulate(mesh, border,
-			Collections.singleton(Arrays.asList(vToAdd)));
-		AbstractHalfEdge e = triMultPoly.getEdge(v1, vToAdd[2]);
-		for(Triangle t:triMultPoly.getNewTriangles())
-			mesh.add(t);
-		for(Triangle t:triangleFinder.getResult())
-			mesh.remove(t);
-		assert mesh.isValid();
-		mesh.edgeCollapse(e, v1);
+		if(project(v1, v2, group) == null)
+			throw new IOException("Cannot project "+v1+" "+v2);
 	}
 
 	/**
@@ -28,7 +28,12 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
 
-/** An AbstractLocaleRemesher whish use TriangulationsExplorer */
+/**
+ * An AbstractLocaleRemesher whish use TriangulationsExplorer
+ * @deprecated exploring all triangulations is exponential, use
+ * {@link HoleTriangulator}
+ */
+@Deprecated
 public class HoleFiller extends AbstractLocaleRemesher {
 	private final TriangulationsExplorer explorer = new TriangulationsExplorer() {
 
@@ -0,0 +1,411 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2014, by Airbus Group SAS
+ */
+
+package org.jcae.mesh.amibe.projection;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
+import org.jcae.mesh.amibe.util.HashFactory;
+
+/**
+ * An AbstractLocaleRemesher which triangulates multiple polygons by dynamic
+ * programming, in process.
+ * <p>
+ * Inner polylines are linked to the outer one by a bridge edge, so that
+ * they all form a single polygon, which is triangulated with the O(n^3)
+ * algorithm of Barequet and Sharir. Costs of sub-polygons are memoized.
+ * The weights are the ones of TriMultPoly (Zou, Ju, Carr, SGP 2013): the
+ * maximum dihedral angle is minimized first if minMaxDihedral is set, then
+ * the weighted sum of dihedral angles, areas and edge lengths. The
+ * dihedral angle across a chord is computed with the best triangulation of
+ * the sub-polygon, so the result is not always the global optimum.
+ * </p><p>
+ * Only the maxBridges shortest bridges are tried for each inner polyline,
+ * and inner polylines are bridged one after the other. Inner polylines
+ * with 2 vertices are segments which will be edges of the triangulation.
+ * </p>
+ * @see org.jcae.mesh.amibe.algos3d.TriMultPoly
+ * @see TriangulationsExplorer
+ */
+public class HoleTriangulator extends AbstractLocaleRemesher {
+	private double areaWeight = 0, edgeWeight = 0, dihedralWeight = 1.0;
+	private boolean minMaxDihedral = true;
+	private int maxBridges = 4;
+	/** Origin of a border edge to its destination and the apex of its sym */
+	private final Map<Vertex, Vertex[]> outerApex = HashFactory.createMap();
+	/** Number of polylines given in the vertices parameter of triangulate */
+	private int nbFreePolylines;
+	/** vertIndex index to the first index of the same vertex */
+	private int[] ids;
+
+	// Working data of solve
+	private Vertex[] pv;
+	private int[] pid;
+	private double[] outerNormals;
+	private boolean[] hasOuterNormal;
+	private double[] maxCost, sumCost;
+	private int[] apex;
+	private double bestMax, bestSum;
+	private final double[] normal = new double[3];
+	private final double[] otherNormal = new double[3];
+	private final double[] work1 = new double[3];
+	private final double[] work2 = new double[3];
+
+	public void setAreaWeight(double areaWeight) {
+		this.areaWeight = areaWeight;
+	}
+
+	public void setEdgeWeight(double edgeWeight) {
+		this.edgeWeight = edgeWeight;
+	}
+
+	public void setDihedralWeight(double dihedralWeight) {
+		this.dihedralWeight = dihedralWeight;
+	}
+
+	public void setMinMaxDihedral(boolean minMaxDihedral) {
+		this.minMaxDihedral = minMaxDihedral;
+	}
+
+	/** Set the number of bridges tried for each inner polyline */
+	public void setMaxBridges(int maxBridges) {
+		if(maxBridges < 1)
+			throw new IllegalArgumentException();
+		this.maxBridges = maxBridges;
+	}
+
+	@Override
+	public void triangulate(Mesh mesh, Collection<AbstractHalfEdge> edges,
+		Collection<List<Vertex>> vertices)
+	{
+		outerApex.clear();
+		for(AbstractHalfEdge e: edges)
+		{
+			AbstractHalfEdge s = e.sym();
+			if(!s.hasAttributes(AbstractHalfEdge.OUTER))
+				outerApex.put(e.origin(), new Vertex[]{e.destination(), s.apex()});
+		}
+		nbFreePolylines = vertices.size();
+		try {
+			super.triangulate(mesh, edges, vertices);
+		} catch (IOException ex) {
+			// will never happen
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	protected void triangulate(Mesh mesh, Collection<List<Vertex>> vertices) {
+		int nbVertices = vertIndex.size();
+		ids = new int[nbVertices];
+		TObjectIntHashMap<Vertex> firstIndex = new TObjectIntHashMap<Vertex>(
+			nbVertices, 0.5f, -1);
+		for(int i = 0; i < nbVertices; i++)
+		{
+			int k = firstIndex.putIfAbsent(vertIndex.get(i), i);
+			ids[i] = k < 0 ? i : k;
+		}
+		int[][] loops = new int[vertices.size()][];
+		int k = 0;
+		int offset = 0;
+		for(List<Vertex> l: vertices)
+		{
+			loops[k] = new int[l.size()];
+			for(int i = 0; i < loops[k].length; i++)
+				loops[k][i] = offset++;
+			k++;
+		}
+
+		int[] result = null;
+		int[] polygon = loops[0];
+		if(loops.length == 1)
+			result = solve(polygon);
+		for(int h = 1; h < loops.length; h++)
+		{
+			int[] hole = loops[h];
+			boolean canFlip = h >= loops.length - nbFreePolylines && hole.length > 2;
+			int[][] bridges = shortestBridges(polygon, hole);
+			int[] bestPolygon = null;
+			double bMax = Double.POSITIVE_INFINITY, bSum = Double.POSITIVE_INFINITY;
+			for(int[] bridge: bridges)
+			{
+				for(int dir = 1; dir >= (canFlip ? -1 : 1); dir -= 2)
+				{
+					int[] merged = bridge(polygon, hole, bridge[0], bridge[1], dir);
+					int[] triangles = solve(merged);
+					if(triangles != null && (bestPolygon == null ||
+						isBetter(bestMax, bestSum, bMax, bSum)))
+					{
+						bestPolygon = merged;
+						result = triangles;
+						bMax = bestMax;
+						bSum = bestSum;
+					}
+				}
+			}
+			if(bestPolygon == null)
+			{
+				result = null;
+				break;
+			}
+			polygon = bestPolygon;
+		}
+		pv = null;
+		maxCost = sumCost = null;
+		apex = null;
+		if(result == null)
+			throw new IllegalStateException("Cannot triangulate the hole");
+		for(int i = 0; i < result.length; i += 3)
+			addTriangle(mesh, result[i], result[i + 1], result[i + 2]);
+	}
+
+	/** Return the maxBridges closest (polygon, hole) pairs of positions */
+	private int[][] shortestBridges(int[] polygon, int[] hole)
+	{
+		int nb = Math.min(maxBridges, polygon.length * hole.length);
+		int[][] bridges = new int[nb][];
+		double[] distances = new double[nb];
+		int size = 0;
+		for(int p = 0; p < polygon.length; p++)
+		{
+			Vertex vp = vertIndex.get(polygon[p]);
+			for(int q = 0; q < hole.length; q++)
+			{
+				Vertex vq = vertIndex.get(hole[q]);
+				if(vp == vq)
+					continue;
+				double d = vp.sqrDistance3D(vq);
+				if(size == nb && d >= distances[nb - 1])
+					continue;
+				int i = size < nb ? size++ : nb - 1;
+				while(i > 0 && distances[i - 1] > d)
+				{
+					distances[i] = distances[i - 1];
+					bridges[i] = bridges[i - 1];
+					i--;
+				}
+				distances[i] = d;
+				bridges[i] = new int[]{p, q};
+			}
+		}
+		if(size < nb)
+		{
+			int[][] tmp = new int[size][];
+			System.arraycopy(bridges, 0, tmp, 0, size);
+			bridges = tmp;
+		}
+		return bridges;
+	}
+
+	/**
+	 * Insert hole into polygon after position p, going from q to q along
+	 * the hole in the dir direction, then back to p.
+	 */
+	private static int[] bridge(int[] polygon, int[] hole, int p, int q, int dir)
+	{
+		int n = polygon.length;
+		int h = hole.length;
+		int[] toReturn = new int[n + h + 2];
+		System.arraycopy(polygon, 0, toReturn, 0, p + 1);
+		int k = p + 1;
+		for(int i = 0; i <= h; i++)
+			toReturn[k++] = hole[((q + dir * i) % h + h) % h];
+		toReturn[k++] = polygon[p];
+		System.arraycopy(polygon, p + 1, toReturn, k, n - p - 1);
+		return toReturn;
+	}
+
+	private boolean isBetter(double max1, double sum1, double max2, double sum2)
+	{
+		if(minMaxDihedral)
+			return max1 < max2 || (max1 == max2 && sum1 < sum2);
+		else
+			return sum1 < sum2;
+	}
+
+	private static long edgeKey(int id1, int id2)
+	{
+		return id1 < id2 ? ((long) id1 << 32) | id2 : ((long) id2 << 32) | id1;
+	}
+
+	/** Angle between normal and otherNormal, or PI if one is degenerated */
+	private double angle(double area, double otherArea)
+	{
+		if(area == 0 || otherArea == 0)
+			return Math.PI;
+		double dot = Matrix3D.prodSca(normal, otherNormal);
+		return Math.acos(Math.max(-1.0, Math.min(1.0, dot)));
+	}
+
+	/** Compute the normal of the triangle of the best triangulation of i..j */
+	private double subNormal(int n, int i, int j)
+	{
+		return Matrix3D.computeNormal3D(pv[i], pv[apex[i * n + j]], pv[j],
+			work1, work2, otherNormal);
+	}
+
+	/** Compute the normal of the outer triangle of the i, i+1 edge */
+	private double outerNormal(int i)
+	{
+		if(!hasOuterNormal[i])
+			return -1;
+		System.arraycopy(outerNormals, 3 * i, otherNormal, 0, 3);
+		return Matrix3D.norm(otherNormal) > 0 ? 1 : 0;
+	}
+
+	/**
+	 * Triangulate a polygon.
+	 * @param polygon indices in vertIndex
+	 * @return triangles as indices in vertIndex, or null if there is no
+	 * valid triangulation. The cost is stored in bestMax and bestSum.
+	 */
+	private int[] solve(int[] polygon)
+	{
+		int n = polygon.length;
+		if(n < 3)
+			return null;
+		pv = new Vertex[n];
+		pid = new int[n];
+		outerNormals = new double[3 * n];
+		hasOuterNormal = new boolean[n];
+		TLongHashSet polygonEdges = new TLongHashSet(2 * n);
+		for(int i = 0; i < n; i++)
+		{
+			pv[i] = vertIndex.get(polygon[i]);
+			pid[i] = ids[polygon[i]];
+		}
+		for(int i = 0; i < n; i++)
+		{
+			int next = (i + 1) % n;
+			polygonEdges.add(edgeKey(pid[i], pid[next]));
+			Vertex[] outer = outerApex.get(pv[i]);
+			if(outer != null && outer[0] == pv[next])
+			{
+				hasOuterNormal[i] = true;
+				Matrix3D.computeNormal3D(pv[next], pv[i], outer[1], work1, work2, normal);
+				System.arraycopy(normal, 0, outerNormals, 3 * i, 3);
+			}
+		}
+
+		maxCost = new double[n * n];
+		sumCost = new double[n * n];
+		apex = new int[n * n];
+		for(int i = 0; i < n - 1; i++)
+			apex[i * n + i + 1] = -1;
+		for(int len = 2; len < n; len++)
+		{
+			for(int i = 0, j = len; j < n; i++, j++)
+			{
+				int ij = i * n + j;
+				boolean chord = len < n - 1;
+				maxCost[ij] = sumCost[ij] = Double.POSITIVE_INFINITY;
+				apex[ij] = -1;
+				if(chord && (pid[i] == pid[j] ||
+					polygonEdges.contains(edgeKey(pid[i], pid[j]))))
+					continue;
+				double chordLength = chord ? pv[i].distance3D(pv[j]) : 0;
+				for(int m = i + 1; m < j; m++)
+				{
+					int im = i * n + m;
+					int mj = m * n + j;
+					if(maxCost[im] == Double.POSITIVE_INFINITY ||
+						maxCost[mj] == Double.POSITIVE_INFINITY)
+						continue;
+					if(pid[i] == pid[m] || pid[m] == pid[j])
+						continue;
+					double area = Matrix3D.computeNormal3D(pv[i], pv[m], pv[j],
+						work1, work2, normal);
+					double triMax = 0, triSum = 0;
+					double otherArea = m == i + 1 ? outerNormal(i) : subNormal(n, i, m);
+					if(otherArea >= 0)
+					{
+						double a = angle(area, otherArea);
+						triMax = Math.max(triMax, a);
+						triSum += a;
+					}
+					otherArea = j == m + 1 ? outerNormal(m) : subNormal(n, m, j);
+					if(otherArea >= 0)
+					{
+						double a = angle(area, otherArea);
+						triMax = Math.max(triMax, a);
+						triSum += a;
+					}
+					if(!chord && (otherArea = outerNormal(n - 1)) >= 0)
+					{
+						double a = angle(area, otherArea);
+						triMax = Math.max(triMax, a);
+						triSum += a;
+					}
+					double cMax = Math.max(triMax, Math.max(maxCost[im], maxCost[mj]));
+					double cSum = sumCost[im] + sumCost[mj] + dihedralWeight * triSum +
+						areaWeight * area + edgeWeight * chordLength;
+					if(apex[ij] < 0 || isBetter(cMax, cSum, maxCost[ij], sumCost[ij]))
+					{
+						maxCost[ij] = cMax;
+						sumCost[ij] = cSum;
+						apex[ij] = m;
+					}
+				}
+			}
+		}
+		if(apex[n - 1] < 0)
+			return null;
+		bestMax = maxCost[n - 1];
+		bestSum = sumCost[n - 1];
+
+		// Walk through the best triangulation and check that each half edge
+		// is used only once, as a vertex may appear several times in polygon.
+		int[] triangles = new int[3 * (n - 2)];
+		TLongHashSet halfEdges = new TLongHashSet(3 * n);
+		int[] stack = new int[2 * n];
+		int sp = 0, nt = 0;
+		stack[sp++] = 0;
+		stack[sp++] = n - 1;
+		while(sp > 0)
+		{
+			int j = stack[--sp];
+			int i = stack[--sp];
+			int m = apex[i * n + j];
+			if(m < 0)
+				continue;
+			if(!halfEdges.add(((long) pid[i] << 32) | pid[m]) ||
+				!halfEdges.add(((long) pid[m] << 32) | pid[j]) ||
+				!halfEdges.add(((long) pid[j] << 32) | pid[i]))
+				return null;
+			triangles[nt++] = polygon[i];
+			triangles[nt++] = polygon[m];
+			triangles[nt++] = polygon[j];
+			stack[sp++] = i;
+			stack[sp++] = m;
+			stack[sp++] = m;
+			stack[sp++] = j;
+		}
+		assert nt == triangles.length;
+		return triangles;
+	}
+}
@@ -22,7 +22,12 @@ package org.jcae.mesh.amibe.projection;
 
 import gnu.trove.map.hash.TIntIntHashMap;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
@@ -31,42 +36,335 @@ import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 
 /**
- *
+ * Project vertices on the background mesh with a {@link TriangleKdTree}.
+ * <p>
+ * In warm start mode (see {@link #setWarmStart}), the last background
+ * triangle of each current vertex is remembered.  When this vertex is
+ * moved again, a walk on background triangles is first tried from this
+ * triangle, and the kd-tree is only queried when this walk fails.  This
+ * is much faster when vertices are moved by small distances, as during
+ * smoothing.
+ * </p>
  * @author Jerome Robert
  */
-//TODO possible optimization:
-// - one TriangleKdTree by group ?
-// - check how MeshLiaison methods calls sequence to limit the number of call
-//   to getClosestTriangle
 public class KdTreeLiaison extends MeshLiaison{
+	private static final Logger LOGGER = Logger.getLogger(KdTreeLiaison.class.getName());
+	/** Maximal number of triangles visited by a walk */
+	private static final int MAX_WALK_STEPS = 32;
+	/**
+	 * A walk fails if the squared distance to the triangle found is larger
+	 * than this ratio times the squared length of its smallest edge.
+	 */
+	private static final double MAX_WALK_DISTANCE_RATIO = 0.25;
+	/** Number of slots where a vertex can be stored in cache */
+	private static final int CACHE_PROBES = 4;
 	private final TriangleKdTree kdTree;
+	private boolean warmStart;
+	// Last background triangle of current vertices.  Races are harmless
+	// because cached triangles are only used as walk starts.
+	private Vertex[] cacheVertices;
+	private Triangle[] cacheTriangles;
+	private int cacheShift;
+	private final LongAdder walkHits = new LongAdder();
+	private final LongAdder walkMisses = new LongAdder();
+	private final LongAdder coldQueries = new LongAdder();
+	private final transient ThreadLocal<Walker> walkers = new ThreadLocal<Walker>() {
+		@Override
+		protected Walker initialValue() {
+			return new Walker();
+		}
+	};
 	private final transient Location tmpCoords = new Location();
+	// Projections computed by move(), one per thread
+	private final transient ThreadLocal<Location> moveCoords = new ThreadLocal<Location>() {
+		@Override
+		protected Location initialValue() {
+			return new Location();
+		}
+	};
 	public KdTreeLiaison(Mesh backgroundMesh, MeshTraitsBuilder mtb) {
 		super(backgroundMesh, mtb);
-		kdTree = new TriangleKdTree(backgroundMesh);
+		kdTree = new TriangleKdTree(backgroundMesh, true);
 	}
 
 	public KdTreeLiaison(Mesh backgroundMesh, Mesh currentMesh, MeshTraitsBuilder mtb) {
 		super(backgroundMesh, currentMesh, mtb);
-		kdTree = new TriangleKdTree(backgroundMesh);
+		kdTree = new TriangleKdTree(backgroundMesh, true);
 	}
 
 	@Override
 	protected void init(Collection<Vertex> backgroundNodeset) { }
 
+	/**
+	 * Enable or disable warm start mode.  Counters are reset.
+	 */
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+		if (warmStart && cacheVertices == null)
+		{
+			// There are about twice as many triangles as vertices
+			int size = Integer.highestOneBit(
+				Math.max(backgroundMesh.getTriangles().size(), 16) - 1) << 2;
+			cacheShift = 32 - Integer.numberOfTrailingZeros(size);
+			cacheVertices = new Vertex[size];
+			cacheTriangles = new Triangle[size];
+		}
+		else if (!warmStart)
+		{
+			cacheVertices = null;
+			cacheTriangles = null;
+		}
+		walkHits.reset();
+		walkMisses.reset();
+		coldQueries.reset();
+	}
+
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+
+	/** Number of projections found by walking from a cached triangle */
+	public long getWalkHits() {
+		return walkHits.sum();
+	}
+
+	/** Number of walks which failed, the kd-tree has then been queried */
+	public long getWalkMisses() {
+		return walkMisses.sum();
+	}
+
+	/** Number of kd-tree queries done because no triangle was cached */
+	public long getColdQueries() {
+		return coldQueries.sum();
+	}
+
+	/** Ratio of projections found without querying the kd-tree */
+	public double getHitRate() {
+		long hits = getWalkHits();
+		long total = hits + getWalkMisses() + getColdQueries();
+		return total == 0 ? 0.0 : ((double) hits) / total;
+	}
+
+	public void logStatistics() {
+		if (warmStart && LOGGER.isLoggable(Level.INFO))
+			LOGGER.log(Level.INFO, "Warm start: {0} hits, {1} misses, {2} cold queries, hit rate: {3}",
+				new Object[]{getWalkHits(), getWalkMisses(), getColdQueries(), getHitRate()});
+	}
+
+	private int cacheIndex(Vertex v) {
+		return (v.hashCode() * 0x9e3779b9) >>> cacheShift;
+	}
+
+	/** Returns the cache slot of v, or -1 */
+	private int findCachedVertex(Vertex[] vertices, Vertex v) {
+		int mask = vertices.length - 1;
+		int i = cacheIndex(v);
+		for (int k = 0; k < CACHE_PROBES; k++, i = (i + 1) & mask)
+		{
+			if (vertices[i] == v)
+				return i;
+		}
+		return -1;
+	}
+
+	private Triangle getCachedTriangle(Vertex v) {
+		Vertex[] vertices = cacheVertices;
+		Triangle[] triangles = cacheTriangles;
+		if (vertices == null)
+			return null;
+		int i = findCachedVertex(vertices, v);
+		return i < 0 ? null : triangles[i];
+	}
+
+	private void setCachedTriangle(Vertex v, Triangle t) {
+		Vertex[] vertices = cacheVertices;
+		Triangle[] triangles = cacheTriangles;
+		if (vertices == null)
+			return;
+		int i = findCachedVertex(vertices, v);
+		if (i < 0)
+		{
+			// Take the first free slot, or evict the first one
+			int mask = vertices.length - 1;
+			i = cacheIndex(v);
+			for (int k = 0, j = i; k < CACHE_PROBES; k++, j = (j + 1) & mask)
+			{
+				if (vertices[j] == null)
+				{
+					i = j;
+					break;
+				}
+			}
+		}
+		triangles[i] = t;
+		vertices[i] = v;
+	}
+
+	private void removeCachedTriangle(Vertex v) {
+		Vertex[] vertices = cacheVertices;
+		if (vertices == null)
+			return;
+		int i = findCachedVertex(vertices, v);
+		if (i >= 0)
+			vertices[i] = null;
+	}
+
+	/**
+	 * Find the closest background triangle, first by walking from the
+	 * cached triangle of v, then with the kd-tree.
+	 * @param v current vertex, its cached triangle is updated
+	 * @param start if not null, walk start when v has no cached triangle
+	 */
+	private Triangle getClosestTriangle(Vertex v, Location target,
+		Location projection, int group, Triangle start) {
+		if (!warmStart)
+			return kdTree.getClosestTriangle(target, projection, group);
+		Triangle t = getCachedTriangle(v);
+		if (t == null)
+			t = start;
+		if (t != null)
+		{
+			t = walkers.get().walk(target, t, projection, group);
+			if (t != null)
+				walkHits.increment();
+			else
+				walkMisses.increment();
+		}
+		else
+			coldQueries.increment();
+		if (t == null)
+			t = kdTree.getClosestTriangle(target, projection, group);
+		if (t != null)
+			setCachedTriangle(v, t);
+		return t;
+	}
+
+	/**
+	 * Greedy walk on background triangles towards the closest triangle.
+	 * Adjacent triangles are visited, and when the closest point is a
+	 * vertex, all triangles around this vertex.
+	 */
+	private static class Walker
+	{
+		private final int[] index = new int[2];
+		private final TriangleDistance distance = new TriangleDistance() {
+			@Override
+			protected double handleDegenerated(double det, Triangle tri) {
+				return Double.POSITIVE_INFINITY;
+			}
+		};
+
+		private static boolean isCandidate(Triangle t, int group) {
+			return !t.hasAttributes(AbstractHalfEdge.OUTER) &&
+				(group < 0 || t.getGroupId() == group);
+		}
+
+		/** Local id of the closest vertex, or -1 if it is not a vertex */
+		private int closestVertex() {
+			switch (index[1])
+			{
+				case 4: return 0;
+				case 6: return 1;
+				case 2: return 2;
+				default: return -1;
+			}
+		}
+
+		/** @return the triangle found, or null if the walk failed */
+		Triangle walk(Location target, Triangle start, Location projection, int group) {
+			if (!isCandidate(start, group))
+				return null;
+			Triangle current = start;
+			double dmin = distance.compute(target, current, index);
+			int vertex = closestVertex();
+			for (int step = 0; ; step++)
+			{
+				if (step == MAX_WALK_STEPS)
+					return null;
+				Triangle best = current;
+				int bestVertex = vertex;
+				AbstractHalfEdge ot = current.getAbstractHalfEdge();
+				for (int i = 0; i < 3; i++)
+				{
+					ot = ot.next();
+					if (ot.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
+						continue;
+					Triangle t = ot.sym().getTri();
+					if (!isCandidate(t, group))
+						continue;
+					double d = distance.compute(target, t, index);
+					if (d < dmin)
+					{
+						dmin = d;
+						best = t;
+						bestVertex = closestVertex();
+					}
+				}
+				if (best == current && vertex >= 0)
+				{
+					Vertex n = current.getV(vertex);
+					if (!n.isManifold())
+						return null;
+					for (Iterator<Triangle> it = n.getNeighbourIteratorTriangle(); it.hasNext(); )
+					{
+						Triangle t = it.next();
+						if (t == current || !isCandidate(t, group))
+							continue;
+						double d = distance.compute(target, t, index);
+						if (d < dmin)
+						{
+							dmin = d;
+							best = t;
+							bestVertex = closestVertex();
+						}
+					}
+				}
+				if (best == current)
+					break;
+				current = best;
+				vertex = bestVertex;
+			}
+			if (dmin > MAX_WALK_DISTANCE_RATIO * minSqrEdgeLength(current))
+				return null;
+			if (projection != null)
+			{
+				distance.compute(target, current, index);
+				distance.getProjection(projection);
+			}
+			return current;
+		}
+
+		private static double minSqrEdgeLength(Triangle t) {
+			Vertex v0 = t.getV0();
+			Vertex v1 = t.getV1();
+			Vertex v2 = t.getV2();
+			return Math.min(v0.sqrDistance3D(v1),
+				Math.min(v1.sqrDistance3D(v2), v2.sqrDistance3D(v0)));
+		}
+	}
+
 	@Override
 	public void backupRestore(Vertex v, boolean restore, int group) { }
 
 	@Override
 	protected boolean move(Vertex v, Location target, boolean backup, int group,
 		boolean doCheck) {
-		Triangle t = kdTree.getClosestTriangle(target, tmpCoords, group);
-		v.moveTo(tmpCoords);
+		Location projection = moveCoords.get();
+		Triangle t = getClosestTriangle(v, target, projection, group, null);
+		v.moveTo(projection);
 		return t != null;
 	}
 
+	/**
+	 * Kd-tree queries are thread-safe, and there is no backup.
+	 */
+	@Override
+	public boolean canMoveConcurrently() {
+		return true;
+	}
+
 	private Triangle getBackgroundTriangle(Vertex v) {
-		Triangle toReturn = kdTree.getClosestTriangle(v, null, -1);
+		Triangle toReturn = getClosestTriangle(v, v, null, -1, null);
 		if(toReturn == null)
 			throw new NoSuchElementException(v.toString());
 		return toReturn;
@@ -84,7 +382,9 @@ public class KdTreeLiaison extends MeshLiaison{
 	@Override
 	public Triangle addVertex(Vertex v, Vertex start, double maxError, int group)
 	{
-		move(v, v, false, -1, false);
+		Location projection = moveCoords.get();
+		getClosestTriangle(v, v, projection, -1, start == null ? null : getCachedTriangle(start));
+		v.moveTo(projection);
 		return null;
 	}
 
@@ -96,7 +396,7 @@ public class KdTreeLiaison extends MeshLiaison{
 
 	@Override
 	public void addVertex(Vertex v, Vertex existingVertex, double[] normal) {
-		Triangle t = kdTree.getClosestTriangle(v, tmpCoords, -1);
+		Triangle t = getClosestTriangle(v, v, tmpCoords, -1, getCachedTriangle(existingVertex));
 		v.moveTo(tmpCoords);
 		Matrix3D.computeNormal3D(t.getV0(), t.getV1(), t.getV2(),
 			work1, work2, normal);
@@ -104,10 +404,15 @@ public class KdTreeLiaison extends MeshLiaison{
 
 	@Override
 	public void removeVertex(Vertex v) {
+		removeCachedTriangle(v);
 	}
 
 	@Override
 	public void replaceVertex(Vertex oldV, Vertex newV) {
+		Triangle t = getCachedTriangle(oldV);
+		removeCachedTriangle(oldV);
+		if (t != null)
+			setCachedTriangle(newV, t);
 	}
 
 	@Override
@@ -21,6 +21,7 @@ package org.jcae.mesh.amibe.projection;
 
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.iterator.TIntIntIterator;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.ds.Triangle;
@@ -71,6 +72,31 @@ public abstract class MeshLiaison
 		return new KdTreeLiaison(backgroundMesh, currentMesh, mtb);
 	}
 
+	/**
+	 * Create a liaison which does not clone mesh.  It becomes the current
+	 * mesh, and the background is a compact copy of its geometry.
+	 * @see CompactLiaison
+	 */
+	public static MeshLiaison createCompact(Mesh mesh)
+	{
+		return new CompactLiaison(mesh);
+	}
+
+	public static MeshLiaison create(CompactMesh backgroundMesh, Mesh currentMesh)
+	{
+		return new CompactLiaison(backgroundMesh, currentMesh);
+	}
+
+	/**
+	 * Constructor for liaisons which do not store the background as a
+	 * {@link Mesh}, backgroundMesh is then null.
+	 */
+	protected MeshLiaison(Mesh currentMesh)
+	{
+		this.backgroundMesh = null;
+		this.currentMesh = currentMesh;
+	}
+
 	protected MeshLiaison(Mesh backgroundMesh, MeshTraitsBuilder mtb)
 	{
 		this(backgroundMesh, null, mtb);
@@ -244,6 +270,25 @@ public abstract class MeshLiaison
 
 	protected abstract boolean move(Vertex v, Location target, boolean backup,  int group, boolean doCheck);
 
+	/**
+	 * Tells whether {@link #backupAndMove} and {@link #backupRestore} can
+	 * be called concurrently by several threads on distinct vertices.
+	 * @return <code>false</code>, subclasses may override this method
+	 */
+	public boolean canMoveConcurrently()
+	{
+		return false;
+	}
+
+	/**
+	 * Tells whether {@link #moveToClosestEdge} is supported.
+	 * @return <code>true</code>, subclasses may override this method
+	 */
+	public boolean canMoveToClosestEdge()
+	{
+		return true;
+	}
+
 	/**
 	 * Get the projection of a vertex on the closest edge of the skeleton (list of edge which are non-manifold or
 	 * border of groups)
@@ -602,7 +647,12 @@ public abstract class MeshLiaison
 
 	public final void buildSkeleton()
 	{
-		skeleton = new Skeleton(backgroundMesh);
+		skeleton = createSkeleton();
+	}
+
+	Skeleton createSkeleton()
+	{
+		return new Skeleton(backgroundMesh);
 	}
 
 	public final boolean isNearSkeleton(Vertex v, int groupId, double distance2)
@@ -650,9 +700,25 @@ public abstract class MeshLiaison
 
 		public double compute(Location pos, Triangle tri, int[] index)
 		{
-			t0 = tri.getV0();
-			tri.getV1().sub(t0, edge0);
-			tri.getV2().sub(t0, edge1);
+			return compute(pos, tri.getV0(), tri.getV1(), tri.getV2(), tri, index);
+		}
+
+		/**
+		 * Same as {@link #compute(Location, Triangle, int[])} for a triangle
+		 * given by its vertices.  {@link #getProjection} is valid as long as
+		 * v0 is not moved.
+		 */
+		public double compute(Location pos, Location v0, Location v1, Location v2, int[] index)
+		{
+			return compute(pos, v0, v1, v2, null, index);
+		}
+
+		private double compute(Location pos, Location v0, Location v1, Location v2,
+			Triangle tri, int[] index)
+		{
+			t0 = v0;
+			v1.sub(t0, edge0);
+			v2.sub(t0, edge1);
 			t0.sub(pos, diff);
 			double a = norm2(edge0);
 			double b = dot(edge0, edge1);
@@ -1123,7 +1189,7 @@ public abstract class MeshLiaison
 
 	}
 
-	private static class Skeleton
+	static class Skeleton
 	{
 		private final TIntObjectHashMap<Collection<Line>> mapGroupBorder = new TIntObjectHashMap<Collection<Line>>();
 	
@@ -1158,6 +1224,36 @@ public abstract class MeshLiaison
 				}
 			}
 		}
+
+		/**
+		 * Skeleton made of feature edges of a compact mesh, see
+		 * {@link CompactMesh#isFeature}.  Adjacency relations must
+		 * have been built.
+		 */
+		Skeleton(CompactMesh mesh)
+		{
+			mapGroupBorder.put(-1, new ArrayList<Line>());
+			Location o = new Location();
+			Location d = new Location();
+			for (int t = 0; t < mesh.getNumberOfTriangles(); t++)
+			{
+				int groupId = mesh.getGroupId(t);
+				Collection<Line> borders = mapGroupBorder.get(groupId);
+				if (borders == null)
+				{
+					borders = new ArrayList<Line>();
+					mapGroupBorder.put(groupId, borders);
+				}
+				for (int h = 3 * t; h < 3 * t + 3; h++)
+				{
+					if (!mesh.isFeature(h))
+						continue;
+					mesh.get(mesh.origin(h), o);
+					mesh.get(mesh.destination(h), d);
+					borders.add(new Line(o, d));
+				}
+			}
+		}
 	
 		double getSqrDistance(Vertex v, int groupId)
 		{
@@ -1194,7 +1290,7 @@ public abstract class MeshLiaison
 			private final Location origin = new Location();
 			private final double[] direction = new double[3];
 			private final double sqrNormDirection;
-			Line(Vertex v1, Vertex v2)
+			Line(Location v1, Location v2)
 			{
 				origin.moveTo(v1);
 				v2.sub(origin, direction);
@@ -27,12 +27,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
-import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.xmldata.GPure2Amibe;
 import org.jcae.mesh.xmldata.MeshReader;
@@ -79,27 +79,22 @@ public class ProjectorCLI {
 		TriangleKdTree kdTree = new TriangleKdTree(mesh);
 		FileChannel inChannel = new FileInputStream(pointSetFile).getChannel();
 		FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
-		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * 1000);
+		int chunkSize = 1 << 16;
+		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * chunkSize);
 		bb.order(ByteOrder.nativeOrder());
 		long nbPoints = inChannel.size() / 3 / 8;
-		Location location = new Location();
-		Location projection = new Location();
+		double[] xyz = new double[3 * chunkSize];
 		for(long i = 0; i < nbPoints;)
 		{
 			int read = inChannel.read(bb);
 			int readPoints = read / 3 / 8;
 			bb.rewind();
-			for(int j = 0; j < readPoints; j++)
-			{
-				location.moveTo(bb.getDouble(), bb.getDouble(), bb.getDouble());
-				kdTree.getClosestTriangle(location, projection, -1);
-				bb.position(bb.position() - 3 * 8);
-				bb.putDouble(projection.getX());
-				bb.putDouble(projection.getY());
-				bb.putDouble(projection.getZ());
-			}
+			bb.asDoubleBuffer().get(xyz, 0, 3 * readPoints);
+			double[] points = readPoints == chunkSize ? xyz :
+				Arrays.copyOf(xyz, 3 * readPoints);
+			kdTree.projectAll(points, -1, null, points);
+			bb.asDoubleBuffer().put(points, 0, 3 * readPoints);
 			i += readPoints;
-			bb.rewind();
 			bb.limit(read);
 			outChannel.write(bb);
 			bb.clear();
@@ -20,6 +20,7 @@
 
 package org.jcae.mesh.amibe.projection;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,6 +31,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
@@ -42,7 +45,14 @@ import org.jcae.mesh.amibe.util.HashFactory;
 import org.jcae.mesh.xmldata.MeshReader;
 
 /**
- *
+ * A kd-tree of triangles.
+ * <p>
+ * The tree may be partitioned by groups (see
+ * {@link #TriangleKdTree(Mesh, boolean)}): a subtree is then built for
+ * each group in addition to the whole tree, and queries restricted to a
+ * group only visit the subtree of this group.  Group ids of triangles must
+ * not be changed while they are in a partitioned tree.
+ * </p>
  * @author Jerome Robert
  */
 // TODO possible optimizations:
@@ -118,23 +128,65 @@ public class TriangleKdTree {
 	private double globalRadius;
 	private double[] minNodeSize = new double[3];
 	private final int bucketSize;
+	/** One subtree by group id, or null if this tree is not partitioned */
+	private TIntObjectHashMap<TriangleKdTree> groupTrees;
 	private final TriangleInterAABB triangleInterAABB1 = new TriangleInterAABB();
-	private final TriangleInterAABB triangleInterAABB2 = new TriangleInterAABB();
-	private transient List<Node> nodeStack;
-	private transient BoundaryPool boundaryPool;
-	private final transient double[] workBoundary1 = new double[6];
-	private final static TriangleDistance TRIANGLE_DISTANCE = new TriangleDistance(){
+	private final Splitter splitter = new Splitter();
+	// Working context of methods which modify the tree
+	private final transient Query context = new Query();
+	// Working contexts of read-only queries, one per thread
+	private final transient ThreadLocal<Query> queries = new ThreadLocal<Query>() {
 		@Override
-		protected double handleDegenerated(double det, Triangle tri) {
-			LOGGER.info(tri+" is degenerated");
-			return Double.POSITIVE_INFINITY;
+		protected Query initialValue() {
+			return new Query();
 		}
 	};
+
+	/**
+	 * Working data of a query.  The tree itself is not modified by
+	 * queries, so several threads can query the same tree as long as each
+	 * of them uses its own <code>Query</code> instance and the tree is not
+	 * modified at the same time.
+	 */
+	public final class Query
+	{
+		private List<Node> nodeStack;
+		private BoundaryPool boundaryPool;
+		private final List<Node> closeNodes = new ArrayList<Node>();
+		private final Set<Triangle> seen = HashFactory.createSet();
+		private final double[] workBoundary = new double[6];
+		private final int[] closeIndex = new int[2];
+		private final TriangleDistance triangleDistance = new TriangleDistance(){
+			@Override
+			protected double handleDegenerated(double det, Triangle tri) {
+				LOGGER.info(tri+" is degenerated");
+				return Double.POSITIVE_INFINITY;
+			}
+		};
+
+		/** Same as {@link TriangleKdTree#getClosestTriangle} */
+		public Triangle getClosestTriangle(Location coords, Location projection, int group)
+		{
+			return TriangleKdTree.this.getClosestTriangle(this, coords, projection, group);
+		}
+	}
 	public TriangleKdTree(Mesh mesh)
 	{
 		this(mesh, 10, 4096.0);
 	}
 
+	/**
+	 * @param partitionByGroups if true, a subtree is also built for each
+	 * group.  This speeds up queries restricted to a group when there are
+	 * many groups, but uses about twice as much memory.
+	 */
+	public TriangleKdTree(Mesh mesh, boolean partitionByGroups)
+	{
+		this(mesh.getTriangles(), 10, 4096.0,
+			mesh.hasNodes() ? getBoundsFormVerts(mesh.getNodes()) :
+			getBoundsFromTria(mesh.getTriangles()), true, partitionByGroups);
+	}
+
 	public TriangleKdTree(Iterable<Triangle> triangles)
 	{
 		this(triangles, 10, 4096.0);
@@ -142,8 +194,26 @@ public class TriangleKdTree {
 
 	private TriangleKdTree(Iterable<Triangle> triangles, int bucketSize,
 		double minNodeRatio, double[] bounds)
+	{
+		this(triangles, bucketSize, minNodeRatio, bounds, true);
+	}
+
+	/**
+	 * @param bulk if true, the tree is built top-down from all triangles,
+	 * otherwise triangles are inserted one by one with {@link #addTriangle}
+	 */
+	TriangleKdTree(Iterable<Triangle> triangles, int bucketSize,
+		double minNodeRatio, double[] bounds, boolean bulk)
+	{
+		this(triangles, bucketSize, minNodeRatio, bounds, bulk, false);
+	}
+
+	private TriangleKdTree(Iterable<Triangle> triangles, int bucketSize,
+		double minNodeRatio, double[] bounds, boolean bulk, boolean partitionByGroups)
 	{
 		this.bucketSize = bucketSize;
+		if(partitionByGroups)
+			groupTrees = new TIntObjectHashMap<TriangleKdTree>();
 		globalBounds = bounds;
 		for(int i = 0; i < 3; i++)
 		{
@@ -155,11 +225,52 @@ public class TriangleKdTree {
 				globalRadius = globalSize[i];
 			minNodeSize[i] = globalSize[i] / minNodeRatio;
 		}
-		for(Triangle t:triangles)
-			if(!t.hasAttributes(AbstractHalfEdge.OUTER))
-				addTriangle(t);
-		nodeStack = null;
-		boundaryPool = null;
+		if(bulk)
+			bulkLoad(triangles);
+		else
+		{
+			for(Triangle t:triangles)
+				if(!t.hasAttributes(AbstractHalfEdge.OUTER))
+					addTriangle(t);
+		}
+		context.nodeStack = null;
+		context.boundaryPool = null;
+		// Partitioning is useless with a single group
+		if(groupTrees != null && groupTrees.size() < 2)
+			groupTrees = null;
+	}
+
+	/** Create an empty group subtree with the same bounds as parent */
+	private TriangleKdTree(TriangleKdTree parent)
+	{
+		bucketSize = parent.bucketSize;
+		globalBounds = Arrays.copyOf(parent.globalBounds, 6);
+		globalSize = Arrays.copyOf(parent.globalSize, 3);
+		globalRadius = parent.globalRadius;
+		minNodeSize = Arrays.copyOf(parent.minNodeSize, 3);
+	}
+
+	/** Return the subtree of this group, it is created if needed */
+	private TriangleKdTree getGroupTree(int group)
+	{
+		TriangleKdTree toReturn = groupTrees.get(group);
+		if(toReturn == null)
+		{
+			toReturn = new TriangleKdTree(this);
+			groupTrees.put(group, toReturn);
+		}
+		return toReturn;
+	}
+
+	/** Tells whether this tree has one subtree by group */
+	public boolean isPartitionedByGroups()
+	{
+		return groupTrees != null;
+	}
+
+	TriangleKdTree(Iterable<Triangle> triangles, boolean bulk)
+	{
+		this(triangles, 10, 4096.0, getBoundsFromTria(triangles), bulk);
 	}
 
 	public TriangleKdTree(Iterable<Triangle> triangles, int bucketSize, double minNodeRatio)
@@ -193,20 +304,28 @@ public class TriangleKdTree {
 		return Arrays.toString(boxCenter)+" "+Arrays.toString(halfSize);
 	}
 
-	private final transient Set<Triangle> seen = HashFactory.createSet();
-	private final transient List<Node> closeNodes = new ArrayList<Node>();
 	private final transient BoundaryPool closeBoundaries = new BoundaryPool();
-	private final int[] closeIndex = new int[2];
 
 	public boolean remove(Triangle toReplace)
 	{
+		if(groupTrees != null)
+		{
+			TriangleKdTree sub = groupTrees.get(toReplace.getGroupId());
+			if(sub == null || !sub.remove(toReplace))
+			{
+				// Group id has been changed, look into all subtrees
+				for(TriangleKdTree t: groupTrees.valueCollection())
+					if(t.remove(toReplace))
+						break;
+			}
+		}
 		boolean found = false;
 		bounds(toReplace, triangleBounds);
-		getNodes(triangleBounds, closeBoundaries, false);
-		for(int i = 0; i < closeNodes.size(); i++)
+		getNodes(context, triangleBounds, closeBoundaries, false);
+		for(int i = 0; i < context.closeNodes.size(); i++)
 		{
 			double[] b = closeBoundaries.get(i);
-			Node n = closeNodes.get(i);
+			Node n = context.closeNodes.get(i);
 			if(n.triangles != null)
 			{
 				int oldSize = n.triangles.length;
@@ -232,14 +351,14 @@ public class TriangleKdTree {
 			}
 		}
 
-		for(int i = 0; i < closeNodes.size(); i++)
+		for(int i = 0; i < context.closeNodes.size(); i++)
 		{
-			Node n = closeNodes.get(i);
+			Node n = context.closeNodes.get(i);
 			if(n.triangles != null && n.triangles.length > bucketSize)
-				split(n, closeBoundaries.get(i));
+				splitter.split(n, closeBoundaries.get(i));
 		}
 		closeBoundaries.clear();
-		closeNodes.clear();
+		context.closeNodes.clear();
 		return found;
 	}
 	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group)
@@ -248,7 +367,16 @@ public class TriangleKdTree {
 	}
 	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group, boolean notInGroup)
 	{
-		getNodes(aabb, null, false);
+		if(group >= 0 && !notInGroup && groupTrees != null)
+		{
+			TriangleKdTree sub = groupTrees.get(group);
+			if(sub != null)
+				sub.getNearTriangles(aabb, result, -1, false);
+			return;
+		}
+		Query q = queries.get();
+		List<Node> closeNodes = q.closeNodes;
+		getNodes(q, aabb, null, false);
 		for(Node nn: closeNodes)
 		{
 			if(nn.triangles != null)
@@ -273,11 +401,28 @@ public class TriangleKdTree {
 	 * things will happen.
 	 * @param group Only look for triangles in the given groups. If negative
 	 * look for all triangles.
+	 * This method can be called concurrently by several threads as long as
+	 * the tree is not modified.
 	 * @return
 	 */
 	public Triangle getClosestTriangle(Location coords, Location projection, int group)
 	{
-		Node n = getNode(coords, workBoundary1);
+		return getClosestTriangle(queries.get(), coords, projection, group);
+	}
+
+	private Triangle getClosestTriangle(Query q, Location coords, Location projection, int group)
+	{
+		if(group >= 0 && groupTrees != null)
+		{
+			TriangleKdTree sub = groupTrees.get(group);
+			if(sub == null)
+				return null;
+			return sub.getClosestTriangle(q, coords, projection, -1);
+		}
+		List<Node> closeNodes = q.closeNodes;
+		Set<Triangle> seen = q.seen;
+		TriangleDistance distance = q.triangleDistance;
+		Node n = getNode(coords, q.workBoundary);
 		assert n != null;
 		Triangle toReturn = null;
 		double aabbDistance = Double.POSITIVE_INFINITY;
@@ -285,7 +430,7 @@ public class TriangleKdTree {
 		seen.clear();
 		if(n.triangles == null || n.triangles.length == 0)
 		{
-			aabbDistance = distanceAABB(coords, workBoundary1);
+			aabbDistance = distanceAABB(coords, q.workBoundary);
 			triangleDistance = Double.POSITIVE_INFINITY;
 		}
 		else
@@ -294,13 +439,13 @@ public class TriangleKdTree {
 			{
 				if(group >= 0 && t.getGroupId() != group)
 					continue;
-				double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
+				double d = distance.compute(coords, t, q.closeIndex);
 				if(d < aabbDistance)
 				{
 					aabbDistance = d;
 					toReturn = t;
 					if(projection != null)
-						TRIANGLE_DISTANCE.getProjection(projection);
+						distance.getProjection(projection);
 				}
 				seen.add(t);
 				//It seems to happen often so let's optimize
@@ -310,7 +455,7 @@ public class TriangleKdTree {
 			if(seen.isEmpty())
 			{
 				//all triangles are from an other group
-				aabbDistance = distanceAABB(coords, workBoundary1);
+				aabbDistance = distanceAABB(coords, q.workBoundary);
 				triangleDistance = Double.POSITIVE_INFINITY;
 			}
 			else
@@ -321,7 +466,7 @@ public class TriangleKdTree {
 		}
 		while(true)
 		{
-			getNodes(createCenteredAABB(coords, 1.01*aabbDistance), null, false);
+			getNodes(q, createCenteredAABB(coords, 1.01*aabbDistance), null, false);
 			for(Node nn: closeNodes)
 			{
 				if(nn != n && nn.triangles != null)
@@ -332,13 +477,13 @@ public class TriangleKdTree {
 							continue;
 						if(!seen.contains(t))
 						{
-							double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
+							double d = distance.compute(coords, t, q.closeIndex);
 							if(d < triangleDistance)
 							{
 								triangleDistance = d;
 								toReturn = t;
 								if(projection != null)
-									TRIANGLE_DISTANCE.getProjection(projection);
+									distance.getProjection(projection);
 							}
 						}
 					}
@@ -359,20 +504,125 @@ public class TriangleKdTree {
 		}
 	}
 
+	/** Result of {@link #projectAll(double[], int)} */
+	public static final class Projections
+	{
+		/**
+		 * The closest triangle of each point, or null if the point could not
+		 * be projected
+		 */
+		public final Triangle[] triangles;
+		/**
+		 * Packed coordinates of the projected points. Points which could not
+		 * be projected are copied unchanged.
+		 */
+		public final double[] xyz;
+		private Projections(int nbPoints)
+		{
+			triangles = new Triangle[nbPoints];
+			xyz = new double[3 * nbPoints];
+		}
+	}
+
+	// Number of points projected by a single task in projectAll
+	private static final int PROJECT_CHUNK_SIZE = 4096;
+
+	/**
+	 * Project a set of points on the closest triangles. Points are projected
+	 * in parallel with the common fork/join pool.
+	 * @param xyz packed coordinates of points
+	 * @param group Only look for triangles in the given groups. If negative
+	 * look for all triangles.
+	 */
+	public Projections projectAll(double[] xyz, int group)
+	{
+		Projections toReturn = new Projections(xyz.length / 3);
+		projectAll(xyz, group, toReturn.triangles, toReturn.xyz);
+		return toReturn;
+	}
+
+	/**
+	 * Same as {@link #projectAll(double[], int)} but store results in the
+	 * given arrays.
+	 * @param triangles the closest triangle of each point, may be null
+	 * @param projections the packed coordinates of projected points. It may
+	 * be the <code>xyz</code> array itself.
+	 */
+	public void projectAll(double[] xyz, int group, Triangle[] triangles,
+		double[] projections)
+	{
+		int nbPoints = xyz.length / 3;
+		if(triangles != null && triangles.length < nbPoints)
+			throw new IllegalArgumentException("triangles array is too small");
+		if(projections.length < 3 * nbPoints)
+			throw new IllegalArgumentException("projections array is too small");
+		ProjectAll task = new ProjectAll(xyz, group, triangles, projections, 0, nbPoints);
+		if(nbPoints <= PROJECT_CHUNK_SIZE)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+	}
+
+	private final class ProjectAll extends RecursiveAction
+	{
+		private static final long serialVersionUID = -1645300286937433524L;
+		private final double[] xyz, projections;
+		private final Triangle[] triangles;
+		private final int group, from, to;
+		private ProjectAll(double[] xyz, int group, Triangle[] triangles,
+			double[] projections, int from, int to)
+		{
+			this.xyz = xyz;
+			this.group = group;
+			this.triangles = triangles;
+			this.projections = projections;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > PROJECT_CHUNK_SIZE)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(
+					new ProjectAll(xyz, group, triangles, projections, from, middle),
+					new ProjectAll(xyz, group, triangles, projections, middle, to));
+				return;
+			}
+			Query q = queries.get();
+			Location coords = new Location();
+			Location projection = new Location();
+			for(int i = from; i < to; i++)
+			{
+				coords.moveTo(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+				Triangle t = q.getClosestTriangle(coords, projection, group);
+				if(triangles != null)
+					triangles[i] = t;
+				Location p = t == null ? coords : projection;
+				projections[3*i] = p.getX();
+				projections[3*i+1] = p.getY();
+				projections[3*i+2] = p.getZ();
+			}
+		}
+	}
+
 	public Triangle getClosestTriangleDebug(Location coords, Location projection, int group)
 	{
 		double minDist2 = Double.POSITIVE_INFINITY;
 		Triangle toReturn = null;
+		Query q = new Query();
 		for(Triangle t:getTriangles())
 		{
 			if(t.getGroupId() == group || group < 0)
 			{
-				double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
+				double d = q.triangleDistance.compute(coords, t, q.closeIndex);
 				if(d < minDist2)
 				{
 					minDist2 = d;
 					toReturn = t;
-					TRIANGLE_DISTANCE.getProjection(projection);
+					q.triangleDistance.getProjection(projection);
 				}
 			}
 		}
@@ -408,19 +658,19 @@ public class TriangleKdTree {
 	 */
 	public void heavyCheck()
 	{
-		List<Node> backup = new ArrayList<Node>(closeNodes);
-		closeNodes.clear();
+		List<Node> backup = new ArrayList<Node>(context.closeNodes);
+		context.closeNodes.clear();
 		for(Triangle t: getTriangles())
 		{
 			bounds(t, triangleBounds);
-			getNodes(triangleBounds, null, false);
+			getNodes(context, triangleBounds, null, false);
 			Collection<Node> ns = getNodes(t);
-			if(!closeNodes.containsAll(ns))
+			if(!context.closeNodes.containsAll(ns))
 			{
 				System.err.println(t);
 				System.err.println("triangle bounds:" + bounds2String(triangleBounds));
 				System.err.println("triangle bounds:" + Arrays.toString(triangleBounds));
-				ns.removeAll(closeNodes);
+				ns.removeAll(context.closeNodes);
 				Map<Node, double[]> nb = getNodeBounds();
 				for(Node n:ns)
 				{
@@ -433,9 +683,9 @@ public class TriangleKdTree {
 				}
 				throw new IllegalStateException();
 			}
-			closeNodes.clear();
+			context.closeNodes.clear();
 		}
-		closeNodes.addAll(backup);
+		context.closeNodes.addAll(backup);
 	}
 
 	/**
@@ -455,15 +705,15 @@ public class TriangleKdTree {
 	private Map<Node, double[]> getNodeBounds()
 	{
 		Map<Node, double[]> toReturn = HashFactory.createMap();
-		List<Node> backup = new ArrayList<Node>(closeNodes);
-		closeNodes.clear();
+		List<Node> backup = new ArrayList<Node>(context.closeNodes);
+		context.closeNodes.clear();
 		BoundaryPool bp = new BoundaryPool();
-		getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), bp, false);
-		for(int i = 0; i < closeNodes.size(); i++)
-			toReturn.put(closeNodes.get(i), bp.get(i));
+		getNodes(context, createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), bp, false);
+		for(int i = 0; i < context.closeNodes.size(); i++)
+			toReturn.put(context.closeNodes.get(i), bp.get(i));
 
-		closeNodes.clear();
-		closeNodes.addAll(backup);
+		context.closeNodes.clear();
+		context.closeNodes.addAll(backup);
 		return toReturn;
 	}
 
@@ -488,11 +738,7 @@ public class TriangleKdTree {
 	private Collection<Node> getNodes(Triangle triangle)
 	{
 		ArrayList<Node> result = new ArrayList<Node>();
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
-		else
-			nodeStack.clear();
-
+		List<Node> nodeStack = new ArrayList<Node>();
 		nodeStack.add(root);
 		while(!nodeStack.isEmpty())
 		{
@@ -525,11 +771,7 @@ public class TriangleKdTree {
 	public Set<Triangle> getTriangles()
 	{
 		HashSet<Triangle> result = new HashSet<Triangle>();
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
-		else
-			nodeStack.clear();
-
+		List<Node> nodeStack = new ArrayList<Node>();
 		nodeStack.add(root);
 		while(!nodeStack.isEmpty())
 		{
@@ -626,22 +868,26 @@ public class TriangleKdTree {
 
 	/**
 	 * Return the nodes intersecting the given AABB
+	 * @param q the working context, nodes are returned in q.closeNodes
 	 * @param aabb
 	 * @param resultBounds
 	 * @param emptyNodes if true empty nodes (not existing) node are returned.
 	 * Set true when filling the KdTree, and to false when consulting it.
 	 */
-	private void getNodes(double[] aabb, BoundaryPool resultBounds, boolean emptyNodes)
+	private void getNodes(Query q, double[] aabb, BoundaryPool resultBounds, boolean emptyNodes)
 	{
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
+		if(q.nodeStack == null)
+			q.nodeStack = new ArrayList<Node>();
 		else
-			nodeStack.clear();
+			q.nodeStack.clear();
 
-		if(boundaryPool == null)
-			boundaryPool = new BoundaryPool();
+		if(q.boundaryPool == null)
+			q.boundaryPool = new BoundaryPool();
 		else
-			boundaryPool.clear();
+			q.boundaryPool.clear();
+		List<Node> nodeStack = q.nodeStack;
+		BoundaryPool boundaryPool = q.boundaryPool;
+		List<Node> closeNodes = q.closeNodes;
 
 		nodeStack.add(root);
 		boundaryPool.push(globalBounds);
@@ -750,13 +996,10 @@ public class TriangleKdTree {
 			double cut = (tmpBounds[d] + tmpBounds[d+3]) / 2.0;
 			if(coords.get(d) < cut)
 			{
-				if(current.left == null)
-				{
-					return current;
-				}
-				else if(current.left.isEmptyLeaf())
+				if(current.left == null || current.left.isEmptyLeaf())
 				{
-					current.left = null;
+					// Do not prune empty leaves here, queries must not
+					// modify the tree
 					return current;
 				}
 				else
@@ -767,15 +1010,10 @@ public class TriangleKdTree {
 			}
 			else
 			{
-				if(current.right == null)
+				if(current.right == null || current.right.isEmptyLeaf())
 				{
 					return current;
 				}
-				else if(current.right.isEmptyLeaf())
-				{
-					current.right = null;
-					return current;
-				}
 				else
 				{
 					current = current.right;
@@ -817,8 +1055,11 @@ public class TriangleKdTree {
 	 */
 	public void addTriangle(Triangle triangle, boolean testExist)
 	{
+		if(groupTrees != null)
+			getGroupTree(triangle.getGroupId()).addTriangle(triangle, testExist);
 		bounds(triangle, triangleBounds);
-		getNodes(triangleBounds, closeBoundaries, true);
+		getNodes(context, triangleBounds, closeBoundaries, true);
+		List<Node> closeNodes = context.closeNodes;
 		triangleInterAABB1.setTriangle(triangle);
 		for(int i = 0; i < closeNodes.size(); i++)
 		{
@@ -849,7 +1090,106 @@ public class TriangleKdTree {
 			node.triangles = Arrays.copyOf(node.triangles, n + 1);
 			node.triangles[n] = triangle;
 			if(node.triangles.length > bucketSize)
-				split(node, bounds);
+				splitter.split(node, bounds);
+		}
+	}
+
+	// Nodes with more triangles are split in parallel by bulkLoad
+	private static final int BULK_PARALLEL_THRESHOLD = 20000;
+
+	/**
+	 * Build the tree top-down: all triangles are put into the root node,
+	 * and nodes are recursively split with the same rules as
+	 * {@link #addTriangle}, until they contain less than bucketSize
+	 * triangles or cannot be split anymore.  Large subtrees are built in
+	 * parallel.
+	 */
+	private void bulkLoad(Iterable<Triangle> triangles)
+	{
+		ArrayList<Triangle> list = new ArrayList<Triangle>();
+		// Triangles of each group are collected in the same pass
+		TIntObjectHashMap<ArrayList<Triangle>> groups = null;
+		if(groupTrees != null)
+			groups = new TIntObjectHashMap<ArrayList<Triangle>>();
+		for(Triangle t:triangles)
+		{
+			if(t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			list.add(t);
+			if(groups != null)
+			{
+				ArrayList<Triangle> g = groups.get(t.getGroupId());
+				if(g == null)
+				{
+					g = new ArrayList<Triangle>();
+					groups.put(t.getGroupId(), g);
+				}
+				g.add(t);
+			}
+		}
+		bulkLoad(list);
+		if(groups != null && groups.size() > 1)
+		{
+			for(int group: groups.keys())
+			{
+				TriangleKdTree sub = getGroupTree(group);
+				sub.bulkLoad(groups.get(group));
+				sub.context.nodeStack = null;
+				sub.context.boundaryPool = null;
+			}
+		}
+	}
+
+	private void bulkLoad(ArrayList<Triangle> list)
+	{
+		if(list.isEmpty())
+			return;
+		root.triangles = list.toArray(new Triangle[list.size()]);
+		BulkSplit task = new BulkSplit(root, Arrays.copyOf(globalBounds, 6));
+		if(root.triangles.length < BULK_PARALLEL_THRESHOLD)
+			task.compute();
+		else
+			ForkJoinPool.commonPool().invoke(task);
+	}
+
+	private final class BulkSplit extends RecursiveAction
+	{
+		private static final long serialVersionUID = 3260180917546829166L;
+		private final Node node;
+		private final double[] bounds;
+		private BulkSplit(Node node, double[] bounds)
+		{
+			this.node = node;
+			this.bounds = bounds;
+		}
+
+		@Override
+		protected void compute()
+		{
+			split(new Splitter(), node, bounds);
+		}
+
+		private void split(Splitter sp, Node n, double[] b)
+		{
+			if(n.triangles == null || n.triangles.length <= bucketSize ||
+				!sp.split(n, b))
+				return;
+			double[] leftBounds = Arrays.copyOf(sp.splitBoundsLeft, 6);
+			double[] rightBounds = Arrays.copyOf(sp.splitBoundsRight, 6);
+			BulkSplit forked = null;
+			if(n.right != null && n.left != null &&
+				n.right.triangles.length >= BULK_PARALLEL_THRESHOLD &&
+				inForkJoinPool())
+			{
+				forked = new BulkSplit(n.right, rightBounds);
+				forked.fork();
+			}
+			else if(n.right != null)
+				split(sp, n.right, rightBounds);
+			if(n.left != null)
+				split(sp, n.left, leftBounds);
+			if(forked != null)
+				forked.join();
 		}
 	}
 
@@ -869,144 +1209,168 @@ public class TriangleKdTree {
 		return maxDir;
 	}
 
-	private byte[] directions = new byte[3];
-	private double sort3Direction(double[] bounds) {
-		double a0 = bounds[3] - bounds[0];
-		double a1 = bounds[4] - bounds[1];
-		double a2 = bounds[5] - bounds[2];
-		byte d0 = (byte) (a0 < minNodeSize[0] ? -1 : 0);
-		byte d1 = (byte) (a1 < minNodeSize[1] ? -1 : 1);
-		byte d2 = (byte) (a2 < minNodeSize[2] ? -1 : 2);
+	/**
+	 * Scratch arrays used to split nodes.  Each thread building a part of
+	 * the tree needs its own instance.
+	 */
+	private final class Splitter
+	{
+		private final TriangleInterAABB triangleInterAABB2 = new TriangleInterAABB();
+		private final byte[] directions = new byte[3];
+		private double sort3Direction(double[] bounds) {
+			double a0 = bounds[3] - bounds[0];
+			double a1 = bounds[4] - bounds[1];
+			double a2 = bounds[5] - bounds[2];
+			byte d0 = (byte) (a0 < minNodeSize[0] ? -1 : 0);
+			byte d1 = (byte) (a1 < minNodeSize[1] ? -1 : 1);
+			byte d2 = (byte) (a2 < minNodeSize[2] ? -1 : 2);
 
-		double max = 0;
-		if (a0 <= a1) {
-			if (a1 > a2) {
-				directions[2] = d1;
-				max = a2;
-				if (a0 < a2) {
-					directions[0] = d0;
-					directions[1] = d2;
+			double max = 0;
+			if (a0 <= a1) {
+				if (a1 > a2) {
+					directions[2] = d1;
+					max = a2;
+					if (a0 < a2) {
+						directions[0] = d0;
+						directions[1] = d2;
+					} else {
+						directions[0] = d2;
+						directions[1] = d0;
+					}
+					max = a1;
 				} else {
-					directions[0] = d2;
-					directions[1] = d0;
+					directions[0] = d0;
+					directions[1] = d1;
+					directions[2] = d2;
 				}
-				max = a1;
 			} else {
-				directions[0] = d0;
-				directions[1] = d1;
-				directions[2] = d2;
-			}
-		} else {
-			if (a0 > a2) {
-				directions[2] = d0;
-				max = a0;
-				if (a1 < a2) {
-					directions[0] = d1;
-					directions[1] = d2;
+				if (a0 > a2) {
+					directions[2] = d0;
+					max = a0;
+					if (a1 < a2) {
+						directions[0] = d1;
+						directions[1] = d2;
+					} else {
+						directions[0] = d2;
+						directions[1] = d1;
+					}
 				} else {
-					directions[0] = d2;
-					directions[1] = d1;
+					directions[0] = d1;
+					directions[1] = d0;
+					directions[2] = d2;
+					max = a2;
 				}
-			} else {
-				directions[0] = d1;
-				directions[1] = d0;
-				directions[2] = d2;
-				max = a2;
 			}
+			return max;
 		}
-		return max;
-	}
 
-	private double[] splitBoundsLeft = new double[6];
-	private double[] splitBoundsRight = new double[6];
-	private void split(Node node, double[] bounds)
-	{
-		sort3Direction(bounds);
-		boolean found = false;
-		for(int i = 2; i >= 0; i--)
-		{
-			if(directions[i] >= 0 && split(node, bounds, directions[i], false))
-			{
-				found =true;
-				break;
-			}
-		}
-		if(!found)
+		private final double[] splitBoundsLeft = new double[6];
+		private final double[] splitBoundsRight = new double[6];
+		/**
+		 * Split a node, its bounds are left in splitBoundsLeft and
+		 * splitBoundsRight.
+		 * @return false if node is too small to be split
+		 */
+		private boolean split(Node node, double[] bounds)
 		{
+			sort3Direction(bounds);
+			boolean found = false;
 			for(int i = 2; i >= 0; i--)
 			{
-				if(directions[i] >= 0)
+				if(directions[i] >= 0 && split(node, bounds, directions[i], false))
 				{
-					split(node, bounds, directions[i], true);
+					found =true;
 					break;
 				}
 			}
+			if(!found)
+			{
+				for(int i = 2; i >= 0; i--)
+				{
+					if(directions[i] >= 0)
+					{
+						split(node, bounds, directions[i], true);
+						found = true;
+						break;
+					}
+				}
+			}
+			return found;
 		}
-	}
 
-	private boolean split(Node node, double[] bounds, byte direction, boolean force)
-	{
-		node.direction = direction;
-		node.left = new Node();
-		node.right = new Node();
-		int nTriangles = node.triangles.length;
-		node.left.triangles = new Triangle[nTriangles];
-		node.right.triangles = new Triangle[nTriangles];
-		int iLeft = 0, iRight = 0;
-		double cut = (bounds[node.direction] + bounds[node.direction+3]) / 2.0;
-		System.arraycopy(bounds, 0, splitBoundsLeft, 0, 6);
-		System.arraycopy(bounds, 0, splitBoundsRight, 0, 6);
-		splitBoundsLeft[node.direction + 3] = cut;
-		splitBoundsRight[node.direction] = cut;
-		for(Triangle t: node.triangles)
+		private boolean split(Node node, double[] bounds, byte direction, boolean force)
 		{
-			boolean inLeft = false;
-			boolean inRight = false;
-			for(int i = 0; i < 3; i++)
+			node.direction = direction;
+			node.left = new Node();
+			node.right = new Node();
+			int nTriangles = node.triangles.length;
+			node.left.triangles = new Triangle[nTriangles];
+			node.right.triangles = new Triangle[nTriangles];
+			int iLeft = 0, iRight = 0;
+			double cut = (bounds[node.direction] + bounds[node.direction+3]) / 2.0;
+			System.arraycopy(bounds, 0, splitBoundsLeft, 0, 6);
+			System.arraycopy(bounds, 0, splitBoundsRight, 0, 6);
+			splitBoundsLeft[node.direction + 3] = cut;
+			splitBoundsRight[node.direction] = cut;
+			for(Triangle t: node.triangles)
 			{
-				if(t.getV(i).get(node.direction) < cut)
+				boolean inLeft = false;
+				boolean inRight = false;
+				for(int i = 0; i < 3; i++)
 				{
-					inLeft = true;
-					break;
+					if(t.getV(i).get(node.direction) < cut)
+					{
+						inLeft = true;
+						break;
+					}
 				}
-			}
 
-			for(int i = 0; i < 3; i++)
-			{
-				if(t.getV(i).get(node.direction) >= cut)
+				for(int i = 0; i < 3; i++)
 				{
-					inRight = true;
-					break;
+					if(t.getV(i).get(node.direction) >= cut)
+					{
+						inRight = true;
+						break;
+					}
 				}
+				if(inLeft && inRight)
+				{
+					triangleInterAABB2.setTriangle(t);
+					if(triangleInterAABB2.triBoxOverlap(splitBoundsLeft, false))
+						node.left.triangles[iLeft++] = t;
+					if(triangleInterAABB2.triBoxOverlap(splitBoundsRight, false))
+						node.right.triangles[iRight++] = t;
+				}
+				// A triangle which is on one side of the cut plane only
+				// intersects the child node on this side
+				else if(inLeft)
+					node.left.triangles[iLeft++] = t;
+				else
+					node.right.triangles[iRight++] = t;
 			}
-			triangleInterAABB2.setTriangle(t);
-			if(inLeft && triangleInterAABB2.triBoxOverlap(splitBoundsLeft, false))
-				node.left.triangles[iLeft++] = t;
-			if(inRight && triangleInterAABB2.triBoxOverlap(splitBoundsRight, false))
-				node.right.triangles[iRight++] = t;
-		}
-		if(force || iLeft == 0 || iRight == 0 ||
-			(iLeft < nTriangles && iRight < nTriangles) ||
-			isLargeNode(bounds, direction, 128.0))
-		{
-			if(iLeft > 0)
-				node.left.triangles = Arrays.copyOf(node.left.triangles, iLeft);
-			else
-				node.left = null;
+			if(force || iLeft == 0 || iRight == 0 ||
+				(iLeft < nTriangles && iRight < nTriangles) ||
+				isLargeNode(bounds, direction, 128.0))
+			{
+				if(iLeft > 0)
+					node.left.triangles = Arrays.copyOf(node.left.triangles, iLeft);
+				else
+					node.left = null;
 
-			if(iRight > 0)
-				node.right.triangles = Arrays.copyOf(node.right.triangles, iRight);
+				if(iRight > 0)
+					node.right.triangles = Arrays.copyOf(node.right.triangles, iRight);
+				else
+					node.right = null;
+
+				node.triangles = null;
+				return true;
+			}
 			else
+			{
+				node.left = null;
 				node.right = null;
-
-			node.triangles = null;
-			return true;
-		}
-		else
-		{
-			node.left = null;
-			node.right = null;
-			return false;
+				return false;
+			}
 		}
 	}
 
@@ -1085,7 +1449,8 @@ public class TriangleKdTree {
 
 	public Object[] getPolyData()
 	{
-		getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), closeBoundaries, false);
+		getNodes(context, createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), closeBoundaries, false);
+		List<Node> closeNodes = context.closeNodes;
 
 		int vertexCounter = 0;
 		ArrayList<int[]> quads = new ArrayList<int[]>();
@@ -1109,7 +1474,7 @@ public class TriangleKdTree {
 					maxTriangles = node.triangles.length;
 					maxNode = node;
 				}
-				double nodeSize = sort3Direction(nBounds);
+				double nodeSize = splitter.sort3Direction(nBounds);
 				if(nodeSize < smallestSize)
 				{
 					smallestBox = node;
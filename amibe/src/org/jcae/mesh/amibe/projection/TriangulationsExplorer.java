@@ -35,7 +35,9 @@ import java.util.Set;
  * Implemented from An algorithm for triangulating multiple 3D polygons by
  * Ming Zou, Tao Ju, Nathan Carr, Eurographics SGP 2013
  * @author Jerome Robert
+ * @deprecated only used by {@link HoleFiller}, see {@link HoleTriangulator}
  */
+@Deprecated
 abstract class TriangulationsExplorer {
 
 	protected abstract boolean isTriangleValid(int v1, int v2, int v3);
@@ -0,0 +1,414 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary heap to store quality factors.
+ * Objects are given a dense integer identifier when they are inserted,
+ * identifiers of removed objects are recycled.  Quality factors,
+ * positions in heap and objects are stored in arrays indexed by these
+ * identifiers, so there is no allocation per entry.  Objects which
+ * implement {@link Indexable} store their identifier, so that they are
+ * found by an array access; mapping between other objects and identifiers
+ * is stored in a Trove map.  Insertion, removal and update are performed
+ * in O(log n).
+ *
+ * Objects with the same quality factor are sorted by insertion order, as
+ * in {@link QSortedTree}; an updated object is considered as a new one.
+ * Thus objects are returned in the same order as with
+ * {@link PAVLSortedTree}.
+ */
+public class DaryHeap<E> implements SortedQueue<E>, Serializable
+{
+	private static final long serialVersionUID = 2804236717385829142L;
+	private static final int NO_ID = -1;
+	private final int arity;
+	// Mapping between objects which are not Indexable and identifiers,
+	// created when needed
+	private TObjectIntHashMap<E> ids;
+	// Arrays indexed by identifiers
+	private Object[] data;
+	private double[] keys;
+	private long[] stamps;
+	private int[] positions;
+	// Heap of identifiers
+	private int[] heap;
+	private int size;
+	// Identifiers which can be recycled
+	private int[] freeIds;
+	private int nrFreeIds;
+	private int nextId;
+	// Counter to sort objects with the same quality factor
+	private long stamp;
+	private transient int modCount;
+
+	/**
+	 * Create a 4-ary heap.
+	 */
+	public DaryHeap()
+	{
+		this(4);
+	}
+
+	/**
+	 * Create a d-ary heap.
+	 * @param arity  number of children of heap nodes, must be at least 2
+	 */
+	public DaryHeap(int arity)
+	{
+		this(arity, 16);
+	}
+
+	/**
+	 * Create a d-ary heap.
+	 * @param arity  number of children of heap nodes, must be at least 2
+	 * @param capacity  initial capacity
+	 */
+	public DaryHeap(int arity, int capacity)
+	{
+		if (arity < 2)
+			throw new IllegalArgumentException("Invalid arity: "+arity);
+		this.arity = arity;
+		capacity = Math.max(capacity, 1);
+		data = new Object[capacity];
+		keys = new double[capacity];
+		stamps = new long[capacity];
+		positions = new int[capacity];
+		heap = new int[capacity];
+		freeIds = new int[16];
+	}
+
+	public final boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public final int size()
+	{
+		return size;
+	}
+
+	public final boolean contains(E o)
+	{
+		return idOf(o) != NO_ID;
+	}
+
+	public final void insert(E o, double value)
+	{
+		assert !contains(o) : "Object already in heap: "+o;
+		int id = newId();
+		if (o instanceof Indexable)
+			((Indexable) o).setIndex(id);
+		else
+		{
+			if (ids == null)
+				ids = new TObjectIntHashMap<E>(data.length, 0.5f, NO_ID);
+			ids.put(o, id);
+		}
+		data[id] = o;
+		keys[id] = value;
+		stamps[id] = stamp++;
+		heap[size] = id;
+		positions[id] = size;
+		size++;
+		modCount++;
+		siftUp(size - 1);
+	}
+
+	public final boolean remove(E o)
+	{
+		int id = idOf(o);
+		if (id == NO_ID)
+			return false;
+		if (o instanceof Indexable)
+			((Indexable) o).setIndex(NO_ID);
+		else
+			ids.remove(o);
+		modCount++;
+		int pos = positions[id];
+		size--;
+		if (pos != size)
+		{
+			heap[pos] = heap[size];
+			positions[heap[pos]] = pos;
+			if (!siftUp(pos))
+				siftDown(pos);
+		}
+		data[id] = null;
+		positions[id] = -1;
+		freeId(id);
+		return true;
+	}
+
+	public final boolean update(E o, double value)
+	{
+		int id = idOf(o);
+		if (id == NO_ID)
+			return false;
+		modCount++;
+		double old = keys[id];
+		keys[id] = value;
+		stamps[id] = stamp++;
+		int pos = positions[id];
+		if (value < old)
+			siftUp(pos);
+		else
+			siftDown(pos);
+		return true;
+	}
+
+	public final void clear()
+	{
+		if (ids != null)
+			ids.clear();
+		Arrays.fill(data, 0, nextId, null);
+		size = 0;
+		nextId = 0;
+		nrFreeIds = 0;
+		modCount++;
+	}
+
+	/**
+	 * Return the object with the lowest quality factor, or null if heap
+	 * is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public final E first()
+	{
+		return size == 0 ? null : (E) data[heap[0]];
+	}
+
+	/**
+	 * Return the lowest quality factor.  Heap must not be empty.
+	 */
+	public final double firstValue()
+	{
+		return keys[heap[0]];
+	}
+
+	private int idOf(E o)
+	{
+		if (o instanceof Indexable)
+		{
+			int id = ((Indexable) o).getIndex();
+			if (id >= 0 && id < nextId && data[id] == o)
+				return id;
+			return NO_ID;
+		}
+		return ids == null ? NO_ID : ids.get(o);
+	}
+
+	private int newId()
+	{
+		if (nrFreeIds > 0)
+			return freeIds[--nrFreeIds];
+		if (nextId == data.length)
+		{
+			int capacity = 2 * data.length;
+			data = Arrays.copyOf(data, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+		}
+		return nextId++;
+	}
+
+	private void freeId(int id)
+	{
+		if (nrFreeIds == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, 2 * freeIds.length);
+		freeIds[nrFreeIds++] = id;
+	}
+
+	/** Compare objects stored at two heap positions */
+	private boolean less(int id1, int id2)
+	{
+		double k1 = keys[id1];
+		double k2 = keys[id2];
+		return k1 < k2 || (k1 == k2 && stamps[id1] < stamps[id2]);
+	}
+
+	/**
+	 * Move up the object at a given position.
+	 * @return true if object has been moved
+	 */
+	private boolean siftUp(int pos)
+	{
+		int id = heap[pos];
+		int start = pos;
+		while (pos > 0)
+		{
+			int parent = (pos - 1) / arity;
+			int pid = heap[parent];
+			if (!less(id, pid))
+				break;
+			heap[pos] = pid;
+			positions[pid] = pos;
+			pos = parent;
+		}
+		heap[pos] = id;
+		positions[id] = pos;
+		return pos != start;
+	}
+
+	private void siftDown(int pos)
+	{
+		int id = heap[pos];
+		while (true)
+		{
+			int first = arity * pos + 1;
+			if (first >= size)
+				break;
+			int last = Math.min(first + arity, size);
+			int best = first;
+			for (int c = first + 1; c < last; c++)
+			{
+				if (less(heap[c], heap[best]))
+					best = c;
+			}
+			int bid = heap[best];
+			if (!less(bid, id))
+				break;
+			heap[pos] = bid;
+			positions[bid] = pos;
+			pos = best;
+		}
+		heap[pos] = id;
+		positions[id] = pos;
+	}
+
+	/**
+	 * Iterate over objects, sorted by increasing quality factor.  The
+	 * returned entry is reused by next() calls, and heap must not be
+	 * modified while being walked through.  Heap nodes are visited
+	 * lazily with an auxiliary heap, walking through the first k
+	 * objects costs O(k log k).
+	 */
+	public final Iterator<SortedQueue.Entry<E>> iterator()
+	{
+		return new Iterator<SortedQueue.Entry<E>>()
+		{
+			private final int expectedModCount = modCount;
+			// Auxiliary binary heap of heap positions
+			private int[] candidates = new int[Math.min(size, 16) + 1];
+			private int nrCandidates;
+			private final HeapEntry entry = new HeapEntry();
+			{
+				if (size > 0)
+					candidates[nrCandidates++] = 0;
+			}
+
+			public boolean hasNext()
+			{
+				return nrCandidates > 0;
+			}
+
+			public SortedQueue.Entry<E> next()
+			{
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (nrCandidates == 0)
+					throw new NoSuchElementException();
+				int pos = candidates[0];
+				nrCandidates--;
+				if (nrCandidates > 0)
+				{
+					candidates[0] = candidates[nrCandidates];
+					down(0);
+				}
+				int first = arity * pos + 1;
+				int last = Math.min(first + arity, size);
+				for (int c = first; c < last; c++)
+					push(c);
+				entry.id = heap[pos];
+				return entry;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			private void push(int pos)
+			{
+				if (nrCandidates == candidates.length)
+					candidates = Arrays.copyOf(candidates, 2 * candidates.length);
+				int i = nrCandidates++;
+				while (i > 0)
+				{
+					int parent = (i - 1) >> 1;
+					if (!less(heap[pos], heap[candidates[parent]]))
+						break;
+					candidates[i] = candidates[parent];
+					i = parent;
+				}
+				candidates[i] = pos;
+			}
+
+			private void down(int i)
+			{
+				int pos = candidates[i];
+				while (true)
+				{
+					int c = 2 * i + 1;
+					if (c >= nrCandidates)
+						break;
+					if (c + 1 < nrCandidates && less(heap[candidates[c + 1]], heap[candidates[c]]))
+						c++;
+					if (!less(heap[candidates[c]], heap[pos]))
+						break;
+					candidates[i] = candidates[c];
+					i = c;
+				}
+				candidates[i] = pos;
+			}
+		};
+	}
+
+	private final class HeapEntry implements SortedQueue.Entry<E>
+	{
+		private int id;
+
+		@SuppressWarnings("unchecked")
+		public E getData()
+		{
+			return (E) data[id];
+		}
+
+		public double getValue()
+		{
+			return keys[id];
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Key: "+keys[id]+" obj. "+Integer.toHexString(data[id].hashCode());
+		}
+	}
+}
@@ -24,13 +24,15 @@ package org.jcae.mesh.amibe.util;
 import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
 import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
- *
+ * Create sets and maps with a deterministic iteration order, unless the
+ * org.jcae.unsortedHash system property is set.  Sorted collections are
+ * {@link OrderedHashSet} and {@link OrderedHashMap}, which iterate in
+ * insertion order like LinkedHashSet and LinkedHashMap but use much less
+ * memory.
  * @author Jerome Robert
  */
 public class HashFactory {
@@ -51,7 +53,7 @@ public class HashFactory {
 	{
 		assert sorted;
 		if(sorted)
-			return new LinkedHashSet<E>();
+			return new OrderedHashSet<E>();
 		else
 			return new THashSet<E>();
 	}
@@ -59,7 +61,7 @@ public class HashFactory {
 	public static <E> Set<E> createSet(int capacity)
 	{
 		if(sorted)
-			return new LinkedHashSet<E>(capacity * 4 / 3);
+			return new OrderedHashSet<E>(capacity);
 		else
 			return new THashSet<E>(capacity);
 	}
@@ -67,7 +69,7 @@ public class HashFactory {
 	public static <E> Set<E> createSet(Collection<E> c)
 	{
 		if(sorted)
-			return new LinkedHashSet<E>(c);
+			return new OrderedHashSet<E>(c);
 		else
 			return new THashSet<E>(c);
 	}
@@ -75,7 +77,7 @@ public class HashFactory {
 	public static <K, V> Map<K, V> createMap()
 	{
 		if(sorted)
-			return new LinkedHashMap<K, V>();
+			return new OrderedHashMap<K, V>();
 		else
 			return new THashMap<K, V>();
 	}
@@ -83,14 +85,16 @@ public class HashFactory {
 	public static <K, V> Map<K, V> createMap(int capacity)
 	{
 		if(sorted)
-			return new LinkedHashMap<K, V>(capacity * 4 / 3);
+			return new OrderedHashMap<K, V>(capacity);
 		else
 			return new THashMap<K, V>(capacity);
 	}	
 
 	public static <K, V> void ensureCapacity(Map<K, V> map, int capacity)
 	{
-		if(map instanceof THashMap)
+		if(map instanceof OrderedHashMap)
+			((OrderedHashMap)map).ensureCapacity(capacity);
+		else if(map instanceof THashMap)
 			((THashMap)map).ensureCapacity(capacity);
 	}
 }
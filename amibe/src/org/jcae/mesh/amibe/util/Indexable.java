@@ -0,0 +1,40 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+/**
+ * Object which stores the dense integer identifier given by a container,
+ * so that this container finds it with an array access instead of a hash
+ * lookup, see {@link DaryHeap}.  An object can be stored into a single
+ * such container at a time.  Containers check that an identifier refers
+ * to the object, so identifiers left by a previous container are ignored.
+ */
+public interface Indexable
+{
+	/**
+	 * Return the identifier given by a container, or a negative value.
+	 */
+	int getIndex();
+
+	/**
+	 * Set the identifier given by a container.
+	 */
+	void setIndex(int index);
+}
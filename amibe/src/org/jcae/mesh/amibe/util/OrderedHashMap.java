@@ -0,0 +1,300 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map which iterates in insertion order, like {@link java.util.LinkedHashMap},
+ * but without allocating an entry per mapping.  Keys and values are stored
+ * in parallel arrays, removed mappings are reclaimed when these arrays are
+ * full.  See {@link OrderedHashTable}.
+ */
+public class OrderedHashMap<K, V> extends AbstractMap<K, V>
+{
+	private final OrderedHashTable table;
+
+	public OrderedHashMap()
+	{
+		this(0);
+	}
+
+	public OrderedHashMap(int capacity)
+	{
+		table = new OrderedHashTable(capacity, true);
+	}
+
+	public OrderedHashMap(Map<? extends K, ? extends V> m)
+	{
+		this(m.size());
+		putAll(m);
+	}
+
+	@Override
+	public int size()
+	{
+		return table.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return table.size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return table.indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key)
+	{
+		int index = table.indexOf(key);
+		return index < 0 ? null : (V) table.values[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V put(K key, V value)
+	{
+		int index = table.add(key);
+		if (index < 0)
+		{
+			table.values[-index - 1] = value;
+			return null;
+		}
+		V old = (V) table.values[index];
+		table.values[index] = value;
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key)
+	{
+		int index = table.remove(key);
+		if (index < 0)
+			return null;
+		V old = (V) table.values[index];
+		table.values[index] = null;
+		return old;
+	}
+
+	@Override
+	public void clear()
+	{
+		table.clear();
+	}
+
+	public void ensureCapacity(int capacity)
+	{
+		table.ensureCapacity(capacity);
+	}
+
+	@Override
+	public Set<K> keySet()
+	{
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator()
+			{
+				return table.new Itr<K>() {
+					@SuppressWarnings("unchecked")
+					public K next()
+					{
+						return (K) OrderedHashTable.unmaskNull(table.keys[nextIndex()]);
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return table.size();
+			}
+
+			@Override
+			public boolean contains(Object o)
+			{
+				return containsKey(o);
+			}
+
+			@Override
+			public boolean remove(Object o)
+			{
+				int index = table.remove(o);
+				if (index < 0)
+					return false;
+				table.values[index] = null;
+				return true;
+			}
+
+			@Override
+			public void clear()
+			{
+				table.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values()
+	{
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator()
+			{
+				return table.new Itr<V>() {
+					@SuppressWarnings("unchecked")
+					public V next()
+					{
+						return (V) table.values[nextIndex()];
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return table.size();
+			}
+
+			@Override
+			public void clear()
+			{
+				table.clear();
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator()
+			{
+				return table.new Itr<Map.Entry<K, V>>() {
+					public Map.Entry<K, V> next()
+					{
+						return new Entry(nextIndex());
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return table.size();
+			}
+
+			@Override
+			public void clear()
+			{
+				table.clear();
+			}
+		};
+	}
+
+	/**
+	 * A view of a mapping.  Its index is checked before each access,
+	 * because entries are moved when arrays are compacted.
+	 */
+	private final class Entry implements Map.Entry<K, V>
+	{
+		private final Object key;
+		private int index;
+		Entry(int index)
+		{
+			this.index = index;
+			key = table.keys[index];
+		}
+
+		private int index()
+		{
+			if (table.keys[index] != key)
+			{
+				index = table.indexOf(key);
+				if (index < 0)
+					throw new IllegalStateException("Entry has been removed");
+			}
+			return index;
+		}
+
+		@SuppressWarnings("unchecked")
+		public K getKey()
+		{
+			return (K) OrderedHashTable.unmaskNull(key);
+		}
+
+		@SuppressWarnings("unchecked")
+		public V getValue()
+		{
+			return (V) table.values[index()];
+		}
+
+		public V setValue(V value)
+		{
+			int i = index();
+			@SuppressWarnings("unchecked")
+			V old = (V) table.values[i];
+			table.values[i] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return eq(getKey(), e.getKey()) && eq(getValue(), e.getValue());
+		}
+
+		@Override
+		public int hashCode()
+		{
+			K k = getKey();
+			V v = getValue();
+			return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+		}
+
+		@Override
+		public String toString()
+		{
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	private static boolean eq(Object o1, Object o2)
+	{
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Set which iterates in insertion order, like {@link java.util.LinkedHashSet},
+ * but without allocating an entry per element.  Elements are stored in an
+ * array, removed elements are reclaimed when this array is full.
+ * See {@link OrderedHashTable}.
+ */
+public class OrderedHashSet<E> extends AbstractSet<E>
+{
+	private final OrderedHashTable table;
+
+	public OrderedHashSet()
+	{
+		this(0);
+	}
+
+	public OrderedHashSet(int capacity)
+	{
+		table = new OrderedHashTable(capacity, false);
+	}
+
+	public OrderedHashSet(Collection<? extends E> c)
+	{
+		this(c.size());
+		addAll(c);
+	}
+
+	@Override
+	public int size()
+	{
+		return table.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return table.size() == 0;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return table.indexOf(o) >= 0;
+	}
+
+	@Override
+	public boolean add(E e)
+	{
+		return table.add(e) < 0;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		return table.remove(o) >= 0;
+	}
+
+	@Override
+	public void clear()
+	{
+		table.clear();
+	}
+
+	public void ensureCapacity(int capacity)
+	{
+		table.ensureCapacity(capacity);
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return table.new Itr<E>() {
+			@SuppressWarnings("unchecked")
+			public E next()
+			{
+				return (E) OrderedHashTable.unmaskNull(table.keys[nextIndex()]);
+			}
+		};
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Storage of {@link OrderedHashSet} and {@link OrderedHashMap}.  Keys
+ * (and values) are stored in arrays in insertion order, and an open
+ * addressing table with linear probing contains indices into these arrays.
+ * Removed entries are set to null and are reclaimed when arrays are full,
+ * so there is no object allocated per entry.  Keys are first compared with
+ * <code>==</code>, which is the only test needed for mesh entities.
+ */
+final class OrderedHashTable
+{
+	/** Replaces null keys */
+	private static final Object NULL_KEY = new Object();
+	private static final int EMPTY = 0;
+	private static final int DELETED = -1;
+	private static final int DEFAULT_CAPACITY = 8;
+
+	/** Keys in insertion order, null for removed entries */
+	Object[] keys;
+	/** Values, parallel to keys, or null for sets */
+	Object[] values;
+	/** Contains entry index + 1, EMPTY or DELETED */
+	private int[] table;
+	/** All entries before this index have been removed */
+	private int head;
+	/** Number of entries in keys, including removed ones */
+	private int used;
+	private int size;
+	private int modCount;
+	private final boolean withValues;
+
+	OrderedHashTable(int capacity, boolean withValues)
+	{
+		this.withValues = withValues;
+		capacity = Math.max(capacity, DEFAULT_CAPACITY);
+		keys = new Object[capacity];
+		if (withValues)
+			values = new Object[capacity];
+		table = new int[tableSize(capacity)];
+	}
+
+	/** Table is at most 2/3 full */
+	private static int tableSize(int capacity)
+	{
+		int n = Integer.highestOneBit(capacity + capacity / 2);
+		return n < capacity + capacity / 2 ? n << 1 : n;
+	}
+
+	private static int hash(Object k)
+	{
+		int h = k.hashCode() * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	static Object maskNull(Object key)
+	{
+		return key == null ? NULL_KEY : key;
+	}
+
+	static Object unmaskNull(Object key)
+	{
+		return key == NULL_KEY ? null : key;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/** Returns the index of this key, or -1 if not found */
+	int indexOf(Object key)
+	{
+		Object k = maskNull(key);
+		int mask = table.length - 1;
+		for (int i = hash(k) & mask; ; i = (i + 1) & mask)
+		{
+			int t = table[i];
+			if (t == EMPTY)
+				return -1;
+			if (t != DELETED)
+			{
+				Object o = keys[t - 1];
+				if (o == k || k.equals(o))
+					return t - 1;
+			}
+		}
+	}
+
+	/**
+	 * Adds a key.
+	 * @return the index of this key if it was already present, otherwise
+	 * <code>-(index + 1)</code>
+	 */
+	int add(Object key)
+	{
+		Object k = maskNull(key);
+		int index = indexOf(k);
+		if (index >= 0)
+			return index;
+		// Arrays are compacted only when a new key is really inserted,
+		// so that replacing a value does not move entries.
+		if (used == keys.length)
+			makeRoom();
+		int mask = table.length - 1;
+		int i = hash(k) & mask;
+		while (table[i] != EMPTY && table[i] != DELETED)
+			i = (i + 1) & mask;
+		index = used;
+		used++;
+		keys[index] = k;
+		table[i] = index + 1;
+		size++;
+		modCount++;
+		return -index - 1;
+	}
+
+	/**
+	 * Removes a key.  Its value, if any, is not cleared.
+	 * @return the index of removed key, or -1 if not found
+	 */
+	int remove(Object key)
+	{
+		Object k = maskNull(key);
+		int mask = table.length - 1;
+		for (int i = hash(k) & mask; ; i = (i + 1) & mask)
+		{
+			int t = table[i];
+			if (t == EMPTY)
+				return -1;
+			if (t != DELETED)
+			{
+				int index = t - 1;
+				Object o = keys[index];
+				if (o == k || k.equals(o))
+				{
+					table[i] = DELETED;
+					keys[index] = null;
+					size--;
+					modCount++;
+					while (head < used && keys[head] == null)
+						head++;
+					return index;
+				}
+			}
+		}
+	}
+
+	void clear()
+	{
+		Arrays.fill(keys, 0, used, null);
+		if (withValues)
+			Arrays.fill(values, 0, used, null);
+		Arrays.fill(table, EMPTY);
+		head = used = size = 0;
+		modCount++;
+	}
+
+	void ensureCapacity(int capacity)
+	{
+		if (capacity > keys.length)
+			rebuild(capacity);
+	}
+
+	/**
+	 * Called when arrays are full.  Removed entries are reclaimed, and
+	 * arrays are enlarged if less than 1/4 of entries have been removed.
+	 */
+	private void makeRoom()
+	{
+		int capacity = keys.length;
+		if (size > capacity - capacity / 4)
+			capacity *= 2;
+		rebuild(capacity);
+	}
+
+	private void rebuild(int capacity)
+	{
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new Object[capacity];
+		if (withValues)
+			values = new Object[capacity];
+		table = new int[tableSize(capacity)];
+		int mask = table.length - 1;
+		int n = 0;
+		for (int j = head; j < used; j++)
+		{
+			Object k = oldKeys[j];
+			if (k == null)
+				continue;
+			keys[n] = k;
+			if (withValues)
+				values[n] = oldValues[j];
+			int i = hash(k) & mask;
+			while (table[i] != EMPTY)
+				i = (i + 1) & mask;
+			table[i] = n + 1;
+			n++;
+		}
+		head = 0;
+		used = n;
+		// Indices have changed
+		modCount++;
+	}
+
+	/** Iterates over entry indices in insertion order */
+	abstract class Itr<E> implements Iterator<E>
+	{
+		private int next = head;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		Itr()
+		{
+			advance();
+		}
+
+		private void advance()
+		{
+			while (next < used && keys[next] == null)
+				next++;
+		}
+
+		public final boolean hasNext()
+		{
+			return next < used;
+		}
+
+		final int nextIndex()
+		{
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= used)
+				throw new NoSuchElementException();
+			last = next;
+			next++;
+			advance();
+			return last;
+		}
+
+		public final void remove()
+		{
+			if (last < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			int index = OrderedHashTable.this.remove(unmaskNull(keys[last]));
+			if (withValues)
+				values[index] = null;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.Iterator;
+
+/**
+ * Collection of objects sorted by a quality factor.  Objects with the
+ * lowest quality factor are returned first by {@link #iterator}.
+ * Implementations are {@link QSortedTree} subclasses and {@link DaryHeap}.
+ */
+public interface SortedQueue<E>
+{
+	/** Object and its quality factor. */
+	interface Entry<E>
+	{
+		E getData();
+		double getValue();
+	}
+
+	/**
+	 * Tell whether this queue is empty.
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Return the number of objects in this queue.
+	 */
+	int size();
+
+	/**
+	 * Insert an object.  It must not be already present in this queue.
+	 * @param o      object
+	 * @param value  quality factor
+	 */
+	void insert(E o, double value);
+
+	/**
+	 * Remove an object.
+	 * @param o      object being removed
+	 * @return  <code>true</code> if object was present in queue,
+	 * </code>false</code> otherwise.
+	 */
+	boolean remove(E o);
+
+	/**
+	 * Update the quality factor of an object, if it was already
+	 * present in queue.
+	 *
+	 * @param o      object being updated
+	 * @param value  new quality factor
+	 * @return <code>true</code> if object was present in queue,
+	 *         <code>false</code> otherwise.
+	 */
+	boolean update(E o, double value);
+
+	/**
+	 * Checks whether an object is in this queue.
+	 */
+	boolean contains(E o);
+
+	/**
+	 * Remove all objects.
+	 */
+	void clear();
+
+	/**
+	 * Iterate over objects, sorted by increasing quality factor.  Queue
+	 * must not be modified while being walked through.
+	 */
+	Iterator<? extends Entry<E>> iterator();
+}
@@ -20,7 +20,9 @@
 
 package org.jcae.mesh.amibe.validation;
 
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
 
 /**
@@ -52,4 +54,14 @@ public class Area extends QualityProcedure
 		Matrix3D.prodVect3D(v1, v2, v3);
 		return (float) (0.5 * Matrix3D.norm(v3));
 	}
+
+	@Override
+	public float quality(CompactMesh mesh, int triangle)
+	{
+		Vertex [] v = getVertices(mesh, triangle);
+		v[1].sub(v[0], v1);
+		v[2].sub(v[0], v2);
+		Matrix3D.prodVect3D(v1, v2, v3);
+		return (float) (0.5 * Matrix3D.norm(v3));
+	}
 }
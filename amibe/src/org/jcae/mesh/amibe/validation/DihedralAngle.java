@@ -21,6 +21,8 @@
 package org.jcae.mesh.amibe.validation;
 
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.CompactHalfEdge;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
@@ -39,6 +41,9 @@ public class DihedralAngle extends QualityProcedure
 {
 	private AbstractHalfEdge ot;
 	private AbstractHalfEdge sym;
+	private CompactHalfEdge compactOt;
+	private CompactHalfEdge compactSym;
+	private final Vertex [] work = new Vertex[4];
 
 	private final double[] temp1 = new double[3];
 	private final double[] temp2 = new double[3];
@@ -95,5 +100,39 @@ public class DihedralAngle extends QualityProcedure
 		return ret;
 	}
 
+	@Override
+	public float quality(CompactMesh mesh, int triangle)
+	{
+		if (compactOt == null || compactOt.getMesh() != mesh)
+		{
+			compactOt = new CompactHalfEdge(mesh);
+			compactSym = new CompactHalfEdge(mesh);
+			for (int i = 0; i < work.length; i++)
+				work[i] = new Vertex(null, 0.0, 0.0, 0.0);
+		}
+		compactOt.bind(triangle, 0);
+		float ret = 1.0f;
+		for (int i = 0; i < 3; i++)
+		{
+			compactOt.next();
+			if (!compactOt.hasSymmetricEdge())
+				continue;
+			compactOt.sym(compactSym);
+			if (mesh.getGroupId(triangle) != mesh.getGroupId(compactSym.getTri()))
+				continue;
+			mesh.get(compactOt.origin(), work[0]);
+			mesh.get(compactOt.destination(), work[1]);
+			mesh.get(compactOt.apex(), work[2]);
+			mesh.get(compactSym.apex(), work[3]);
+
+			Matrix3D.computeNormal3D(work[0], work[1], work[2], temp1, temp2, temp3);
+			Matrix3D.computeNormal3D(work[1], work[0], work[3], temp1, temp2, temp4);
+			float dot = (float) Matrix3D.prodSca(temp3, temp4);
+			if (dot < ret)
+				ret = dot;
+		}
+		return ret;
+	}
+
 }
 
@@ -20,6 +20,7 @@
 
 package org.jcae.mesh.amibe.validation;
 
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 
@@ -43,10 +44,18 @@ public class MaxAngleFace extends QualityProcedure
 		if (!(o instanceof Triangle))
 			throw new IllegalArgumentException();
 		Triangle f = (Triangle) o;
-		
-		Vertex n1 = f.getV0();
-		Vertex n2 = f.getV1();
-		Vertex n3 = f.getV2();
+		return quality(f.getV0(), f.getV1(), f.getV2());
+	}
+
+	@Override
+	public float quality(CompactMesh mesh, int triangle)
+	{
+		Vertex [] v = getVertices(mesh, triangle);
+		return quality(v[0], v[1], v[2]);
+	}
+
+	private static float quality(Vertex n1, Vertex n2, Vertex n3)
+	{
 		double a1 = Math.abs(n1.angle3D(n2, n3));
 		double a2 = Math.abs(n2.angle3D(n3, n1));
 		double a3 = Math.abs(n3.angle3D(n1, n2));
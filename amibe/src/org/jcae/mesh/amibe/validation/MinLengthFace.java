@@ -20,6 +20,7 @@
 
 package org.jcae.mesh.amibe.validation;
 
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 
@@ -43,11 +44,20 @@ public class MinLengthFace extends QualityProcedure
 	{
 		if (!(o instanceof Triangle))
 			throw new IllegalArgumentException();
-		double l1, l2, l3;
 		Triangle f = (Triangle) o;
-		Vertex n1 = f.getV0();
-		Vertex n2 = f.getV1();
-		Vertex n3 = f.getV2();
+		return quality(f.getV0(), f.getV1(), f.getV2());
+	}
+
+	@Override
+	public float quality(CompactMesh mesh, int triangle)
+	{
+		Vertex [] v = getVertices(mesh, triangle);
+		return quality(v[0], v[1], v[2]);
+	}
+
+	private static float quality(Vertex n1, Vertex n2, Vertex n3)
+	{
+		double l1, l2, l3;
 		l1 = n1.distance3D(n2);
 		l2 = n2.distance3D(n3);
 		l3 = n3.distance3D(n1);
@@ -0,0 +1,324 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.jcae.mesh.amibe.ds.CompactMesh;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+
+/**
+ * Compute quality statistics in parallel.
+ *
+ * Elements are split into chunks which are processed by the common
+ * fork/join pool.  Quality procedures are not thread-safe, so each chunk
+ * builds its own procedure with a {@link QualityProcedureFactory}, and
+ * fills its own {@link QualityStatistics} instance; these instances are
+ * then merged.  Quality values are not stored, memory usage only depends
+ * on the number of histogram bins.  Procedures which need all values in
+ * their {@link QualityProcedure#finish} method cannot be used here.
+ *
+ * Example:
+ * <pre>
+ *    QualityEvaluator eval = new QualityEvaluator(
+ *        new QualityProcedureFactory("org.jcae.mesh.amibe.validation.MinAngleFace"));
+ *    eval.setTarget((float) Math.PI/3.0f);
+ *    eval.setBounds(0.0f, 1.0f, 10);
+ *    QualityStatistics stats = eval.compute(mesh);
+ *    stats.printLayers();
+ * </pre>
+ */
+public class QualityEvaluator
+{
+	// Number of elements processed by a single task
+	private static final int CHUNK_SIZE = 8192;
+
+	private final QualityProcedureFactory factory;
+	private final int type;
+	private float scaleFactor = 1.0f;
+	private QualityStatistics template = new QualityStatistics();
+
+	/**
+	 * Create a new <code>QualityEvaluator</code> instance.
+	 *
+	 * @param factory  factory which builds quality procedures
+	 */
+	public QualityEvaluator(QualityProcedureFactory factory)
+	{
+		this.factory = factory;
+		QualityProcedure qproc = factory.buildQualityProcedure();
+		if (qproc == null)
+			throw new IllegalArgumentException("Cannot build quality procedure");
+		type = qproc.getType();
+	}
+
+	/**
+	 * Normalize quality target.  Values are divided by the given factor.
+	 *
+	 * @param factor   the scale factor.
+	 */
+	public final void setTarget(float factor)
+	{
+		scaleFactor = 1.0f / factor;
+	}
+
+	/**
+	 * Set relative accuracy of quantiles.  This method resets histogram
+	 * bounds.
+	 * @see QualityStatistics#QualityStatistics(double)
+	 */
+	public final void setAccuracy(double accuracy)
+	{
+		template = new QualityStatistics(accuracy);
+	}
+
+	/**
+	 * Define histogram bins of returned statistics.
+	 * @see QualityStatistics#setBounds(float, float, int)
+	 */
+	public final void setBounds(float v1, float v2, int nr)
+	{
+		template.setBounds(v1, v2, nr);
+	}
+
+	/**
+	 * Define histogram bins of returned statistics.
+	 * @see QualityStatistics#setBounds(float...)
+	 */
+	public final void setBounds(float... v)
+	{
+		template.setBounds(v);
+	}
+
+	/**
+	 * Compute quality of writable triangles or vertices of a mesh,
+	 * depending on the type of the quality procedure.
+	 *
+	 * @param mesh  mesh
+	 * @return statistics about quality values
+	 */
+	public QualityStatistics compute(Mesh mesh)
+	{
+		return compute(mesh, false).get(-1);
+	}
+
+	/**
+	 * Compute quality of writable triangles of a mesh, group by group.
+	 *
+	 * @param mesh  mesh
+	 * @return a map between group ids and statistics about quality values
+	 */
+	public TIntObjectHashMap<QualityStatistics> computeByGroup(Mesh mesh)
+	{
+		if (type != QualityProcedure.FACE)
+			throw new IllegalArgumentException("Quality procedure does not work on faces");
+		return compute(mesh, true);
+	}
+
+	/**
+	 * Compute quality of all triangles of a compact mesh.
+	 *
+	 * @param mesh  compact mesh
+	 * @return statistics about quality values
+	 */
+	public QualityStatistics compute(CompactMesh mesh)
+	{
+		if (type != QualityProcedure.FACE)
+			throw new IllegalArgumentException("Quality procedure does not work on faces");
+		return run(new CompactMeshSource(mesh), false).get(-1);
+	}
+
+	private TIntObjectHashMap<QualityStatistics> compute(Mesh mesh, boolean byGroup)
+	{
+		Collection<?> elements;
+		if (type == QualityProcedure.FACE)
+			elements = mesh.getTriangles();
+		else if (type == QualityProcedure.NODE)
+			elements = mesh.getNodes();
+		else
+			throw new IllegalArgumentException("Unsupported quality procedure type: "+type);
+		return run(new CollectionSource(elements), byGroup);
+	}
+
+	private TIntObjectHashMap<QualityStatistics> run(Source source, boolean byGroup)
+	{
+		Chunk task = new Chunk(source, byGroup, 0, source.size());
+		TIntObjectHashMap<QualityStatistics> ret;
+		if (source.size() <= CHUNK_SIZE)
+			ret = task.compute();
+		else
+			ret = ForkJoinPool.commonPool().invoke(task);
+		if (!byGroup && ret.isEmpty())
+			ret.put(-1, new QualityStatistics(template));
+		return ret;
+	}
+
+	/** Elements on which quality is computed */
+	private interface Source
+	{
+		int size();
+		/** Return false if this element must be skipped */
+		boolean accept(int index);
+		float quality(QualityProcedure qproc, int index);
+		int getGroupId(int index);
+	}
+
+	private static final class CollectionSource implements Source
+	{
+		private final List<?> list;
+		private final Object[] array;
+		CollectionSource(Collection<?> c)
+		{
+			if (c instanceof List && c instanceof RandomAccess)
+			{
+				list = (List<?>) c;
+				array = null;
+			}
+			else
+			{
+				list = null;
+				array = c.toArray();
+			}
+		}
+		private Object get(int index)
+		{
+			return list != null ? list.get(index) : array[index];
+		}
+		public int size()
+		{
+			return list != null ? list.size() : array.length;
+		}
+		public boolean accept(int index)
+		{
+			Object o = get(index);
+			if (o instanceof Triangle)
+				return ((Triangle) o).isWritable();
+			if (o instanceof Vertex)
+				return ((Vertex) o).isWritable();
+			return true;
+		}
+		public float quality(QualityProcedure qproc, int index)
+		{
+			return qproc.quality(get(index));
+		}
+		public int getGroupId(int index)
+		{
+			return ((Triangle) get(index)).getGroupId();
+		}
+	}
+
+	private static final class CompactMeshSource implements Source
+	{
+		private final CompactMesh mesh;
+		CompactMeshSource(CompactMesh mesh)
+		{
+			this.mesh = mesh;
+		}
+		public int size()
+		{
+			return mesh.getNumberOfTriangles();
+		}
+		public boolean accept(int index)
+		{
+			return true;
+		}
+		public float quality(QualityProcedure qproc, int index)
+		{
+			return qproc.quality(mesh, index);
+		}
+		public int getGroupId(int index)
+		{
+			return mesh.getGroupId(index);
+		}
+	}
+
+	private final class Chunk extends RecursiveTask<TIntObjectHashMap<QualityStatistics>>
+	{
+		private static final long serialVersionUID = 4398285631020416791L;
+		private final Source source;
+		private final boolean byGroup;
+		private final int from, to;
+		Chunk(Source source, boolean byGroup, int from, int to)
+		{
+			this.source = source;
+			this.byGroup = byGroup;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected TIntObjectHashMap<QualityStatistics> compute()
+		{
+			if (to - from > CHUNK_SIZE)
+			{
+				int middle = (from + to) >>> 1;
+				Chunk right = new Chunk(source, byGroup, middle, to);
+				right.fork();
+				TIntObjectHashMap<QualityStatistics> ret =
+					new Chunk(source, byGroup, from, middle).compute();
+				merge(ret, right.join());
+				return ret;
+			}
+			TIntObjectHashMap<QualityStatistics> ret = new TIntObjectHashMap<QualityStatistics>();
+			QualityProcedure qproc = factory.buildQualityProcedure();
+			QualityStatistics stats = null;
+			int lastGroup = -1;
+			for (int i = from; i < to; i++)
+			{
+				if (!source.accept(i))
+					continue;
+				int group = byGroup ? source.getGroupId(i) : -1;
+				if (stats == null || group != lastGroup)
+				{
+					stats = ret.get(group);
+					if (stats == null)
+					{
+						stats = new QualityStatistics(template);
+						ret.put(group, stats);
+					}
+					lastGroup = group;
+				}
+				stats.add(source.quality(qproc, i) * scaleFactor, i);
+			}
+			return ret;
+		}
+
+		private void merge(TIntObjectHashMap<QualityStatistics> left,
+			TIntObjectHashMap<QualityStatistics> right)
+		{
+			for (TIntObjectIterator<QualityStatistics> it = right.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				QualityStatistics stats = left.get(it.key());
+				if (stats == null)
+					left.put(it.key(), it.value());
+				else
+					stats.merge(it.value());
+			}
+		}
+	}
+}
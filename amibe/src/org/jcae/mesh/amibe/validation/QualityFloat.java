@@ -28,6 +28,7 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.PrintStream;
 import java.util.logging.Logger;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 
 /**
  * Manage statistics for quality values.
@@ -108,6 +109,19 @@ public class QualityFloat
 		data.add(qproc.quality(x));
 	}
 	
+	/**
+	 * Compute the quality of a triangle of a compact mesh and add it
+	 * to the list.
+	 *
+	 * @param mesh  compact mesh
+	 * @param triangle  triangle index
+	 */
+	public final void compute(CompactMesh mesh, int triangle)
+	{
+		assert qproc != null;
+		data.add(qproc.quality(mesh, triangle));
+	}
+
 	/**
 	 * Add a value to the list.
 	 *
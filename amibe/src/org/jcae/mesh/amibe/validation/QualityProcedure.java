@@ -26,7 +26,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
 
 /**
  * Abstract class to compute quality criteria.
@@ -48,6 +50,8 @@ public abstract class QualityProcedure
 	int type = FACE;
 	String [] usageStr;
 	private TFloatArrayList data;
+	private Vertex [] work;
+	private Triangle workTriangle;
 	
 	private static final Class<QualityProcedure> [] subClasses = new Class[]{
 		// AbsoluteDeflection2D.class,  Disabled for now
@@ -117,6 +121,47 @@ public abstract class QualityProcedure
 	 * Returns quality factor.
 	 */
 	public abstract float quality(Object o);
+
+	/**
+	 * Return the quality factor of a triangle of a <code>CompactMesh</code>.
+	 * By default, vertices and group of this triangle are copied into a
+	 * work {@link Triangle} which is passed to {@link #quality(Object)}.
+	 * This triangle has no adjacency relations.  Procedures can override
+	 * this method to read coordinates directly.
+	 *
+	 * @param mesh  compact mesh
+	 * @param triangle  triangle index
+	 * Returns quality factor.
+	 */
+	public float quality(CompactMesh mesh, int triangle)
+	{
+		Vertex [] v = getVertices(mesh, triangle);
+		if (workTriangle == null)
+			workTriangle = new Triangle(v[0], v[1], v[2]);
+		workTriangle.setGroupId(mesh.getGroupId(triangle));
+		return quality(workTriangle);
+	}
+
+	/**
+	 * Return work vertices moved to the vertices of a triangle
+	 * of a compact mesh.  Returned array is overwritten by next call.
+	 *
+	 * @param mesh  compact mesh
+	 * @param triangle  triangle index
+	 * @return an array of 3 vertices
+	 */
+	final Vertex [] getVertices(CompactMesh mesh, int triangle)
+	{
+		if (work == null)
+		{
+			work = new Vertex[3];
+			for (int i = 0; i < 3; i++)
+				work[i] = new Vertex(null, 0.0, 0.0, 0.0);
+		}
+		for (int i = 0; i < 3; i++)
+			mesh.get(mesh.getV(triangle, i), work[i]);
+		return work;
+	}
 	
 	/**
 	 * Returns default scale factor.
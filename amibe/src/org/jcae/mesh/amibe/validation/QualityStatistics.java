@@ -0,0 +1,564 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Streaming statistics about quality values.
+ *
+ * Unlike {@link QualityFloat}, values are not stored.  Minimum,
+ * maximum, mean value and standard deviation are exact, quantiles are
+ * computed with a logarithmic sketch whose relative error is bounded by
+ * the accuracy given to the constructor, and memory usage does not
+ * depend on the number of values.  If histogram bounds are set by one
+ * of the <code>setBounds</code> methods before adding values, the
+ * histogram is exact; otherwise {@link #split(int)} computes an
+ * approximate histogram from the sketch.
+ *
+ * Instances can be merged, which allows each thread to fill its own
+ * instance, see {@link QualityEvaluator}.
+ *
+ * Example:
+ * <pre>
+ *    QualityStatistics stats = new QualityStatistics();
+ *    stats.setBounds(0.0f, 1.0f, 10);
+ *    for (Triangle f: mesh.getTriangles())
+ *        stats.add(qproc.quality(f));
+ *    stats.printLayers();
+ * </pre>
+ */
+public class QualityStatistics
+{
+	private static final Logger logger=Logger.getLogger(QualityStatistics.class.getName());
+	/** Default relative accuracy of quantiles */
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.001;
+	// Values whose absolute value is lower are considered as zero by
+	// the sketch.
+	private static final double MIN_INDEXABLE = Float.MIN_NORMAL;
+
+	private final double relativeAccuracy;
+	private final double logGamma;
+	private final Store positive = new Store();
+	private final Store negative = new Store();
+	private long zeroCount;
+
+	private long count;
+	private float qmin = Float.MAX_VALUE;
+	private float qmax = -Float.MAX_VALUE;
+	private long imin = -1, imax = -1;
+	// Running mean and sum of squared differences to the mean, they can
+	// be merged with Chan et al. formula.
+	private double mean, m2;
+
+	// Histogram: counts[0] is the number of values lower than bounds[0],
+	// counts[i] the number of values in [bounds[i-1], bounds[i][, and
+	// counts[bounds.length] the number of values greater than the last
+	// bound.
+	private float [] bounds;
+	private long [] counts;
+	// Set when bounds are uniformly distributed, to find bins faster
+	private boolean uniform;
+	private boolean exactHistogram;
+
+	/**
+	 * Dense array of counts indexed by sketch keys, which grows on
+	 * demand.
+	 */
+	private static final class Store
+	{
+		private long [] counts;
+		private int offset;
+		private int minKey = Integer.MAX_VALUE;
+		private int maxKey = Integer.MIN_VALUE;
+
+		void add(int key, long n)
+		{
+			if (counts == null)
+			{
+				counts = new long[64];
+				offset = key - 32;
+			}
+			else if (key < offset || key >= offset + counts.length)
+			{
+				int lo = Math.min(key, minKey);
+				int hi = Math.max(key, maxKey);
+				int size = counts.length;
+				while (size < hi - lo + 1)
+					size *= 2;
+				long [] newCounts = new long[size];
+				int newOffset = lo - (size - (hi - lo + 1)) / 2;
+				System.arraycopy(counts, minKey - offset, newCounts,
+					minKey - newOffset, maxKey - minKey + 1);
+				counts = newCounts;
+				offset = newOffset;
+			}
+			counts[key - offset] += n;
+			if (key < minKey)
+				minKey = key;
+			if (key > maxKey)
+				maxKey = key;
+		}
+
+		long get(int key)
+		{
+			return counts[key - offset];
+		}
+
+		boolean isEmpty()
+		{
+			return counts == null;
+		}
+
+		void merge(Store that)
+		{
+			if (that.isEmpty())
+				return;
+			for (int k = that.minKey; k <= that.maxKey; k++)
+			{
+				long n = that.get(k);
+				if (n > 0)
+					add(k, n);
+			}
+		}
+	}
+
+	/**
+	 * Create a new instance with default relative accuracy.
+	 */
+	public QualityStatistics()
+	{
+		this(DEFAULT_RELATIVE_ACCURACY);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param accuracy  relative accuracy of quantiles, this is a number
+	 *        between 0 and 1.
+	 */
+	public QualityStatistics(double accuracy)
+	{
+		if (accuracy <= 0.0 || accuracy >= 1.0)
+			throw new IllegalArgumentException("Illegal accuracy: "+accuracy);
+		relativeAccuracy = accuracy;
+		logGamma = Math.log((1.0 + accuracy) / (1.0 - accuracy));
+	}
+
+	/**
+	 * Create an empty instance with the same accuracy and histogram
+	 * bounds as <code>that</code>.
+	 */
+	QualityStatistics(QualityStatistics that)
+	{
+		relativeAccuracy = that.relativeAccuracy;
+		logGamma = that.logGamma;
+		if (that.exactHistogram)
+		{
+			bounds = that.bounds;
+			uniform = that.uniform;
+			exactHistogram = true;
+			counts = new long[bounds.length + 1];
+		}
+	}
+
+	/**
+	 * Define histogram bins.  The range between <code>v1</code> and
+	 * <code>v2</code> is divided into <code>nr</code> subsegments of
+	 * equal length.  This method must be called before values are added.
+	 *
+	 * @param v1  minimal value to consider.
+	 * @param v2  maximal value to consider.
+	 * @param nr  the desired number of subsegments.
+	 */
+	public final void setBounds(float v1, float v2, int nr)
+	{
+		if (nr <= 0 || v2 <= v1)
+			throw new IllegalArgumentException();
+		float [] b = new float[nr+1];
+		float delta = (v2 - v1) / nr;
+		for (int i = 0; i < b.length; i++)
+			b[i] = v1 + i * delta;
+		setBoundsPrivate(b, true);
+	}
+
+	/**
+	 * Define histogram bins by their bounds, which must be sorted.
+	 * This method must be called before values are added.
+	 *
+	 * @param v  bounds of histogram bins
+	 */
+	public final void setBounds(float... v)
+	{
+		if (v.length == 0)
+			throw new IllegalArgumentException();
+		for (int i = 1; i < v.length; i++)
+			if (v[i] < v[i-1])
+				throw new IllegalArgumentException("Bounds are not sorted");
+		setBoundsPrivate(v.clone(), false);
+	}
+
+	private void setBoundsPrivate(float [] b, boolean u)
+	{
+		if (count > 0)
+			throw new IllegalStateException("setBounds must be called before adding values");
+		bounds = b;
+		uniform = u;
+		exactHistogram = true;
+		counts = new long[bounds.length + 1];
+	}
+
+	/**
+	 * Add a value.
+	 *
+	 * @param value  quality value
+	 */
+	public final void add(float value)
+	{
+		add(value, count);
+	}
+
+	/**
+	 * Add a value.  NaN values are ignored.
+	 *
+	 * @param value  quality value
+	 * @param index  index of this value, which is reported by
+	 *        {@link #printStatistics} for minimal and maximal values
+	 */
+	public final void add(float value, long index)
+	{
+		if (value != value)
+			return;
+		count++;
+		if (value < qmin)
+		{
+			qmin = value;
+			imin = index;
+		}
+		if (value > qmax)
+		{
+			qmax = value;
+			imax = index;
+		}
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if (value > MIN_INDEXABLE)
+			positive.add(key(value), 1L);
+		else if (value < -MIN_INDEXABLE)
+			negative.add(key(-value), 1L);
+		else
+			zeroCount++;
+		if (exactHistogram)
+			counts[bin(value)]++;
+	}
+
+	private int key(double value)
+	{
+		return (int) Math.ceil(Math.log(value) / logGamma);
+	}
+
+	// Representative value of a sketch key
+	private double value(int key)
+	{
+		return 2.0 * Math.exp(key * logGamma) / (1.0 + Math.exp(logGamma));
+	}
+
+	private int bin(float value)
+	{
+		if (value < bounds[0])
+			return 0;
+		int last = bounds.length - 1;
+		if (uniform)
+		{
+			// Same as QualityFloat.split(float, float, int): the last
+			// bin is closed on both sides.
+			if (value > bounds[last])
+				return bounds.length;
+			int cell = (int) ((value - bounds[0]) / (bounds[last] - bounds[0]) * last);
+			cell = Math.min(Math.max(cell, 0), last - 1);
+			// Fix rounding errors
+			while (cell > 0 && value < bounds[cell])
+				cell--;
+			while (cell < last - 1 && value >= bounds[cell+1])
+				cell++;
+			return cell + 1;
+		}
+		// Same as QualityFloat.split(float...): returns the number of
+		// bounds lower than or equal to value.
+		int lo = 0;
+		int hi = bounds.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (bounds[mid] <= value)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Merge another instance into this one.  Both instances must have
+	 * the same accuracy and histogram bounds.  Indices of minimal and
+	 * maximal values are kept as is.
+	 *
+	 * @param that  statistics to merge into this instance
+	 */
+	public final void merge(QualityStatistics that)
+	{
+		if (that.relativeAccuracy != relativeAccuracy)
+			throw new IllegalArgumentException("Accuracies differ");
+		if (that.exactHistogram != exactHistogram ||
+			(exactHistogram && !Arrays.equals(bounds, that.bounds)))
+			throw new IllegalArgumentException("Histogram bounds differ");
+		if (that.count == 0)
+			return;
+		if (that.qmin < qmin || (that.qmin == qmin && that.imin < imin))
+		{
+			qmin = that.qmin;
+			imin = that.imin;
+		}
+		if (that.qmax > qmax || (that.qmax == qmax && that.imax < imax))
+		{
+			qmax = that.qmax;
+			imax = that.imax;
+		}
+		long n = count + that.count;
+		double delta = that.mean - mean;
+		mean += delta * that.count / n;
+		m2 += that.m2 + delta * delta * ((double) count * that.count / n);
+		count = n;
+		positive.merge(that.positive);
+		negative.merge(that.negative);
+		zeroCount += that.zeroCount;
+		if (exactHistogram)
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += that.counts[i];
+	}
+
+	/**
+	 * Return the number of quality values.
+	 */
+	public final long size()
+	{
+		return count;
+	}
+
+	public final float getMinValue()
+	{
+		return qmin;
+	}
+
+	public final float getMaxValue()
+	{
+		return qmax;
+	}
+
+	/**
+	 * Return mean value
+	 */
+	public final float getMeanValue()
+	{
+		return (float) mean;
+	}
+
+	/**
+	 * Return standard deviation
+	 */
+	public final float getStandardDeviation()
+	{
+		return count == 0 ? 0.0f : (float) Math.sqrt(m2 / count);
+	}
+
+	/**
+	 * Return value by its distribution index.  Returned value is
+	 * such that there are about <code>p*N</code> values below it, where
+	 * <code>N</code> is the total number of values.  Relative error of
+	 * the returned value is lower than the accuracy given to the
+	 * constructor.
+	 *
+	 * @param p  number between 0 and 1
+	 * @return  value associated to this distribution index
+	 */
+	public final float getValueByPercent(double p)
+	{
+		if (count == 0)
+			throw new IllegalStateException("No value");
+		if (p <= 0.0)
+			return qmin;
+		if (p >= 1.0)
+			return qmax;
+		long target = (long) (p * count);
+		long n = 0;
+		double ret = qmax;
+		boolean found = false;
+		if (!negative.isEmpty())
+		{
+			for (int k = negative.maxKey; k >= negative.minKey && !found; k--)
+			{
+				n += negative.get(k);
+				if (n > target)
+				{
+					ret = -value(k);
+					found = true;
+				}
+			}
+		}
+		if (!found)
+		{
+			n += zeroCount;
+			if (n > target)
+			{
+				ret = 0.0;
+				found = true;
+			}
+		}
+		if (!found && !positive.isEmpty())
+		{
+			for (int k = positive.minKey; k <= positive.maxKey && !found; k++)
+			{
+				n += positive.get(k);
+				if (n > target)
+				{
+					ret = value(k);
+					found = true;
+				}
+			}
+		}
+		return (float) Math.min(Math.max(ret, qmin), qmax);
+	}
+
+	/**
+	 * Return the approximate number of values lower than <code>v</code>,
+	 * computed from the sketch.
+	 */
+	private long countBelow(float v)
+	{
+		if (v <= qmin)
+			return 0L;
+		if (v > qmax)
+			return count;
+		long n = 0L;
+		if (!negative.isEmpty())
+			for (int k = negative.maxKey; k >= negative.minKey; k--)
+				if (-value(k) < v)
+					n += negative.get(k);
+		if (0.0f < v)
+			n += zeroCount;
+		if (!positive.isEmpty())
+			for (int k = positive.minKey; k <= positive.maxKey; k++)
+				if (value(k) < v)
+					n += positive.get(k);
+		return n;
+	}
+
+	/**
+	 * Split quality values into buckets.  The range between minimal and
+	 * maximal quality values is divided into <code>nr</code> subsegments
+	 * of equal length.  Values are no more available, so the number of
+	 * values for each subsegment is estimated from the sketch.  These
+	 * numbers can then be displayed by {@link #printLayers}.  This method
+	 * must not be called when histogram bounds had been set before
+	 * adding values.
+	 *
+	 * @param nr  the desired number of subsegments.
+	 */
+	public final void split(int nr)
+	{
+		if (exactHistogram)
+			throw new IllegalStateException("Histogram bounds are already set");
+		if (nr <= 0)
+			return;
+		bounds = new float[nr+1];
+		float delta = (qmax - qmin) / nr;
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = qmin + i * delta;
+		bounds[nr] = qmax;
+		counts = new long[nr+2];
+		long previous = 0L;
+		for (int i = 1; i < nr; i++)
+		{
+			long n = countBelow(bounds[i]);
+			counts[i] = n - previous;
+			previous = n;
+		}
+		counts[nr] = count - previous;
+	}
+
+	/**
+	 * Return histogram bounds, or <code>null</code> if neither
+	 * <code>setBounds</code> nor {@link #split(int)} had been called.
+	 */
+	public final float [] getBounds()
+	{
+		return bounds == null ? null : bounds.clone();
+	}
+
+	/**
+	 * Return histogram values.  First value is the number of values
+	 * lower than the first bound, last value is the number of values
+	 * greater than the last bound, and other values are the number of
+	 * values in each bin.
+	 */
+	public final long [] getCounts()
+	{
+		return counts == null ? null : counts.clone();
+	}
+
+	/**
+	 * Display histogram about quality values.
+	 */
+	public final void printLayers()
+	{
+		if (bounds == null)
+		{
+			logger.severe("split() or setBounds() method must be called before printLayers()");
+			return;
+		}
+		int layers = bounds.length - 1;
+		if (counts[0] > 0)
+			System.out.printf(" < %g %d (%.4g%%)%n", bounds[0], counts[0], percent(counts[0]));
+		for (int i = 0; i < layers; i++)
+			System.out.printf(" %g ; %g %d (%.4g%%)%n", bounds[i], bounds[i+1], counts[i+1], percent(counts[i+1]));
+		if (counts[layers+1] > 0)
+			System.out.printf(" > %g %d (%.4g%%)%n", bounds[layers], counts[layers+1], percent(counts[layers+1]));
+		printStatistics();
+	}
+
+	private float percent(long n)
+	{
+		return (float) (100.0 * n / count);
+	}
+
+	/**
+	 * Display statistics about quality values.
+	 */
+	public final void printStatistics()
+	{
+		System.out.println("total: "+count);
+		System.out.printf("qmin: %.6g (index=%d starting from 0)%n", qmin, imin);
+		System.out.printf("qmax: %.6g (index=%d starting from 0)%n", qmax, imax);
+		System.out.printf("qavg: %.6g%n", mean);
+		System.out.printf("qdev: %.6g%n", getStandardDeviation());
+	}
+}
@@ -266,6 +266,17 @@ public class OEMM implements Serializable
 			updateFilename();
 		}
 
+		final String [] getPathComponents()
+		{
+			return pathComponents;
+		}
+
+		final void setPathComponents(String [] components)
+		{
+			pathComponents = components;
+			updateFilename();
+		}
+
 		private void updateFilename()
 		{
 			if (pathComponents == null || pathComponents.length == 0)
@@ -28,7 +28,6 @@ import java.io.RandomAccessFile;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
-import java.io.ObjectOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -622,17 +621,25 @@ public class RawStorage
 			OEMM fake = new OEMM(outDir);
 			logger.fine("Store data header on disk");
 			new File(outDir).mkdirs();
-			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(fake.getFileName())));
-			oos.writeObject(ret);
-			oos.writeObject(Integer.valueOf(ret.getNumberOfLeaves()));
 			
 			//  Index internal vertices
 			logger.fine("Index internal vertices");
 			FileInputStream fis = new FileInputStream(ret.getDirectory());
-			IndexInternalVerticesProcedure iiv_proc = new IndexInternalVerticesProcedure(fis, oos, outDir);
+			IndexInternalVerticesProcedure iiv_proc = new IndexInternalVerticesProcedure(fis, outDir);
 			ret.walk(iiv_proc);
 			fis.close();
-			oos.close();
+			// Number of triangles written onto disk are stored
+			// into OEMM structure, but old values are still needed
+			// below.
+			int [] tn = new int[ret.leaves.length];
+			for (int i = 0; i < tn.length; i++)
+			{
+				tn[i] = ret.leaves[i].tn;
+				ret.leaves[i].tn = iiv_proc.storedTriangles[ret.leaves[i].leafIndex];
+			}
+			StructureIndex.write(ret, new File(fake.getFileName()));
+			for (int i = 0; i < tn.length; i++)
+				ret.leaves[i].tn = tn[i];
 			
 			//  Index external vertices
 			logger.fine("Index external vertices");
@@ -670,23 +677,24 @@ public class RawStorage
 	private static class IndexInternalVerticesProcedure extends TraversalProcedure
 	{
 		private final FileChannel fc;
-		private final ObjectOutputStream oos;
+		// Number of triangles written onto disk, by leaf index
+		private int [] storedTriangles;
 		private final String outDir;
 		private int globalIndex = 0;
 		private final ArrayList<String> path = new ArrayList<String>();
 		private final int [] ijk = new int[3];
 		private int room = 0;
-		IndexInternalVerticesProcedure(FileInputStream in, ObjectOutputStream headerOut, String dir)
+		IndexInternalVerticesProcedure(FileInputStream in, String dir)
 		{
 			fc = in.getChannel();
 			outDir = dir;
-			oos = headerOut;
 		}
 		@Override
 		public void init(OEMM oemm)
 		{
 			super.init(oemm);
 			room = (Integer.MAX_VALUE - 3*oemm.root.tn) / oemm.getNumberOfLeaves();
+			storedTriangles = new int[oemm.getNumberOfLeaves()];
 		}
 		@Override
 		public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
@@ -852,10 +860,7 @@ public class RawStorage
 				// tCount will be the number of triangles
 				// written onto disk, but we still need the
 				// old value.
-				int tn = current.tn;
-				current.tn = tCount;
-				oos.writeObject(current);
-				current.tn = tn;
+				storedTriangles[current.leafIndex] = tCount;
 				
 				FileChannel fca = new FileOutputStream(new File(outDir, current.file+"a")).getChannel();
 				bb.clear();
@@ -30,7 +30,6 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.ObjectInputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.nio.IntBuffer;
 import java.nio.ByteBuffer;
@@ -67,8 +66,10 @@ import org.jcae.mesh.amibe.metrics.Location;
  * {@link #readOEMMStructure}.  Then {@link MeshReader#buildMesh} can be called
  * to select which octants are loaded into memory.
  *
- * As can be seen in {@link #readOEMMStructure}, {@link OEMM} instances
- * are serialized on disk.  But this is different with partial mesh data
+ * As can be seen in {@link #readOEMMStructure}, {@link OEMM} structure
+ * is stored on disk in a flat binary file, see {@link StructureIndex};
+ * older versions stored serialized {@link OEMM} instances, they can still
+ * be read.  But this is different with partial mesh data
  * structure.  Each child octant has a local number between 0 and 7 depending
  * on its spatial localization.  A similar structure is kept on disk, each
  * child octant is put into a seperate directory named after its number.
@@ -103,6 +104,10 @@ public class Storage
 
 	/**
 	 * Creates an {@link OEMM} instance from its disk representation.
+	 * All nodes are built, call {@link StructureIndex#open} instead to
+	 * query leaves without building them.  Structure index is read
+	 * into memory and not memory-mapped, because this file is
+	 * overwritten by {@link #storeOEMMStructure}.
 	 *
 	 * @param dir   directory containing disk representation
 	 * @return an {@link OEMM} instance
@@ -113,6 +118,14 @@ public class Storage
 		logger.info("Build an OEMM from "+ret.getFileName());
 		try
 		{
+			File file = new File(ret.getFileName());
+			if (StructureIndex.isStructureIndex(file))
+			{
+				ret = StructureIndex.read(file).buildOEMM(dir);
+				ret.printInfos();
+				return ret;
+			}
+			logger.fine("Read legacy serialized OEMM structure");
 			ObjectInputStream os = new ObjectInputStream(new FileInputStream(new File(ret.getFileName())));
 			ret = (OEMM) os.readObject();
 			// Reset nr_leaves and nr_cells because they are
@@ -150,32 +163,17 @@ public class Storage
 	 *
 	 * @param oemm stored object
 	 */
-	private static void storeOEMMStructure(OEMM oemm)
+	static void storeOEMMStructure(OEMM oemm)
 	{
 		if (logger.isLoggable(Level.INFO)) {
 			logger.info("storeOEMMStructure");
 		}
-		ObjectOutputStream oos = null;
 		try {
-			oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(oemm.getFileName()))));
-			oos.writeObject(oemm);
-			oos.writeObject(Integer.valueOf(oemm.leaves.length));
-			for (OEMM.Node node : oemm.leaves) {
-				oos.writeObject(node);
-			}
-			
+			StructureIndex.write(oemm, new File(oemm.getFileName()));
 		} catch (IOException e) {
-			logger.severe("I/O error when reading indexed file in " + oemm.getDirectory());
+			logger.severe("I/O error when writing indexed file in " + oemm.getDirectory());
 			e.printStackTrace();
 			throw new RuntimeException(e);
-		} finally {
-			if (oos != null) {
-				try {
-					oos.close();
-				} catch(IOException e) {
-					//ignore this
-				}
-			}
 		}
 	}
 	
@@ -0,0 +1,419 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2012, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Flat binary representation of an {@link OEMM} structure.  This is the
+ * format written by {@link Storage} into the <code>oemm</code> file of an
+ * OEMM directory, older directories contain a serialized {@link OEMM}
+ * instance instead.
+ *
+ * <p>
+ * All values are big-endian.  The file contains:
+ * </p>
+ * <ul>
+ *  <li>a header: magic number, format version, number of leaves,
+ *      total number of adjacent leaves, total size of leaf paths (5 int)
+ *      and {@link OEMM#x0} (4 double);</li>
+ *  <li>one record per leaf, in {@link OEMM#leaves} order: i0, j0, k0,
+ *      size, tn, vn, minIndex, maxIndex, leafIndex, position and number
+ *      of its adjacent leaves, position and length of its path (13 int);</li>
+ *  <li>adjacent leaves of all leaves (int);</li>
+ *  <li>paths of all leaves, path components are separated by a slash
+ *      (UTF-8 bytes).</li>
+ * </ul>
+ *
+ * <p>
+ * As all records have the same size, an index returned by {@link #open}
+ * is memory-mapped and leaves can be queried without building OEMM
+ * nodes; {@link #getNode} builds a single node on demand.
+ * </p>
+ */
+public final class StructureIndex
+{
+	/** "OEMM" in ASCII */
+	private static final int MAGIC = 0x4f454d4d;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 5 * 4 + 4 * 8;
+	private static final int RECORD_INTS = 13;
+	private static final int RECORD_SIZE = 4 * RECORD_INTS;
+	private static final int I0 = 0;
+	private static final int J0 = 1;
+	private static final int K0 = 2;
+	private static final int SIZE = 3;
+	private static final int TN = 4;
+	private static final int VN = 5;
+	private static final int MIN_INDEX = 6;
+	private static final int MAX_INDEX = 7;
+	private static final int LEAF_INDEX = 8;
+	private static final int ADJ_START = 9;
+	private static final int ADJ_COUNT = 10;
+	private static final int PATH_START = 11;
+	private static final int PATH_LENGTH = 12;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char PATH_SEPARATOR = '/';
+
+	private final ByteBuffer buffer;
+	private final int nrLeaves;
+	private final int adjPosition;
+	private final int pathPosition;
+	private final double [] x0 = new double[4];
+
+	private StructureIndex(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException("Not an OEMM structure index");
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported OEMM structure index version: "+version);
+		nrLeaves = buffer.getInt(8);
+		int nrAdj = buffer.getInt(12);
+		int pathSize = buffer.getInt(16);
+		for (int i = 0; i < 4; i++)
+			x0[i] = buffer.getDouble(20 + 8 * i);
+		adjPosition = HEADER_SIZE + nrLeaves * RECORD_SIZE;
+		pathPosition = adjPosition + 4 * nrAdj;
+		if (buffer.limit() < pathPosition + pathSize)
+			throw new IOException("Truncated OEMM structure index");
+	}
+
+	/**
+	 * Tells whether a file contains a structure index, or a legacy
+	 * serialized structure.
+	 *
+	 * @param file  file to check
+	 * @return <code>true</code> if this file begins with the magic number
+	 * of structure indices.
+	 */
+	public static boolean isStructureIndex(File file) throws IOException
+	{
+		if (file.length() < 4)
+			return false;
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			return in.readInt() == MAGIC;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Memory-maps the structure index of an OEMM directory.
+	 *
+	 * @param dir  OEMM directory
+	 * @return structure index
+	 * @throws IOException if file cannot be read or is not a structure index
+	 */
+	public static StructureIndex open(String dir) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(new OEMM(dir).getFileName(), "r");
+		try
+		{
+			FileChannel fc = raf.getChannel();
+			checkSize(fc.size());
+			return new StructureIndex(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a structure index into memory.  Unlike {@link #open}, file is
+	 * not memory-mapped and can thus be overwritten afterwards.
+	 */
+	static StructureIndex read(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel fc = raf.getChannel();
+			checkSize(fc.size());
+			ByteBuffer bb = ByteBuffer.allocate((int) fc.size());
+			while (bb.hasRemaining())
+			{
+				if (fc.read(bb) < 0)
+					break;
+			}
+			bb.flip();
+			return new StructureIndex(bb);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks that a structure index can be addressed by a single buffer.
+	 * Positions are stored as int values, so {@link #write} refuses to
+	 * write larger files.
+	 */
+	private static void checkSize(long size) throws IOException
+	{
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("OEMM structure index is too large: "+size+" bytes");
+	}
+
+	/**
+	 * Writes OEMM structure into a file.
+	 *
+	 * @param oemm  OEMM, all its leaves must be in {@link OEMM#leaves}
+	 * @param file  output file
+	 */
+	static void write(OEMM oemm, File file) throws IOException
+	{
+		long nrAdj = 0L;
+		long pathSize = 0L;
+		byte [][] paths = new byte[oemm.leaves.length][];
+		for (int i = 0; i < oemm.leaves.length; i++)
+		{
+			OEMM.Node node = oemm.leaves[i];
+			if (node.adjLeaves != null)
+				nrAdj += node.adjLeaves.size();
+			paths[i] = encodePath(node.getPathComponents());
+			pathSize += paths[i].length;
+		}
+		checkSize(HEADER_SIZE + (long) RECORD_SIZE * oemm.leaves.length + 4L * nrAdj + pathSize);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(oemm.leaves.length);
+			out.writeInt((int) nrAdj);
+			out.writeInt((int) pathSize);
+			for (int i = 0; i < 4; i++)
+				out.writeDouble(oemm.x0[i]);
+			int adjStart = 0;
+			int pathStart = 0;
+			for (int i = 0; i < oemm.leaves.length; i++)
+			{
+				OEMM.Node node = oemm.leaves[i];
+				int adjCount = node.adjLeaves == null ? 0 : node.adjLeaves.size();
+				out.writeInt(node.i0);
+				out.writeInt(node.j0);
+				out.writeInt(node.k0);
+				out.writeInt(node.size);
+				out.writeInt(node.tn);
+				out.writeInt(node.vn);
+				out.writeInt(node.minIndex);
+				out.writeInt(node.maxIndex);
+				out.writeInt(node.leafIndex);
+				out.writeInt(adjStart);
+				out.writeInt(adjCount);
+				out.writeInt(pathStart);
+				out.writeInt(paths[i].length);
+				adjStart += adjCount;
+				pathStart += paths[i].length;
+			}
+			for (OEMM.Node node: oemm.leaves)
+			{
+				if (node.adjLeaves == null)
+					continue;
+				for (int k = 0, n = node.adjLeaves.size(); k < n; k++)
+					out.writeInt(node.adjLeaves.get(k));
+			}
+			for (byte [] path: paths)
+				out.write(path);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static byte [] encodePath(String [] components)
+	{
+		if (components == null || components.length == 0)
+			return new byte[0];
+		StringBuilder sb = new StringBuilder(components[0]);
+		for (int i = 1; i < components.length; i++)
+			sb.append(PATH_SEPARATOR).append(components[i]);
+		return sb.toString().getBytes(UTF8);
+	}
+
+	private int get(int leaf, int field)
+	{
+		if (leaf < 0 || leaf >= nrLeaves)
+			throw new IndexOutOfBoundsException("Leaf "+leaf+" not found, number of leaves: "+nrLeaves);
+		return buffer.getInt(HEADER_SIZE + leaf * RECORD_SIZE + 4 * field);
+	}
+
+	/**
+	 * Returns number of leaves.
+	 *
+	 * @return number of leaves
+	 */
+	public int getNumberOfLeaves()
+	{
+		return nrLeaves;
+	}
+
+	/**
+	 * Returns a copy of {@link OEMM#x0}.
+	 *
+	 * @return double/integer conversion factors
+	 */
+	public double [] getX0()
+	{
+		return x0.clone();
+	}
+
+	public int getI0(int leaf)
+	{
+		return get(leaf, I0);
+	}
+
+	public int getJ0(int leaf)
+	{
+		return get(leaf, J0);
+	}
+
+	public int getK0(int leaf)
+	{
+		return get(leaf, K0);
+	}
+
+	public int getSize(int leaf)
+	{
+		return get(leaf, SIZE);
+	}
+
+	public int getNumberOfTriangles(int leaf)
+	{
+		return get(leaf, TN);
+	}
+
+	public int getNumberOfVertices(int leaf)
+	{
+		return get(leaf, VN);
+	}
+
+	public int getMinIndex(int leaf)
+	{
+		return get(leaf, MIN_INDEX);
+	}
+
+	public int getMaxIndex(int leaf)
+	{
+		return get(leaf, MAX_INDEX);
+	}
+
+	public int getLeafIndex(int leaf)
+	{
+		return get(leaf, LEAF_INDEX);
+	}
+
+	/**
+	 * Returns leaves adjacent to a leaf.
+	 *
+	 * @param leaf  leaf number
+	 * @return indices of adjacent leaves
+	 */
+	public int [] getAdjacentLeaves(int leaf)
+	{
+		int start = get(leaf, ADJ_START);
+		int [] ret = new int[get(leaf, ADJ_COUNT)];
+		for (int k = 0; k < ret.length; k++)
+			ret[k] = buffer.getInt(adjPosition + 4 * (start + k));
+		return ret;
+	}
+
+	private String [] getPathComponents(int leaf)
+	{
+		int length = get(leaf, PATH_LENGTH);
+		if (length == 0)
+			return null;
+		byte [] bytes = new byte[length];
+		ByteBuffer bb = buffer.duplicate();
+		bb.position(pathPosition + get(leaf, PATH_START));
+		bb.get(bytes);
+		return new String(bytes, UTF8).split(String.valueOf(PATH_SEPARATOR));
+	}
+
+	/**
+	 * Returns file name of a leaf, relative to OEMM directory.
+	 *
+	 * @param leaf  leaf number
+	 * @return file name of this leaf, or <code>null</code>
+	 */
+	public String getFile(int leaf)
+	{
+		return getNode(leaf).file;
+	}
+
+	/**
+	 * Builds the node of a leaf.  It is not attached to any OEMM.
+	 *
+	 * @param leaf  leaf number
+	 * @return a new leaf node
+	 */
+	public OEMM.Node getNode(int leaf)
+	{
+		OEMM.Node node = new OEMM.Node(get(leaf, SIZE), get(leaf, I0), get(leaf, J0), get(leaf, K0));
+		node.tn = get(leaf, TN);
+		node.vn = get(leaf, VN);
+		node.minIndex = get(leaf, MIN_INDEX);
+		node.maxIndex = get(leaf, MAX_INDEX);
+		node.leafIndex = get(leaf, LEAF_INDEX);
+		node.adjLeaves = new TIntArrayList(getAdjacentLeaves(leaf));
+		node.setPathComponents(getPathComponents(leaf));
+		return node;
+	}
+
+	/**
+	 * Builds the whole OEMM.
+	 *
+	 * @param dir  OEMM directory
+	 * @return an {@link OEMM} instance
+	 */
+	OEMM buildOEMM(String dir)
+	{
+		OEMM ret = new OEMM(dir);
+		System.arraycopy(x0, 0, ret.x0, 0, 4);
+		ret.leaves = new OEMM.Node[nrLeaves];
+		for (int i = 0; i < nrLeaves; i++)
+		{
+			OEMM.Node n = getNode(i);
+			ret.insert(n);
+			ret.leaves[i] = n;
+		}
+		return ret;
+	}
+}
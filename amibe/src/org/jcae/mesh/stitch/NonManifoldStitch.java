@@ -58,7 +58,7 @@ public class NonManifoldStitch {
 	public NonManifoldStitch(Mesh mesh) {
 		this.mesh = mesh;
 		checkNonManifold();
-		kdTree = new TriangleKdTree(mesh);
+		kdTree = new TriangleKdTree(mesh, true);
 		workingGroup = mesh.getNumberOfGroups();
 		while(mesh.getGroupName(workingGroup) != null)
 			workingGroup ++;
@@ -25,11 +25,14 @@ import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.map.hash.TIntIntHashMap;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
@@ -109,8 +112,8 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile(groupsFilename));
 			int[] toReturn = new int[numberOfTrias];
-			for (int i = 0; i < numberOfTrias; i++)
-				toReturn[i] = ifrG.get(triasOffset+i);
+			if (ifrG.get(triasOffset, toReturn) != numberOfTrias)
+				throw new IOException("Group file is truncated");
 			ifrG.close();
 			return toReturn;
 		}
@@ -149,8 +152,8 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile("bgroups.bin"));
 			int[] toReturn = new int[numberOfBeams];
-			for (int i = 0; i < numberOfBeams; i++)
-				toReturn[i] = ifrG.get(beamsOffset+i);
+			if (ifrG.get(beamsOffset, toReturn) != numberOfBeams)
+				throw new IOException("Group file is truncated");
 			ifrG.close();
 			return toReturn;
 		}
@@ -161,8 +164,8 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			PrimitiveFileReaderFactory pfrf = new PrimitiveFileReaderFactory();
 			IntFileReader ifrG = pfrf.getIntReader(getBinFile("nodeGroups.bin"));
 			int[] toReturn = new int[numberOfNodes];
-			for (int i = 0; i < numberOfNodes; i++)
-				toReturn[i] = ifrG.get(nodesOffset+i);
+			if (ifrG.get(nodesOffset, toReturn) != numberOfNodes)
+				throw new IOException("Group file is truncated");
 			ifrG.close();
 			return toReturn;
 		}
@@ -264,6 +267,51 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 				getBinFile("triangles"+dim()+"d.bin"));
 		}
 		
+		/**
+		 * Return read-only views of the node coordinates of this submesh,
+		 * mapped in memory.  A mapping cannot be larger than 2GB, so views
+		 * are returned by chunks; each chunk contains whole nodes, and all
+		 * chunks but the last one have the same capacity.
+		 * Unlike {@link #getNodes}, there is nothing to close, files are
+		 * unmapped when views are garbage collected.
+		 */
+		public DoubleBuffer[] mapNodes() throws IOException
+		{
+			ByteBuffer[] bb = map(getBinFile("nodes"+dim()+"d.bin"),
+				nodesOffset, numberOfNodes, 8 * dim(), MAX_MAPPED_CHUNK);
+			DoubleBuffer[] toReturn = new DoubleBuffer[bb.length];
+			for (int i = 0; i < bb.length; i++)
+				toReturn[i] = bb[i].asDoubleBuffer();
+			return toReturn;
+		}
+
+		/**
+		 * Return read-only views of the triangles of this submesh, mapped
+		 * in memory.  Indices of outer triangles are negative, as in
+		 * {@link #getTriangles}.
+		 * @see #mapNodes
+		 */
+		public IntBuffer[] mapTriangles() throws IOException
+		{
+			return asIntBuffers(map(getBinFile("triangles"+dim()+"d.bin"),
+				triasOffset, numberOfTrias, 4 * 3, MAX_MAPPED_CHUNK));
+		}
+
+		/**
+		 * Return read-only views of triangle group file, mapped in
+		 * memory.  Triangle indices of a group are found at positions
+		 * {@link Group#getTriasOffset} to
+		 * <code>getTriasOffset() + getNumberOfTrias()</code>.
+		 * @see #mapNodes
+		 */
+		public IntBuffer[] mapGroups() throws IOException
+		{
+			File f = getBinFile(groupsFilename);
+			if (!f.exists())
+				return new IntBuffer[0];
+			return asIntBuffers(map(f, 0L, f.length() / 4, 4, MAX_MAPPED_CHUNK));
+		}
+
 		public float[] readNodes(int[] nodesID) throws IOException
 		{
 			DoubleFileReader dfr = getNodes();
@@ -395,6 +443,59 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 		}
 	}
 	
+	// Maximal size in bytes of a mapped chunk, must be lower than 2GB
+	private static final long MAX_MAPPED_CHUNK = 1L << 30;
+
+	/**
+	 * Map a range of records of a binary file into read-only big-endian
+	 * buffers of at most <code>maxChunk</code> bytes, which contain whole
+	 * records.
+	 *
+	 * @param file  the binary file
+	 * @param first  index of the first record
+	 * @param count  number of records
+	 * @param recordSize  size in bytes of a record
+	 * @param maxChunk  maximal size in bytes of a buffer
+	 */
+	static ByteBuffer[] map(File file, long first, long count, int recordSize,
+		long maxChunk) throws IOException
+	{
+		long recordsByChunk = maxChunk / recordSize;
+		if (recordsByChunk <= 0)
+			throw new IllegalArgumentException("Chunk size is too small: "+maxChunk);
+		int nrChunks = (int) ((count + recordsByChunk - 1) / recordsByChunk);
+		ByteBuffer[] toReturn = new ByteBuffer[nrChunks];
+		if (nrChunks == 0)
+			return toReturn;
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel fc = in.getChannel();
+			if ((first + count) * recordSize > fc.size())
+				throw new IOException(file+" is truncated");
+			for (int i = 0; i < nrChunks; i++)
+			{
+				long n = Math.min(recordsByChunk, count - i * recordsByChunk);
+				toReturn[i] = fc.map(FileChannel.MapMode.READ_ONLY,
+					(first + i * recordsByChunk) * recordSize, n * recordSize);
+			}
+		}
+		finally
+		{
+			// Mappings remain valid after the channel is closed
+			in.close();
+		}
+		return toReturn;
+	}
+
+	private static IntBuffer[] asIntBuffers(ByteBuffer[] bb)
+	{
+		IntBuffer[] toReturn = new IntBuffer[bb.length];
+		for (int i = 0; i < bb.length; i++)
+			toReturn[i] = bb[i].asIntBuffer();
+		return toReturn;
+	}
+
 	private static class AFile
 	{
 		public String location;
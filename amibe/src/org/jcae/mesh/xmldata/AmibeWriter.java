@@ -354,6 +354,7 @@ public abstract class AmibeWriter {
 	private File fnode;
 	protected final void init(String path, boolean writeReferences) throws IOException
 	{
+		MeshCache.invalidate(path);
 		try {
 			new File(path).mkdirs();
 			nodeFName = "nodes" + dim() + "d.bin";
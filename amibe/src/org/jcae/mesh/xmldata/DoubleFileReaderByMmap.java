@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -79,7 +80,8 @@ public class DoubleFileReaderByMmap implements DoubleFileReader
 
 	public final int get(int index, double[] dst, int offset, int len) throws IOException
 	{
-		fc.position(index * 4L);
+		//Buffer cast is needed with Java 9 (see https://jira.mongodb.org/browse/JAVA-2559)
+		((Buffer)tb).position(index);
 		return get(dst, offset, len);
 	}
 
@@ -118,6 +118,7 @@ public class Groups
 			map.put(g, tri);
 		}
 		File groupsBin = new File(xmlDir, fileGroups);
+		MeshCache.invalidate(xmlDir);
 
 		File tmpGroupsBin=File.createTempFile("jcae_groups",".bin");
 		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
@@ -287,6 +288,7 @@ public class Groups
 		{
 			try
 			{
+				MeshCache.invalidate(xmlDir);
 				xmlDoc = org.jcae.mesh.xmldata.XMLHelper.parseXML(f);
 				modifyXMLGroups(xmlDoc);
 				org.jcae.mesh.xmldata.XMLHelper.writeXML(xmlDoc, f);
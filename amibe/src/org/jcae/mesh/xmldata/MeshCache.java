@@ -0,0 +1,485 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.metrics.Location;
+
+/**
+ * Keeps in memory the last mesh written by {@link MeshWriter#writeObject3D},
+ * so that {@link MeshReader#readObject3D} does not read it again from disk.
+ * This is useful in long-lived processes which run several algorithms on
+ * the same mesh, like <code>amibe-python/worker.py</code>.
+ *
+ * <p>
+ * The cache is disabled by default, it can be enabled by
+ * {@link #setEnabled} or by setting the
+ * <code>org.jcae.mesh.xmldata.MeshCache</code> system property.  A cached
+ * mesh contains the same data as the files which have been written, it is
+ * used only if these files have not been modified since then.  It is
+ * held by a soft reference and released when memory is low.
+ * </p>
+ * <p>
+ * Modification times may have a one second resolution, so they cannot
+ * tell whether files have been rewritten just after the mesh has been
+ * cached.  A random generation is also written into the directory with
+ * the cached mesh, {@link AmibeWriter} and {@link Groups} delete it when
+ * they write into this directory, even from another process.
+ * </p>
+ * <p>
+ * Meshes are copied into memory while they are written, this copy is
+ * dropped as soon as it becomes larger than {@link #setMaxSize}.
+ * </p>
+ */
+public final class MeshCache
+{
+	private static final Logger LOGGER = Logger.getLogger(MeshCache.class.getName());
+	private static volatile boolean enabled = Boolean.getBoolean(MeshCache.class.getName());
+	private static SoftReference<Entry> last;
+	private static volatile long maxSize = Runtime.getRuntime().maxMemory() / 8;
+	/** File containing the generation of a cached mesh, in the binary directory */
+	private static final String GENERATION = "generation";
+
+	private MeshCache()
+	{
+	}
+
+	public static void setEnabled(boolean enable)
+	{
+		enabled = enable;
+		if (!enable)
+			clear();
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Sets the maximal size of a cached mesh.  Larger meshes are not
+	 * cached, so that the cache never holds more than this amount of
+	 * memory.
+	 *
+	 * @param bytes  maximal size in bytes, default is one eighth of the
+	 *               maximal heap size
+	 */
+	public static void setMaxSize(long bytes)
+	{
+		maxSize = bytes;
+	}
+
+	public static long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/** Releases the cached mesh. */
+	public static synchronized void clear()
+	{
+		last = null;
+	}
+
+	/**
+	 * Returns the cached mesh of a directory.
+	 *
+	 * @param xmlDir  directory containing amibe files
+	 * @return cached mesh, or <code>null</code> if there is none or if
+	 *         files have been modified since this mesh has been cached
+	 */
+	static synchronized Entry get(String xmlDir) throws IOException
+	{
+		if (!enabled || last == null)
+			return null;
+		Entry e = last.get();
+		if (e == null)
+			return null;
+		if (!e.dir.equals(new File(xmlDir).getCanonicalFile()))
+			return null;
+		if (!e.generation.equals(readGeneration(e.dir)) ||
+			!Arrays.equals(e.stamp, stamp(e.dir)))
+		{
+			LOGGER.fine("Mesh has been modified in "+xmlDir);
+			last = null;
+			return null;
+		}
+		LOGGER.fine("Read mesh from cache: "+xmlDir);
+		return e;
+	}
+
+	private static synchronized void put(Entry e)
+	{
+		last = new SoftReference<Entry>(e);
+	}
+
+	/**
+	 * Invalidates cached meshes of a directory, in this process and in
+	 * other processes.  This method is called before writing into this
+	 * directory.
+	 *
+	 * @param xmlDir  directory containing amibe files
+	 */
+	static synchronized void invalidate(String xmlDir) throws IOException
+	{
+		File dir = new File(xmlDir).getCanonicalFile();
+		File generation = generationFile(dir);
+		if (generation.exists() && !generation.delete())
+			throw new IOException("Cannot delete "+generation);
+		if (last == null)
+			return;
+		Entry e = last.get();
+		if (e == null || e.dir.equals(dir))
+			last = null;
+	}
+
+	private static File generationFile(File dir)
+	{
+		return new File(new File(dir, JCAEXMLData.xml3dFilename+".files"), GENERATION);
+	}
+
+	/** Returns the generation of a directory, or null if there is none */
+	private static String readGeneration(File dir) throws IOException
+	{
+		File f = generationFile(dir);
+		if (!f.exists())
+			return null;
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try
+		{
+			return in.readUTF();
+		}
+		catch (IOException ex)
+		{
+			// Being written by another process
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/** Writes a new generation into a directory and returns it */
+	private static String writeGeneration(File dir) throws IOException
+	{
+		String ret = UUID.randomUUID().toString();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(generationFile(dir)));
+		try
+		{
+			out.writeUTF(ret);
+		}
+		finally
+		{
+			out.close();
+		}
+		return ret;
+	}
+
+	/** Returns size and modification time of all files of a mesh. */
+	private static long [] stamp(File dir)
+	{
+		File [] files = new File(dir, JCAEXMLData.xml3dFilename+".files").listFiles();
+		if (files == null)
+			files = new File[0];
+		Arrays.sort(files);
+		long [] ret = new long[2 * files.length + 2];
+		File xml = new File(dir, JCAEXMLData.xml3dFilename);
+		ret[0] = xml.length();
+		ret[1] = xml.lastModified();
+		for (int i = 0; i < files.length; i++)
+		{
+			ret[2 * i + 2] = files[i].length();
+			ret[2 * i + 3] = files[i].lastModified();
+		}
+		return ret;
+	}
+
+	/** Group of a cached mesh, see {@link AmibeReader.Group}. */
+	static final class Group
+	{
+		final String name;
+		final TIntArrayList triangles = new TIntArrayList();
+		final TIntArrayList beams = new TIntArrayList();
+		final TIntArrayList nodes = new TIntArrayList();
+		Group(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A cached mesh.  Its content is the same as what {@link AmibeReader}
+	 * would return for the first submesh.
+	 */
+	static final class Entry
+	{
+		private final File dir;
+		private final String generation;
+		private final long [] stamp;
+		final TDoubleArrayList nodes;
+		final TIntArrayList references;
+		final TIntArrayList triangles;
+		final TIntArrayList beams;
+		/** Groups, in the same order as {@link AmibeReader.SubMesh#getGroups} */
+		final Collection<Group> groups;
+		private Entry(Writer w, File dir, String generation, Collection<Group> groups)
+		{
+			this.dir = dir;
+			this.generation = generation;
+			stamp = stamp(dir);
+			nodes = w.nodes;
+			references = w.references;
+			triangles = w.triangles;
+			beams = w.beams;
+			this.groups = groups;
+		}
+	}
+
+	/**
+	 * Writer which also stores the mesh into the cache.  Meshes with
+	 * several submeshes, or when default groups are created, or larger
+	 * than {@link #getMaxSize}, are not cached.
+	 */
+	static final class Writer extends AmibeWriter.Dim3
+	{
+		private final String path;
+		private final boolean hasRef;
+		private final TDoubleArrayList nodes = new TDoubleArrayList();
+		private final TIntArrayList references = new TIntArrayList();
+		private final TIntArrayList triangles = new TIntArrayList();
+		private final TIntArrayList beams = new TIntArrayList();
+		private final List<Group> groups = new ArrayList<Group>();
+		private final List<Group> nodeGroups = new ArrayList<Group>();
+		private Group currentGroup;
+		private Group currentNodeGroup;
+		private boolean cacheable = true;
+		/** Estimated size of the copy, in bytes */
+		private long size;
+
+		Writer(String path, boolean hasRef) throws IOException
+		{
+			super(path, false, hasRef);
+			this.path = path;
+			this.hasRef = hasRef;
+		}
+
+		/**
+		 * Accounts for values added to the copy, and drops the copy if
+		 * it becomes too large.
+		 *
+		 * @param bytes  size of added values
+		 * @return <code>true</code> if values have to be added to the copy
+		 */
+		private boolean record(int bytes)
+		{
+			if (!cacheable)
+				return false;
+			size += bytes;
+			if (size > maxSize)
+			{
+				LOGGER.fine("Mesh is too large to be cached: "+path);
+				drop();
+			}
+			return cacheable;
+		}
+
+		/** Releases the copy, this mesh will not be cached */
+		private void drop()
+		{
+			cacheable = false;
+			nodes.clear(0);
+			references.clear(0);
+			triangles.clear(0);
+			beams.clear(0);
+			groups.clear();
+			nodeGroups.clear();
+			currentGroup = null;
+			currentNodeGroup = null;
+		}
+
+		@Override
+		public void addNodeRef(int n) throws IOException
+		{
+			super.addNodeRef(n);
+			if (hasRef && record(4))
+				references.add(n);
+		}
+
+		@Override
+		public void addNode(Location location) throws IOException
+		{
+			super.addNode(location);
+			if (record(24))
+			{
+				nodes.add(location.getX());
+				nodes.add(location.getY());
+				nodes.add(location.getZ());
+			}
+		}
+
+		@Override
+		public void addNode(double[] coords) throws IOException
+		{
+			super.addNode(coords);
+			if (record(24))
+				nodes.add(coords);
+		}
+
+		@Override
+		public void addNode(double x, double y, double z) throws IOException
+		{
+			super.addNode(x, y, z);
+			if (record(24))
+			{
+				nodes.add(x);
+				nodes.add(y);
+				nodes.add(z);
+			}
+		}
+
+		@Override
+		public void addTriangle(int i, int j, int k) throws IOException
+		{
+			super.addTriangle(i, j, k);
+			if (record(12))
+			{
+				triangles.add(i);
+				triangles.add(j);
+				triangles.add(k);
+			}
+		}
+
+		@Override
+		public void addTriangle(int[] indices) throws IOException
+		{
+			super.addTriangle(indices);
+			if (record(12))
+				triangles.add(indices, 0, 3);
+		}
+
+		@Override
+		public void addBeam(int i, int j) throws IOException
+		{
+			super.addBeam(i, j);
+			if (record(8))
+			{
+				beams.add(i);
+				beams.add(j);
+			}
+		}
+
+		@Override
+		public void nextSubMesh() throws IOException
+		{
+			super.nextSubMesh();
+			drop();
+		}
+
+		@Override
+		public void nextGroup(String name)
+		{
+			super.nextGroup(name);
+			if (cacheable)
+			{
+				currentGroup = new Group(name);
+				groups.add(currentGroup);
+			}
+		}
+
+		@Override
+		public void addTriaToGroup(int id) throws IOException
+		{
+			super.addTriaToGroup(id);
+			if (record(4))
+				currentGroup.triangles.add(id);
+		}
+
+		@Override
+		public void addBeamToGroup(int id) throws IOException
+		{
+			super.addBeamToGroup(id);
+			if (record(4))
+				currentGroup.beams.add(id);
+		}
+
+		@Override
+		public void nextNodeGroup(String name)
+		{
+			super.nextNodeGroup(name);
+			if (cacheable)
+			{
+				currentNodeGroup = new Group(name);
+				nodeGroups.add(currentNodeGroup);
+			}
+		}
+
+		@Override
+		public void addNodeToGroup(int nodeID) throws IOException
+		{
+			super.addNodeToGroup(nodeID);
+			if (record(4))
+				currentNodeGroup.nodes.add(nodeID);
+		}
+
+		@Override
+		public void setFixNoGroup(boolean b)
+		{
+			super.setFixNoGroup(b);
+			if (b)
+				drop();
+		}
+
+		@Override
+		public void finish() throws IOException
+		{
+			super.finish();
+			if (!cacheable)
+				return;
+			// Node groups with the same name as a group are ignored by
+			// AmibeReader, mimic this behavior
+			LinkedHashMap<String, Group> map = new LinkedHashMap<String, Group>();
+			for (Group g : groups)
+				map.put(g.name, g);
+			for (Group g : nodeGroups)
+			{
+				if (!map.containsKey(g.name))
+					map.put(g.name, g);
+			}
+			File dir = new File(path).getCanonicalFile();
+			put(new Entry(this, dir, writeGeneration(dir), map.values()));
+		}
+	}
+}
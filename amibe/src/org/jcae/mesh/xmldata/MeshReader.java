@@ -22,6 +22,7 @@
 package org.jcae.mesh.xmldata;
 
 import java.util.logging.Level;
+import org.jcae.mesh.amibe.ds.CompactMesh;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
@@ -56,6 +57,8 @@ import java.util.logging.Logger;
 public class MeshReader
 {
 	private static final Logger logger=Logger.getLogger(MeshReader.class.getName());
+	// Number of nodes or triangles read at once by readObject3D
+	private static final int BLOCK_SIZE = 1 << 16;
 	
 	/**
 	 * Loads an Amibe 2D XML file into an existing Mesh2D instance.
@@ -215,6 +218,12 @@ public class MeshReader
 	public static void readObject3D(Mesh mesh, String xmlDir, boolean buildAdjacency)
 		throws IOException
 	{
+		MeshCache.Entry cached = MeshCache.get(xmlDir);
+		if (cached != null)
+		{
+			readObject3D(mesh, cached, buildAdjacency);
+			return;
+		}
 		try {
 			AmibeReader.Dim3 reader = new AmibeReader.Dim3(xmlDir);
 			SubMesh subMesh = reader.getSubmeshes().get(0);
@@ -229,33 +238,29 @@ public class MeshReader
 			Vertex[] nodelist = new Vertex[numberOfNodes + 1];
 			nodelist[numberOfNodes] = mesh.outerVertex;
 			int label;
-			double[] coord = new double[3];
-			double[] bbmin = new double[3];
-			double[] bbmax = new double[3];
-			for (int j = 0; j < 3; j++) {
-				bbmin[j] = Double.MAX_VALUE;
-				bbmax[j] = Double.MIN_VALUE;
-			}
 			mesh.ensureCapacity(2 * numberOfNodes);
-			for (int i = 0; i < numberOfNodes; i++) {
-				dfrN.get(coord);
-				nodelist[i] = mesh.createVertex(coord[0], coord[1], coord[2]);
-				if (i < numberOfNodes - numberOfReferences) {
-					label = 0;
-				} else {
-					assert refs != null;
-					label = refs[i + numberOfReferences - numberOfNodes];
-				}
-				nodelist[i].setRef(label);
-				for (int j = 0; j < 3; j++) {
-					if (coord[j] > bbmax[j]) {
-						bbmax[j] = coord[j];
-					}
-					if (coord[j] < bbmin[j]) {
-						bbmin[j] = coord[j];
+			// Nodes and triangles are read by blocks, the first block is
+			// read with an absolute get to honor submesh offsets.
+			double[] coord = new double[3 * Math.min(numberOfNodes, BLOCK_SIZE)];
+			for (int i = 0; i < numberOfNodes; ) {
+				int nr = Math.min(numberOfNodes - i, BLOCK_SIZE);
+				int read = i == 0 ?
+					dfrN.get(3 * (int) subMesh.getNodesOffset(), coord, 0, 3 * nr) :
+					dfrN.get(coord, 0, 3 * nr);
+				if (read != 3 * nr)
+					throw new IOException("Node file is truncated in "+xmlDir);
+				for (int k = 0; k < nr; k++, i++) {
+					nodelist[i] = mesh.createVertex(coord[3*k], coord[3*k+1], coord[3*k+2]);
+					if (i < numberOfNodes - numberOfReferences) {
+						label = 0;
+					} else {
+						assert refs != null;
+						label = refs[i + numberOfReferences - numberOfNodes];
 					}
+					nodelist[i].setRef(label);
 				}
 			}
+			coord = null;
 			dfrN.close();
 			if (mesh.hasNodes()) {
 				for (int i = 0; i < numberOfNodes; i++) {
@@ -268,21 +273,29 @@ public class MeshReader
 			if(numberOfTriangles > 0)
 			{
 				IntFileReader ifrT = subMesh.getTriangles();
-				int[] ind = new int[3];
+				int[] ind = new int[3 * Math.min(numberOfTriangles, BLOCK_SIZE)];
 				Vertex[] pts = new Vertex[3];
-				for (int i = 0; i < numberOfTriangles; i++) {
-					boolean outer = false;
-					for (int j = 0; j < 3; j++) {
-						ind[j] = ifrT.get();
-						if (ind[j] < 0) {
-							ind[j] = -ind[j];
-							outer = true;
+				for (int i = 0; i < numberOfTriangles; ) {
+					int nr = Math.min(numberOfTriangles - i, BLOCK_SIZE);
+					int read = i == 0 ?
+						ifrT.get(3 * (int) subMesh.getTriasOffset(), ind, 0, 3 * nr) :
+						ifrT.get(ind, 0, 3 * nr);
+					if (read != 3 * nr)
+						throw new IOException("Triangle file is truncated in "+xmlDir);
+					for (int k = 0; k < nr; k++, i++) {
+						boolean outer = false;
+						for (int j = 0; j < 3; j++) {
+							int n = ind[3*k+j];
+							if (n < 0) {
+								n = -n;
+								outer = true;
+							}
+							pts[j] = nodelist[n];
+						}
+						if (!outer) {
+							facelist[i] = mesh.createTriangle(pts[0], pts[1], pts[2]);
+							mesh.add(facelist[i]);
 						}
-						pts[j] = nodelist[ind[j]];
-					}
-					if (!outer) {
-						facelist[i] = mesh.createTriangle(pts[0], pts[1], pts[2]);
-						mesh.add(facelist[i]);
 					}
 				}
 				ifrT.close();
@@ -332,6 +345,172 @@ public class MeshReader
 		}
 	}
 
+	/**
+	 * Loads a mesh from {@link MeshCache}.  This must give the same result
+	 * as reading files, see {@link #readObject3D(Mesh, String, boolean)}.
+	 */
+	private static void readObject3D(Mesh mesh, MeshCache.Entry cached, boolean buildAdjacency)
+	{
+		int numberOfNodes = cached.nodes.size() / 3;
+		int numberOfReferences = cached.references.size();
+		if (numberOfReferences > 0)
+			mesh.setPersistentReferences(true);
+		Vertex[] nodelist = new Vertex[numberOfNodes + 1];
+		nodelist[numberOfNodes] = mesh.outerVertex;
+		mesh.ensureCapacity(2 * numberOfNodes);
+		for (int i = 0; i < numberOfNodes; i++)
+		{
+			nodelist[i] = mesh.createVertex(cached.nodes.get(3*i),
+				cached.nodes.get(3*i+1), cached.nodes.get(3*i+2));
+			if (i >= numberOfNodes - numberOfReferences)
+				nodelist[i].setRef(cached.references.get(i + numberOfReferences - numberOfNodes));
+			else
+				nodelist[i].setRef(0);
+		}
+		if (mesh.hasNodes())
+		{
+			for (int i = 0; i < numberOfNodes; i++)
+				mesh.add(nodelist[i]);
+		}
+
+		int numberOfTriangles = cached.triangles.size() / 3;
+		Triangle[] facelist = new Triangle[numberOfTriangles];
+		Vertex[] pts = new Vertex[3];
+		for (int i = 0; i < numberOfTriangles; i++)
+		{
+			boolean outer = false;
+			for (int j = 0; j < 3; j++)
+			{
+				int n = cached.triangles.get(3*i+j);
+				if (n < 0)
+				{
+					n = -n;
+					outer = true;
+				}
+				pts[j] = nodelist[n];
+			}
+			if (!outer)
+			{
+				facelist[i] = mesh.createTriangle(pts[0], pts[1], pts[2]);
+				mesh.add(facelist[i]);
+			}
+		}
+
+		for (int i = 0, n = cached.beams.size(); i < n; i += 2)
+			mesh.addBeam(nodelist[cached.beams.get(i)], nodelist[cached.beams.get(i+1)], 0, false);
+
+		int id = 1;
+		for (MeshCache.Group g : cached.groups)
+		{
+			mesh.setGroupName(id, g.name);
+			for (int i = 0, n = g.triangles.size(); i < n; i++)
+				facelist[g.triangles.get(i)].setGroupId(id);
+			for (int i = 0, n = g.beams.size(); i < n; i++)
+				mesh.setBeamGroup(g.beams.get(i), id);
+			for (int i = 0, n = g.nodes.size(); i < n; i++)
+				mesh.setVertexGroup(nodelist[g.nodes.get(i)], g.name);
+			id++;
+		}
+		if (mesh.hasAdjacency() && buildAdjacency)
+		{
+			logger.fine("Build mesh adjacency");
+			mesh.buildAdjacency();
+		}
+	}
+
+	/**
+	 * Loads an Amibe 3D XML file into a <code>CompactMesh</code> instance.
+	 * Nodes and triangles are read by large blocks into primitive arrays,
+	 * no object is created per node or per triangle.  Beams and node
+	 * groups are ignored.
+	 *
+	 * @param xmlDir   directory containing XML files
+	 * @param buildAdjacency  true to build adjacency after reading the mesh
+	 * @return a new mesh
+	 */
+	public static CompactMesh readCompactMesh(String xmlDir, boolean buildAdjacency)
+		throws IOException
+	{
+		try {
+			AmibeReader.Dim3 reader = new AmibeReader.Dim3(xmlDir);
+			SubMesh subMesh = reader.getSubmeshes().get(0);
+			int numberOfNodes = subMesh.getNumberOfNodes();
+			int numberOfReferences = subMesh.getNumberOfReferences();
+			double[] coords = new double[3 * numberOfNodes];
+			DoubleFileReader dfrN = subMesh.getNodes();
+			if (dfrN.get(coords) != coords.length)
+				throw new IOException("Node file is truncated in "+xmlDir);
+			dfrN.close();
+			int[] refs = null;
+			if (numberOfReferences > 0) {
+				int[] r = subMesh.getReferences();
+				refs = new int[numberOfNodes];
+				System.arraycopy(r, 0, refs, numberOfNodes - numberOfReferences, numberOfReferences);
+			}
+
+			int numberOfTriangles = subMesh.getNumberOfTrias();
+			int[] trias = new int[3 * numberOfTriangles];
+			// Outer triangles are skipped, index maps file indices to mesh indices
+			int[] index = null;
+			int nrTriangles = numberOfTriangles;
+			if (numberOfTriangles > 0) {
+				IntFileReader ifrT = subMesh.getTriangles();
+				if (ifrT.get(trias) != trias.length)
+					throw new IOException("Triangle file is truncated in "+xmlDir);
+				ifrT.close();
+				nrTriangles = 0;
+				for (int i = 0; i < numberOfTriangles; i++) {
+					if (trias[3*i] < 0 || trias[3*i+1] < 0 || trias[3*i+2] < 0) {
+						if (index == null) {
+							index = new int[numberOfTriangles];
+							for (int j = 0; j < i; j++)
+								index[j] = j;
+						}
+						index[i] = -1;
+						continue;
+					}
+					if (index != null) {
+						index[i] = nrTriangles;
+						System.arraycopy(trias, 3*i, trias, 3*nrTriangles, 3);
+					}
+					nrTriangles++;
+				}
+				if (nrTriangles < numberOfTriangles) {
+					int[] tmp = new int[3 * nrTriangles];
+					System.arraycopy(trias, 0, tmp, 0, tmp.length);
+					trias = tmp;
+				}
+			}
+
+			CompactMesh mesh = new CompactMesh(coords, trias, new int[nrTriangles], refs);
+			int[] groups = mesh.getGroups();
+			int id = 1;
+			for (AmibeReader.Group g : subMesh.getGroups()) {
+				mesh.setGroupName(id, g.getName());
+				for (int j : g.readTria3Ids())
+				{
+					if (index != null)
+						j = index[j];
+					if (j < 0)
+						continue;
+					if (groups[j] > 0)
+						logger.warning("Trying to tag triangle "+j+" as "+
+							g.getName()+"/"+id+" while it's alread tagged as "+
+							mesh.getGroupName(groups[j])+"/"+groups[j]+".");
+					groups[j] = id;
+				}
+				id++;
+			}
+			if (buildAdjacency) {
+				logger.fine("Build mesh adjacency");
+				mesh.buildAdjacency();
+			}
+			return mesh;
+		} catch (SAXException ex) {
+			throw new IOException(ex);
+		}
+	}
+
 	// Method previously in MMesh3DReader, remove it?
 	public static int [] getInfos(String xmlDir)
 	{
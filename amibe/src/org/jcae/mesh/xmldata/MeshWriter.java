@@ -277,8 +277,9 @@ public class MeshWriter
 			nodelist.addAll(submesh.getBeams());
 		}
 		TObjectIntHashMap<Vertex> nodeIndex=new TObjectIntHashMap<Vertex>(nodelist.size());
-		AmibeWriter.Dim3 aw = new AmibeWriter.Dim3(xmlDir, false,
-			submesh.hasPersistentReferences());
+		AmibeWriter.Dim3 aw = MeshCache.isEnabled() ?
+			new MeshCache.Writer(xmlDir, submesh.hasPersistentReferences()) :
+			new AmibeWriter.Dim3(xmlDir, false, submesh.hasPersistentReferences());
 		if (brepFile != null)
 			aw.setShape(brepFile);
 
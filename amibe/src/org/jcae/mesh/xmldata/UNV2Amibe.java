@@ -30,9 +30,11 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.io.StringReader;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import gnu.trove.list.array.TIntArrayList;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.StringTokenizer;
@@ -53,6 +55,8 @@ import java.util.zip.GZIPInputStream;
  * if setStripedUnv as been called.</li>
  * <li>If the input file do not contains any groups, a group with all triangles is
  * created.</li>
+ * <li>Uncompressed files are memory-mapped and parsed byte by byte, nodes and
+ * elements are parsed concurrently, see {@link UNVMappedReader}.</li>
  * </ul>
  * @author Jerome Robert
  */
@@ -159,7 +163,7 @@ public class UNV2Amibe
 		 * Element type in the temporary file used to separate beams from trias
 		 * in groups.
 		 */
-		public static int TRIAS = 0, BEAMS = 1;
+		public static final int TRIAS = 0, BEAMS = 1;
 		private FileChannel channel;
 		private File file;
 		private ByteBuffer buffer = ByteBuffer.allocate(8);
@@ -207,6 +211,8 @@ public class UNV2Amibe
 	private String stripedUnvFile;
 	private IDMapping idMapping;
 	private double scale = 1.0;
+	private long chunkSize = UNVMappedReader.CHUNK_SIZE;
+	private int elementChunkSize = UNVMappedReader.ELEMENT_CHUNK_SIZE;
 
 	/** a list of 2412 elements which won't be store in the amibe file */
 	private final ArrayList<Element> elements=new ArrayList<Element>();
@@ -218,13 +224,22 @@ public class UNV2Amibe
 
 	public final void importMesh(File input, String output) throws IOException
 	{
-		BufferedReader br;
 		if (input.getName().endsWith(".gz"))
-			br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(input))));
-		else
-			br = new BufferedReader(new FileReader(input));
-		importMesh(br, output);
-		br.close();
+		{
+			BufferedReader br = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(input))));
+			importMesh(br, output);
+			br.close();
+			return;
+		}
+		AmibeWriter.Dim3 out = new AmibeWriter.Dim3(output);
+		out.setFixNoGroup(true);
+		UNVMappedReader reader = new UNVMappedReader(input);
+		reader.setChunkSizes(chunkSize, elementChunkSize);
+		importMappedMesh(reader, out);
+		out.finish();
+		if(stripedUnvFile!=null)
+			writeStripedUnv(out);
 	}
 
 	public final void importMesh(BufferedReader in, String outputDir) throws IOException
@@ -283,6 +298,136 @@ public class UNV2Amibe
 		idMapping.close();
 	}
 
+	private void importMappedMesh(UNVMappedReader reader, AmibeWriter.Dim3 out) throws IOException
+	{
+		// Amibe ID and type of triangles and beams, stored as
+		// (ID << 1 | type)
+		TIntArrayList mapping = new TIntArrayList();
+		double unit = 1.0;
+		for (UNVMappedReader.Dataset ds : reader.getDatasets())
+		{
+			switch (ds.type)
+			{
+				case 2411:
+				case 781:
+					double u = unit / scale;
+					double[] coords = reader.getNodes(ds);
+					for (int i = 0; i < coords.length; i += 3)
+						out.addNode(coords[i] / u, coords[i+1] / u, coords[i+2] / u);
+					break;
+				case 2412:
+					convertFaces(reader, ds, mapping, out);
+					break;
+				case 164:
+					unit = readUnit(new BufferedReader(new StringReader(
+						reader.getString(ds.start, ds.end) + "    -1\n")));
+					break;
+				case 2430:
+				case 2435:
+				case 2467:
+				case 2477:
+					convertGroups(reader.cursor(ds), ds.type, mapping, out);
+					break;
+				default:
+					// skip this dataset
+			}
+		}
+	}
+
+	private void convertFaces(UNVMappedReader reader, UNVMappedReader.Dataset ds,
+		TIntArrayList mapping, AmibeWriter.Dim3 out) throws IOException
+	{
+		LOGGER.fine("Reading triangles");
+		TIntArrayList kinds = new TIntArrayList();
+		TIntArrayList nodes = new TIntArrayList();
+		TIntArrayList unknownTypes = new TIntArrayList();
+		reader.getElements(ds, kinds, nodes, unknownTypes);
+		for (int i = 0; i < unknownTypes.size(); i++)
+			LOGGER.log(Level.WARNING, "Warning: Section 2412, type {0} unknown", unknownTypes.get(i));
+		int nbTrias = 0;
+		int nbBeams = 0;
+		int k = 0;
+		for (int i = 0; i < kinds.size(); i++)
+		{
+			switch (kinds.get(i))
+			{
+				case UNVMappedReader.TRIANGLE:
+					out.addTriangle(nodes.get(k) - 1, nodes.get(k+1) - 1, nodes.get(k+2) - 1);
+					k += 3;
+					mapping.add((nbTrias << 1) | IDMapping.TRIAS);
+					nbTrias++;
+					break;
+				case UNVMappedReader.BEAM:
+					out.addBeam(nodes.get(k) - 1, nodes.get(k+1) - 1);
+					k += 2;
+					mapping.add((nbBeams << 1) | IDMapping.BEAMS);
+					nbBeams++;
+					break;
+				default:
+					// not imported
+			}
+		}
+	}
+
+	private void convertGroups(UNVMappedReader.Cursor c, int type, TIntArrayList mapping,
+		AmibeWriter out) throws IOException
+	{
+		boolean fourValues = type == 2435 || type == 2467 || type == 2477;
+		while (!c.atEndOfData())
+		{
+			// Number of elements is the last value of first record
+			int nbelem = 0;
+			while (!c.atEndOfLine())
+				nbelem = c.nextInt();
+			c.skipLine();
+			String groupName = c.restOfLine().trim();
+			boolean skipGroup = skipGroup(groupName);
+			boolean groupCreated = false;
+			for (int i = 0; i < nbelem; i++)
+			{
+				int entityType = c.nextInt();
+				int ind = c.nextInt();
+				if (fourValues)
+				{
+					c.nextInt();
+					c.nextInt();
+				}
+				if (ind == 0 || skipGroup)
+					continue;
+				ind--;
+				if (entityType == 8)
+				{
+					if (ind >= mapping.size())
+					{
+						LOGGER.log(Level.WARNING, "Group {0}: element {1} not found", new Object[]{groupName, ind + 1});
+						continue;
+					}
+					if(!groupCreated)
+					{
+						out.nextGroup(groupName);
+						groupCreated = true;
+					}
+					int m = mapping.get(ind);
+					if ((m & 1) == IDMapping.BEAMS)
+						out.addBeamToGroup(m >> 1);
+					else
+						out.addTriaToGroup(m >> 1);
+				}
+				else if (entityType == 7)
+				{
+					if(!groupCreated)
+					{
+						out.nextNodeGroup(groupName);
+						groupCreated = true;
+					}
+					out.addNodeToGroup(ind);
+				}
+			}
+			if (nbelem > 0)
+				c.skipLine();
+		}
+	}
+
 	/** List of nodes used in elements which are not written in the amibe file */
 	private int[] computeListOfNodes()
 	{
@@ -542,6 +687,16 @@ public class UNV2Amibe
 		stripedUnvFile=file;
 	}
 
+	/**
+	 * Sets the size of chunks which are parsed concurrently when reading
+	 * uncompressed files, see {@link UNVMappedReader#setChunkSizes}.
+	 */
+	void setChunkSizes(long bytes, int elements)
+	{
+		chunkSize = bytes;
+		elementChunkSize = elements;
+	}
+
 	public void setScale(double scale) {
 		this.scale = scale;
 	}
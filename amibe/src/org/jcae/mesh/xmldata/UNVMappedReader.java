@@ -0,0 +1,704 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+
+package org.jcae.mesh.xmldata;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Byte-level access to a memory-mapped UNV file.  Files larger than 2GB
+ * are mapped by segments.  Numbers are parsed directly from bytes,
+ * without creating strings, and node and element datasets are parsed
+ * concurrently by chunks.
+ */
+final class UNVMappedReader
+{
+	/** Mapped segments are 1GB large */
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1L;
+	/** Default minimal number of bytes processed by a task */
+	static final long CHUNK_SIZE = 4L << 20;
+	/** Default number of elements processed by a task */
+	static final int ELEMENT_CHUNK_SIZE = 1 << 16;
+	private static final double [] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Kinds of elements found in 2412 datasets */
+	static final int OTHER = 0;
+	static final int TRIANGLE = 1;
+	static final int BEAM = 2;
+
+	private final MappedByteBuffer [] segments;
+	private final long length;
+	private long chunkSize = CHUNK_SIZE;
+	private int elementChunkSize = ELEMENT_CHUNK_SIZE;
+
+	/** A dataset, delimited by two lines containing -1 */
+	static final class Dataset
+	{
+		/** Dataset number */
+		final int type;
+		/** First byte of dataset content, after dataset number */
+		final long start;
+		/** First byte of closing delimiter */
+		final long end;
+		Dataset(int type, long start, long end)
+		{
+			this.type = type;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	UNVMappedReader(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel fc = raf.getChannel();
+			length = fc.size();
+			int n = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+			segments = new MappedByteBuffer[n];
+			for (int i = 0; i < n; i++)
+			{
+				long start = ((long) i) << SEGMENT_BITS;
+				segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.min(length - start, SEGMENT_MASK + 1L));
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	long length()
+	{
+		return length;
+	}
+
+	/**
+	 * Sets the size of chunks processed by concurrent tasks.  Default
+	 * values are {@link #CHUNK_SIZE} and {@link #ELEMENT_CHUNK_SIZE},
+	 * small values are only useful to test chunk boundaries.
+	 *
+	 * @param bytes  minimal number of bytes processed by a task
+	 * @param elements  number of elements processed by a task
+	 */
+	void setChunkSizes(long bytes, int elements)
+	{
+		if (bytes < 1L || elements < 1)
+			throw new IllegalArgumentException("Chunk sizes must be positive: "+bytes+", "+elements);
+		chunkSize = bytes;
+		elementChunkSize = elements;
+	}
+
+	private byte get(long pos)
+	{
+		return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+	}
+
+	/** Returns the position after next end of line, or end of file */
+	private long nextLine(long pos, long end)
+	{
+		while (pos < end && get(pos) != '\n')
+			pos++;
+		return pos < end ? pos + 1 : end;
+	}
+
+	/** Returns the first line start at or after <code>pos</code> */
+	private long lineStart(long pos, long end)
+	{
+		if (pos == 0 || pos >= end || get(pos - 1) == '\n')
+			return Math.min(pos, end);
+		return nextLine(pos, end);
+	}
+
+	/** Tells whether the line starting at <code>pos</code> only contains -1 */
+	private boolean isDelimiter(long pos)
+	{
+		while (pos < length && (get(pos) == ' ' || get(pos) == '\t'))
+			pos++;
+		if (pos + 1 >= length || get(pos) != '-' || get(pos + 1) != '1')
+			return false;
+		pos += 2;
+		while (pos < length)
+		{
+			byte b = get(pos);
+			if (b == '\n')
+				return true;
+			if (b != ' ' && b != '\t' && b != '\r')
+				return false;
+			pos++;
+		}
+		return true;
+	}
+
+	String getString(long start, long end)
+	{
+		byte [] bytes = new byte[(int) (end - start)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = get(start + i);
+		return new String(bytes);
+	}
+
+	/** Returns a cursor at the beginning of dataset content */
+	Cursor cursor(Dataset ds)
+	{
+		return new Cursor(ds.start, ds.end);
+	}
+
+	/**
+	 * Finds all datasets.  Delimiters are searched concurrently.
+	 */
+	List<Dataset> getDatasets() throws IOException
+	{
+		int nrChunks = (int) Math.max(1L, length / chunkSize);
+		TLongArrayList [] found = new TLongArrayList[nrChunks];
+		ForkJoinPool.commonPool().invoke(new FindDelimiters(found, 0, nrChunks));
+		TLongArrayList delimiters = new TLongArrayList();
+		for (TLongArrayList l: found)
+			delimiters.addAll(l);
+		if (delimiters.size() % 2 != 0)
+			throw new IOException("Unterminated UNV dataset");
+		List<Dataset> ret = new ArrayList<Dataset>(delimiters.size() / 2);
+		for (int i = 0; i < delimiters.size(); i += 2)
+		{
+			Cursor c = new Cursor(nextLine(delimiters.get(i), length), delimiters.get(i + 1));
+			int type = c.atEndOfData() ? -1 : c.nextInt();
+			ret.add(new Dataset(type, nextLine(c.pos, c.end), c.end));
+		}
+		return ret;
+	}
+
+	private final class FindDelimiters extends RecursiveAction
+	{
+		private static final long serialVersionUID = -5237690918367458135L;
+		private final TLongArrayList [] found;
+		private final int from, to;
+		FindDelimiters(TLongArrayList [] found, int from, int to)
+		{
+			this.found = found;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new FindDelimiters(found, from, middle),
+					new FindDelimiters(found, middle, to));
+				return;
+			}
+			TLongArrayList list = new TLongArrayList();
+			long end = to == found.length ? length : to * chunkSize;
+			for (long pos = lineStart(from * chunkSize, length); pos < end; pos = nextLine(pos, length))
+			{
+				if (isDelimiter(pos))
+					list.add(pos);
+			}
+			found[from] = list;
+		}
+	}
+
+	/**
+	 * Parses nodes of a 2411 or 781 dataset.  Each node is described by
+	 * two lines: node label and attributes, then coordinates; missing
+	 * third coordinate is set to 0.
+	 *
+	 * @return node coordinates
+	 */
+	double [] getNodes(Dataset ds)
+	{
+		long size = ds.end - ds.start;
+		int nrChunks = (int) Math.max(1L, size / chunkSize);
+		long [] bounds = new long[nrChunks + 1];
+		for (int i = 0; i < nrChunks; i++)
+			bounds[i] = lineStart(ds.start + i * (size / nrChunks), ds.end);
+		bounds[nrChunks] = ds.end;
+		// Count lines to know whether chunks begin with a label line
+		// or a coordinate line
+		int [] nrLines = new int[nrChunks];
+		ForkJoinPool.commonPool().invoke(new CountLines(bounds, nrLines, 0, nrChunks));
+		boolean [] skipFirst = new boolean[nrChunks];
+		long lines = 0L;
+		for (int i = 0; i < nrChunks; i++)
+		{
+			skipFirst[i] = (lines % 2L) != 0L;
+			lines += nrLines[i];
+		}
+		double [][] coords = new double[nrChunks][];
+		ForkJoinPool.commonPool().invoke(new ParseNodes(bounds, skipFirst, coords, 0, nrChunks));
+		int total = 0;
+		for (double [] c: coords)
+			total += c.length;
+		double [] ret = new double[total];
+		int offset = 0;
+		for (double [] c: coords)
+		{
+			System.arraycopy(c, 0, ret, offset, c.length);
+			offset += c.length;
+		}
+		return ret;
+	}
+
+	private final class CountLines extends RecursiveAction
+	{
+		private static final long serialVersionUID = 2874046297123866471L;
+		private final long [] bounds;
+		private final int [] nrLines;
+		private final int from, to;
+		CountLines(long [] bounds, int [] nrLines, int from, int to)
+		{
+			this.bounds = bounds;
+			this.nrLines = nrLines;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new CountLines(bounds, nrLines, from, middle),
+					new CountLines(bounds, nrLines, middle, to));
+				return;
+			}
+			int cnt = 0;
+			for (long pos = bounds[from]; pos < bounds[to]; pos = nextLine(pos, bounds[to]))
+				cnt++;
+			nrLines[from] = cnt;
+		}
+	}
+
+	private final class ParseNodes extends RecursiveAction
+	{
+		private static final long serialVersionUID = -7920155462826180931L;
+		private final long [] bounds;
+		private final boolean [] skipFirst;
+		private final double [][] coords;
+		private final int from, to;
+		ParseNodes(long [] bounds, boolean [] skipFirst, double [][] coords, int from, int to)
+		{
+			this.bounds = bounds;
+			this.skipFirst = skipFirst;
+			this.coords = coords;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParseNodes(bounds, skipFirst, coords, from, middle),
+					new ParseNodes(bounds, skipFirst, coords, middle, to));
+				return;
+			}
+			long end = bounds[bounds.length - 1];
+			TDoubleArrayList list = new TDoubleArrayList((int) ((bounds[to] - bounds[from]) / 40L));
+			Cursor c = new Cursor(bounds[from], end);
+			if (skipFirst[from])
+				c.pos = nextLine(c.pos, end);
+			while (c.pos < bounds[to] && !c.atEndOfData())
+			{
+				// Skip label line
+				c.pos = nextLine(c.pos, end);
+				list.add(c.nextDouble());
+				list.add(c.nextDouble());
+				list.add(c.atEndOfLine() ? 0.0 : c.nextDouble());
+				c.pos = nextLine(c.pos, end);
+			}
+			coords[from] = list.toArray();
+		}
+	}
+
+	/** Number of lines following the first record of a 2412 element */
+	private static int getNumberOfLines(int type, int nrNodes)
+	{
+		switch (type)
+		{
+			case 11:
+			case 21:
+			case 22:
+			case 23:
+			case 24:
+				// Beams have a record for orientation
+				return 2;
+			default:
+				return (nrNodes + 7) / 8;
+		}
+	}
+
+	/**
+	 * Parses elements of a 2412 dataset.  Element boundaries are found
+	 * by a first sequential pass which only reads element types and
+	 * number of nodes, then elements are parsed concurrently.
+	 *
+	 * @param kinds  kind of each element, {@link #TRIANGLE}, {@link #BEAM}
+	 *               or {@link #OTHER}
+	 * @param nodes  node labels of triangles (3 per triangle) and beams
+	 *               (2 per beam), in order of appearance
+	 * @param unknownTypes  unknown element types
+	 */
+	void getElements(Dataset ds, TIntArrayList kinds, TIntArrayList nodes, TIntArrayList unknownTypes)
+	{
+		TLongArrayList bounds = new TLongArrayList();
+		Cursor c = new Cursor(ds.start, ds.end);
+		int cnt = 0;
+		while (!c.atEndOfData())
+		{
+			if (cnt % elementChunkSize == 0)
+				bounds.add(c.pos);
+			c.nextInt();
+			int type = c.nextInt();
+			c.nextInt();
+			c.nextInt();
+			c.nextInt();
+			int nrNodes = c.nextInt();
+			c.pos = nextLine(c.pos, ds.end);
+			for (int i = getNumberOfLines(type, nrNodes); i > 0; i--)
+				c.pos = nextLine(c.pos, ds.end);
+			cnt++;
+		}
+		bounds.add(ds.end);
+		int nrChunks = bounds.size() - 1;
+		int [][] chunkKinds = new int[nrChunks][];
+		int [][] chunkNodes = new int[nrChunks][];
+		int [][] chunkUnknown = new int[nrChunks][];
+		if (nrChunks > 0)
+			ForkJoinPool.commonPool().invoke(new ParseElements(bounds.toArray(),
+				chunkKinds, chunkNodes, chunkUnknown, 0, nrChunks));
+		kinds.ensureCapacity(cnt);
+		for (int i = 0; i < nrChunks; i++)
+		{
+			kinds.add(chunkKinds[i]);
+			nodes.add(chunkNodes[i]);
+			for (int t: chunkUnknown[i])
+			{
+				if (!unknownTypes.contains(t))
+					unknownTypes.add(t);
+			}
+		}
+	}
+
+	private final class ParseElements extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4416380652196263617L;
+		private final long [] bounds;
+		private final int [][] kinds, nodes, unknown;
+		private final int from, to;
+		ParseElements(long [] bounds, int [][] kinds, int [][] nodes, int [][] unknown, int from, int to)
+		{
+			this.bounds = bounds;
+			this.kinds = kinds;
+			this.nodes = nodes;
+			this.unknown = unknown;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParseElements(bounds, kinds, nodes, unknown, from, middle),
+					new ParseElements(bounds, kinds, nodes, unknown, middle, to));
+				return;
+			}
+			long end = bounds[to];
+			TIntArrayList k = new TIntArrayList(elementChunkSize);
+			TIntArrayList n = new TIntArrayList(3 * elementChunkSize);
+			TIntArrayList u = new TIntArrayList();
+			int [] buf = new int[8];
+			Cursor c = new Cursor(bounds[from], end);
+			while (!c.atEndOfData())
+			{
+				c.nextInt();
+				int type = c.nextInt();
+				c.nextInt();
+				c.nextInt();
+				c.nextInt();
+				int nrNodes = c.nextInt();
+				c.pos = nextLine(c.pos, end);
+				int nrLines = getNumberOfLines(type, nrNodes);
+				switch (type)
+				{
+					case 41:
+					case 51:
+					case 61:
+					case 74:
+					case 91:
+						// triangle
+						readInts(c, buf, 3);
+						n.add(buf, 0, 3);
+						k.add(TRIANGLE);
+						break;
+					case 42:
+					case 92:
+						// parabolic triangle
+						readInts(c, buf, 6);
+						n.add(buf[0]);
+						n.add(buf[2]);
+						n.add(buf[4]);
+						k.add(TRIANGLE);
+						break;
+					case 11:
+					case 21:
+						// rod, linear beam
+						c.pos = nextLine(c.pos, end);
+						nrLines--;
+						readInts(c, buf, 2);
+						n.add(buf, 0, 2);
+						k.add(BEAM);
+						break;
+					case 22:
+					case 24:
+						// parabolic beam
+						c.pos = nextLine(c.pos, end);
+						nrLines--;
+						readInts(c, buf, 3);
+						n.add(buf[0]);
+						n.add(buf[2]);
+						k.add(BEAM);
+						break;
+					case 94:
+					case 111:
+					case 118:
+						k.add(OTHER);
+						break;
+					default:
+						if (!u.contains(type))
+							u.add(type);
+						k.add(OTHER);
+				}
+				for (; nrLines > 0; nrLines--)
+					c.pos = nextLine(c.pos, end);
+			}
+			kinds[from] = k.toArray();
+			nodes[from] = n.toArray();
+			unknown[from] = u.toArray();
+		}
+
+		private void readInts(Cursor c, int [] buf, int nr)
+		{
+			for (int i = 0; i < nr; i++)
+				buf[i] = c.nextInt();
+		}
+	}
+
+	/**
+	 * Current position in a range of the mapped file.  Instances are not
+	 * thread-safe.
+	 */
+	final class Cursor
+	{
+		long pos;
+		final long end;
+		private char [] chars;
+
+		Cursor(long start, long end)
+		{
+			this.pos = start;
+			this.end = end;
+		}
+
+		private void skipWhitespaces()
+		{
+			while (pos < end)
+			{
+				byte b = get(pos);
+				if (b != ' ' && b != '\t' && b != '\r' && b != '\n')
+					break;
+				pos++;
+			}
+		}
+
+		/** Tells whether there are only whitespaces until end of range */
+		boolean atEndOfData()
+		{
+			skipWhitespaces();
+			return pos >= end;
+		}
+
+		/** Tells whether there are only whitespaces until end of line */
+		boolean atEndOfLine()
+		{
+			while (pos < end)
+			{
+				byte b = get(pos);
+				if (b == '\n')
+					return true;
+				if (b != ' ' && b != '\t' && b != '\r')
+					return false;
+				pos++;
+			}
+			return true;
+		}
+
+		/** Moves to the beginning of next line */
+		void skipLine()
+		{
+			pos = nextLine(pos, end);
+		}
+
+		/** Returns the rest of current line, without its end of line */
+		String restOfLine()
+		{
+			long start = pos;
+			pos = nextLine(pos, end);
+			long stop = pos;
+			while (stop > start && (get(stop - 1) == '\n' || get(stop - 1) == '\r'))
+				stop--;
+			return getString(start, stop);
+		}
+
+		int nextInt()
+		{
+			skipWhitespaces();
+			boolean negative = false;
+			if (pos < end && (get(pos) == '-' || get(pos) == '+'))
+			{
+				negative = get(pos) == '-';
+				pos++;
+			}
+			long start = pos;
+			int ret = 0;
+			while (pos < end)
+			{
+				int d = get(pos) - '0';
+				if (d < 0 || d > 9)
+					break;
+				ret = 10 * ret + d;
+				pos++;
+			}
+			if (pos == start)
+				throw new NumberFormatException("Integer expected at offset "+start);
+			return negative ? -ret : ret;
+		}
+
+		/**
+		 * Parses a double, exponent may be introduced by D or E.  When
+		 * mantissa and power of ten are exactly representable, result is
+		 * computed directly, otherwise {@link Double#parseDouble} is called
+		 * so that results are always correctly rounded.
+		 */
+		double nextDouble()
+		{
+			skipWhitespaces();
+			long start = pos;
+			boolean negative = false;
+			if (pos < end && (get(pos) == '-' || get(pos) == '+'))
+			{
+				negative = get(pos) == '-';
+				pos++;
+			}
+			long mantissa = 0L;
+			int nrDigits = 0;
+			int pendingZeros = 0;
+			int exp10 = 0;
+			boolean fraction = false;
+			boolean valid = false;
+			for (; pos < end; pos++)
+			{
+				byte b = get(pos);
+				if (b == '.' && !fraction)
+				{
+					fraction = true;
+					continue;
+				}
+				int d = b - '0';
+				if (d < 0 || d > 9)
+					break;
+				valid = true;
+				if (fraction)
+					exp10--;
+				if (d == 0)
+				{
+					// Zeros are multiplied in only if they are
+					// followed by a non-zero digit
+					if (nrDigits > 0)
+						pendingZeros++;
+					continue;
+				}
+				for (; pendingZeros > 0; pendingZeros--)
+				{
+					mantissa *= 10L;
+					nrDigits++;
+				}
+				if (nrDigits < 18)
+					mantissa = 10L * mantissa + d;
+				nrDigits++;
+			}
+			if (!valid)
+				throw new NumberFormatException("Double expected at offset "+start);
+			exp10 += pendingZeros;
+			if (pos < end)
+			{
+				byte b = get(pos);
+				if (b == 'D' || b == 'd' || b == 'E' || b == 'e')
+				{
+					pos++;
+					exp10 += nextInt();
+				}
+			}
+			if (nrDigits <= 15 && exp10 >= -22 && exp10 <= 22)
+			{
+				double ret = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+				return negative ? -ret : ret;
+			}
+			return parseDouble(start);
+		}
+
+		private double parseDouble(long start)
+		{
+			int n = (int) (pos - start);
+			if (chars == null || chars.length < n)
+				chars = new char[Math.max(32, n)];
+			for (int i = 0; i < n; i++)
+			{
+				char ch = (char) get(start + i);
+				chars[i] = (ch == 'D' || ch == 'd') ? 'E' : ch;
+			}
+			return Double.parseDouble(new String(chars, 0, n));
+		}
+	}
+}
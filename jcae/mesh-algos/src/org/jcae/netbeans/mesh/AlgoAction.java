@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.TreeSet;
@@ -60,7 +61,7 @@ import org.python.util.PythonInterpreter;
  * @author Jerome Robert
  */
 public abstract class AlgoAction extends CookieAction {
-	protected static class Redirector extends Thread {
+	protected static class Redirector extends Thread implements AmibeWorker.Output {
 		private static final Pattern PATTERN;
 		static
 		{
@@ -78,27 +79,39 @@ public abstract class AlgoAction extends CookieAction {
 			this.cameraManager = ViewManager.getDefault().getCurrentView().getCameraManager();
 		}
 
+		/** Create a redirector which is fed by {@link #println} */
+		Redirector(OutputWriter out) {
+			this.in = null;
+			this.out = out;
+			this.cameraManager = ViewManager.getDefault().getCurrentView().getCameraManager();
+		}
+
+		/** Print a line, coordinates are made clickable */
+		public void println(String line) throws IOException {
+			Matcher m = PATTERN.matcher(line);
+			if(m.find())
+			{
+				final float x = Float.parseFloat(m.group(1));
+				final float y = Float.parseFloat(m.group(2));
+				final float z = Float.parseFloat(m.group(3));
+				out.println(line, new OutputListener() {
+					public void outputLineSelected(OutputEvent ev) {}
+					public void outputLineCleared(OutputEvent ev) {}
+					public void outputLineAction(OutputEvent ev) {
+						cameraManager.zoomTo(x, y, z, 20);
+					}
+				});
+			}
+			else
+				out.println(line);
+		}
+
 		@Override
 		public void run() {
 			try {
 				String line = in.readLine();
 				while (line != null) {
-					Matcher m = PATTERN.matcher(line);
-					if(m.find())
-					{
-						final float x = Float.parseFloat(m.group(1));
-						final float y = Float.parseFloat(m.group(2));
-						final float z = Float.parseFloat(m.group(3));
-						out.println(line, new OutputListener() {
-							public void outputLineSelected(OutputEvent ev) {}
-							public void outputLineCleared(OutputEvent ev) {}
-							public void outputLineAction(OutputEvent ev) {
-								cameraManager.zoomTo(x, y, z, 20);
-							}
-						});
-					}
-					else
-						out.println(line);
+					println(line);
 					line = in.readLine();
 				}
 			} catch (IOException ex) {
@@ -242,6 +255,8 @@ public abstract class AlgoAction extends CookieAction {
 					InputOutput io = IOProvider.getDefault().getIO(getName(), true);
 					if ((Boolean) OptionNode.SAME_JVM.getValue())
 						runInSameVM(args, pyFile, io);
+					else if ((Boolean) OptionNode.PERSISTENT_WORKER.getValue())
+						runInWorker(activatedNodes[0], args, pyFile, io);
 					else
 						runInOtherVM(activatedNodes[0], args, pyFile, io);
 					postProcess(ado);
@@ -316,8 +331,8 @@ public abstract class AlgoAction extends CookieAction {
 			File.pathSeparatorChar + jython.getPath();
 	}
 
-	private void runInOtherVM(Node node, List<String> args, File pyFile, InputOutput io)
-		throws IOException
+	/** Create a process builder running jython, without arguments */
+	private ProcessBuilder jythonProcessBuilder()
 	{
 		ProcessBuilder pb = new ProcessBuilder();
 		pb.command().add(System.getProperty("java.home") + File.separatorChar +
@@ -332,12 +347,62 @@ public abstract class AlgoAction extends CookieAction {
 		pb.command().add("-cp");
 		pb.command().add(getClassPath());
 		pb.command().add("org.python.util.jython");
+		return pb;
+	}
+
+	private void runInOtherVM(Node node, List<String> args, File pyFile, InputOutput io)
+		throws IOException
+	{
+		ProcessBuilder pb = jythonProcessBuilder();
 		pb.command().add(pyFile.getPath());
 		pb.command().addAll(args);
 		customizeProcessBuilder(node, pb);
 		runProcess(pb, io);
 	}
 
+	/**
+	 * Run the script in a mesher process which is kept running between
+	 * actions.
+	 * @see AmibeWorker
+	 */
+	private void runInWorker(Node node, List<String> args, File pyFile, final InputOutput io)
+		throws IOException
+	{
+		ProcessBuilder pb = jythonProcessBuilder();
+		pb.command().add(new File(pyFile.getParentFile(), "worker.py").getPath());
+		customizeProcessBuilder(node, pb);
+		final AmibeWorker worker = AmibeWorker.getInstance(pb.command());
+		ArrayList<String> request = new ArrayList<String>(args.size() + 1);
+		request.add(pyFile.getPath());
+		request.addAll(args);
+		io.getOut().println("Running "+join(request));
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				io.select();
+			}
+		});
+		final ProgressHandle ph = ProgressHandleFactory.createHandle(getName(),
+				new Cancellable() {
+
+					@Override
+					public boolean cancel() {
+						worker.destroy();
+						return true;
+					}
+				});
+		ph.start();
+		try {
+			int rc = worker.run(pb.directory(), request,
+				new Redirector(io.getOut()), new Redirector(io.getErr()));
+			if(rc != 0)
+				throw new IOException("The process returned "+rc);
+		} finally {
+			ph.finish();
+		}
+	}
+
 	@Override
 	public HelpCtx getHelpCtx() {
 		return HelpCtx.DEFAULT_HELP;
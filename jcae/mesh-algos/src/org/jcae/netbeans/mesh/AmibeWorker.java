@@ -0,0 +1,202 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.netbeans.mesh;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A mesher process which is kept running between mesh actions.
+ * The <code>amibe-python/worker.py</code> script reads requests on its
+ * standard input and runs them one after the other in the same Jython
+ * interpreter, so JVM and Jython startup are paid only once, and the
+ * last written mesh is kept in memory.  Requests are serialized: an
+ * action waits until the previous one is done.  The working directory is
+ * sent with each request, and the process is restarted only when it dies
+ * (for example when an action is cancelled), or when its command line
+ * changes.
+ */
+final class AmibeWorker {
+	/** Where output of a request is printed */
+	interface Output {
+		void println(String line) throws IOException;
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(AmibeWorker.class.getName());
+	/** Must be the same as in worker.py */
+	private static final String DONE_MARKER = "@@amibe-worker-done@@";
+	private static AmibeWorker instance;
+
+	private final List<String> command;
+	private final Process process;
+	private final Writer requests;
+	private final BufferedReader out;
+	/** Where the standard error of the current request is printed */
+	private volatile Output err;
+	/**
+	 * Released when the end marker of a request, or the end of stream,
+	 * has been read on standard error.
+	 */
+	private final Semaphore errDone = new Semaphore(0);
+	private volatile boolean errClosed;
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("amibe worker shutdown") {
+			@Override
+			public void run() {
+				synchronized (AmibeWorker.class) {
+					if (instance != null)
+						instance.destroy();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Return the running worker, a new one is started if there is
+	 * none or if its command line is different.
+	 * @param command the command line starting worker.py
+	 */
+	static synchronized AmibeWorker getInstance(List<String> command)
+		throws IOException
+	{
+		if (instance != null && (!instance.isAlive() || !instance.command.equals(command)))
+		{
+			instance.destroy();
+			instance = null;
+		}
+		if (instance == null)
+			instance = new AmibeWorker(command);
+		return instance;
+	}
+
+	private AmibeWorker(List<String> command) throws IOException {
+		this.command = new ArrayList<String>(command);
+		ProcessBuilder pb = new ProcessBuilder(command);
+		LOGGER.log(Level.INFO, "Starting amibe worker: {0}", command);
+		process = pb.start();
+		requests = new OutputStreamWriter(process.getOutputStream());
+		out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		Thread errThread = new Thread("amibe worker stderr") {
+			@Override
+			public void run() {
+				BufferedReader errReader = new BufferedReader(
+					new InputStreamReader(process.getErrorStream()));
+				try {
+					String line = errReader.readLine();
+					while (line != null) {
+						if (line.equals(DONE_MARKER))
+							errDone.release();
+						else
+							print(err, line);
+						line = errReader.readLine();
+					}
+				} catch (IOException ex) {
+					//the worker has been killed
+				} finally {
+					errClosed = true;
+					errDone.release();
+				}
+			}
+		};
+		errThread.setDaemon(true);
+		errThread.start();
+	}
+
+	private static void print(Output output, String line) {
+		if (output == null)
+			return;
+		try {
+			output.println(line);
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, null, ex);
+		}
+	}
+
+	boolean isAlive() {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException ex) {
+			return true;
+		}
+	}
+
+	/** Kill the worker, the current request is aborted */
+	void destroy() {
+		process.destroy();
+	}
+
+	/**
+	 * Run a script in the worker and wait until it is done.  This method
+	 * returns once all the standard output and error of this script have
+	 * been printed.
+	 * @param directory working directory of the script, may be null
+	 * @param args script path followed by its arguments
+	 * @param stdout where standard output of the script is printed
+	 * @param stderr where standard error of the script is printed
+	 * @return the exit code of the script
+	 * @throws IOException if the worker died
+	 */
+	synchronized int run(File directory, List<String> args, Output stdout, Output stderr)
+		throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		if (directory != null)
+			sb.append(directory.getAbsolutePath());
+		for (String s: args)
+		{
+			if (s.indexOf('\t') >= 0 || s.indexOf('\n') >= 0)
+				throw new IOException("Invalid argument for amibe worker: "+s);
+			sb.append('\t');
+			sb.append(s);
+		}
+		err = stderr;
+		try {
+			requests.write(sb.toString());
+			requests.write('\n');
+			requests.flush();
+			String line = out.readLine();
+			while (line != null) {
+				if (line.startsWith(DONE_MARKER)) {
+					int rc = Integer.parseInt(line.substring(DONE_MARKER.length()).trim());
+					errDone.acquireUninterruptibly();
+					if (errClosed)
+						break;
+					return rc;
+				}
+				print(stdout, line);
+				line = out.readLine();
+			}
+		} finally {
+			err = null;
+		}
+		throw new IOException("The amibe worker has been stopped");
+	}
+}
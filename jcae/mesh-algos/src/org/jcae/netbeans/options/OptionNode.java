@@ -46,6 +46,11 @@ public final class OptionNode extends AbstractNode {
 		"Amibe custom options.");
 	public final static PrefProperty SAME_JVM =
 		new PrefProperty("runInSameJVM", "Run in same JVM", false);
+	public final static PrefProperty PERSISTENT_WORKER =
+		new PrefProperty("persistentWorker", "Keep mesher running", false,
+		"Run mesh actions in a mesher process which is kept running between "+
+		"actions, so that Java and Jython are started only once and the "+
+		"last mesh is kept in memory.");
 	public final static PrefProperty REFRESH_THRESHOLD = new PrefProperty(
 		"amibeARThreshold", "Mesh auto-refresh threshold", 400000,
 		"Mesh whose number of triangles is greater than this value will not "+
@@ -66,6 +71,7 @@ public final class OptionNode extends AbstractNode {
 		mesher.put(JVM_OPTIONS);
 		mesher.put(AMIBE_OPTIONS);
 		mesher.put(SAME_JVM);
+		mesher.put(PERSISTENT_WORKER);
 		mesher.put(AFRONT_PATH);
 		Sheet.Set viewer = new Sheet.Set();
 		viewer.setName("Viewer 3D Settings");
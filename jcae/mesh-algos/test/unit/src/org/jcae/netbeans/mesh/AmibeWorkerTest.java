@@ -0,0 +1,154 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2012, by EADS France
+ */
+package org.jcae.netbeans.mesh;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Run amibe-python/worker.py with Jython, amibe and trove from the test
+ * class path.  The amibe-python directory can be set with the
+ * amibe.python.dir system property.
+ */
+public class AmibeWorkerTest {
+	private static final File WORKER = new File(System.getProperty(
+		"amibe.python.dir", "../../amibe/python"), "worker.py");
+
+	private static class Lines implements AmibeWorker.Output {
+		final List<String> lines = new ArrayList<String>();
+		public void println(String line) {
+			lines.add(line);
+		}
+	}
+
+	private File dir;
+	private AmibeWorker worker;
+
+	@Before
+	public void startWorker() throws IOException {
+		Assume.assumeTrue(WORKER.exists());
+		try {
+			Class.forName("org.python.util.jython");
+		} catch (ClassNotFoundException ex) {
+			Assume.assumeNoException(ex);
+		}
+		dir = File.createTempFile("worker", ".dir");
+		dir.delete();
+		dir.mkdir();
+		worker = AmibeWorker.getInstance(command());
+	}
+
+	@After
+	public void stopWorker() throws InterruptedException {
+		if (worker != null) {
+			worker.destroy();
+			while (worker.isAlive())
+				Thread.sleep(10);
+		}
+		if (dir != null) {
+			for (File f: dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	private static List<String> command() {
+		return Arrays.asList(
+			System.getProperty("java.home") + File.separator + "bin" +
+				File.separator + "java",
+			"-cp", System.getProperty("java.class.path"),
+			"org.python.util.jython", WORKER.getAbsolutePath());
+	}
+
+	private String script(String name, String... lines) throws IOException {
+		File f = new File(dir, name);
+		FileWriter w = new FileWriter(f);
+		w.write("import sys, os\n");
+		for (String l: lines)
+			w.write(l + "\n");
+		w.close();
+		return f.getAbsolutePath();
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		String echo = script("echo.py",
+			"print 'out', ' '.join(sys.argv[1:])",
+			"print >>sys.stderr, 'err', ' '.join(sys.argv[1:])");
+		String fail = script("fail.py",
+			"print 'before exit'",
+			"sys.exit(3)");
+		for (int i = 0; i < 3; i++) {
+			Lines out = new Lines();
+			Lines err = new Lines();
+			assertEquals(0, worker.run(null, Arrays.asList(echo, "a", "b" + i), out, err));
+			assertEquals(Arrays.asList("out a b" + i), out.lines);
+			assertEquals(Arrays.asList("err a b" + i), err.lines);
+			// Standard error of previous request must not be printed here
+			out = new Lines();
+			err = new Lines();
+			assertEquals(3, worker.run(null, Arrays.asList(fail), out, err));
+			assertEquals(Arrays.asList("before exit"), out.lines);
+			assertTrue(err.lines.isEmpty());
+		}
+		assertSame(worker, AmibeWorker.getInstance(command()));
+	}
+
+	@Test
+	public void workingDirectory() throws IOException {
+		String pwd = script("pwd.py", "print os.getcwd()");
+		File sub = new File(dir, "sub");
+		assertTrue(sub.mkdir());
+		try {
+			for (File d: new File[] { dir, sub }) {
+				Lines out = new Lines();
+				assertEquals(0, worker.run(d, Arrays.asList(pwd), out, new Lines()));
+				assertEquals(Arrays.asList(d.getCanonicalPath()), out.lines);
+			}
+			// Worker is not restarted when directory changes
+			assertSame(worker, AmibeWorker.getInstance(command()));
+		} finally {
+			sub.delete();
+		}
+	}
+
+	@Test
+	public void restart() throws IOException, InterruptedException {
+		worker.destroy();
+		while (worker.isAlive())
+			Thread.sleep(10);
+		AmibeWorker w = AmibeWorker.getInstance(command());
+		assertNotSame(worker, w);
+		worker = w;
+		Lines out = new Lines();
+		assertEquals(0, worker.run(null, Arrays.asList(script("ok.py", "print 'ok'")),
+			out, new Lines()));
+		assertEquals(Arrays.asList("ok"), out.lines);
+	}
+}